@@ -21,7 +21,6 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Color;
 import android.os.Build;
@@ -39,12 +38,13 @@ import com.uservoice.uservoicesdk.UserVoice;
 import org.gnucash.android.BuildConfig;
 import org.gnucash.android.R;
 import org.gnucash.android.db.BookDbHelper;
-import org.gnucash.android.db.DatabaseHelper;
+import org.gnucash.android.db.QueryProfiler;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.AutoRegisterInboxDbAdapter;
 import org.gnucash.android.db.adapter.AutoRegisterKeywordDbAdapter;
 import org.gnucash.android.db.adapter.AutoRegisterDbAdapter;
 import org.gnucash.android.db.adapter.AutoRegisterProviderDbAdapter;
+import org.gnucash.android.db.adapter.BookSession;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
 import org.gnucash.android.db.adapter.BudgetAmountsDbAdapter;
 import org.gnucash.android.db.adapter.BudgetsDbAdapter;
@@ -57,6 +57,7 @@ import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.model.Commodity;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.service.ScheduledActionService;
+import org.gnucash.android.ui.homescreen.WidgetSnapshotRefresher;
 import org.gnucash.android.ui.settings.PreferenceActivity;
 
 import java.util.Currency;
@@ -107,7 +108,7 @@ public class GnuCashApplication extends MultiDexApplication {
     private static RecurrenceDbAdapter mRecurrenceDbAdapter;
 
     private static BooksDbAdapter mBooksDbAdapter;
-    private static DatabaseHelper mDbHelper;
+    private static BookSession mActiveBookSession;
 
     private static AutoRegisterDbAdapter mAutoRegisterDbAdapter;
     private static AutoRegisterInboxDbAdapter mAutoRegisterInboxDbAdapter;
@@ -135,50 +136,50 @@ public class GnuCashApplication extends MultiDexApplication {
                 .build());
 
         setUpUserVoice();
+        setUpQueryProfiler();
 
         BookDbHelper bookDbHelper = new BookDbHelper(getApplicationContext());
         mBooksDbAdapter = new BooksDbAdapter(bookDbHelper.getWritableDatabase());
 
         initializeDatabaseAdapters();
         setDefaultCurrencyCode(getDefaultCurrencyCode());
+        SplitsDbAdapter.setOnBalancesChangedListener(WidgetSnapshotRefresher.getInstance());
 
         StethoUtils.install(this);
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_BACKGROUND)
+            BookSession.evictIdleSessions(0);
+    }
+
     /**
      * Initialize database adapter singletons for use in the application
      * This method should be called every time a new book is opened
      */
     public static void initializeDatabaseAdapters() {
-        if (mDbHelper != null){ //close if open
-            mDbHelper.getReadableDatabase().close();
-        }
-
-        mDbHelper = new DatabaseHelper(getAppContext(),
-                mBooksDbAdapter.getActiveBookUID());
-        SQLiteDatabase mainDb;
-        try {
-            mainDb = mDbHelper.getWritableDatabase();
-        } catch (SQLException e) {
-            Crashlytics.logException(e);
-            Log.e("GnuCashApplication", "Error getting database: " + e.getMessage());
-            mainDb = mDbHelper.getReadableDatabase();
-        }
-
-        mSplitsDbAdapter            = new SplitsDbAdapter(mainDb);
-        mTransactionsDbAdapter      = new TransactionsDbAdapter(mainDb, mSplitsDbAdapter);
-        mAccountsDbAdapter          = new AccountsDbAdapter(mainDb, mTransactionsDbAdapter);
-        mRecurrenceDbAdapter        = new RecurrenceDbAdapter(mainDb);
-        mScheduledActionDbAdapter   = new ScheduledActionDbAdapter(mainDb, mRecurrenceDbAdapter);
-        mPricesDbAdapter            = new PricesDbAdapter(mainDb);
-        mCommoditiesDbAdapter       = new CommoditiesDbAdapter(mainDb);
-        mBudgetAmountsDbAdapter     = new BudgetAmountsDbAdapter(mainDb);
-        mBudgetsDbAdapter           = new BudgetsDbAdapter(mainDb, mBudgetAmountsDbAdapter, mRecurrenceDbAdapter);
-
-        mAutoRegisterDbAdapter         = new AutoRegisterDbAdapter(mainDb);
-        mAutoRegisterProviderDbAdapter = new AutoRegisterProviderDbAdapter(mainDb, mAccountsDbAdapter);
-        mAutoRegisterKeywordDbAdapter  = new AutoRegisterKeywordDbAdapter(mainDb, mAccountsDbAdapter);
-        mAutoRegisterInboxDbAdapter    = new AutoRegisterInboxDbAdapter(mainDb, mAutoRegisterProviderDbAdapter, mAutoRegisterKeywordDbAdapter);
+        BookSession previousSession = mActiveBookSession;
+        mActiveBookSession = BookSession.open(mBooksDbAdapter.getActiveBookUID());
+        if (previousSession != null) //the session stays open for a while in case the book is used again
+            previousSession.close();
+
+        mSplitsDbAdapter            = mActiveBookSession.getSplitsDbAdapter();
+        mTransactionsDbAdapter      = mActiveBookSession.getTransactionsDbAdapter();
+        mAccountsDbAdapter          = mActiveBookSession.getAccountsDbAdapter();
+        mAccountsDbAdapter.invalidateAccountTree(); //the book may have been modified while it was not open
+        mRecurrenceDbAdapter        = mActiveBookSession.getRecurrenceDbAdapter();
+        mScheduledActionDbAdapter   = mActiveBookSession.getScheduledActionDbAdapter();
+        mPricesDbAdapter            = mActiveBookSession.getPricesDbAdapter();
+        mCommoditiesDbAdapter       = mActiveBookSession.getCommoditiesDbAdapter();
+        mBudgetAmountsDbAdapter     = mActiveBookSession.getBudgetAmountsDbAdapter();
+        mBudgetsDbAdapter           = mActiveBookSession.getBudgetsDbAdapter();
+
+        mAutoRegisterDbAdapter         = mActiveBookSession.getAutoRegisterDbAdapter();
+        mAutoRegisterProviderDbAdapter = mActiveBookSession.getAutoRegisterProviderDbAdapter();
+        mAutoRegisterKeywordDbAdapter  = mActiveBookSession.getAutoRegisterKeywordDbAdapter();
+        mAutoRegisterInboxDbAdapter    = mActiveBookSession.getAutoRegisterInboxDbAdapter();
     }
 
     public static AccountsDbAdapter getAccountsDbAdapter() {
@@ -242,7 +243,17 @@ public class GnuCashApplication extends MultiDexApplication {
      * @return Currently active {@link SQLiteDatabase}
      */
     public static SQLiteDatabase getActiveDb(){
-        return mDbHelper.getWritableDatabase();
+        return mActiveBookSession.getDatabase();
+    }
+
+    /**
+     * Returns the session of the currently active book.
+     * <p>The session is held by the application until another book is activated.
+     * Callers which keep using it after that should open the book themselves with {@link BookSession#open(String)}</p>
+     * @return Session of the active book
+     */
+    public static BookSession getActiveBookSession(){
+        return mActiveBookSession;
     }
 
     /**
@@ -372,6 +383,22 @@ public class GnuCashApplication extends MultiDexApplication {
         context.startService(alarmIntent); //run the service the first time
     }
 
+    /**
+     * Enables or disables the {@link QueryProfiler} and sets its slow query threshold according to the preferences
+     */
+    public static void setUpQueryProfiler() {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        String threshold = preferences.getString(context.getString(R.string.key_slow_query_threshold), null);
+        try {
+            QueryProfiler.setSlowQueryThreshold(threshold == null
+                    ? QueryProfiler.DEFAULT_SLOW_QUERY_THRESHOLD : Long.parseLong(threshold.trim()));
+        } catch (NumberFormatException e) {
+            Log.w("GnuCashApplication", "Invalid slow query threshold: " + threshold);
+            QueryProfiler.setSlowQueryThreshold(QueryProfiler.DEFAULT_SLOW_QUERY_THRESHOLD);
+        }
+        QueryProfiler.setEnabled(preferences.getBoolean(context.getString(R.string.key_enable_query_profiler), false));
+    }
+
     /**
      * Sets up UserVoice.
      *
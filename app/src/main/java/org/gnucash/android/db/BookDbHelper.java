@@ -67,7 +67,7 @@ public class BookDbHelper extends SQLiteOpenHelper {
             + ");" + DatabaseHelper.createUpdatedAtTrigger(BookEntry.TABLE_NAME);
 
     public BookDbHelper(Context context) {
-        super(context, DatabaseSchema.BOOK_DATABASE_NAME, null, DatabaseSchema.BOOK_DATABASE_VERSION);
+        super(context, DatabaseSchema.BOOK_DATABASE_NAME, QueryProfiler.getCursorFactory(), DatabaseSchema.BOOK_DATABASE_VERSION);
         mContext = context;
     }
 
@@ -124,16 +124,6 @@ public class BookDbHelper extends SQLiteOpenHelper {
 
     }
 
-    /**
-     * Returns the database for the book
-     * @param bookUID GUID of the book
-     * @return SQLiteDatabase of the book
-     */
-    public static SQLiteDatabase getDatabase(String bookUID){
-        DatabaseHelper dbHelper = new DatabaseHelper(GnuCashApplication.getAppContext(), bookUID);
-        return dbHelper.getWritableDatabase();
-    }
-
     /**
      * Inserts the book into the database
      * @param db Book database
@@ -34,6 +34,7 @@ import java.lang.reflect.Method;
 
 import javax.xml.parsers.ParserConfigurationException;
 
+import static org.gnucash.android.db.DatabaseSchema.AccountBalanceEntry;
 import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
 import static org.gnucash.android.db.DatabaseSchema.AutoRegisterEntry;
 import static org.gnucash.android.db.DatabaseSchema.AutoRegisterInboxEntry;
@@ -43,11 +44,15 @@ import static org.gnucash.android.db.DatabaseSchema.BudgetAmountEntry;
 import static org.gnucash.android.db.DatabaseSchema.BudgetEntry;
 import static org.gnucash.android.db.DatabaseSchema.CommodityEntry;
 import static org.gnucash.android.db.DatabaseSchema.CommonColumns;
+import static org.gnucash.android.db.DatabaseSchema.DeletedRecordEntry;
 import static org.gnucash.android.db.DatabaseSchema.PriceEntry;
 import static org.gnucash.android.db.DatabaseSchema.RecurrenceEntry;
 import static org.gnucash.android.db.DatabaseSchema.ScheduledActionEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import static org.gnucash.android.db.DatabaseSchema.TransactionSearchEntry;
+import static org.gnucash.android.db.DatabaseSchema.UpcomingOccurrenceEntry;
+import static org.gnucash.android.db.DatabaseSchema.ViewEntry;
 
 /**
  * Helper class for managing the SQLite database.
@@ -226,6 +231,184 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             + RecurrenceEntry.COLUMN_MODIFIED_AT    + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP); "
             + createUpdatedAtTrigger(RecurrenceEntry.TABLE_NAME);
 
+    /**
+     * SQL statement to create the account balances table
+     */
+    static final String ACCOUNT_BALANCES_TABLE_CREATE = "CREATE TABLE " + AccountBalanceEntry.TABLE_NAME + " ("
+            + AccountBalanceEntry._ID                   + " integer primary key autoincrement, "
+            + AccountBalanceEntry.COLUMN_ACCOUNT_UID    + " varchar(255) not null, "
+            + AccountBalanceEntry.COLUMN_CURRENCY       + " varchar(255) not null, "
+            + AccountBalanceEntry.COLUMN_BALANCE_NUM    + " integer not null, "
+            + AccountBalanceEntry.COLUMN_BALANCE_DENOM  + " integer not null, "
+            + "UNIQUE (" + AccountBalanceEntry.COLUMN_ACCOUNT_UID + ", " + AccountBalanceEntry.COLUMN_BALANCE_DENOM + "), "
+            + "FOREIGN KEY (" 	+ AccountBalanceEntry.COLUMN_ACCOUNT_UID + ") REFERENCES " + AccountEntry.TABLE_NAME + " (" + AccountEntry.COLUMN_UID + ") ON DELETE CASCADE "
+            + ");";
+
+    /**
+     * SQL statement to create the table of deleted records
+     */
+    static final String DELETED_RECORDS_TABLE_CREATE = "CREATE TABLE " + DeletedRecordEntry.TABLE_NAME + " ("
+            + DeletedRecordEntry._ID                + " integer primary key autoincrement, "
+            + DeletedRecordEntry.COLUMN_TABLE_NAME  + " varchar(255) not null, "
+            + DeletedRecordEntry.COLUMN_UID         + " varchar(255) not null, "
+            + DeletedRecordEntry.COLUMN_DELETED_AT  + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP "
+            + ");";
+
+    /**
+     * SQL statement to create the table of upcoming occurrences of scheduled actions
+     */
+    static final String UPCOMING_OCCURRENCES_TABLE_CREATE = "CREATE TABLE " + UpcomingOccurrenceEntry.TABLE_NAME + " ("
+            + UpcomingOccurrenceEntry._ID                       + " integer primary key autoincrement, "
+            + UpcomingOccurrenceEntry.COLUMN_SCHEDX_ACTION_UID  + " varchar(255) not null, "
+            + UpcomingOccurrenceEntry.COLUMN_EXECUTION_NUMBER   + " integer not null, "
+            + UpcomingOccurrenceEntry.COLUMN_TIME               + " integer not null, "
+            + "UNIQUE (" + UpcomingOccurrenceEntry.COLUMN_SCHEDX_ACTION_UID + ", " + UpcomingOccurrenceEntry.COLUMN_EXECUTION_NUMBER + "), "
+            + "FOREIGN KEY (" 	+ UpcomingOccurrenceEntry.COLUMN_SCHEDX_ACTION_UID + ") REFERENCES " + ScheduledActionEntry.TABLE_NAME + " (" + ScheduledActionEntry.COLUMN_UID + ") ON DELETE CASCADE "
+            + ");";
+
+    /**
+     * Index for the "due before" queries, which only need the time and the scheduled action
+     */
+    static final String UPCOMING_OCCURRENCE_TIME_INDEX_CREATE = "CREATE INDEX IF NOT EXISTS '" + UpcomingOccurrenceEntry.INDEX_TIME
+            + "' ON " + UpcomingOccurrenceEntry.TABLE_NAME + "(" + UpcomingOccurrenceEntry.COLUMN_TIME + ", "
+            + UpcomingOccurrenceEntry.COLUMN_SCHEDX_ACTION_UID + ")";
+
+    /**
+     * SQL statement to create the full-text index of transaction descriptions and split memos.
+     * <p>FTS4 is the newest full-text module available on all supported Android versions.
+     * Prefix indexes for two and three characters keep the short prefix queries of autocompletion fast.</p>
+     */
+    static final String TRANSACTIONS_FTS_TABLE_CREATE = "CREATE VIRTUAL TABLE " + TransactionSearchEntry.TABLE_NAME
+            + " USING fts4 ( "
+            + TransactionSearchEntry.COLUMN_DESCRIPTION + " , "
+            + TransactionSearchEntry.COLUMN_MEMOS + " , "
+            + "prefix=\"2,3\" )";
+
+    /**
+     * SQL statement to create the view combining transactions, splits and accounts, as this is often used in queries.
+     * <p>Before database version 17 this view was created as a temporary view by every database adapter.
+     * Migrations which rebuild one of the underlying tables have to drop and re-create the view.</p>
+     */
+    //todo: would it be useful to add the split reconciled_state and reconciled_date to this view?
+    static final String TRANS_SPLIT_ACCT_VIEW_CREATE = "CREATE VIEW IF NOT EXISTS " + ViewEntry.TRANS_SPLIT_ACCT + " AS SELECT "
+            + TransactionEntry.TABLE_NAME + "." + CommonColumns.COLUMN_MODIFIED_AT + " AS "
+            + TransactionEntry.TABLE_NAME + "_" + CommonColumns.COLUMN_MODIFIED_AT + " , "
+            + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " AS "
+            + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID + " , "
+            + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_DESCRIPTION + " AS "
+            + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_DESCRIPTION + " , "
+            + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_NOTES + " AS "
+            + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_NOTES + " , "
+            + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_CURRENCY + " AS "
+            + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_CURRENCY + " , "
+            + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " AS "
+            + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " , "
+            + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_EXPORTED + " AS "
+            + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_EXPORTED + " , "
+            + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " AS "
+            + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " , "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_UID + " AS "
+            + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_UID + " , "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " AS "
+            + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_TYPE + " , "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_VALUE_NUM + " AS "
+            + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_VALUE_NUM + " , "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_VALUE_DENOM + " AS "
+            + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_VALUE_DENOM + " , "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " AS "
+            + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM + " , "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM + " AS "
+            + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_DENOM + " , "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_MEMO + " AS "
+            + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_MEMO + " , "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + " AS "
+            + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID + " , "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_NAME + " AS "
+            + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_NAME + " , "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY + " AS "
+            + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_CURRENCY + " , "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " AS "
+            + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " , "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_PLACEHOLDER + " AS "
+            + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_PLACEHOLDER + " , "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_COLOR_CODE + " AS "
+            + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_COLOR_CODE + " , "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_FAVORITE + " AS "
+            + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_FAVORITE + " , "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_FULL_NAME + " AS "
+            + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_FULL_NAME + " , "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_TYPE + " AS "
+            + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_TYPE + " , "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID + " AS "
+            + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID
+            + " FROM " + TransactionEntry.TABLE_NAME + " , " + SplitEntry.TABLE_NAME + " ON "
+            + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + "=" + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+            + " , " + AccountEntry.TABLE_NAME + " ON "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + "=" + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID;
+
+    // SELECT transactions_uid AS trans_acct_t_uid ,
+    //      SUBSTR (
+    //          MIN (
+    //              ( CASE WHEN IFNULL ( splits_memo , '' ) == '' THEN 'a' ELSE 'b' END ) || accounts_uid
+    //          ) ,
+    //          2
+    //      ) as trans_acct_a_uid ,
+    //   TOTAL ( CASE WHEN splits_type = 'DEBIT' THEN splits_amount ELSE - splits_amount END ) AS trans_acct_balance,
+    //   COUNT ( DISTINCT accounts_currency ) as trans_currency_count
+    //   FROM trans_split_acct GROUP BY transactions_uid
+    //
+    // This view would pick one Account_UID for each
+    // Transaction, which can be used to order all transactions. If possible, account_uid of a split whose
+    // memo is null is select.
+    //
+    // Transaction balance is also picked out by this view
+    //
+    // a split without split memo is chosen if possible, in the following manner:
+    //   if the splits memo is null or empty string, attach an 'a' in front of the split account uid,
+    //   if not, attach a 'b' to the split account uid
+    //   pick the minimal value of the modified account uid (one of the ones begins with 'a', if exists)
+    //   use substr to get account uid
+    //the multiplication by 1.0 is to cause sqlite to handle the value as REAL and not to round off
+    /**
+     * SQL statement to create the view of per-transaction information derived from {@link #TRANS_SPLIT_ACCT_VIEW_CREATE}
+     */
+    static final String TRANS_EXTRA_INFO_VIEW_CREATE = "CREATE VIEW IF NOT EXISTS " + ViewEntry.TRANS_EXTRA_INFO + " AS SELECT "
+            + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID +
+            " AS trans_acct_t_uid , SUBSTR ( MIN ( ( CASE WHEN IFNULL ( " + SplitEntry.TABLE_NAME + "_" +
+            SplitEntry.COLUMN_MEMO + " , '' ) == '' THEN 'a' ELSE 'b' END ) || " +
+            AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID +
+            " ) , 2 ) AS trans_acct_a_uid , TOTAL ( CASE WHEN " + SplitEntry.TABLE_NAME + "_" +
+            SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "+ SplitEntry.TABLE_NAME + "_" +
+            SplitEntry.COLUMN_VALUE_NUM + " ELSE - " + SplitEntry.TABLE_NAME + "_" +
+            SplitEntry.COLUMN_VALUE_NUM + " END ) * 1.0 / " + SplitEntry.TABLE_NAME + "_" +
+            SplitEntry.COLUMN_VALUE_DENOM + " AS trans_acct_balance , COUNT ( DISTINCT " +
+            AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_CURRENCY +
+            " ) AS trans_currency_count , COUNT (*) AS trans_split_count FROM " + ViewEntry.TRANS_SPLIT_ACCT +
+            " GROUP BY " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID;
+
+    /**
+     * SQL statement to create the covering index of splits by account.
+     * <p>Balance queries filter splits by account and only read the columns in this index,
+     * so they never have to touch the splits table itself</p>
+     */
+    static final String SPLIT_ACCOUNT_UID_INDEX_CREATE = "CREATE INDEX IF NOT EXISTS '" + SplitEntry.INDEX_ACCOUNT_UID
+            + "' ON " + SplitEntry.TABLE_NAME + "(" + SplitEntry.COLUMN_ACCOUNT_UID + ", "
+            + SplitEntry.COLUMN_TRANSACTION_UID + ", " + SplitEntry.COLUMN_TYPE + ", "
+            + SplitEntry.COLUMN_QUANTITY_NUM + ", " + SplitEntry.COLUMN_QUANTITY_DENOM + ")";
+
+    /**
+     * SQL statement to create the index of splits by transaction
+     */
+    static final String SPLIT_TRANSACTION_UID_INDEX_CREATE = "CREATE INDEX IF NOT EXISTS '" + SplitEntry.INDEX_TRANSACTION_UID
+            + "' ON " + SplitEntry.TABLE_NAME + "(" + SplitEntry.COLUMN_TRANSACTION_UID + ")";
+
+    /**
+     * SQL statement to create the index of transactions by template flag and date
+     */
+    static final String TRANSACTION_TEMPLATE_TIMESTAMP_INDEX_CREATE = "CREATE INDEX IF NOT EXISTS '" + TransactionEntry.INDEX_TEMPLATE_TIMESTAMP
+            + "' ON " + TransactionEntry.TABLE_NAME + "(" + TransactionEntry.COLUMN_TEMPLATE + ", "
+            + TransactionEntry.COLUMN_TIMESTAMP + ")";
+
     private static final String AUTOREGISTER_LEDGER_TABLE_CREATE = "CREATE TABLE " + AutoRegisterEntry.TABLE_NAME + " ("
             + AutoRegisterEntry._ID                    + " integer primary key autoincrement, "
             + AutoRegisterEntry.COLUMN_UID             + " varchar(255) not null UNIQUE, "
@@ -289,13 +472,17 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             + ");" + createUpdatedAtTrigger(AutoRegisterKeywordEntry.TABLE_NAME);
 
     /**
-	 * Constructor
+	 * Constructor.
+	 * <p>Book databases use write-ahead logging. {@link SQLiteDatabase} then keeps a small pool of
+	 * connections for the queries run outside of a transaction, so that loaders, reports and widgets
+	 * read the last committed data while an import or the scheduled actions are writing.
+	 * All writes still go through the single primary connection of the database</p>
 	 * @param context Application context
      * @param databaseName Name of the database
 	 */
 	public DatabaseHelper(Context context, String databaseName){
-		super(context, databaseName, null, DatabaseSchema.DATABASE_VERSION);
-
+		super(context, databaseName, QueryProfiler.getCursorFactory(), DatabaseSchema.DATABASE_VERSION);
+		setWriteAheadLoggingEnabled(true);
 	}
 
     /**
@@ -313,6 +500,140 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 + "  END;";
     }
 
+    /**
+     * Creates the triggers which incremental backups rely on.
+     * <p>The modified_at column of accounts, transactions, splits and prices is updated by a trigger whenever
+     * a statement changes a record without setting the column itself, and deleting an account, transaction
+     * or price adds a row to {@link DeletedRecordEntry#TABLE_NAME}.
+     * The statements are executed one at a time, since {@link SQLiteDatabase#execSQL(String)}
+     * only runs the first statement of a string.</p>
+     * @param db Database in which to create the triggers
+     */
+    static void createBackupTriggers(SQLiteDatabase db){
+        String[] modifiedTables = {AccountEntry.TABLE_NAME, TransactionEntry.TABLE_NAME,
+                SplitEntry.TABLE_NAME, PriceEntry.TABLE_NAME};
+        for (String tableName : modifiedTables) {
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS " + tableName + "_modified_at_trigger"
+                    + " AFTER UPDATE ON " + tableName + " FOR EACH ROW"
+                    + " WHEN NEW." + CommonColumns.COLUMN_MODIFIED_AT + " = OLD." + CommonColumns.COLUMN_MODIFIED_AT
+                    + " BEGIN UPDATE " + tableName
+                    + " SET " + CommonColumns.COLUMN_MODIFIED_AT + " = CURRENT_TIMESTAMP"
+                    + " WHERE " + CommonColumns._ID + " = NEW." + CommonColumns._ID + ";"
+                    + " END");
+        }
+        String[] deletedTables = {AccountEntry.TABLE_NAME, TransactionEntry.TABLE_NAME, PriceEntry.TABLE_NAME};
+        for (String tableName : deletedTables) {
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS " + tableName + "_deleted_trigger"
+                    + " AFTER DELETE ON " + tableName + " FOR EACH ROW"
+                    + " BEGIN INSERT INTO " + DeletedRecordEntry.TABLE_NAME + " ( "
+                    + DeletedRecordEntry.COLUMN_TABLE_NAME + " , " + DeletedRecordEntry.COLUMN_UID + " )"
+                    + " VALUES ( '" + tableName + "' , OLD." + CommonColumns.COLUMN_UID + " );"
+                    + " END");
+        }
+    }
+
+    /**
+     * Creates the triggers which keep the full-text index of transactions up to date.
+     * <p>Records are written with {@code REPLACE}, which deletes the existing row without firing delete triggers.
+     * The index entry of a replaced transaction is therefore removed before the new row is inserted,
+     * and the memos of a transaction are recomputed before a split with a memo is replaced.
+     * Splits without memo, which are by far the most common, do not touch the index at all.</p>
+     * @param db Database in which to create the triggers
+     */
+    static void createSearchIndexTriggers(SQLiteDatabase db){
+        String table = TransactionSearchEntry.TABLE_NAME;
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_transaction_replace_trigger"
+                + " BEFORE INSERT ON " + TransactionEntry.TABLE_NAME + " FOR EACH ROW"
+                + " BEGIN DELETE FROM " + table + " WHERE " + TransactionSearchEntry.COLUMN_DOCID
+                + " IN ( SELECT " + TransactionEntry._ID + " FROM " + TransactionEntry.TABLE_NAME
+                + " WHERE " + TransactionEntry.COLUMN_UID + " = NEW." + TransactionEntry.COLUMN_UID + " );"
+                + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_transaction_insert_trigger"
+                + " AFTER INSERT ON " + TransactionEntry.TABLE_NAME + " FOR EACH ROW"
+                + " BEGIN INSERT INTO " + table + " ( " + TransactionSearchEntry.COLUMN_DOCID + " , "
+                + TransactionSearchEntry.COLUMN_DESCRIPTION + " , " + TransactionSearchEntry.COLUMN_MEMOS + " )"
+                + " VALUES ( NEW." + TransactionEntry._ID + " , NEW." + TransactionEntry.COLUMN_DESCRIPTION + " , "
+                + selectSearchMemos("NEW." + TransactionEntry.COLUMN_UID, null) + " );"
+                + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_transaction_update_trigger"
+                + " AFTER UPDATE OF " + TransactionEntry.COLUMN_DESCRIPTION + " ON " + TransactionEntry.TABLE_NAME
+                + " FOR EACH ROW"
+                + " BEGIN UPDATE " + table + " SET " + TransactionSearchEntry.COLUMN_DESCRIPTION
+                + " = NEW." + TransactionEntry.COLUMN_DESCRIPTION
+                + " WHERE " + TransactionSearchEntry.COLUMN_DOCID + " = NEW." + TransactionEntry._ID + ";"
+                + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_transaction_delete_trigger"
+                + " AFTER DELETE ON " + TransactionEntry.TABLE_NAME + " FOR EACH ROW"
+                + " BEGIN DELETE FROM " + table
+                + " WHERE " + TransactionSearchEntry.COLUMN_DOCID + " = OLD." + TransactionEntry._ID + ";"
+                + " END");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_split_replace_trigger"
+                + " BEFORE INSERT ON " + SplitEntry.TABLE_NAME + " FOR EACH ROW"
+                + " WHEN EXISTS ( SELECT 1 FROM " + SplitEntry.TABLE_NAME
+                + " WHERE " + SplitEntry.COLUMN_UID + " = NEW." + SplitEntry.COLUMN_UID
+                + " AND IFNULL(" + SplitEntry.COLUMN_MEMO + ", '') != '' )"
+                + " BEGIN " + updateSearchMemos("NEW." + SplitEntry.COLUMN_TRANSACTION_UID, "NEW." + SplitEntry.COLUMN_UID)
+                + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_split_insert_trigger"
+                + " AFTER INSERT ON " + SplitEntry.TABLE_NAME + " FOR EACH ROW"
+                + " WHEN IFNULL(NEW." + SplitEntry.COLUMN_MEMO + ", '') != ''"
+                + " BEGIN " + updateSearchMemos("NEW." + SplitEntry.COLUMN_TRANSACTION_UID, null)
+                + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_split_update_trigger"
+                + " AFTER UPDATE OF " + SplitEntry.COLUMN_MEMO + " , " + SplitEntry.COLUMN_TRANSACTION_UID
+                + " ON " + SplitEntry.TABLE_NAME + " FOR EACH ROW"
+                + " WHEN IFNULL(OLD." + SplitEntry.COLUMN_MEMO + ", '') != IFNULL(NEW." + SplitEntry.COLUMN_MEMO + ", '')"
+                + " OR OLD." + SplitEntry.COLUMN_TRANSACTION_UID + " != NEW." + SplitEntry.COLUMN_TRANSACTION_UID
+                + " BEGIN " + updateSearchMemos("NEW." + SplitEntry.COLUMN_TRANSACTION_UID, null)
+                + updateSearchMemos("OLD." + SplitEntry.COLUMN_TRANSACTION_UID, null)
+                + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_split_delete_trigger"
+                + " AFTER DELETE ON " + SplitEntry.TABLE_NAME + " FOR EACH ROW"
+                + " WHEN IFNULL(OLD." + SplitEntry.COLUMN_MEMO + ", '') != ''"
+                + " BEGIN " + updateSearchMemos("OLD." + SplitEntry.COLUMN_TRANSACTION_UID, null)
+                + " END");
+    }
+
+    /**
+     * Returns a sub-query selecting the memos of the splits of a transaction, separated by spaces
+     * @param transactionUID SQL expression for the GUID of the transaction
+     * @param excludedSplitUID SQL expression for the GUID of a split to leave out, or {@code null}
+     */
+    private static String selectSearchMemos(String transactionUID, String excludedSplitUID){
+        return "( SELECT group_concat(" + SplitEntry.COLUMN_MEMO + ", ' ') FROM " + SplitEntry.TABLE_NAME
+                + " WHERE " + SplitEntry.COLUMN_TRANSACTION_UID + " = " + transactionUID
+                + (excludedSplitUID == null ? "" : " AND " + SplitEntry.COLUMN_UID + " != " + excludedSplitUID)
+                + " )";
+    }
+
+    /**
+     * Returns a statement which recomputes the memos of a transaction in the full-text index
+     * @param transactionUID SQL expression for the GUID of the transaction
+     * @param excludedSplitUID SQL expression for the GUID of a split to leave out, or {@code null}
+     */
+    private static String updateSearchMemos(String transactionUID, String excludedSplitUID){
+        return "UPDATE " + TransactionSearchEntry.TABLE_NAME
+                + " SET " + TransactionSearchEntry.COLUMN_MEMOS + " = " + selectSearchMemos(transactionUID, excludedSplitUID)
+                + " WHERE " + TransactionSearchEntry.COLUMN_DOCID + " = ( SELECT " + TransactionEntry._ID
+                + " FROM " + TransactionEntry.TABLE_NAME
+                + " WHERE " + TransactionEntry.COLUMN_UID + " = " + transactionUID + " );";
+    }
+
+    /**
+     * Adds all transactions of the database to the full-text index, which is expected to be empty
+     * @param db Database whose transactions are to be indexed
+     */
+    static void populateSearchIndex(SQLiteDatabase db){
+        db.execSQL("INSERT INTO " + TransactionSearchEntry.TABLE_NAME + " ( "
+                + TransactionSearchEntry.COLUMN_DOCID + " , "
+                + TransactionSearchEntry.COLUMN_DESCRIPTION + " , "
+                + TransactionSearchEntry.COLUMN_MEMOS + " )"
+                + " SELECT " + TransactionEntry._ID + " , " + TransactionEntry.COLUMN_DESCRIPTION + " , "
+                + selectSearchMemos(TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID, null)
+                + " FROM " + TransactionEntry.TABLE_NAME);
+    }
+
 	@Override
 	public void onCreate(SQLiteDatabase db) {
 		createDatabaseTables(db);
@@ -381,10 +702,14 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(RECURRENCE_TABLE_CREATE);
         db.execSQL(BUDGETS_TABLE_CREATE);
         db.execSQL(BUDGET_AMOUNTS_TABLE_CREATE);
+        db.execSQL(ACCOUNT_BALANCES_TABLE_CREATE);
         db.execSQL(AUTOREGISTER_INBOX_TABLE_CREATE);
         db.execSQL(AUTOREGISTER_PROVIDER_TABLE_CREATE);
         db.execSQL(AUTOREGISTER_KEYWORD_TABLE_CREATE);
         db.execSQL(AUTOREGISTER_LEDGER_TABLE_CREATE);
+        db.execSQL(DELETED_RECORDS_TABLE_CREATE);
+        db.execSQL(TRANSACTIONS_FTS_TABLE_CREATE);
+        db.execSQL(UPCOMING_OCCURRENCES_TABLE_CREATE);
 
         String createAccountUidIndex = "CREATE UNIQUE INDEX '" + AccountEntry.INDEX_UID + "' ON "
                 + AccountEntry.TABLE_NAME + "(" + AccountEntry.COLUMN_UID + ")";
@@ -442,6 +767,16 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(createAutoRegisterInboxMessageTimestampIndex);
         db.execSQL(createAutoRegisterProviderUidIndex);
         db.execSQL(createAutoRegisterKeywordUidIndex);
+        db.execSQL(SPLIT_ACCOUNT_UID_INDEX_CREATE);
+        db.execSQL(SPLIT_TRANSACTION_UID_INDEX_CREATE);
+        db.execSQL(TRANSACTION_TEMPLATE_TIMESTAMP_INDEX_CREATE);
+        db.execSQL(UPCOMING_OCCURRENCE_TIME_INDEX_CREATE);
+
+        db.execSQL(TRANS_SPLIT_ACCT_VIEW_CREATE);
+        db.execSQL(TRANS_EXTRA_INFO_VIEW_CREATE);
+
+        createBackupTriggers(db);
+        createSearchIndexTriggers(db);
 
         try {
             MigrationHelper.importCommodities(db);
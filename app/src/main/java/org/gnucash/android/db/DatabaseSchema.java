@@ -39,7 +39,7 @@ public class DatabaseSchema {
      * Version number of database containing accounts and transactions info.
      * With any change to the database schema, this number must increase
      */
-    public static final int DATABASE_VERSION = 15;
+    public static final int DATABASE_VERSION = 20;
 
     /**
      * Name of the database
@@ -118,6 +118,7 @@ public class DatabaseSchema {
         public static final String COLUMN_SCHEDX_ACTION_UID     = "scheduled_action_uid";
 
         public static final String INDEX_UID                    = "transaction_uid_index";
+        public static final String INDEX_TEMPLATE_TIMESTAMP     = "transaction_template_timestamp_index";
     }
 
     /**
@@ -147,6 +148,11 @@ public class DatabaseSchema {
         public static final String COLUMN_RECONCILE_DATE        = "reconcile_date";
 
         public static final String INDEX_UID                    = "split_uid_index";
+        /**
+         * Covering index for the balance queries, which only need these columns of a split
+         */
+        public static final String INDEX_ACCOUNT_UID            = "split_account_uid_index";
+        public static final String INDEX_TRANSACTION_UID        = "split_transaction_uid_index";
     }
 
     public static abstract class ScheduledActionEntry implements CommonColumns {
@@ -275,6 +281,94 @@ public class DatabaseSchema {
         public static final String INDEX_UID = "recurrence_uid_index";
     }
 
+    /**
+     * Column schema for the table of account balances.
+     * <p>The table holds the sum of the (non-template) split quantities of each account,
+     * with debits positive and credits negative. It is derived data and is recomputed
+     * whenever splits of an account are written or deleted.</p>
+     */
+    public static abstract class AccountBalanceEntry implements BaseColumns {
+        public static final String TABLE_NAME           = "account_balances";
+
+        public static final String COLUMN_ACCOUNT_UID   = "account_uid";
+        public static final String COLUMN_CURRENCY      = "currency_code";
+        public static final String COLUMN_BALANCE_NUM   = "balance_num";
+        public static final String COLUMN_BALANCE_DENOM = "balance_denom";
+    }
+
+    /**
+     * Column schema for the table of deleted records.
+     * <p>A row is added by a trigger whenever an account, transaction or price is deleted,
+     * so that incremental backups can include the deletions since the previous backup.
+     * Rows which are older than the last full backup are no longer needed and are purged.</p>
+     */
+    public static abstract class DeletedRecordEntry implements BaseColumns {
+        public static final String TABLE_NAME           = "deleted_records";
+
+        public static final String COLUMN_TABLE_NAME    = "table_name";
+        public static final String COLUMN_UID           = "uid";
+        public static final String COLUMN_DELETED_AT    = "deleted_at";
+    }
+
+    /**
+     * Column schema for the full-text index of transactions.
+     * <p>This is an FTS4 virtual table with one row per transaction, whose {@code docid} is the
+     * record ID of the transaction. It is derived data which is kept up to date by triggers
+     * on the transactions and splits tables.</p>
+     */
+    public static abstract class TransactionSearchEntry {
+        public static final String TABLE_NAME           = "transactions_fts";
+
+        public static final String COLUMN_DOCID         = "docid";
+        /**
+         * Description of the transaction
+         */
+        public static final String COLUMN_DESCRIPTION   = "description";
+        /**
+         * Memos of the splits of the transaction, separated by spaces
+         */
+        public static final String COLUMN_MEMOS         = "memos";
+    }
+
+    /**
+     * Column schema for the table of upcoming occurrences of scheduled actions.
+     * <p>The table holds the due times of the next executions of each enabled scheduled action,
+     * a bounded number of them and up to a bounded time ahead. It is derived data which is refreshed
+     * whenever a scheduled action is saved or executed, and by the daily maintenance of the book.</p>
+     */
+    public static abstract class UpcomingOccurrenceEntry implements BaseColumns {
+        public static final String TABLE_NAME               = "upcoming_occurrences";
+
+        public static final String COLUMN_SCHEDX_ACTION_UID = "scheduled_action_uid";
+        /**
+         * Number of the execution, counting from 1. It is due once the action has been executed one time less
+         */
+        public static final String COLUMN_EXECUTION_NUMBER  = "execution_number";
+        /**
+         * Due time of the execution in milliseconds since Epoch
+         */
+        public static final String COLUMN_TIME              = "time";
+
+        public static final String INDEX_TIME               = "upcoming_occurrence_time_index";
+    }
+
+    /**
+     * Names of the views in the database
+     */
+    public static abstract class ViewEntry {
+        /**
+         * View joining each split with its transaction and account.
+         * Its columns are named {@code <table>_<column>}, e.g. {@code splits_quantity_num}
+         */
+        public static final String TRANS_SPLIT_ACCT = "trans_split_acct";
+
+        /**
+         * View with one row per transaction, holding a representative account, the balance
+         * and the number of currencies and splits of the transaction
+         */
+        public static final String TRANS_EXTRA_INFO = "trans_extra_info";
+    }
+
     public static abstract class AutoRegisterEntry implements CommonColumns {
         public static final String TABLE_NAME             = "autoregisters";
 
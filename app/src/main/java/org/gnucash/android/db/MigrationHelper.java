@@ -73,6 +73,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import static org.gnucash.android.db.DatabaseSchema.AccountBalanceEntry;
 import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
 import static org.gnucash.android.db.DatabaseSchema.BudgetAmountEntry;
 import static org.gnucash.android.db.DatabaseSchema.BudgetEntry;
@@ -83,6 +84,7 @@ import static org.gnucash.android.db.DatabaseSchema.RecurrenceEntry;
 import static org.gnucash.android.db.DatabaseSchema.ScheduledActionEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import static org.gnucash.android.db.DatabaseSchema.ViewEntry;
 
 /**
  * Collection of helper methods which are used during database migrations
@@ -1627,4 +1629,167 @@ public class MigrationHelper {
         rescheduleServiceAlarm();
         return dbVersion;
     }
+
+    /**
+     * Upgrades the database to version 16.
+     * <p>This migration makes the following changes to the database:
+     * <ul>
+     *     <li>Adds a table of account balances which caches the sum of the splits in each account</li>
+     *     <li>Computes the initial balances from the existing splits</li>
+     * </ul>
+     * </p>
+     * @param db SQLite database to be upgraded
+     * @return New database version, 16 if migration succeeds, 15 otherwise
+     */
+    static int upgradeDbToVersion16(SQLiteDatabase db) {
+        Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 16");
+        int dbVersion = 15;
+
+        db.beginTransaction();
+        try {
+            db.execSQL(DatabaseHelper.ACCOUNT_BALANCES_TABLE_CREATE);
+
+            db.execSQL("INSERT INTO " + AccountBalanceEntry.TABLE_NAME + " ( "
+                    + AccountBalanceEntry.COLUMN_ACCOUNT_UID + " , "
+                    + AccountBalanceEntry.COLUMN_CURRENCY + " , "
+                    + AccountBalanceEntry.COLUMN_BALANCE_NUM + " , "
+                    + AccountBalanceEntry.COLUMN_BALANCE_DENOM + " ) "
+                    + " SELECT " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                    + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY + " , "
+                    + " SUM ( CASE WHEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "
+                    + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " ELSE - "
+                    + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " END ) , "
+                    + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM
+                    + " FROM " + SplitEntry.TABLE_NAME
+                    + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                    + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+                    + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+                    + " INNER JOIN " + AccountEntry.TABLE_NAME + " ON "
+                    + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + " = "
+                    + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID
+                    + " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " = 0"
+                    + " GROUP BY " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                    + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM);
+
+            db.setTransactionSuccessful();
+            dbVersion = 16;
+        } finally {
+            db.endTransaction();
+        }
+        return dbVersion;
+    }
+
+    /**
+     * Upgrades the database to version 17.
+     * <p>This migration makes the following changes to the database:
+     * <ul>
+     *     <li>Adds the trans_split_acct and trans_extra_info views to the schema.
+     *     They were previously created as temporary views by every database adapter</li>
+     *     <li>Adds a covering index on the account, transaction, type and quantity of splits</li>
+     *     <li>Adds an index on the transaction of splits</li>
+     *     <li>Adds an index on the template flag and timestamp of transactions</li>
+     * </ul>
+     * </p>
+     * @param db SQLite database to be upgraded
+     * @return New database version, 17 if migration succeeds, 16 otherwise
+     */
+    static int upgradeDbToVersion17(SQLiteDatabase db) {
+        Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 17");
+        int dbVersion = 16;
+
+        db.beginTransaction();
+        try {
+            //temporary views would hide the persistent ones with the same name
+            db.execSQL("DROP VIEW IF EXISTS temp." + ViewEntry.TRANS_EXTRA_INFO);
+            db.execSQL("DROP VIEW IF EXISTS temp." + ViewEntry.TRANS_SPLIT_ACCT);
+
+            db.execSQL(DatabaseHelper.SPLIT_ACCOUNT_UID_INDEX_CREATE);
+            db.execSQL(DatabaseHelper.SPLIT_TRANSACTION_UID_INDEX_CREATE);
+            db.execSQL(DatabaseHelper.TRANSACTION_TEMPLATE_TIMESTAMP_INDEX_CREATE);
+
+            db.execSQL(DatabaseHelper.TRANS_SPLIT_ACCT_VIEW_CREATE);
+            db.execSQL(DatabaseHelper.TRANS_EXTRA_INFO_VIEW_CREATE);
+
+            db.setTransactionSuccessful();
+            dbVersion = 17;
+        } finally {
+            db.endTransaction();
+        }
+        return dbVersion;
+    }
+
+    /**
+     * Upgrades the database to version 18.
+     * <p>This adds the table of deleted records and the triggers which maintain it and the modified_at
+     * columns, which are used for incremental backups. The first backup after the upgrade is always a full
+     * backup, so the modified_at values of existing records do not need to be updated.</p>
+     * @param db SQLite database to be upgraded
+     * @return New database version, 18 if migration succeeds, 17 otherwise
+     */
+    static int upgradeDbToVersion18(SQLiteDatabase db) {
+        Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 18");
+        int dbVersion = 17;
+
+        db.beginTransaction();
+        try {
+            db.execSQL(DatabaseHelper.DELETED_RECORDS_TABLE_CREATE);
+            DatabaseHelper.createBackupTriggers(db);
+
+            db.setTransactionSuccessful();
+            dbVersion = 18;
+        } finally {
+            db.endTransaction();
+        }
+        return dbVersion;
+    }
+
+    /**
+     * Upgrades the database to version 19.
+     * <p>This adds the full-text index of transaction descriptions and split memos,
+     * indexes the existing transactions and creates the triggers which keep the index up to date.</p>
+     * @param db SQLite database to be upgraded
+     * @return New database version, 19 if migration succeeds, 18 otherwise
+     */
+    static int upgradeDbToVersion19(SQLiteDatabase db) {
+        Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 19");
+        int dbVersion = 18;
+
+        db.beginTransaction();
+        try {
+            db.execSQL(DatabaseHelper.TRANSACTIONS_FTS_TABLE_CREATE);
+            DatabaseHelper.populateSearchIndex(db);
+            DatabaseHelper.createSearchIndexTriggers(db);
+
+            db.setTransactionSuccessful();
+            dbVersion = 19;
+        } finally {
+            db.endTransaction();
+        }
+        return dbVersion;
+    }
+
+    /**
+     * Upgrades the database to version 20.
+     * <p>This adds the table of upcoming occurrences of scheduled actions. The table is filled by
+     * the first maintenance of the book, which the scheduled actions service runs before looking
+     * for due actions.</p>
+     * @param db SQLite database to be upgraded
+     * @return New database version, 20 if migration succeeds, 19 otherwise
+     */
+    static int upgradeDbToVersion20(SQLiteDatabase db) {
+        Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 20");
+        int dbVersion = 19;
+
+        db.beginTransaction();
+        try {
+            db.execSQL(DatabaseHelper.UPCOMING_OCCURRENCES_TABLE_CREATE);
+            db.execSQL(DatabaseHelper.UPCOMING_OCCURRENCE_TIME_INDEX_CREATE);
+
+            db.setTransactionSuccessful();
+            dbVersion = 20;
+        } finally {
+            db.endTransaction();
+        }
+        return dbVersion;
+    }
 }
@@ -0,0 +1,542 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records how long the database queries of the app take.
+ * <p>Queries run through {@link SQLiteDatabase#query} and {@link SQLiteDatabase#rawQuery} are measured
+ * by the cursors of {@link #getCursorFactory()}, which the book databases are opened with. The time of a
+ * query is the time taken to fill the first window of its cursor. Statements, deletes, updates and {@code execSQL}
+ * calls are measured by wrapping them with {@link #startTiming()} and one of the {@code record} methods,
+ * which are given the SQL that was run.</p>
+ * <p>Measurements are grouped by call site, which is the method of the app which issued the query,
+ * with a histogram of the durations. Queries slower than the slow query threshold are also kept
+ * individually together with their query plan. The SQL of cursor queries is not accessible,
+ * so slow cursor queries are kept with the description of their cursor and without a query plan.</p>
+ * <p>The profiler is disabled by default. While it is disabled, queries are not measured at all.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class QueryProfiler {
+
+    private static final String LOG_TAG = "QueryProfiler";
+
+    /**
+     * Default slow query threshold in milliseconds
+     */
+    public static final long DEFAULT_SLOW_QUERY_THRESHOLD = 50;
+
+    /**
+     * Maximum number of slow queries which are kept. Older ones are discarded first
+     */
+    static final int MAX_SLOW_QUERIES = 100;
+
+    /**
+     * Upper bounds in milliseconds of the buckets of the duration histograms.
+     * The last bucket holds all durations from the last bound upwards
+     */
+    private static final long[] BUCKET_BOUNDS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024};
+
+    /**
+     * Start time returned by {@link #startTiming()} while the profiler is disabled
+     */
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private static final String EXPLAIN_QUERY_PLAN = "EXPLAIN QUERY PLAN ";
+
+    private static final String APP_PACKAGE = "org.gnucash.android.";
+
+    private static volatile boolean sEnabled = false;
+
+    private static volatile long sSlowQueryThreshold = DEFAULT_SLOW_QUERY_THRESHOLD;
+
+    /**
+     * Statistics by call site. Guarded by itself, as is {@link #sSlowQueries}
+     */
+    private static final Map<String, CallSiteStatistics> sStatistics = new HashMap<>();
+
+    private static final LinkedList<SlowQuery> sSlowQueries = new LinkedList<>();
+
+    private static final SQLiteDatabase.CursorFactory sPlainCursorFactory = new SQLiteDatabase.CursorFactory() {
+        @Override
+        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+            return new SQLiteCursor(masterQuery, editTable, query);
+        }
+    };
+
+    private static final SQLiteDatabase.CursorFactory sCursorFactory = new SQLiteDatabase.CursorFactory() {
+        @Override
+        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+            if (!sEnabled)
+                return sPlainCursorFactory.newCursor(db, masterQuery, editTable, query);
+            return new ProfilingCursor(masterQuery, editTable, query, findCallSite());
+        }
+    };
+
+    private QueryProfiler() {
+        //nothing to see here, move along
+    }
+
+    /**
+     * Returns the cursor factory with which databases have to be opened for their queries to be measured
+     */
+    public static SQLiteDatabase.CursorFactory getCursorFactory() {
+        return sCursorFactory;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Starts or stops measuring queries. Measurements made so far are kept
+     * @param enabled {@code true} to start measuring queries
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Returns the duration in milliseconds from which queries are logged as slow queries
+     */
+    public static long getSlowQueryThreshold() {
+        return sSlowQueryThreshold;
+    }
+
+    public static void setSlowQueryThreshold(long thresholdMillis) {
+        sSlowQueryThreshold = thresholdMillis;
+    }
+
+    /**
+     * Returns the start time to pass to {@link #record(SQLiteDatabase, String, long, long)} after running a statement.
+     * While the profiler is disabled, the statement will not be measured
+     */
+    public static long startTiming() {
+        return sEnabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * Records the duration of a statement issued by the calling method
+     * @param db Database on which the statement was run. It is used to get the query plan of slow statements
+     * @param sql SQL of the statement
+     * @param startTime Time returned by {@link #startTiming()} before the statement was run
+     * @param rowCount Number of rows returned or affected by the statement, or -1 if unknown
+     */
+    public static void record(@NonNull SQLiteDatabase db, @NonNull String sql, long startTime, long rowCount) {
+        if (startTime == NOT_TIMED)
+            return;
+        record(db, sql, findCallSite(), System.nanoTime() - startTime, rowCount);
+    }
+
+    /**
+     * Records the duration of a delete issued by the calling method
+     * @param db Database on which the rows were deleted
+     * @param table Table from which the rows were deleted
+     * @param whereClause Where clause of the delete, or {@code null} if all rows were deleted
+     * @param startTime Time returned by {@link #startTiming()} before the rows were deleted
+     * @param rowCount Number of rows deleted
+     * @see SQLiteDatabase#delete(String, String, String[])
+     */
+    public static void recordDelete(@NonNull SQLiteDatabase db, @NonNull String table, String whereClause,
+                                    long startTime, long rowCount) {
+        if (startTime == NOT_TIMED)
+            return;
+        long durationNanos = System.nanoTime() - startTime;
+        record(db, "DELETE FROM " + table + where(whereClause), findCallSite(), durationNanos, rowCount);
+    }
+
+    /**
+     * Records the duration of an update issued by the calling method
+     * @param db Database on which the rows were updated
+     * @param table Table whose rows were updated
+     * @param values Values which were set
+     * @param whereClause Where clause of the update, or {@code null} if all rows were updated
+     * @param startTime Time returned by {@link #startTiming()} before the rows were updated
+     * @param rowCount Number of rows updated
+     * @see SQLiteDatabase#update(String, ContentValues, String, String[])
+     */
+    public static void recordUpdate(@NonNull SQLiteDatabase db, @NonNull String table, @NonNull ContentValues values,
+                                    String whereClause, long startTime, long rowCount) {
+        if (startTime == NOT_TIMED)
+            return;
+        long durationNanos = System.nanoTime() - startTime;
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        boolean first = true;
+        for (String column : values.keySet()) {
+            if (!first)
+                sql.append(", ");
+            sql.append(column).append(" = ?");
+            first = false;
+        }
+        record(db, sql.append(where(whereClause)).toString(), findCallSite(), durationNanos, rowCount);
+    }
+
+    private static String where(String whereClause) {
+        return whereClause == null || whereClause.isEmpty() ? "" : " WHERE " + whereClause;
+    }
+
+    private static void record(SQLiteDatabase db, String sql, String callSite, long durationNanos, long rowCount) {
+        if (addStatistics(callSite, durationNanos, rowCount))
+            addSlowQuery(callSite, sql, durationNanos / 1000000, rowCount, explain(db, sql));
+    }
+
+    /**
+     * Records the duration of a query run through a cursor.
+     * The SQL of such queries is not accessible, so they are described by their cursor and have no query plan
+     */
+    private static void recordQuery(String description, String callSite, long durationNanos, long rowCount) {
+        if (addStatistics(callSite, durationNanos, rowCount))
+            addSlowQuery(callSite, description, durationNanos / 1000000, rowCount, "");
+    }
+
+    /**
+     * Adds a duration to the statistics of a call site
+     * @return {@code true} if the query is a slow query
+     */
+    private static boolean addStatistics(String callSite, long durationNanos, long rowCount) {
+        synchronized (sStatistics) {
+            CallSiteStatistics statistics = sStatistics.get(callSite);
+            if (statistics == null) {
+                statistics = new CallSiteStatistics(callSite);
+                sStatistics.put(callSite, statistics);
+            }
+            statistics.add(durationNanos, rowCount);
+        }
+        return durationNanos / 1000000 >= sSlowQueryThreshold;
+    }
+
+    private static void addSlowQuery(String callSite, String sql, long durationMillis, long rowCount, String queryPlan) {
+        Log.w(LOG_TAG, String.format(Locale.US, "Slow query in %s: %d ms, %d rows: %s",
+                callSite, durationMillis, rowCount, sql));
+        SlowQuery slowQuery = new SlowQuery(callSite, sql, durationMillis, rowCount, queryPlan);
+        synchronized (sStatistics) {
+            sSlowQueries.addLast(slowQuery);
+            if (sSlowQueries.size() > MAX_SLOW_QUERIES)
+                sSlowQueries.removeFirst();
+        }
+    }
+
+    /**
+     * Returns the query plan of an SQL statement, with one line per step.
+     * Parameters of the statement are left unbound
+     */
+    private static String explain(SQLiteDatabase db, String sql) {
+        if (!db.isOpen())
+            return "";
+        StringBuilder plan = new StringBuilder();
+        try {
+            //the plan itself is not measured
+            Cursor cursor = db.rawQueryWithFactory(sPlainCursorFactory, EXPLAIN_QUERY_PLAN + sql, null, null);
+            try {
+                int detailColumn = cursor.getColumnIndex("detail");
+                if (detailColumn < 0)
+                    detailColumn = cursor.getColumnCount() - 1;
+                while (cursor.moveToNext()) {
+                    if (plan.length() > 0)
+                        plan.append('\n');
+                    plan.append(cursor.getString(detailColumn));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLException e) {
+            Log.w(LOG_TAG, "Could not explain query: " + sql, e);
+            plan.append("No query plan: ").append(e.getMessage());
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Returns the method of the app which is running a query.
+     * If it is a method of {@link org.gnucash.android.db.adapter.DatabaseAdapter}, its caller is included too,
+     * since the same generic methods are used by all adapters
+     */
+    private static String findCallSite() {
+        String callSite = null;
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            String className = element.getClassName();
+            if (!className.startsWith(APP_PACKAGE) || className.startsWith(QueryProfiler.class.getName()))
+                continue;
+            String method = className.substring(className.lastIndexOf('.') + 1) + "." + element.getMethodName();
+            if (callSite != null)
+                return callSite + " < " + method;
+            callSite = method;
+            if (!className.endsWith(".DatabaseAdapter"))
+                return callSite;
+        }
+        return callSite == null ? "unknown" : callSite;
+    }
+
+    /**
+     * Returns the statistics of all call sites, starting with the call site with the longest total time
+     */
+    public static List<CallSiteStatistics> getStatistics() {
+        List<CallSiteStatistics> statistics = new ArrayList<>();
+        synchronized (sStatistics) {
+            for (CallSiteStatistics callSiteStatistics : sStatistics.values()) {
+                statistics.add(callSiteStatistics.copy());
+            }
+        }
+        Collections.sort(statistics, new Comparator<CallSiteStatistics>() {
+            @Override
+            public int compare(CallSiteStatistics lhs, CallSiteStatistics rhs) {
+                return Long.compare(rhs.mTotalNanos, lhs.mTotalNanos);
+            }
+        });
+        return statistics;
+    }
+
+    /**
+     * Returns the most recent slow queries, oldest first
+     */
+    public static List<SlowQuery> getSlowQueries() {
+        synchronized (sStatistics) {
+            return new ArrayList<>(sSlowQueries);
+        }
+    }
+
+    /**
+     * Discards all measurements
+     */
+    public static void reset() {
+        synchronized (sStatistics) {
+            sStatistics.clear();
+            sSlowQueries.clear();
+        }
+    }
+
+    /**
+     * Writes the statistics of all call sites and the slow queries as text
+     * @param writer Writer to write to. It is not closed
+     * @throws IOException if writing fails
+     */
+    public static void dump(@NonNull Writer writer) throws IOException {
+        writer.write(String.format(Locale.US, "Query profile at %s, slow query threshold %d ms\n\n",
+                new Timestamp(System.currentTimeMillis()), sSlowQueryThreshold));
+
+        writer.write("Call sites (count, total ms, mean ms, max ms, rows, histogram)\n");
+        for (CallSiteStatistics statistics : getStatistics()) {
+            writer.write(String.format(Locale.US, "%s\n    %d, %.1f, %.2f, %.1f, %d, %s\n",
+                    statistics.getCallSite(), statistics.getCount(), statistics.getTotalMillis(),
+                    statistics.getTotalMillis() / statistics.getCount(), statistics.getMaxMillis(),
+                    statistics.getRowCount(), statistics.formatHistogram()));
+        }
+
+        writer.write("\nSlow queries\n");
+        for (SlowQuery slowQuery : getSlowQueries()) {
+            writer.write(String.format(Locale.US, "%s %s: %d ms, %d rows\n    %s\n",
+                    new Timestamp(slowQuery.getTime()), slowQuery.getCallSite(), slowQuery.getDurationMillis(),
+                    slowQuery.getRowCount(), slowQuery.getSql()));
+            if (slowQuery.getQueryPlan().isEmpty())
+                continue;
+            for (String step : slowQuery.getQueryPlan().split("\n")) {
+                writer.write("        " + step + "\n");
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Durations of the queries of one call site
+     */
+    public static class CallSiteStatistics {
+        private final String mCallSite;
+        private final long[] mHistogram;
+        private long mCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+        private long mRowCount;
+
+        CallSiteStatistics(String callSite) {
+            mCallSite = callSite;
+            mHistogram = new long[BUCKET_BOUNDS.length + 1];
+        }
+
+        private CallSiteStatistics(CallSiteStatistics statistics) {
+            mCallSite = statistics.mCallSite;
+            mHistogram = statistics.mHistogram.clone();
+            mCount = statistics.mCount;
+            mTotalNanos = statistics.mTotalNanos;
+            mMaxNanos = statistics.mMaxNanos;
+            mRowCount = statistics.mRowCount;
+        }
+
+        void add(long durationNanos, long rowCount) {
+            mCount++;
+            mTotalNanos += durationNanos;
+            mMaxNanos = Math.max(mMaxNanos, durationNanos);
+            if (rowCount > 0)
+                mRowCount += rowCount;
+
+            long durationMillis = durationNanos / 1000000;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && durationMillis >= BUCKET_BOUNDS[bucket])
+                bucket++;
+            mHistogram[bucket]++;
+        }
+
+        CallSiteStatistics copy() {
+            return new CallSiteStatistics(this);
+        }
+
+        /**
+         * Returns the method which issued the queries, as {@code Class.method}
+         */
+        public String getCallSite() {
+            return mCallSite;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public double getTotalMillis() {
+            return mTotalNanos / 1e6;
+        }
+
+        public double getMaxMillis() {
+            return mMaxNanos / 1e6;
+        }
+
+        /**
+         * Returns the total number of rows returned or affected by the queries
+         */
+        public long getRowCount() {
+            return mRowCount;
+        }
+
+        /**
+         * Returns the number of queries in each bucket of the histogram.
+         * Bucket {@code i} holds the queries which took less than 2<sup>i</sup> milliseconds,
+         * and the last bucket holds all queries from 1024 milliseconds
+         */
+        public long[] getHistogram() {
+            return mHistogram.clone();
+        }
+
+        String formatHistogram() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < mHistogram.length; i++) {
+                if (mHistogram[i] == 0)
+                    continue;
+                if (builder.length() > 0)
+                    builder.append(' ');
+                if (i < BUCKET_BOUNDS.length)
+                    builder.append('<').append(BUCKET_BOUNDS[i]);
+                else
+                    builder.append(">=").append(BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1]);
+                builder.append(':').append(mHistogram[i]);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Query which took longer than the slow query threshold
+     */
+    public static class SlowQuery {
+        private final long mTime = System.currentTimeMillis();
+        private final String mCallSite;
+        private final String mSql;
+        private final long mDurationMillis;
+        private final long mRowCount;
+        private final String mQueryPlan;
+
+        SlowQuery(String callSite, String sql, long durationMillis, long rowCount, String queryPlan) {
+            mCallSite = callSite;
+            mSql = sql;
+            mDurationMillis = durationMillis;
+            mRowCount = rowCount;
+            mQueryPlan = queryPlan;
+        }
+
+        public long getTime() {
+            return mTime;
+        }
+
+        public String getCallSite() {
+            return mCallSite;
+        }
+
+        public String getSql() {
+            return mSql;
+        }
+
+        public long getDurationMillis() {
+            return mDurationMillis;
+        }
+
+        public long getRowCount() {
+            return mRowCount;
+        }
+
+        /**
+         * Returns the output of {@code EXPLAIN QUERY PLAN} for the query, one step per line
+         */
+        public String getQueryPlan() {
+            return mQueryPlan;
+        }
+    }
+
+    /**
+     * Cursor which measures the time taken to run its query.
+     * The query is run when the cursor is first moved or its row count is requested
+     */
+    private static class ProfilingCursor extends SQLiteCursor {
+        private final String mCallSite;
+        private final String mDescription;
+        private boolean mMeasured = false;
+
+        ProfilingCursor(SQLiteCursorDriver driver, String editTable, SQLiteQuery query, String callSite) {
+            super(driver, editTable, query);
+            mCallSite = callSite;
+            mDescription = query.toString();
+        }
+
+        @Override
+        public int getCount() {
+            if (mMeasured)
+                return super.getCount();
+            mMeasured = true;
+            long startTime = System.nanoTime();
+            int count = super.getCount();
+            recordQuery(mDescription, mCallSite, System.nanoTime() - startTime, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db.adapter;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import org.gnucash.android.model.AccountType;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
+
+/**
+ * In-memory representation of the account hierarchy of a book.
+ * <p>The tree is built from a single scan of the accounts table and is cached per database
+ * by {@link AccountsDbAdapter#getAccountTree()}. The cache is discarded whenever accounts are
+ * added, modified, moved or deleted, so an instance should not be held on to for long.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class AccountTree {
+
+    /**
+     * Columns of the accounts table which are needed to build the tree
+     */
+    static final String[] PROJECTION = new String[]{
+            AccountEntry.COLUMN_UID,
+            AccountEntry.COLUMN_PARENT_ACCOUNT_UID,
+            AccountEntry.COLUMN_CURRENCY,
+            AccountEntry.COLUMN_TYPE
+    };
+
+    private final Map<String, String> mParentUIDs = new HashMap<>();
+    private final Map<String, List<String>> mChildrenUIDs = new HashMap<>();
+    private final Map<String, String> mCurrencyCodes = new HashMap<>();
+    private final Map<String, AccountType> mAccountTypes = new HashMap<>();
+
+    /**
+     * All accounts of the tree, with every account appearing after its parent
+     */
+    private final List<String> mTopDownOrder;
+
+    /**
+     * Builds the tree from a cursor over the accounts table.
+     * <p>The cursor should contain the columns in {@link #PROJECTION}. It is not closed by the constructor</p>
+     * @param cursor Cursor to account records
+     */
+    AccountTree(@NonNull Cursor cursor){
+        int uidIndex        = cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_UID);
+        int parentUIDIndex  = cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_PARENT_ACCOUNT_UID);
+        int currencyIndex   = cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_CURRENCY);
+        int typeIndex       = cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_TYPE);
+        while (cursor.moveToNext()) {
+            String accountUID = cursor.getString(uidIndex);
+            mParentUIDs.put(accountUID, cursor.getString(parentUIDIndex));
+            mCurrencyCodes.put(accountUID, cursor.getString(currencyIndex));
+            mAccountTypes.put(accountUID, AccountType.valueOf(cursor.getString(typeIndex)));
+        }
+
+        List<String> topLevelAccountUIDs = new ArrayList<>();
+        for (Map.Entry<String, String> entry : mParentUIDs.entrySet()) {
+            String parentUID = entry.getValue();
+            if (parentUID == null || !mParentUIDs.containsKey(parentUID)) {
+                topLevelAccountUIDs.add(entry.getKey());
+                continue;
+            }
+            List<String> children = mChildrenUIDs.get(parentUID);
+            if (children == null) {
+                children = new ArrayList<>();
+                mChildrenUIDs.put(parentUID, children);
+            }
+            children.add(entry.getKey());
+        }
+
+        mTopDownOrder = new ArrayList<>(mParentUIDs.size());
+        mTopDownOrder.addAll(topLevelAccountUIDs);
+        for (int i = 0; i < mTopDownOrder.size(); i++) {
+            mTopDownOrder.addAll(getChildrenUIDs(mTopDownOrder.get(i)));
+        }
+    }
+
+    /**
+     * Returns {@code true} if the account is part of this tree
+     * @param accountUID GUID of the account
+     * @return {@code true} if the account exists, {@code false} otherwise
+     */
+    public boolean contains(String accountUID){
+        return mParentUIDs.containsKey(accountUID);
+    }
+
+    /**
+     * Returns the GUID of the parent of an account
+     * @param accountUID GUID of the account
+     * @return GUID of the parent account, or {@code null} if the account has no parent
+     */
+    public String getParentUID(String accountUID){
+        return mParentUIDs.get(accountUID);
+    }
+
+    /**
+     * Returns the GUIDs of the direct children of an account
+     * @param accountUID GUID of the account
+     * @return List of child account GUIDs, which is empty if the account has no children
+     */
+    public List<String> getChildrenUIDs(String accountUID){
+        List<String> children = mChildrenUIDs.get(accountUID);
+        return children == null ? Collections.<String>emptyList() : Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Returns the GUIDs of all the descendants of an account.
+     * <p>The descendants are returned level by level, so an account always comes after its parent</p>
+     * @param accountUID GUID of the account
+     * @return New list of descendant account GUIDs, not including {@code accountUID}
+     */
+    public List<String> getDescendantAccountUIDs(String accountUID){
+        List<String> descendants = new ArrayList<>(getChildrenUIDs(accountUID));
+        for (int i = 0; i < descendants.size(); i++) {
+            descendants.addAll(getChildrenUIDs(descendants.get(i)));
+        }
+        return descendants;
+    }
+
+    /**
+     * Returns the currency code of an account
+     * @param accountUID GUID of the account
+     * @return ISO 4217 currency code, or {@code null} if the account is not in the tree
+     */
+    public String getCurrencyCode(String accountUID){
+        return mCurrencyCodes.get(accountUID);
+    }
+
+    /**
+     * Returns the type of an account
+     * @param accountUID GUID of the account
+     * @return Type of the account, or {@code null} if the account is not in the tree
+     */
+    public AccountType getAccountType(String accountUID){
+        return mAccountTypes.get(accountUID);
+    }
+
+    /**
+     * Adds up the amounts of each account and its descendants in one bottom-up pass over the tree.
+     * <p>Since the accounts in a subtree can have different currencies, the totals are kept per
+     * currency. Converting them to a single currency is left to the caller.</p>
+     * @param accountAmounts Map of account GUIDs to the amount of the account itself, in the account currency
+     * @return Map of account GUIDs to the totals of their subtrees, by currency code.
+     * Every account of the tree has an entry.
+     */
+    public Map<String, Map<String, BigDecimal>> rollUp(@NonNull Map<String, BigDecimal> accountAmounts){
+        Map<String, Map<String, BigDecimal>> subtreeTotals = new HashMap<>(mTopDownOrder.size());
+        for (int i = mTopDownOrder.size() - 1; i >= 0; i--) {
+            String accountUID = mTopDownOrder.get(i);
+            Map<String, BigDecimal> totals = new HashMap<>();
+            BigDecimal amount = accountAmounts.get(accountUID);
+            if (amount != null) {
+                totals.put(mCurrencyCodes.get(accountUID), amount);
+            }
+            //children come after their parent in top-down order, so they are complete by now
+            for (String childUID : getChildrenUIDs(accountUID)) {
+                for (Map.Entry<String, BigDecimal> entry : subtreeTotals.get(childUID).entrySet()) {
+                    BigDecimal total = totals.get(entry.getKey());
+                    totals.put(entry.getKey(), total == null ? entry.getValue() : total.add(entry.getValue()));
+                }
+            }
+            subtreeTotals.put(accountUID, totals);
+        }
+        return subtreeTotals;
+    }
+}
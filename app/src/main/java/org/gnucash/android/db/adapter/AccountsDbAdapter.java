@@ -43,11 +43,17 @@ import org.gnucash.android.util.TimestampHelper;
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import static org.gnucash.android.db.DatabaseSchema.BudgetAmountEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
 
@@ -71,6 +77,31 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
      */
     public static final String ROOT_ACCOUNT_FULL_NAME = " ";
 
+    /**
+     * Column of the account list cursors with the number of sub-accounts of each account
+     * @see #fetchAccountListItems(String, String[], String)
+     */
+    public static final String COLUMN_SUB_ACCOUNT_COUNT = "sub_account_count";
+
+    /**
+     * Column of the account list cursors with the number of budgets which include each account
+     * @see #fetchAccountListItems(String, String[], String)
+     */
+    public static final String COLUMN_BUDGET_COUNT = "budget_count";
+
+    /**
+     * Columns of the account list cursors: all the account columns, and the sub-account and budget counts
+     */
+    private static final String[] ACCOUNT_LIST_PROJECTION = new String[]{
+            AccountEntry.TABLE_NAME + ".*",
+            "(SELECT COUNT(*) FROM " + AccountEntry.TABLE_NAME + " AS sub_accounts WHERE sub_accounts."
+                    + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " = " + AccountEntry.TABLE_NAME + "."
+                    + AccountEntry.COLUMN_UID + ") AS " + COLUMN_SUB_ACCOUNT_COUNT,
+            "(SELECT COUNT(DISTINCT " + BudgetAmountEntry.COLUMN_BUDGET_UID + ") FROM " + BudgetAmountEntry.TABLE_NAME
+                    + " WHERE " + BudgetAmountEntry.TABLE_NAME + "." + BudgetAmountEntry.COLUMN_ACCOUNT_UID + " = "
+                    + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + ") AS " + COLUMN_BUDGET_COUNT
+    };
+
 	/**
 	 * Transactions database adapter for manipulating transactions associated with accounts
 	 */
@@ -81,11 +112,26 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
      */
     private final CommoditiesDbAdapter mCommoditiesDbAdapter;
 
+    /**
+     * Cache of the account trees, keyed by the path of the database of the book.
+     * <p>Several adapters can be open on the same database, so the cache is shared between them</p>
+     */
+    private static final Map<String, AccountTree> sAccountTrees = new HashMap<>();
+
     /**
      * Overloaded constructor. Creates an adapter for an already open database
      * @param db SQliteDatabase instance
      */
     public AccountsDbAdapter(SQLiteDatabase db, TransactionsDbAdapter transactionsDbAdapter) {
+        this(db, transactionsDbAdapter, new CommoditiesDbAdapter(db));
+    }
+
+    /**
+     * Creates an adapter which uses existing adapters for transactions and commodities
+     * @param db SQliteDatabase instance
+     */
+    AccountsDbAdapter(SQLiteDatabase db, TransactionsDbAdapter transactionsDbAdapter,
+                      CommoditiesDbAdapter commoditiesDbAdapter) {
         super(db, AccountEntry.TABLE_NAME, new String[]{
                 AccountEntry.COLUMN_NAME         ,
                 AccountEntry.COLUMN_DESCRIPTION  ,
@@ -102,7 +148,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
                 AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID
         });
         mTransactionsAdapter = transactionsDbAdapter;
-        mCommoditiesDbAdapter = new CommoditiesDbAdapter(db);
+        mCommoditiesDbAdapter = commoditiesDbAdapter;
     }
 
     /**
@@ -152,6 +198,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         //in-case the account already existed, we want to update the templates based on it as well
         List<Transaction> templateTransactions = mTransactionsAdapter.getScheduledTransactionsForAccount(account.getUID());
         super.addRecord(account, updateMethod);
+        invalidateAccountTree();
         String accountUID = account.getUID();
 		//now add transactions if there are any
 		if (account.getAccountType() != AccountType.ROOT){
@@ -165,6 +212,8 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
                 mTransactionsAdapter.addRecord(transaction, UpdateMethod.update);
             }
         }
+        //the currency of the account may have changed
+        mTransactionsAdapter.getSplitDbAdapter().updateAccountBalances(Collections.singletonList(accountUID));
 	}
 
     /**
@@ -190,44 +239,48 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
             transactionList.addAll(mTransactionsAdapter.getScheduledTransactionsForAccount(account.getUID()));
         }
         long nRow = super.bulkAddRecords(accountList, updateMethod);
+        invalidateAccountTree();
 
         if (nRow > 0 && !transactionList.isEmpty()){
             mTransactionsAdapter.bulkAddRecords(transactionList, updateMethod);
         }
+
+        List<String> accountUIDs = new ArrayList<>(accountList.size());
+        for (Account account : accountList) {
+            accountUIDs.add(account.getUID());
+        }
+        mTransactionsAdapter.getSplitDbAdapter().updateAccountBalances(accountUIDs);
         return nRow;
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final Account account) {
-        stmt.clearBindings();
-        stmt.bindString(1, account.getName());
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final Account account) {
+        stmt.bindString(offset + 1, account.getName());
         if (account.getDescription() != null)
-            stmt.bindString(2, account.getDescription());
-        stmt.bindString(3, account.getAccountType().name());
-        stmt.bindString(4, account.getCommodity().getCurrencyCode());
+            stmt.bindString(offset + 2, account.getDescription());
+        stmt.bindString(offset + 3, account.getAccountType().name());
+        stmt.bindString(offset + 4, account.getCommodity().getCurrencyCode());
         if (account.getColor() != Account.DEFAULT_COLOR) {
-            stmt.bindString(5, convertToRGBHexString(account.getColor()));
+            stmt.bindString(offset + 5, convertToRGBHexString(account.getColor()));
         }
-        stmt.bindLong(6, account.isFavorite() ? 1 : 0);
-        stmt.bindString(7, account.getFullName());
-        stmt.bindLong(8, account.isPlaceholderAccount() ? 1 : 0);
-        stmt.bindString(9, TimestampHelper.getUtcStringFromTimestamp(account.getCreatedTimestamp()));
-        stmt.bindLong(10, account.isHidden() ? 1 : 0);
-        stmt.bindString(11, account.getCommodity().getUID());
+        stmt.bindLong(offset + 6, account.isFavorite() ? 1 : 0);
+        stmt.bindString(offset + 7, account.getFullName());
+        stmt.bindLong(offset + 8, account.isPlaceholderAccount() ? 1 : 0);
+        stmt.bindString(offset + 9, TimestampHelper.getUtcStringFromTimestamp(account.getCreatedTimestamp()));
+        stmt.bindLong(offset + 10, account.isHidden() ? 1 : 0);
+        stmt.bindString(offset + 11, account.getCommodity().getUID());
 
         String parentAccountUID = account.getParentUID();
         if (parentAccountUID == null && account.getAccountType() != AccountType.ROOT) {
             parentAccountUID = getOrCreateGnuCashRootAccountUID();
         }
         if (parentAccountUID != null) {
-            stmt.bindString(12, parentAccountUID);
+            stmt.bindString(offset + 12, parentAccountUID);
         }
         if (account.getDefaultTransferAccountUID() != null) {
-            stmt.bindString(13, account.getDefaultTransferAccountUID());
+            stmt.bindString(offset + 13, account.getDefaultTransferAccountUID());
         }
-        stmt.bindString(14, account.getUID());
-
-        return stmt;
+        stmt.bindString(offset + 14, account.getUID());
     }
 
     private String convertToRGBHexString(int color) {
@@ -242,7 +295,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
     public int markAsExported(String accountUID){
         ContentValues contentValues = new ContentValues();
         contentValues.put(TransactionEntry.COLUMN_EXPORTED, 1);
-        return mDb.update(
+        return update(
                 TransactionEntry.TABLE_NAME,
                 contentValues,
                 TransactionEntry.COLUMN_UID + " IN ( " +
@@ -274,7 +327,9 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         } else {
             contentValues.put(columnKey, newValue);
         }
-        return mDb.update(AccountEntry.TABLE_NAME, contentValues, null, null);
+        int count = update(AccountEntry.TABLE_NAME, contentValues, null, null);
+        invalidateAccountTree();
+        return count;
     }
 
     /**
@@ -285,7 +340,16 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
      * @return Number of records affected
      */
     public int updateAccount(long accountId, String columnKey, String newValue){
-        return updateRecord(AccountEntry.TABLE_NAME, accountId, columnKey, newValue);
+        int count = updateRecord(AccountEntry.TABLE_NAME, accountId, columnKey, newValue);
+        invalidateAccountTree();
+        return count;
+    }
+
+    @Override
+    public int updateRecords(String where, String[] whereArgs, @NonNull String columnKey, String newValue) {
+        int count = super.updateRecords(where, whereArgs, columnKey, newValue);
+        invalidateAccountTree();
+        return count;
     }
 
     /**
@@ -326,7 +390,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
                     contentValues.clear();
                     contentValues.put(AccountEntry.COLUMN_PARENT_ACCOUNT_UID, newParentAccountUID);
                     contentValues.put(AccountEntry.COLUMN_FULL_NAME, acct.getFullName());
-                    mDb.update(
+                    update(
                             AccountEntry.TABLE_NAME, contentValues,
                             AccountEntry.COLUMN_UID + " = ?",
                             new String[]{acct.getUID()}
@@ -340,13 +404,14 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
                     // update DB
                     contentValues.clear();
                     contentValues.put(AccountEntry.COLUMN_FULL_NAME, acct.getFullName());
-                    mDb.update(
+                    update(
                             AccountEntry.TABLE_NAME, contentValues,
                             AccountEntry.COLUMN_UID + " = ?",
                             new String[]{acct.getUID()}
                     );
                 }
             }
+            invalidateAccountTree();
         }
     }
 
@@ -384,18 +449,20 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
             String accountUIDList = "'" + TextUtils.join("','", descendantAccountUIDs) + "'";
 
             // delete accounts
-            long deletedCount = mDb.delete(
+            long deletedCount = delete(
                     AccountEntry.TABLE_NAME,
                     AccountEntry.COLUMN_UID + " IN (" + accountUIDList + ")",
                     null
             );
 
+            invalidateAccountTree();
+
             //if we delete some accounts, reset the default transfer account to NULL
             //there is also a database trigger from db version > 12
             if (deletedCount > 0){
                 ContentValues contentValues = new ContentValues();
                 contentValues.putNull(AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID);
-                mDb.update(mTableName, contentValues,
+                update(mTableName, contentValues,
                         AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID + " IN (" + accountUIDList + ")",
                         null);
             }
@@ -404,7 +471,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
             return true;
         }
         finally {
-            mDb.endTransaction();
+            endTransaction();
         }
     }
 
@@ -552,7 +619,43 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
 	 */
     public List<Account> getExportableAccounts(Timestamp lastExportTimeStamp){
         LinkedList<Account> accountsList = new LinkedList<>();
-        Cursor cursor = mDb.query(
+        Cursor cursor = fetchExportableAccounts(lastExportTimeStamp);
+        try {
+            while (cursor.moveToNext()) {
+                accountsList.add(buildModelInstance(cursor));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return accountsList;
+	}
+
+    /**
+     * Returns a list of accounts which have transactions that have not been exported yet.
+     * <p>Unlike {@link #getExportableAccounts(Timestamp)} the transactions of the accounts are not loaded</p>
+     * @param lastExportTimeStamp Timestamp after which to any transactions created/modified should be exported
+     * @return List of {@link Account}s with unexported transactions
+     */
+    public List<Account> getSimpleExportableAccounts(Timestamp lastExportTimeStamp){
+        LinkedList<Account> accountsList = new LinkedList<>();
+        Cursor cursor = fetchExportableAccounts(lastExportTimeStamp);
+        try {
+            while (cursor.moveToNext()) {
+                accountsList.add(buildSimpleAccountInstance(cursor));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return accountsList;
+    }
+
+    /**
+     * Returns a cursor to the accounts which have transactions created or modified after {@code lastExportTimeStamp}
+     */
+    private Cursor fetchExportableAccounts(Timestamp lastExportTimeStamp){
+        return mDb.query(
                 TransactionEntry.TABLE_NAME + " , " + SplitEntry.TABLE_NAME +
                         " ON " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = " +
                         SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " , " +
@@ -566,16 +669,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
                 null,
                 null
         );
-        try {
-            while (cursor.moveToNext()) {
-                accountsList.add(buildModelInstance(cursor));
-            }
-        }
-        finally {
-            cursor.close();
-        }
-        return accountsList;
-	}
+    }
 
     /**
      * Retrieves the unique ID of the imbalance account for a particular currency (creates the imbalance account
@@ -765,6 +859,25 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
                 AccountEntry.COLUMN_FAVORITE + " DESC, " + AccountEntry.COLUMN_FULL_NAME + " ASC");
     }
 
+    /**
+     * Returns a Cursor set of accounts which fulfill <code>where</code>, for display in the accounts list.
+     * <p>Besides the account columns, the cursor has the columns {@link #COLUMN_SUB_ACCOUNT_COUNT}
+     * and {@link #COLUMN_BUDGET_COUNT}, so that the list needs no further queries per account.</p>
+     * @param where SQL WHERE statement without the 'WHERE' itself
+     * @param whereArgs args to where clause
+     * @param orderBy orderBy clause
+     * @return Cursor set of accounts which fulfill <code>where</code>
+     */
+    public Cursor fetchAccountListItems(@Nullable String where, @Nullable String[] whereArgs, @Nullable String orderBy){
+        if (orderBy == null){
+            orderBy = AccountEntry.COLUMN_NAME + " ASC";
+        }
+        Log.v(LOG_TAG, "Fetching account list items where " + where + " order by " + orderBy);
+        return mDb.query(AccountEntry.TABLE_NAME,
+                ACCOUNT_LIST_PROJECTION, where, whereArgs, null, null,
+                orderBy);
+    }
+
     /**
      * Returns the balance of an account while taking sub-accounts into consideration
      * @return Account Balance of an account including sub-accounts
@@ -870,6 +983,101 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         return balance.add(splitSum);
     }
 
+    /**
+     * Returns the balances of all accounts within the specified time range, including sub-accounts.
+     * <p>The balances are computed from one query of the splits and a single bottom-up pass over
+     * the {@link AccountTree}, which is much faster than computing the balance of each account separately.
+     * Each balance is in the currency of its account.</p>
+     * @param startTimestamp the start timestamp of the time range, or -1 for no lower bound
+     * @param endTimestamp the end timestamp of the time range, or -1 for no upper bound
+     * @return Map of account GUIDs to the balances of the accounts
+     */
+    public Map<String, Money> getAccountBalances(long startTimestamp, long endTimestamp){
+        AccountTree accountTree = getAccountTree();
+        SplitsDbAdapter splitsDbAdapter = mTransactionsAdapter.getSplitDbAdapter();
+        Map<String, Map<String, BigDecimal>> subtreeTotals = accountTree.rollUp(
+                splitsDbAdapter.computeSplitSumsByAccount(startTimestamp, endTimestamp));
+
+        Map<String, Money> balances = new HashMap<>(subtreeTotals.size());
+        for (Map.Entry<String, Map<String, BigDecimal>> entry : subtreeTotals.entrySet()) {
+            String accountUID = entry.getKey();
+            balances.put(accountUID, splitsDbAdapter.sumAmounts(entry.getValue(),
+                    accountTree.getCurrencyCode(accountUID),
+                    accountTree.getAccountType(accountUID).hasDebitNormalBalance()));
+        }
+        return balances;
+    }
+
+    /**
+     * Returns the balances of the specified accounts within the specified time range, including sub-accounts.
+     * <p>Only the splits of the accounts and their descendants are read, in a single query.
+     * Each balance is in the currency of its account.</p>
+     * @param accountUIDs GUIDs of the accounts
+     * @param startTimestamp the start timestamp of the time range, or -1 for no lower bound
+     * @param endTimestamp the end timestamp of the time range, or -1 for no upper bound
+     * @return Map of account GUIDs to the balances of the accounts. Accounts which do not exist are not included.
+     * @see #getAccountBalances(long, long)
+     */
+    public Map<String, Money> getAccountBalances(@NonNull Collection<String> accountUIDs,
+                                                 long startTimestamp, long endTimestamp){
+        AccountTree accountTree = getAccountTree();
+        Set<String> subtreeUIDs = new HashSet<>();
+        for (String accountUID : accountUIDs) {
+            if (accountTree.contains(accountUID)) {
+                subtreeUIDs.add(accountUID);
+                subtreeUIDs.addAll(accountTree.getDescendantAccountUIDs(accountUID));
+            }
+        }
+        Map<String, Money> balances = new HashMap<>(accountUIDs.size());
+        if (subtreeUIDs.isEmpty())
+            return balances;
+
+        SplitsDbAdapter splitsDbAdapter = mTransactionsAdapter.getSplitDbAdapter();
+        Map<String, Map<String, BigDecimal>> subtreeTotals = accountTree.rollUp(
+                splitsDbAdapter.computeSplitSumsByAccount(subtreeUIDs, startTimestamp, endTimestamp));
+        for (String accountUID : accountUIDs) {
+            if (!accountTree.contains(accountUID))
+                continue;
+            balances.put(accountUID, splitsDbAdapter.sumAmounts(subtreeTotals.get(accountUID),
+                    accountTree.getCurrencyCode(accountUID),
+                    accountTree.getAccountType(accountUID).hasDebitNormalBalance()));
+        }
+        return balances;
+    }
+
+    /**
+     * Returns the account hierarchy of the book.
+     * <p>The tree is built once and cached until accounts are added, modified or deleted</p>
+     * @return Account tree of the database
+     */
+    public AccountTree getAccountTree(){
+        String key = mDb.getPath();
+        synchronized (sAccountTrees) {
+            AccountTree accountTree = sAccountTrees.get(key);
+            if (accountTree == null) {
+                Cursor cursor = mDb.query(AccountEntry.TABLE_NAME, AccountTree.PROJECTION,
+                        null, null, null, null, null);
+                try {
+                    accountTree = new AccountTree(cursor);
+                } finally {
+                    cursor.close();
+                }
+                sAccountTrees.put(key, accountTree);
+            }
+            return accountTree;
+        }
+    }
+
+    /**
+     * Discards the cached account tree of the book, so that it is rebuilt on next access.
+     * <p>This should be called whenever the hierarchy, type or currency of accounts change</p>
+     */
+    public void invalidateAccountTree(){
+        synchronized (sAccountTrees) {
+            sAccountTrees.remove(mDb.getPath());
+        }
+    }
+
     /**
      * Retrieve all descendant accounts of an account
      * Note, in filtering, once an account is filtered out, all its descendants
@@ -880,6 +1088,10 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
      * @return The descendant accounts list.
      */
     public List<String> getDescendantAccountUIDs(String accountUID, String where, String[] whereArgs) {
+        if (where == null) {
+            return getAccountTree().getDescendantAccountUIDs(accountUID);
+        }
+
         // accountsList will hold accountUID with all descendant accounts.
         // accountsListLevel will hold descendant accounts of the same level
         ArrayList<String> accountsList = new ArrayList<>();
@@ -916,24 +1128,23 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
      * Returns a cursor to the dataset containing sub-accounts of the account with record ID <code>accoundId</code>
      * @param accountUID GUID of the parent account
      * @return {@link Cursor} to the sub accounts data set
+     * @see #fetchAccountListItems(String, String[], String)
      */
     public Cursor fetchSubAccounts(String accountUID) {
         Log.v(LOG_TAG, "Fetching sub accounts for account id " + accountUID);
         String selection = AccountEntry.COLUMN_HIDDEN + " = 0 AND "
                 + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " = ?";
-        return mDb.query(AccountEntry.TABLE_NAME,
-                null,
-                selection,
-                new String[]{accountUID}, null, null, AccountEntry.COLUMN_NAME + " ASC");
+        return fetchAccountListItems(selection, new String[]{accountUID}, AccountEntry.COLUMN_NAME + " ASC");
     }
 
     /**
      * Returns the top level accounts i.e. accounts with no parent or with the GnuCash ROOT account as parent
      * @return Cursor to the top level accounts
+     * @see #fetchAccountListItems(String, String[], String)
      */
     public Cursor fetchTopLevelAccounts() {
         //condition which selects accounts with no parent, whose UID is not ROOT and whose type is not ROOT
-        return fetchAccounts("(" + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " IS NULL OR "
+        return fetchAccountListItems("(" + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " IS NULL OR "
                         + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " = ?) AND "
                         + AccountEntry.COLUMN_HIDDEN + " = 0 AND "
                         + AccountEntry.COLUMN_TYPE + " != ?",
@@ -944,6 +1155,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
     /**
      * Returns a cursor to accounts which have recently had transactions added to them
      * @return Cursor to recently used accounts
+     * @see #fetchAccountListItems(String, String[], String)
      */
     public Cursor fetchRecentAccounts(int numberOfRecent) {
         return mDb.query(TransactionEntry.TABLE_NAME
@@ -952,7 +1164,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
                         + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
                         + " , " + AccountEntry.TABLE_NAME + " ON " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID
                         + " = " + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID,
-                new String[]{AccountEntry.TABLE_NAME + ".*"},
+                ACCOUNT_LIST_PROJECTION,
                 AccountEntry.COLUMN_HIDDEN + " = 0",
                 null,
                 SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID, //groupby
@@ -965,13 +1177,12 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
     /**
      * Fetches favorite accounts from the database
      * @return Cursor holding set of favorite accounts
+     * @see #fetchAccountListItems(String, String[], String)
      */
     public Cursor fetchFavoriteAccounts(){
         Log.v(LOG_TAG, "Fetching favorite accounts from db");
         String condition = AccountEntry.COLUMN_FAVORITE + " = 1";
-        return mDb.query(AccountEntry.TABLE_NAME,
-                null, condition, null, null, null,
-                AccountEntry.COLUMN_NAME + " ASC");
+        return fetchAccountListItems(condition, null, AccountEntry.COLUMN_NAME + " ASC");
     }
 
     /**
@@ -991,7 +1202,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
             cursor.close();
         }
         // No ROOT exits, create a new one
-        Account rootAccount = new Account("ROOT Account", new CommoditiesDbAdapter(mDb).getCommodity("USD"));
+        Account rootAccount = new Account("ROOT Account", mCommoditiesDbAdapter.getCommodity("USD"));
         rootAccount.setAccountType(AccountType.ROOT);
         rootAccount.setFullName(ROOT_ACCOUNT_FULL_NAME);
         rootAccount.setHidden(true);
@@ -1007,6 +1218,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         contentValues.put(AccountEntry.COLUMN_COMMODITY_UID, getCommodityUID(defaultCurrencyCode));
         Log.i(LOG_TAG, "Creating ROOT account");
         mDb.insert(AccountEntry.TABLE_NAME, null, contentValues);
+        invalidateAccountTree();
         return rootAccount.getUID();
     }
 
@@ -1016,15 +1228,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
      * @return Number of sub accounts
      */
     public int getSubAccountCount(String accountUID){
-        //TODO: at some point when API level 11 and above only is supported, use DatabaseUtils.queryNumEntries
-
-        String queryCount = "SELECT COUNT(*) FROM " + AccountEntry.TABLE_NAME + " WHERE "
-                + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " = ?";
-        Cursor cursor = mDb.rawQuery(queryCount, new String[]{accountUID});
-        cursor.moveToFirst();
-        int count = cursor.getInt(0);
-        cursor.close();
-        return count;
+        return getAccountTree().getChildrenUIDs(accountUID).size();
     }
 
     /**
@@ -1272,15 +1476,26 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         // It take more than 300s to complete the deletion on my dataset without
         // clearing the split table first, but only needs a little more that 1s
         // if the split table is cleared first.
-        mDb.delete(DatabaseSchema.PriceEntry.TABLE_NAME, null, null);
-        mDb.delete(SplitEntry.TABLE_NAME, null, null);
-        mDb.delete(TransactionEntry.TABLE_NAME, null, null);
-        mDb.delete(DatabaseSchema.ScheduledActionEntry.TABLE_NAME, null, null);
-        mDb.delete(DatabaseSchema.BudgetAmountEntry.TABLE_NAME, null, null);
-        mDb.delete(DatabaseSchema.BudgetEntry.TABLE_NAME, null, null);
-        mDb.delete(DatabaseSchema.RecurrenceEntry.TABLE_NAME, null, null);
+        delete(DatabaseSchema.PriceEntry.TABLE_NAME, null, null);
+        delete(DatabaseSchema.AccountBalanceEntry.TABLE_NAME, null, null);
+        delete(SplitEntry.TABLE_NAME, null, null);
+        delete(TransactionEntry.TABLE_NAME, null, null);
+        delete(DatabaseSchema.ScheduledActionEntry.TABLE_NAME, null, null);
+        delete(DatabaseSchema.BudgetAmountEntry.TABLE_NAME, null, null);
+        delete(DatabaseSchema.BudgetEntry.TABLE_NAME, null, null);
+        delete(DatabaseSchema.RecurrenceEntry.TABLE_NAME, null, null);
+
+        int count = delete(AccountEntry.TABLE_NAME, null, null);
+        invalidateAccountTree();
+        PricesDbAdapter.invalidatePriceCache(mDb.getPath());
+        return count;
+    }
 
-        return mDb.delete(AccountEntry.TABLE_NAME, null, null);
+    @Override
+    public boolean deleteRecord(long rowId) {
+        boolean result = super.deleteRecord(rowId);
+        invalidateAccountTree();
+        return result;
     }
 
     @Override
@@ -1289,7 +1504,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         if (result){
             ContentValues contentValues = new ContentValues();
             contentValues.putNull(AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID);
-            mDb.update(mTableName, contentValues,
+            update(mTableName, contentValues,
                     AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID + "=?",
                     new String[]{uid});
         }
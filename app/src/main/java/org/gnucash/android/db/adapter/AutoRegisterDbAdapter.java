@@ -68,12 +68,10 @@ public class AutoRegisterDbAdapter extends DatabaseAdapter<AutoRegister> {
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final AutoRegister entry) {
-        stmt.clearBindings();
-        stmt.bindString(1, entry.getInboxURI());
-        stmt.bindString(2, entry.getFlag().name());
-        stmt.bindString(3, entry.getTransactionUID());
-        stmt.bindString(4, entry.getUID());
-        return stmt;
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final AutoRegister entry) {
+        stmt.bindString(offset + 1, entry.getInboxURI());
+        stmt.bindString(offset + 2, entry.getFlag().name());
+        stmt.bindString(offset + 3, entry.getTransactionUID());
+        stmt.bindString(offset + 4, entry.getUID());
     }
 }
@@ -123,33 +123,30 @@ public class AutoRegisterInboxDbAdapter extends DatabaseAdapter<AutoRegister.Inb
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final AutoRegister.Inbox inbox) {
-        stmt.clearBindings();
-
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final AutoRegister.Inbox inbox) {
         AutoRegister.Message message = inbox.getMessage();
-        stmt.bindString(1, message.getType().name());
-        stmt.bindLong(2, message.getID());
-        stmt.bindLong(3, message.getTimestamp().getTime());
-        stmt.bindString(4, message.getAddress());
-        stmt.bindString(5, message.getBody());
-        stmt.bindString(6, message.getProvider().getUID());
-        stmt.bindLong(7, message.isParsed() ? 1 : 0);
+        stmt.bindString(offset + 1, message.getType().name());
+        stmt.bindLong(offset + 2, message.getID());
+        stmt.bindLong(offset + 3, message.getTimestamp().getTime());
+        stmt.bindString(offset + 4, message.getAddress());
+        stmt.bindString(offset + 5, message.getBody());
+        stmt.bindString(offset + 6, message.getProvider().getUID());
+        stmt.bindLong(offset + 7, message.isParsed() ? 1 : 0);
 
         if (message.isParsed()) {
             Money value = inbox.getValue();
-            stmt.bindString(8, value.getCommodity().getCurrencyCode());
-            stmt.bindLong(9, value.getNumerator());
-            stmt.bindLong(10, value.getDenominator());
-            stmt.bindString(11, inbox.getMemo());
+            stmt.bindString(offset + 8, value.getCommodity().getCurrencyCode());
+            stmt.bindLong(offset + 9, value.getNumerator());
+            stmt.bindLong(offset + 10, value.getDenominator());
+            stmt.bindString(offset + 11, inbox.getMemo());
         }
 
-        stmt.bindLong(12, inbox.isCompleted() ? 1 : 0);
+        stmt.bindLong(offset + 12, inbox.isCompleted() ? 1 : 0);
         if (inbox.getTransactionUID() != null) {
-            stmt.bindString(13, inbox.getTransactionUID());
+            stmt.bindString(offset + 13, inbox.getTransactionUID());
         }
 
-        stmt.bindString(14, inbox.getUID());
-        return stmt;
+        stmt.bindString(offset + 14, inbox.getUID());
     }
 
     public Cursor fetchRecords(boolean parsed, AutoRegister.Provider provider, AutoRegister.Keyword keyword) {
@@ -95,13 +95,11 @@ public class AutoRegisterKeywordDbAdapter extends DatabaseAdapter<AutoRegister.K
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final AutoRegister.Keyword keyword) {
-        stmt.clearBindings();
-        stmt.bindString(1, keyword.getKeyword());
-        stmt.bindLong(2, keyword.getPriority());
-        stmt.bindString(3, keyword.getAccountUID());
-        stmt.bindString(4, keyword.getUID());
-        return stmt;
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final AutoRegister.Keyword keyword) {
+        stmt.bindString(offset + 1, keyword.getKeyword());
+        stmt.bindLong(offset + 2, keyword.getPriority());
+        stmt.bindString(offset + 3, keyword.getAccountUID());
+        stmt.bindString(offset + 4, keyword.getUID());
     }
 
     @Override
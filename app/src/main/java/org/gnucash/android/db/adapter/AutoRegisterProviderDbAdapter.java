@@ -124,21 +124,19 @@ public class AutoRegisterProviderDbAdapter extends DatabaseAdapter<AutoRegister.
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final AutoRegister.Provider provider) {
-        stmt.clearBindings();
-        stmt.bindString(1, provider.getName());
-        stmt.bindString(2, provider.getPhone());
-        stmt.bindString(3, provider.getPatternsAsString());
-        stmt.bindString(4, provider.getGlobsAsString());
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final AutoRegister.Provider provider) {
+        stmt.bindString(offset + 1, provider.getName());
+        stmt.bindString(offset + 2, provider.getPhone());
+        stmt.bindString(offset + 3, provider.getPatternsAsString());
+        stmt.bindString(offset + 4, provider.getGlobsAsString());
         if (provider.getAccountUID() != null)
-            stmt.bindString(5, provider.getAccountUID());
+            stmt.bindString(offset + 5, provider.getAccountUID());
         if (provider.getIconName() != null)
-            stmt.bindString(6, provider.getIconName());
-        stmt.bindLong(7, provider.isActive() ? 1L : 0L);
+            stmt.bindString(offset + 6, provider.getIconName());
+        stmt.bindLong(offset + 7, provider.isActive() ? 1L : 0L);
         if (provider.getLastSync() != null)
-            stmt.bindString(8, TimestampHelper.getUtcStringFromTimestamp(provider.getLastSync()));
-        stmt.bindString(9, provider.getUID());
-        return stmt;
+            stmt.bindString(offset + 8, TimestampHelper.getUtcStringFromTimestamp(provider.getLastSync()));
+        stmt.bindString(offset + 9, provider.getUID());
     }
 
     /**
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db.adapter;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DatabaseHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Open database of a book, together with one instance of each database adapter for it.
+ * <p>Sessions are shared: {@link #open(String)} returns the open session of the book if there is one,
+ * so all callers use the same database connection, the same adapters and the statements which the
+ * adapters have already compiled. Each call to {@link #open(String)} must be matched by a call to {@link #close()}.
+ * A session which is no longer used stays open for {@link #IDLE_TIMEOUT} milliseconds, so that
+ * a book which is opened again shortly afterwards does not have to be reopened.</p>
+ * <p>The session of the active book is held by {@link GnuCashApplication} while the book is active.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class BookSession {
+
+    private static final String LOG_TAG = "BookSession";
+
+    /**
+     * Time in milliseconds after which an unused session is closed
+     */
+    public static final long IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    /**
+     * Open sessions, keyed by book GUID
+     */
+    private static final Map<String, BookSession> sSessions = new HashMap<>();
+
+    private final String mBookUID;
+    private final DatabaseHelper mDbHelper;
+    private final SQLiteDatabase mDb;
+
+    private final CommoditiesDbAdapter mCommoditiesDbAdapter;
+    private final PricesDbAdapter mPricesDbAdapter;
+    private final SplitsDbAdapter mSplitsDbAdapter;
+    private final TransactionsDbAdapter mTransactionsDbAdapter;
+    private final AccountsDbAdapter mAccountsDbAdapter;
+    private final RecurrenceDbAdapter mRecurrenceDbAdapter;
+    private final ScheduledActionDbAdapter mScheduledActionDbAdapter;
+    private final BudgetAmountsDbAdapter mBudgetAmountsDbAdapter;
+    private final BudgetsDbAdapter mBudgetsDbAdapter;
+    private final AutoRegisterDbAdapter mAutoRegisterDbAdapter;
+    private final AutoRegisterProviderDbAdapter mAutoRegisterProviderDbAdapter;
+    private final AutoRegisterKeywordDbAdapter mAutoRegisterKeywordDbAdapter;
+    private final AutoRegisterInboxDbAdapter mAutoRegisterInboxDbAdapter;
+
+    /**
+     * All the adapters above, whose statements are closed with the database
+     */
+    private final DatabaseAdapter[] mAdapters;
+
+    /**
+     * Number of callers which have opened the session and not yet closed it.
+     * Guarded by {@link #sSessions}
+     */
+    private int mRefCount = 0;
+
+    /**
+     * Time, in {@link SystemClock#elapsedRealtime()}, at which the session was last closed by its last caller
+     */
+    private long mIdleSince;
+
+    private BookSession(@NonNull String bookUID) {
+        mBookUID = bookUID;
+        mDbHelper = new DatabaseHelper(GnuCashApplication.getAppContext(), bookUID);
+        SQLiteDatabase db;
+        try {
+            db = mDbHelper.getWritableDatabase();
+        } catch (SQLException e) {
+            Crashlytics.logException(e);
+            Log.e(LOG_TAG, "Error getting database: " + e.getMessage());
+            db = mDbHelper.getReadableDatabase();
+        }
+        mDb = db;
+
+        mCommoditiesDbAdapter         = new CommoditiesDbAdapter(db);
+        mPricesDbAdapter              = new PricesDbAdapter(db);
+        mSplitsDbAdapter              = new SplitsDbAdapter(db);
+        mTransactionsDbAdapter        = new TransactionsDbAdapter(db, mSplitsDbAdapter, mCommoditiesDbAdapter);
+        mAccountsDbAdapter            = new AccountsDbAdapter(db, mTransactionsDbAdapter, mCommoditiesDbAdapter);
+        mRecurrenceDbAdapter          = new RecurrenceDbAdapter(db);
+        mScheduledActionDbAdapter     = new ScheduledActionDbAdapter(db, mRecurrenceDbAdapter);
+        mBudgetAmountsDbAdapter       = new BudgetAmountsDbAdapter(db);
+        mBudgetsDbAdapter             = new BudgetsDbAdapter(db, mBudgetAmountsDbAdapter, mRecurrenceDbAdapter);
+
+        mAutoRegisterDbAdapter         = new AutoRegisterDbAdapter(db);
+        mAutoRegisterProviderDbAdapter = new AutoRegisterProviderDbAdapter(db, mAccountsDbAdapter);
+        mAutoRegisterKeywordDbAdapter  = new AutoRegisterKeywordDbAdapter(db, mAccountsDbAdapter);
+        mAutoRegisterInboxDbAdapter    = new AutoRegisterInboxDbAdapter(db, mAutoRegisterProviderDbAdapter, mAutoRegisterKeywordDbAdapter);
+
+        mAdapters = new DatabaseAdapter[]{mCommoditiesDbAdapter, mPricesDbAdapter, mSplitsDbAdapter,
+                mTransactionsDbAdapter, mAccountsDbAdapter, mRecurrenceDbAdapter, mScheduledActionDbAdapter,
+                mBudgetAmountsDbAdapter, mBudgetsDbAdapter, mAutoRegisterDbAdapter, mAutoRegisterProviderDbAdapter,
+                mAutoRegisterKeywordDbAdapter, mAutoRegisterInboxDbAdapter};
+        for (DatabaseAdapter adapter : mAdapters) {
+            adapter.mBookSession = this;
+        }
+    }
+
+    /**
+     * Opens the session of a book, creating it if the book is not open yet.
+     * <p>Sessions which have been idle for longer than {@link #IDLE_TIMEOUT} are closed at the same time.</p>
+     * @param bookUID GUID of the book
+     * @return Session of the book, which must be closed with {@link #close()} when it is no longer needed
+     */
+    public static @NonNull BookSession open(@NonNull String bookUID) {
+        synchronized (sSessions) {
+            evictIdleSessions(IDLE_TIMEOUT);
+            BookSession session = sSessions.get(bookUID);
+            if (session == null || !session.mDb.isOpen()) {
+                Log.d(LOG_TAG, "Opening book " + bookUID);
+                session = new BookSession(bookUID);
+                sSessions.put(bookUID, session);
+            }
+            session.mRefCount++;
+            return session;
+        }
+    }
+
+    /**
+     * Releases the session. The database stays open until the session has been idle for {@link #IDLE_TIMEOUT}
+     * @throws IllegalStateException if the session has been closed by all the callers which opened it
+     */
+    public void close() {
+        synchronized (sSessions) {
+            if (mRefCount == 0)
+                throw new IllegalStateException("Session of book " + mBookUID + " is not open");
+            if (--mRefCount == 0)
+                mIdleSince = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Closes the databases of all sessions which are not in use and have been idle for at least {@code idleTime}
+     * @param idleTime Idle time in milliseconds. Pass 0 to close all sessions which are not in use
+     * @return Number of sessions which were closed
+     */
+    public static int evictIdleSessions(long idleTime) {
+        long now = SystemClock.elapsedRealtime();
+        List<BookSession> evicted = new ArrayList<>();
+        synchronized (sSessions) {
+            Iterator<BookSession> iterator = sSessions.values().iterator();
+            while (iterator.hasNext()) {
+                BookSession session = iterator.next();
+                if (session.mRefCount == 0 && now - session.mIdleSince >= idleTime) {
+                    iterator.remove();
+                    evicted.add(session);
+                }
+            }
+            for (BookSession session : evicted) {
+                session.closeDatabase();
+            }
+        }
+        return evicted.size();
+    }
+
+    /**
+     * Closes the session of a book even if it is in use, for example because the book is about to be deleted.
+     * Adapters of the session must not be used afterwards
+     * @param bookUID GUID of the book
+     */
+    public static void evict(@NonNull String bookUID) {
+        synchronized (sSessions) {
+            BookSession session = sSessions.remove(bookUID);
+            if (session == null)
+                return;
+            if (session.mRefCount > 0)
+                Log.w(LOG_TAG, "Closing book " + bookUID + " which is still in use");
+            session.closeDatabase();
+        }
+    }
+
+    /**
+     * Closes the sessions of all books, whether they are in use or not
+     */
+    public static void closeAll() {
+        synchronized (sSessions) {
+            for (BookSession session : sSessions.values()) {
+                session.closeDatabase();
+            }
+            sSessions.clear();
+        }
+    }
+
+    private void closeDatabase() {
+        Log.d(LOG_TAG, "Closing book " + mBookUID);
+        if (mDb.isOpen()) {
+            //the caches are keyed by the database path, which a new database of the book may reuse
+            mAccountsDbAdapter.invalidateAccountTree();
+            mPricesDbAdapter.invalidatePriceCache();
+            for (DatabaseAdapter adapter : mAdapters) {
+                adapter.close();
+            }
+            mDbHelper.close();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the database of the session is still open
+     */
+    public boolean isOpen() {
+        return mDb.isOpen();
+    }
+
+    public String getBookUID() {
+        return mBookUID;
+    }
+
+    public SQLiteDatabase getDatabase() {
+        return mDb;
+    }
+
+    public CommoditiesDbAdapter getCommoditiesDbAdapter() {
+        return mCommoditiesDbAdapter;
+    }
+
+    public PricesDbAdapter getPricesDbAdapter() {
+        return mPricesDbAdapter;
+    }
+
+    public SplitsDbAdapter getSplitsDbAdapter() {
+        return mSplitsDbAdapter;
+    }
+
+    public TransactionsDbAdapter getTransactionsDbAdapter() {
+        return mTransactionsDbAdapter;
+    }
+
+    public AccountsDbAdapter getAccountsDbAdapter() {
+        return mAccountsDbAdapter;
+    }
+
+    public RecurrenceDbAdapter getRecurrenceDbAdapter() {
+        return mRecurrenceDbAdapter;
+    }
+
+    public ScheduledActionDbAdapter getScheduledActionDbAdapter() {
+        return mScheduledActionDbAdapter;
+    }
+
+    public BudgetAmountsDbAdapter getBudgetAmountsDbAdapter() {
+        return mBudgetAmountsDbAdapter;
+    }
+
+    public BudgetsDbAdapter getBudgetsDbAdapter() {
+        return mBudgetsDbAdapter;
+    }
+
+    public AutoRegisterDbAdapter getAutoRegisterDbAdapter() {
+        return mAutoRegisterDbAdapter;
+    }
+
+    public AutoRegisterProviderDbAdapter getAutoRegisterProviderDbAdapter() {
+        return mAutoRegisterProviderDbAdapter;
+    }
+
+    public AutoRegisterKeywordDbAdapter getAutoRegisterKeywordDbAdapter() {
+        return mAutoRegisterKeywordDbAdapter;
+    }
+
+    public AutoRegisterInboxDbAdapter getAutoRegisterInboxDbAdapter() {
+        return mAutoRegisterInboxDbAdapter;
+    }
+}
@@ -84,18 +84,16 @@ public class BooksDbAdapter extends DatabaseAdapter<Book> {
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final Book book) {
-        stmt.clearBindings();
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final Book book) {
         String displayName = book.getDisplayName() == null ? generateDefaultBookName() : book.getDisplayName();
-        stmt.bindString(1, displayName);
-        stmt.bindString(2, book.getRootAccountUID());
-        stmt.bindString(3, book.getRootTemplateUID());
+        stmt.bindString(offset + 1, displayName);
+        stmt.bindString(offset + 2, book.getRootAccountUID());
+        stmt.bindString(offset + 3, book.getRootTemplateUID());
         if (book.getSourceUri() != null)
-            stmt.bindString(4, book.getSourceUri().toString());
-        stmt.bindLong(5, book.isActive() ? 1L : 0L);
-        stmt.bindString(6, book.getUID());
-        stmt.bindString(7, TimestampHelper.getUtcStringFromTimestamp(book.getLastSync()));
-        return stmt;
+            stmt.bindString(offset + 4, book.getSourceUri().toString());
+        stmt.bindLong(offset + 5, book.isActive() ? 1L : 0L);
+        stmt.bindString(offset + 6, book.getUID());
+        stmt.bindString(offset + 7, TimestampHelper.getUtcStringFromTimestamp(book.getLastSync()));
     }
 
 
@@ -107,6 +105,7 @@ public class BooksDbAdapter extends DatabaseAdapter<Book> {
      */
     public boolean deleteBook(@NonNull String bookUID){
         Context context = GnuCashApplication.getAppContext();
+        BookSession.evict(bookUID);
         boolean result = context.deleteDatabase(bookUID);
         if (result) //delete the db entry only if the file deletion was successful
             result &= deleteRecord(bookUID);
@@ -128,11 +127,11 @@ public class BooksDbAdapter extends DatabaseAdapter<Book> {
 
         ContentValues contentValues = new ContentValues();
         contentValues.put(BookEntry.COLUMN_ACTIVE, 0);
-        mDb.update(mTableName, contentValues, null, null); //disable all
+        update(mTableName, contentValues, null, null); //disable all
 
         contentValues.clear();
         contentValues.put(BookEntry.COLUMN_ACTIVE, 1);
-        mDb.update(mTableName, contentValues, BookEntry.COLUMN_UID + " = ?", new String[]{bookUID});
+        update(mTableName, contentValues, BookEntry.COLUMN_UID + " = ?", new String[]{bookUID});
 
         return bookUID;
     }
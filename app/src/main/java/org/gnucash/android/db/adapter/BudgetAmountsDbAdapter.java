@@ -17,16 +17,20 @@ package org.gnucash.android.db.adapter;
 
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
 
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.model.BudgetAmount;
 import org.gnucash.android.model.Money;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
+import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
 import static org.gnucash.android.db.DatabaseSchema.BudgetAmountEntry;
 
 /**
@@ -56,6 +60,17 @@ public class BudgetAmountsDbAdapter extends DatabaseAdapter<BudgetAmount> {
 
     @Override
     public BudgetAmount buildModelInstance(@NonNull Cursor cursor) {
+        String accountUID = cursor.getString(cursor.getColumnIndexOrThrow(BudgetAmountEntry.COLUMN_ACCOUNT_UID));
+        return buildModelInstance(cursor, getAccountCurrencyCode(accountUID));
+    }
+
+    /**
+     * Builds a budget amount from the record pointed to by the cursor
+     * @param cursor Cursor pointing to the budget amount record
+     * @param currencyCode Currency code of the account of the budget amount
+     * @return Budget amount in the currency of its account
+     */
+    private BudgetAmount buildModelInstance(@NonNull Cursor cursor, String currencyCode) {
         String budgetUID = cursor.getString(cursor.getColumnIndexOrThrow(BudgetAmountEntry.COLUMN_BUDGET_UID));
         String accountUID = cursor.getString(cursor.getColumnIndexOrThrow(BudgetAmountEntry.COLUMN_ACCOUNT_UID));
         long amountNum  = cursor.getLong(cursor.getColumnIndexOrThrow(BudgetAmountEntry.COLUMN_AMOUNT_NUM));
@@ -63,7 +78,7 @@ public class BudgetAmountsDbAdapter extends DatabaseAdapter<BudgetAmount> {
         long periodNum  = cursor.getLong(cursor.getColumnIndexOrThrow(BudgetAmountEntry.COLUMN_PERIOD_NUM));
 
         BudgetAmount budgetAmount = new BudgetAmount(budgetUID, accountUID);
-        budgetAmount.setAmount(new Money(amountNum, amountDenom, getAccountCurrencyCode(accountUID)));
+        budgetAmount.setAmount(new Money(amountNum, amountDenom, currencyCode));
         budgetAmount.setPeriodNum(periodNum);
         populateBaseModelAttributes(cursor, budgetAmount);
 
@@ -71,16 +86,13 @@ public class BudgetAmountsDbAdapter extends DatabaseAdapter<BudgetAmount> {
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final BudgetAmount budgetAmount) {
-        stmt.clearBindings();
-        stmt.bindString(1, budgetAmount.getBudgetUID());
-        stmt.bindString(2, budgetAmount.getAccountUID());
-        stmt.bindLong(3, budgetAmount.getAmount().getNumerator());
-        stmt.bindLong(4, budgetAmount.getAmount().getDenominator());
-        stmt.bindLong(5, budgetAmount.getPeriodNum());
-        stmt.bindString(6, budgetAmount.getUID());
-
-        return stmt;
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final BudgetAmount budgetAmount) {
+        stmt.bindString(offset + 1, budgetAmount.getBudgetUID());
+        stmt.bindString(offset + 2, budgetAmount.getAccountUID());
+        stmt.bindLong(offset + 3, budgetAmount.getAmount().getNumerator());
+        stmt.bindLong(offset + 4, budgetAmount.getAmount().getDenominator());
+        stmt.bindLong(offset + 5, budgetAmount.getPeriodNum());
+        stmt.bindString(offset + 6, budgetAmount.getUID());
     }
 
     /**
@@ -106,7 +118,7 @@ public class BudgetAmountsDbAdapter extends DatabaseAdapter<BudgetAmount> {
      * @return Number of records deleted
      */
     public int deleteBudgetAmountsForBudget(String budgetUID){
-        return mDb.delete(mTableName, BudgetAmountEntry.COLUMN_BUDGET_UID + "=?",
+        return delete(mTableName, BudgetAmountEntry.COLUMN_BUDGET_UID + "=?",
                 new String[]{budgetUID});
     }
 
@@ -125,6 +137,35 @@ public class BudgetAmountsDbAdapter extends DatabaseAdapter<BudgetAmount> {
         return budgetAmounts;
     }
 
+    /**
+     * Returns the budget amounts of several accounts.
+     * <p>The amounts and the currencies of their accounts are read with a single query</p>
+     * @param accountUIDs GUIDs of the accounts
+     * @return List of {@link BudgetAmount}s for the accounts
+     */
+    public List<BudgetAmount> getBudgetAmounts(@NonNull Collection<String> accountUIDs) {
+        SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+        queryBuilder.setTables(BudgetAmountEntry.TABLE_NAME + " INNER JOIN " + AccountEntry.TABLE_NAME
+                + " ON " + BudgetAmountEntry.TABLE_NAME + "." + BudgetAmountEntry.COLUMN_ACCOUNT_UID + " = "
+                + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID);
+        String[] projectionIn = new String[]{BudgetAmountEntry.TABLE_NAME + ".*",
+                AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY + " AS account_currency"};
+        String selection = BudgetAmountEntry.TABLE_NAME + "." + BudgetAmountEntry.COLUMN_ACCOUNT_UID
+                + " IN ( '" + TextUtils.join("' , '", accountUIDs) + "' )";
+
+        Cursor cursor = queryBuilder.query(mDb, projectionIn, selection, null, null, null, null);
+        List<BudgetAmount> budgetAmounts = new ArrayList<>();
+        try {
+            int currencyColumn = cursor.getColumnIndexOrThrow("account_currency");
+            while (cursor.moveToNext()) {
+                budgetAmounts.add(buildModelInstance(cursor, cursor.getString(currencyColumn)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return budgetAmounts;
+    }
+
     /**
      * Returns the sum of the budget amounts for a particular account
      * @param accountUID GUID of the account
@@ -21,6 +21,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
 
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.DatabaseSchema.BudgetAmountEntry;
@@ -31,7 +32,10 @@ import org.gnucash.android.model.Money;
 import org.gnucash.android.model.Recurrence;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -107,6 +111,17 @@ public class BudgetsDbAdapter extends DatabaseAdapter<Budget>{
 
     @Override
     public Budget buildModelInstance(@NonNull Cursor cursor) {
+        Budget budget = buildBudget(cursor);
+        budget.setBudgetAmounts(mBudgetAmountsDbAdapter.getBudgetAmountsForBudget(budget.getUID()));
+        return budget;
+    }
+
+    /**
+     * Builds a budget from the record pointed to by the cursor, without its budget amounts
+     * @param cursor Cursor pointing to the budget record
+     * @return Budget with its recurrence
+     */
+    private Budget buildBudget(@NonNull Cursor cursor) {
         String name = cursor.getString(cursor.getColumnIndexOrThrow(BudgetEntry.COLUMN_NAME));
         String description = cursor.getString(cursor.getColumnIndexOrThrow(BudgetEntry.COLUMN_DESCRIPTION));
         String recurrenceUID = cursor.getString(cursor.getColumnIndexOrThrow(BudgetEntry.COLUMN_RECURRENCE_UID));
@@ -118,22 +133,17 @@ public class BudgetsDbAdapter extends DatabaseAdapter<Budget>{
         budget.setRecurrence(mRecurrenceDbAdapter.getRecord(recurrenceUID));
         budget.setNumberOfPeriods(numPeriods);
         populateBaseModelAttributes(cursor, budget);
-        budget.setBudgetAmounts(mBudgetAmountsDbAdapter.getBudgetAmountsForBudget(budget.getUID()));
-
         return budget;
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final Budget budget) {
-        stmt.clearBindings();
-        stmt.bindString(1, budget.getName());
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final Budget budget) {
+        stmt.bindString(offset + 1, budget.getName());
         if (budget.getDescription() != null)
-            stmt.bindString(2, budget.getDescription());
-        stmt.bindString(3, budget.getRecurrence().getUID());
-        stmt.bindLong(4, budget.getNumberOfPeriods());
-        stmt.bindString(5, budget.getUID());
-
-        return stmt;
+            stmt.bindString(offset + 2, budget.getDescription());
+        stmt.bindString(offset + 3, budget.getRecurrence().getUID());
+        stmt.bindLong(offset + 4, budget.getNumberOfPeriods());
+        stmt.bindString(offset + 5, budget.getUID());
     }
 
     /**
@@ -171,6 +181,50 @@ public class BudgetsDbAdapter extends DatabaseAdapter<Budget>{
         return budgets;
     }
 
+    /**
+     * Returns the budgets associated with several accounts.
+     * <p>The budget amounts of all the accounts are read with one query, and the budgets with another one.
+     * The budgets only include the amounts of the requested accounts</p>
+     * @param accountUIDs GUIDs of the accounts
+     * @return Budgets by account GUID. Accounts without budgets are not included
+     */
+    public Map<String, List<Budget>> getAccountBudgets(@NonNull Collection<String> accountUIDs) {
+        Map<String, List<BudgetAmount>> budgetAmountsByBudget = new HashMap<>();
+        for (BudgetAmount budgetAmount : mBudgetAmountsDbAdapter.getBudgetAmounts(accountUIDs)) {
+            List<BudgetAmount> budgetAmounts = budgetAmountsByBudget.get(budgetAmount.getBudgetUID());
+            if (budgetAmounts == null) {
+                budgetAmounts = new ArrayList<>();
+                budgetAmountsByBudget.put(budgetAmount.getBudgetUID(), budgetAmounts);
+            }
+            budgetAmounts.add(budgetAmount);
+        }
+
+        Map<String, List<Budget>> budgetsByAccount = new HashMap<>();
+        if (budgetAmountsByBudget.isEmpty())
+            return budgetsByAccount;
+
+        Cursor cursor = fetchAllRecords(BudgetEntry.COLUMN_UID + " IN ( '"
+                + TextUtils.join("' , '", budgetAmountsByBudget.keySet()) + "' )", null, null);
+        try {
+            while (cursor.moveToNext()) {
+                Budget budget = buildBudget(cursor);
+                budget.setBudgetAmounts(budgetAmountsByBudget.get(budget.getUID()));
+                for (BudgetAmount budgetAmount : budget.getBudgetAmounts()) {
+                    List<Budget> budgets = budgetsByAccount.get(budgetAmount.getAccountUID());
+                    if (budgets == null) {
+                        budgets = new ArrayList<>();
+                        budgetsByAccount.put(budgetAmount.getAccountUID(), budgets);
+                    }
+                    if (!budgets.contains(budget))
+                        budgets.add(budget);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return budgetsByAccount;
+    }
+
     /**
      * Returns the sum of the account balances for all accounts in a budget for a specified time period
      * <p>This represents the total amount spent within the account of this budget in a given period</p>
@@ -186,6 +240,8 @@ public class BudgetsDbAdapter extends DatabaseAdapter<Budget>{
             accountUIDs.add(budgetAmount.getAccountUID());
         }
 
-        return new AccountsDbAdapter(mDb).getAccountsBalance(accountUIDs, periodStart, periodEnd);
+        AccountsDbAdapter accountsDbAdapter = mBookSession != null
+                ? mBookSession.getAccountsDbAdapter() : new AccountsDbAdapter(mDb);
+        return accountsDbAdapter.getAccountsBalance(accountUIDs, periodStart, periodEnd);
     }
 }
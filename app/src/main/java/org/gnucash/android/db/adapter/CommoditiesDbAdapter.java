@@ -52,18 +52,15 @@ public class CommoditiesDbAdapter extends DatabaseAdapter<Commodity> {
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final Commodity commodity) {
-        stmt.clearBindings();
-        stmt.bindString(1, commodity.getFullname());
-        stmt.bindString(2, commodity.getNamespace().name());
-        stmt.bindString(3, commodity.getMnemonic());
-        stmt.bindString(4, commodity.getLocalSymbol());
-        stmt.bindString(5, commodity.getCusip());
-        stmt.bindLong(6, commodity.getSmallestFraction());
-        stmt.bindLong(7, commodity.getQuoteFlag());
-        stmt.bindString(8, commodity.getUID());
-
-        return stmt;
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final Commodity commodity) {
+        stmt.bindString(offset + 1, commodity.getFullname());
+        stmt.bindString(offset + 2, commodity.getNamespace().name());
+        stmt.bindString(offset + 3, commodity.getMnemonic());
+        stmt.bindString(offset + 4, commodity.getLocalSymbol());
+        stmt.bindString(offset + 5, commodity.getCusip());
+        stmt.bindLong(offset + 6, commodity.getSmallestFraction());
+        stmt.bindLong(offset + 7, commodity.getQuoteFlag());
+        stmt.bindString(offset + 8, commodity.getUID());
     }
 
     @Override
@@ -27,14 +27,16 @@ import android.util.Log;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.DatabaseSchema.AccountEntry;
 import org.gnucash.android.db.DatabaseSchema.CommonColumns;
-import org.gnucash.android.db.DatabaseSchema.SplitEntry;
-import org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import org.gnucash.android.db.QueryProfiler;
 import org.gnucash.android.model.AccountType;
 import org.gnucash.android.model.BaseModel;
 import org.gnucash.android.util.TimestampHelper;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Adapter to be used for creating and opening the database for read/write operations.
@@ -64,6 +66,45 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
 
     protected volatile SQLiteStatement mInsertStatement;
 
+    private SQLiteStatement mCountStatement;
+
+    /**
+     * Maximum number of placeholders in an SQLite statement (SQLITE_MAX_VARIABLE_NUMBER)
+     */
+    static final int SQLITE_MAX_VARIABLE_NUMBER = 999;
+
+    /**
+     * Compiled multi-row INSERT statements, by number of rows
+     */
+    private final Map<Integer, SQLiteStatement> mMultiRowInsertStatements = new HashMap<>();
+
+    /**
+     * Compiled multi-row REPLACE statements, by number of rows
+     */
+    private final Map<Integer, SQLiteStatement> mMultiRowReplaceStatements = new HashMap<>();
+
+    /**
+     * SQL of the statements compiled by this adapter, for the {@link QueryProfiler}
+     */
+    private final Map<SQLiteStatement, String> mStatementSql = new ConcurrentHashMap<>();
+
+    /**
+     * Whether bulk inserts write several rows per statement
+     */
+    private boolean mMultiRowInsertsEnabled = true;
+
+    /**
+     * Settings of the connection before {@link #enableBulkImportMode(boolean)} changed them
+     */
+    private String mJournalModeBeforeImport;
+    private String mSynchronousBeforeImport;
+
+    /**
+     * Session which owns this adapter, or {@code null} if the adapter was created on its own.
+     * Adapters of a session use the other adapters of the session instead of creating new ones
+     */
+    BookSession mBookSession;
+
     public enum UpdateMethod {
         insert, update, replace
     };
@@ -79,119 +120,9 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
         if (!db.isOpen() || db.isReadOnly())
             throw new IllegalArgumentException("Database not open or is read-only. Require writeable database");
 
-        if (mDb.getVersion() >= 9) {
-            createTempView();
-        }
         LOG_TAG = getClass().getSimpleName();
     }
 
-    private void createTempView() {
-        //the multiplication by 1.0 is to cause sqlite to handle the value as REAL and not to round off
-
-        // Create some temporary views. Temporary views only exists in one DB session, and will not
-        // be saved in the DB
-        //
-        // TODO: Useful views should be add to the DB
-        //
-        // create a temporary view, combining accounts, transactions and splits, as this is often used
-        // in the queries
-
-        //todo: would it be useful to add the split reconciled_state and reconciled_date to this view?
-        mDb.execSQL("CREATE TEMP VIEW IF NOT EXISTS trans_split_acct AS SELECT "
-                        + TransactionEntry.TABLE_NAME + "." + CommonColumns.COLUMN_MODIFIED_AT + " AS "
-                        + TransactionEntry.TABLE_NAME + "_" + CommonColumns.COLUMN_MODIFIED_AT + " , "
-                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " AS "
-                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID + " , "
-                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_DESCRIPTION + " AS "
-                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_DESCRIPTION + " , "
-                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_NOTES + " AS "
-                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_NOTES + " , "
-                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_CURRENCY + " AS "
-                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_CURRENCY + " , "
-                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " AS "
-                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " , "
-                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_EXPORTED + " AS "
-                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_EXPORTED + " , "
-                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " AS "
-                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " , "
-                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_UID + " AS "
-                        + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_UID + " , "
-                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " AS "
-                        + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_TYPE + " , "
-                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_VALUE_NUM + " AS "
-                        + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_VALUE_NUM + " , "
-                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_VALUE_DENOM + " AS "
-                        + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_VALUE_DENOM + " , "
-                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " AS "
-                        + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM + " , "
-                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM + " AS "
-                        + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_DENOM + " , "
-                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_MEMO + " AS "
-                        + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_MEMO + " , "
-                        + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + " AS "
-                        + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID + " , "
-                        + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_NAME + " AS "
-                        + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_NAME + " , "
-                        + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY + " AS "
-                        + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_CURRENCY + " , "
-                        + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " AS "
-                        + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " , "
-                        + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_PLACEHOLDER + " AS "
-                        + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_PLACEHOLDER + " , "
-                        + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_COLOR_CODE + " AS "
-                        + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_COLOR_CODE + " , "
-                        + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_FAVORITE + " AS "
-                        + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_FAVORITE + " , "
-                        + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_FULL_NAME + " AS "
-                        + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_FULL_NAME + " , "
-                        + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_TYPE + " AS "
-                        + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_TYPE + " , "
-                        + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID + " AS "
-                        + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID
-                        + " FROM " + TransactionEntry.TABLE_NAME + " , " + SplitEntry.TABLE_NAME + " ON "
-                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + "=" + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
-                        + " , " + AccountEntry.TABLE_NAME + " ON "
-                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + "=" + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID
-        );
-
-        // SELECT transactions_uid AS trans_acct_t_uid ,
-        //      SUBSTR (
-        //          MIN (
-        //              ( CASE WHEN IFNULL ( splits_memo , '' ) == '' THEN 'a' ELSE 'b' END ) || accounts_uid
-        //          ) ,
-        //          2
-        //      ) as trans_acct_a_uid ,
-        //   TOTAL ( CASE WHEN splits_type = 'DEBIT' THEN splits_amount ELSE - splits_amount END ) AS trans_acct_balance,
-        //   COUNT ( DISTINCT accounts_currency ) as trans_currency_count
-        //   FROM trans_split_acct GROUP BY transactions_uid
-        //
-        // This temporary view would pick one Account_UID for each
-        // Transaction, which can be used to order all transactions. If possible, account_uid of a split whose
-        // memo is null is select.
-        //
-        // Transaction balance is also picked out by this view
-        //
-        // a split without split memo is chosen if possible, in the following manner:
-        //   if the splits memo is null or empty string, attach an 'a' in front of the split account uid,
-        //   if not, attach a 'b' to the split account uid
-        //   pick the minimal value of the modified account uid (one of the ones begins with 'a', if exists)
-        //   use substr to get account uid
-
-        mDb.execSQL("CREATE TEMP VIEW IF NOT EXISTS trans_extra_info AS SELECT " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID +
-                " AS trans_acct_t_uid , SUBSTR ( MIN ( ( CASE WHEN IFNULL ( " + SplitEntry.TABLE_NAME + "_" +
-                SplitEntry.COLUMN_MEMO + " , '' ) == '' THEN 'a' ELSE 'b' END ) || " +
-                AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID +
-                " ) , 2 ) AS trans_acct_a_uid , TOTAL ( CASE WHEN " + SplitEntry.TABLE_NAME + "_" +
-                SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "+ SplitEntry.TABLE_NAME + "_" +
-                SplitEntry.COLUMN_VALUE_NUM + " ELSE - " + SplitEntry.TABLE_NAME + "_" +
-                SplitEntry.COLUMN_VALUE_NUM + " END ) * 1.0 / " + SplitEntry.TABLE_NAME + "_" +
-                SplitEntry.COLUMN_VALUE_DENOM + " AS trans_acct_balance , COUNT ( DISTINCT " +
-                AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_CURRENCY +
-                " ) AS trans_currency_count , COUNT (*) AS trans_split_count FROM trans_split_acct " +
-                " GROUP BY " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID
-        );
-    }
-
     /**
      * Checks if the database is open
      * @return <code>true</code> if the database is open, <code>false</code> otherwise
@@ -218,22 +149,26 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      */
     public void addRecord(@NonNull final Model model, UpdateMethod updateMethod){
         Log.d(LOG_TAG, String.format("Adding %s record to database: ", model.getClass().getSimpleName()));
-        switch(updateMethod){
+        SQLiteStatement statement = getStatement(updateMethod);
+        long startTime = QueryProfiler.startTiming();
+        synchronized(statement) {
+            setBindings(statement, model).execute();
+        }
+        QueryProfiler.record(mDb, mStatementSql.get(statement), startTime, 1);
+    }
+
+    /**
+     * Returns the statement for saving records with an update method
+     * @param updateMethod Method to use for saving records
+     */
+    private SQLiteStatement getStatement(UpdateMethod updateMethod) {
+        switch (updateMethod) {
             case insert:
-                synchronized(getInsertStatement()) {
-                    setBindings(getInsertStatement(), model).execute();
-                }
-                break;
+                return getInsertStatement();
             case update:
-                synchronized(getUpdateStatement()) {
-                    setBindings(getUpdateStatement(), model).execute();
-                }
-                break;
+                return getUpdateStatement();
             default:
-                synchronized(getReplaceStatement()) {
-                    setBindings(getReplaceStatement(), model).execute();
-                }
-                break;
+                return getReplaceStatement();
         }
     }
 
@@ -244,34 +179,127 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @return Number of rows affected in the database
      */
     private long doAddModels(@NonNull final List<Model> modelList, UpdateMethod updateMethod) {
+        if (updateMethod != UpdateMethod.update && modelList.size() > 1
+                && mMultiRowInsertsEnabled)
+            return doAddModelRows(modelList, updateMethod);
+
         long nRow = 0;
-        switch (updateMethod) {
-            case update:
-                synchronized(getUpdateStatement()) {
-                    for (Model model : modelList) {
-                        setBindings(getUpdateStatement(), model).execute();
-                        nRow++;
-                    }
+        SQLiteStatement statement = getStatement(updateMethod);
+        long startTime = QueryProfiler.startTiming();
+        synchronized(statement) {
+            for (Model model : modelList) {
+                setBindings(statement, model).execute();
+                nRow++;
+            }
+        }
+        QueryProfiler.record(mDb, mStatementSql.get(statement), startTime, nRow);
+        return nRow;
+    }
+
+    /**
+     * Persists the models with multi-row statements, each of them writing as many rows
+     * as fit in {@link #SQLITE_MAX_VARIABLE_NUMBER} placeholders
+     * @param modelList List of records
+     * @param updateMethod Either {@link UpdateMethod#insert} or {@link UpdateMethod#replace}
+     * @return Number of rows affected in the database
+     */
+    private long doAddModelRows(@NonNull final List<Model> modelList, UpdateMethod updateMethod) {
+        int columnCount = mColumns.length + 1;
+        int maxRows = SQLITE_MAX_VARIABLE_NUMBER / columnCount;
+        int size = modelList.size();
+        for (int start = 0; start < size; start += maxRows) {
+            int rowCount = Math.min(maxRows, size - start);
+            SQLiteStatement statement = getMultiRowStatement(updateMethod, rowCount);
+            long startTime = QueryProfiler.startTiming();
+            synchronized (statement) {
+                statement.clearBindings();
+                for (int row = 0; row < rowCount; row++) {
+                    bindRow(statement, row * columnCount, modelList.get(start + row));
                 }
-                break;
-            case insert:
-                synchronized(getInsertStatement()) {
-                    for (Model model : modelList) {
-                        setBindings(getInsertStatement(), model).execute();
-                        nRow++;
-                    }
+                statement.execute();
+            }
+            QueryProfiler.record(mDb, mStatementSql.get(statement), startTime, rowCount);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the compiled statement which writes {@code rowCount} records at once.
+     * <p>There is one statement per number of rows, so a bulk insert only compiles the statements
+     * for full batches and for the remaining records</p>
+     * @param updateMethod Either {@link UpdateMethod#insert} or {@link UpdateMethod#replace}
+     * @param rowCount Number of rows written by the statement
+     * @return Statement with {@code rowCount} groups of placeholders, in the order of {@link #mColumns} and the GUID
+     */
+    private SQLiteStatement getMultiRowStatement(UpdateMethod updateMethod, int rowCount) {
+        boolean insert = updateMethod == UpdateMethod.insert;
+        Map<Integer, SQLiteStatement> statements = insert ? mMultiRowInsertStatements : mMultiRowReplaceStatements;
+        synchronized (this) {
+            SQLiteStatement stmt = statements.get(rowCount);
+            if (stmt == null) {
+                String row = "( " + (new String(new char[mColumns.length]).replace("\0", "? , ")) + "?)";
+                StringBuilder sql = new StringBuilder(insert ? "INSERT INTO " : "REPLACE INTO ")
+                        .append(mTableName).append(" ( ")
+                        .append(TextUtils.join(" , ", mColumns)).append(" , ")
+                        .append(CommonColumns.COLUMN_UID)
+                        .append(" ) VALUES ")
+                        .append(row);
+                for (int i = 1; i < rowCount; i++) {
+                    sql.append(" , ").append(row);
                 }
-                break;
-            default:
-                synchronized(getReplaceStatement()) {
-                    for (Model model : modelList) {
-                        setBindings(getReplaceStatement(), model).execute();
-                        nRow++;
-                    }
+                stmt = compileStatement(sql.toString());
+                statements.put(rowCount, stmt);
+            }
+            return stmt;
+        }
+    }
+
+    /**
+     * Closes the statements compiled by this adapter. The database itself is left open.
+     * <p>This should be called before the database is closed. Statements which are needed again
+     * afterwards are compiled anew</p>
+     */
+    public void close() {
+        synchronized (this) {
+            List<SQLiteStatement> statements = new ArrayList<>(mMultiRowInsertStatements.values());
+            statements.addAll(mMultiRowReplaceStatements.values());
+            statements.add(mInsertStatement);
+            statements.add(mReplaceStatement);
+            statements.add(mUpdateStatement);
+            statements.add(mCountStatement);
+            mMultiRowInsertStatements.clear();
+            mMultiRowReplaceStatements.clear();
+            mInsertStatement = null;
+            mReplaceStatement = null;
+            mUpdateStatement = null;
+            mCountStatement = null;
+            for (SQLiteStatement statement : statements) {
+                if (statement != null) {
+                    mStatementSql.remove(statement);
+                    statement.close();
                 }
-                break;
+            }
         }
-        return nRow;
+    }
+
+    /**
+     * Compiles a statement and keeps its SQL, so that the statement can be profiled
+     * @param sql SQL of the statement
+     * @return Compiled statement
+     */
+    private SQLiteStatement compileStatement(String sql) {
+        SQLiteStatement statement = mDb.compileStatement(sql);
+        mStatementSql.put(statement, sql);
+        return statement;
+    }
+
+    /**
+     * Enables or disables multi-row statements in bulk inserts.
+     * They are enabled by default. When disabled, records are written one statement at a time
+     * @param enable {@code true} to write several rows per statement
+     */
+    public void enableMultiRowInserts(boolean enable) {
+        mMultiRowInsertsEnabled = enable;
     }
 
     /**
@@ -299,7 +327,7 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
             mDb.setTransactionSuccessful();
         }
         finally {
-            mDb.endTransaction();
+            endTransaction();
         }
 
         return nRow;
@@ -327,7 +355,7 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
                 stmt = mReplaceStatement;
                 if (stmt == null) {
                     mReplaceStatement = stmt
-                            = mDb.compileStatement("REPLACE INTO " + mTableName + " ( "
+                            = compileStatement("REPLACE INTO " + mTableName + " ( "
                             + TextUtils.join(" , ", mColumns) + " , "
                             + CommonColumns.COLUMN_UID
                             + " ) VALUES ( "
@@ -346,7 +374,7 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
                 stmt = mUpdateStatement;
                 if (stmt == null) {
                     mUpdateStatement = stmt
-                            = mDb.compileStatement("UPDATE " + mTableName + " SET "
+                            = compileStatement("UPDATE " + mTableName + " SET "
                             + TextUtils.join(" = ? , ", mColumns) + " = ? WHERE "
                             + CommonColumns.COLUMN_UID
                             + " = ?");
@@ -363,7 +391,7 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
                 stmt = mInsertStatement;
                 if (stmt == null) {
                     mInsertStatement = stmt
-                            = mDb.compileStatement("INSERT INTO " + mTableName + " ( "
+                            = compileStatement("INSERT INTO " + mTableName + " ( "
                             + TextUtils.join(" , ", mColumns) + " , "
                             + CommonColumns.COLUMN_UID
                             + " ) VALUES ( "
@@ -381,7 +409,21 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @param model Model from which to read bind attributes
      * @return SQL statement ready for execution
      */
-    protected abstract @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final Model model);
+    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final Model model) {
+        stmt.clearBindings();
+        bindRow(stmt, 0, model);
+        return stmt;
+    }
+
+    /**
+     * Binds the values from the model to one row of a statement, which may write several rows.
+     * <p>Values are bound in the order of the columns passed to the constructor, followed by the GUID.
+     * The bindings are cleared before the first row is bound, so null values may be left unbound</p>
+     * @param stmt SQL statement with one or more groups of placeholders
+     * @param offset Number of placeholders before those of the row
+     * @param model Model from which to read bind attributes
+     */
+    protected abstract void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final Model model);
 
     /**
      * Returns a model instance populated with data from the record with GUID {@code uid}
@@ -523,15 +565,37 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
 	 */
 	public boolean deleteRecord(long rowId){
         Log.d(LOG_TAG, "Deleting record with id " + rowId + " from " + mTableName);
-		return mDb.delete(mTableName, DatabaseSchema.CommonColumns._ID + "=" + rowId, null) > 0;
+		return delete(mTableName, DatabaseSchema.CommonColumns._ID + "=" + rowId, null) > 0;
 	}
 
+    /**
+     * Deletes rows from a table of the book, measured by the {@link QueryProfiler}
+     * @see SQLiteDatabase#delete(String, String, String[])
+     */
+    protected int delete(@NonNull String table, String whereClause, String[] whereArgs) {
+        long startTime = QueryProfiler.startTiming();
+        int count = mDb.delete(table, whereClause, whereArgs);
+        QueryProfiler.recordDelete(mDb, table, whereClause, startTime, count);
+        return count;
+    }
+
+    /**
+     * Updates rows of a table of the book, measured by the {@link QueryProfiler}
+     * @see SQLiteDatabase#update(String, ContentValues, String, String[])
+     */
+    protected int update(@NonNull String table, @NonNull ContentValues values, String whereClause, String[] whereArgs) {
+        long startTime = QueryProfiler.startTiming();
+        int count = mDb.update(table, values, whereClause, whereArgs);
+        QueryProfiler.recordUpdate(mDb, table, values, whereClause, startTime, count);
+        return count;
+    }
+
     /**
      * Deletes all records in the database
      * @return Number of deleted records
      */
     public int deleteAllRecords(){
-        return mDb.delete(mTableName, null, null);
+        return delete(mTableName, null, null);
     }
 
     /**
@@ -669,7 +733,7 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
         } else {
             contentValues.put(columnKey, newValue);
         }
-        return mDb.update(tableName, contentValues,
+        return update(tableName, contentValues,
                 DatabaseSchema.CommonColumns._ID + "=" + recordId, null);
     }
 
@@ -691,7 +755,7 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @return Number of records updated
      */
     public int updateRecord(@NonNull String uid, @NonNull ContentValues contentValues){
-        return mDb.update(mTableName, contentValues, CommonColumns.COLUMN_UID + "=?", new String[]{uid});
+        return update(mTableName, contentValues, CommonColumns.COLUMN_UID + "=?", new String[]{uid});
     }
 
     /**
@@ -709,7 +773,7 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
         } else {
             contentValues.put(columnKey, newValue);
         }
-        return mDb.update(mTableName, contentValues, where, whereArgs);
+        return update(mTableName, contentValues, where, whereArgs);
     }
 
     /**
@@ -771,9 +835,14 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @return Total number of records in the database
      */
     public long getRecordsCount(){
-        String sql = "SELECT COUNT(*) FROM " + mTableName;
-        SQLiteStatement statement = mDb.compileStatement(sql);
-        return statement.simpleQueryForLong();
+        synchronized (this) {
+            if (mCountStatement == null)
+                mCountStatement = compileStatement("SELECT COUNT(*) FROM " + mTableName);
+            long startTime = QueryProfiler.startTiming();
+            long count = mCountStatement.simpleQueryForLong();
+            QueryProfiler.record(mDb, mStatementSql.get(mCountStatement), startTime, 1);
+            return count;
+        }
     }
 
     /**
@@ -804,10 +873,67 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
         }
     }
 
+    /**
+     * Trades durability for speed while a whole book is imported in one transaction.
+     * <p>The rollback journal is kept in memory and the database file is not synced to disk.
+     * If the app dies during the import, the database being imported may be left corrupted,
+     * so this should only be used on a database which is not in use until the import has succeeded.
+     * The commits made in this mode are not synced either, see {@link #syncToDisk()}.
+     * Write-ahead logging is left alone, since it is managed by {@link SQLiteDatabase}.</p>
+     * <p>Like {@link #enableForeignKey(boolean)}, this has no effect inside a transaction.
+     * Disabling it restores the settings which were in place before</p>
+     * @param enable {@code true} before the import starts, {@code false} after it has ended
+     */
+    public void enableBulkImportMode(boolean enable) {
+        if (enable) {
+            mSynchronousBeforeImport = queryPragma("synchronous");
+            mJournalModeBeforeImport = queryPragma("journal_mode");
+            mDb.execSQL("PRAGMA synchronous=OFF;");
+            if (!"wal".equalsIgnoreCase(mJournalModeBeforeImport))
+                queryPragma("journal_mode=MEMORY");
+        } else {
+            if (mSynchronousBeforeImport != null)
+                mDb.execSQL("PRAGMA synchronous=" + mSynchronousBeforeImport + ";");
+            if (mJournalModeBeforeImport != null && !"wal".equalsIgnoreCase(mJournalModeBeforeImport))
+                queryPragma("journal_mode=" + mJournalModeBeforeImport);
+            mSynchronousBeforeImport = null;
+            mJournalModeBeforeImport = null;
+        }
+    }
+
+    /**
+     * Makes sure that everything committed so far has reached the disk.
+     * <p>Commits made in {@link #enableBulkImportMode(boolean) bulk import mode} are not synced.
+     * This rewrites the unchanged schema version in a transaction of its own, so that its commit syncs
+     * the database file with the current settings. It should be called once bulk import mode is disabled</p>
+     */
+    public void syncToDisk() {
+        mDb.setVersion(mDb.getVersion());
+    }
+
+    /**
+     * Runs a pragma which returns a value.
+     * <p>Such pragmas have to be run as queries, {@link SQLiteDatabase#execSQL(String)} rejects them</p>
+     * @param pragma Pragma without the leading {@code PRAGMA}
+     * @return First column of the first row returned, or {@code null} if there is none
+     */
+    private String queryPragma(String pragma) {
+        Cursor cursor = mDb.rawQuery("PRAGMA " + pragma, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Expose mDb.endTransaction()
+     * <p>Once the outermost transaction has ended, the balance changes made in it are notified.
+     * Adapters should end their transactions with this method rather than with mDb.endTransaction()</p>
      */
     public void endTransaction() {
         mDb.endTransaction();
+        if (!mDb.inTransaction())
+            SplitsDbAdapter.notifyPendingBalanceChanges(mDb);
     }
 }
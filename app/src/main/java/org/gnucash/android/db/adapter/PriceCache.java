@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db.adapter;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.util.Pair;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.gnucash.android.db.DatabaseSchema.PriceEntry;
+
+/**
+ * In-memory copy of the latest price of every commodity pair in a book.
+ * <p>The cache is built from a single scan of the prices table and is shared per database
+ * by {@link PricesDbAdapter#getPriceCache()}. It is discarded whenever prices are written.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class PriceCache {
+
+    /**
+     * Columns of the prices table which are needed to build the cache
+     */
+    static final String[] PROJECTION = new String[]{
+            PriceEntry.COLUMN_COMMODITY_UID,
+            PriceEntry.COLUMN_CURRENCY_UID,
+            PriceEntry.COLUMN_VALUE_NUM,
+            PriceEntry.COLUMN_VALUE_DENOM
+    };
+
+    /**
+     * Order in which the prices table has to be read, so that later prices replace earlier ones
+     */
+    static final String ORDER_BY = PriceEntry.COLUMN_DATE + " ASC";
+
+    /**
+     * Latest price of each pair of commodities, in the direction in which it was recorded.
+     * The key does not depend on the direction, see {@link #getKey(String, String)}
+     */
+    private final Map<String, LatestPrice> mPrices = new HashMap<>();
+
+    /**
+     * Builds the cache from a cursor over the prices table.
+     * <p>The cursor should contain the columns in {@link #PROJECTION} and be sorted by {@link #ORDER_BY}.
+     * It is not closed by the constructor</p>
+     * @param cursor Cursor to price records
+     */
+    PriceCache(@NonNull Cursor cursor){
+        int commodityUIDIndex = cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_COMMODITY_UID);
+        int currencyUIDIndex  = cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_CURRENCY_UID);
+        int valueNumIndex     = cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_VALUE_NUM);
+        int valueDenomIndex   = cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_VALUE_DENOM);
+        while (cursor.moveToNext()) {
+            String commodityUID = cursor.getString(commodityUIDIndex);
+            String currencyUID = cursor.getString(currencyUIDIndex);
+            mPrices.put(getKey(commodityUID, currencyUID), new LatestPrice(commodityUID,
+                    cursor.getLong(valueNumIndex), cursor.getLong(valueDenomIndex)));
+        }
+    }
+
+    /**
+     * Get the latest price for commodity / currency pair.
+     * <p>This returns the same values as {@link PricesDbAdapter#getPrice(String, String)}
+     * did before prices were cached: the price may have been recorded in either direction,
+     * and a pair of zeros is returned if there is no valid price.</p>
+     * @param commodityUID GUID of the commodity which is starting point for conversion
+     * @param currencyUID GUID of target commodity for the conversion
+     * @return The numerator/denominator pair for commodity / currency pair
+     */
+    public Pair<Long, Long> getPrice(@NonNull String commodityUID, @NonNull String currencyUID){
+        if (commodityUID.equals(currencyUID)) {
+            return new Pair<>(1L, 1L);
+        }
+        LatestPrice price = mPrices.get(getKey(commodityUID, currencyUID));
+        if (price == null || price.mValueNum < 0 || price.mValueDenom < 0) {
+            return new Pair<>(0L, 0L);
+        }
+        if (price.mCommodityUID.equals(commodityUID)) {
+            return new Pair<>(price.mValueNum, price.mValueDenom);
+        } else {
+            return new Pair<>(price.mValueDenom, price.mValueNum);
+        }
+    }
+
+    /**
+     * Returns the key of a pair of commodities, which is the same for both directions of conversion
+     */
+    private static String getKey(String commodityUID, String currencyUID){
+        return commodityUID.compareTo(currencyUID) < 0
+                ? commodityUID + "/" + currencyUID
+                : currencyUID + "/" + commodityUID;
+    }
+
+    private static class LatestPrice {
+        final String mCommodityUID;
+        final long mValueNum;
+        final long mValueDenom;
+
+        LatestPrice(String commodityUID, long valueNum, long valueDenom){
+            mCommodityUID = commodityUID;
+            mValueNum = valueNum;
+            mValueDenom = valueDenom;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.gnucash.android.db.adapter;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
@@ -10,12 +11,23 @@ import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.model.Price;
 import org.gnucash.android.util.TimestampHelper;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.gnucash.android.db.DatabaseSchema.PriceEntry;
 
 /**
  * Database adapter for prices
  */
 public class PricesDbAdapter extends DatabaseAdapter<Price> {
+
+    /**
+     * Cache of the latest prices, keyed by the path of the database of the book.
+     * <p>Several adapters can be open on the same database, so the cache is shared between them</p>
+     */
+    private static final Map<String, PriceCache> sPriceCaches = new HashMap<>();
+
     /**
      * Opens the database adapter with an existing database
      * @param db SQLiteDatabase object
@@ -37,22 +49,60 @@ public class PricesDbAdapter extends DatabaseAdapter<Price> {
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final Price price) {
-        stmt.clearBindings();
-        stmt.bindString(1, price.getCommodityUID());
-        stmt.bindString(2, price.getCurrencyUID());
-        stmt.bindString(3, price.getDate().toString());
+    public void addRecord(@NonNull Price price, UpdateMethod updateMethod) {
+        super.addRecord(price, updateMethod);
+        invalidatePriceCache();
+    }
+
+    @Override
+    public long bulkAddRecords(@NonNull List<Price> priceList, UpdateMethod updateMethod) {
+        long nRow = super.bulkAddRecords(priceList, updateMethod);
+        invalidatePriceCache();
+        return nRow;
+    }
+
+    @Override
+    public int updateRecord(@NonNull String uid, @NonNull ContentValues contentValues) {
+        int count = super.updateRecord(uid, contentValues);
+        invalidatePriceCache();
+        return count;
+    }
+
+    @Override
+    public int updateRecords(String where, String[] whereArgs, @NonNull String columnKey, String newValue) {
+        int count = super.updateRecords(where, whereArgs, columnKey, newValue);
+        invalidatePriceCache();
+        return count;
+    }
+
+    @Override
+    public boolean deleteRecord(long rowId) {
+        boolean deleted = super.deleteRecord(rowId);
+        invalidatePriceCache();
+        return deleted;
+    }
+
+    @Override
+    public int deleteAllRecords() {
+        int count = super.deleteAllRecords();
+        invalidatePriceCache();
+        return count;
+    }
+
+    @Override
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final Price price) {
+        stmt.bindString(offset + 1, price.getCommodityUID());
+        stmt.bindString(offset + 2, price.getCurrencyUID());
+        stmt.bindString(offset + 3, price.getDate().toString());
         if (price.getSource() != null) {
-            stmt.bindString(4, price.getSource());
+            stmt.bindString(offset + 4, price.getSource());
         }
         if (price.getType() != null) {
-            stmt.bindString(5, price.getType());
+            stmt.bindString(offset + 5, price.getType());
         }
-        stmt.bindLong(6, price.getValueNum());
-        stmt.bindLong(7, price.getValueDenom());
-        stmt.bindString(8, price.getUID());
-
-        return stmt;
+        stmt.bindLong(offset + 6, price.getValueNum());
+        stmt.bindLong(offset + 7, price.getValueDenom());
+        stmt.bindString(offset + 8, price.getUID());
     }
 
     @Override
@@ -89,39 +139,48 @@ public class PricesDbAdapter extends DatabaseAdapter<Price> {
      * @return The numerator/denominator pair for commodity / currency pair
      */
     public Pair<Long, Long> getPrice(@NonNull String commodityUID, @NonNull String currencyUID) {
-        Pair<Long, Long> pairZero = new Pair<>(0L, 0L);
-        if (commodityUID.equals(currencyUID))
-        {
-            return new Pair<Long, Long>(1L, 1L);
-        }
-        Cursor cursor = mDb.query(PriceEntry.TABLE_NAME, null,
-                // the commodity and currency can be swapped
-                "( " + PriceEntry.COLUMN_COMMODITY_UID + " = ? AND " + PriceEntry.COLUMN_CURRENCY_UID + " = ? ) OR ( "
-                + PriceEntry.COLUMN_COMMODITY_UID + " = ? AND " + PriceEntry.COLUMN_CURRENCY_UID + " = ? )",
-                new String[]{commodityUID, currencyUID, currencyUID, commodityUID}, null, null,
-                // only get the latest price
-                PriceEntry.COLUMN_DATE + " DESC", "1");
-        try {
-            if (cursor.moveToNext()) {
-                String commodityUIDdb = cursor.getString(cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_COMMODITY_UID));
-                long valueNum     = cursor.getLong(cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_VALUE_NUM));
-                long valueDenom   = cursor.getLong(cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_VALUE_DENOM));
-                if (valueNum < 0 || valueDenom < 0) {
-                    // this should not happen
-                    return pairZero;
-                }
-                if (!commodityUIDdb.equals(commodityUID)) {
-                    // swap Num and denom
-                    long t = valueNum;
-                    valueNum = valueDenom;
-                    valueDenom = t;
+        return getPriceCache().getPrice(commodityUID, currencyUID);
+    }
+
+    /**
+     * Returns the latest prices of the book.
+     * <p>The prices are read once and cached until prices are added, modified or deleted</p>
+     * @return Price cache of the database
+     */
+    public PriceCache getPriceCache(){
+        String key = mDb.getPath();
+        synchronized (sPriceCaches) {
+            PriceCache priceCache = sPriceCaches.get(key);
+            if (priceCache == null) {
+                Cursor cursor = mDb.query(PriceEntry.TABLE_NAME, PriceCache.PROJECTION,
+                        null, null, null, null, PriceCache.ORDER_BY);
+                try {
+                    priceCache = new PriceCache(cursor);
+                } finally {
+                    cursor.close();
                 }
-                return new Pair<Long, Long>(valueNum, valueDenom);
-            } else {
-                return pairZero;
+                sPriceCaches.put(key, priceCache);
             }
-        } finally {
-            cursor.close();
+            return priceCache;
+        }
+    }
+
+    /**
+     * Discards the cached prices of the book, so that they are read again on next access.
+     * <p>This should be called whenever the prices table is modified</p>
+     */
+    public void invalidatePriceCache(){
+        invalidatePriceCache(mDb.getPath());
+    }
+
+    /**
+     * Discards the cached prices of a book database.
+     * <p>This is for adapters which modify the prices table without going through this adapter</p>
+     * @param databasePath Path of the book database
+     */
+    static void invalidatePriceCache(@NonNull String databasePath){
+        synchronized (sPriceCaches) {
+            sPriceCaches.remove(databasePath);
         }
     }
 }
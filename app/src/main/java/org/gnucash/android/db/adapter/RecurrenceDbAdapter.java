@@ -80,20 +80,17 @@ public class RecurrenceDbAdapter extends DatabaseAdapter<Recurrence> {
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final Recurrence recurrence) {
-        stmt.clearBindings();
-        stmt.bindLong(1, recurrence.getMultiplier());
-        stmt.bindString(2, recurrence.getPeriodType().name());
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final Recurrence recurrence) {
+        stmt.bindLong(offset + 1, recurrence.getMultiplier());
+        stmt.bindString(offset + 2, recurrence.getPeriodType().name());
         if (!recurrence.getByDays().isEmpty())
-            stmt.bindString(3, byDaysToString(recurrence.getByDays()));
+            stmt.bindString(offset + 3, byDaysToString(recurrence.getByDays()));
         //recurrence should always have a start date
-        stmt.bindString(4, recurrence.getPeriodStart().toString());
+        stmt.bindString(offset + 4, recurrence.getPeriodStart().toString());
 
         if (recurrence.getPeriodEnd() != null)
-            stmt.bindString(5, recurrence.getPeriodEnd().toString());
-        stmt.bindString(6, recurrence.getUID());
-
-        return stmt;
+            stmt.bindString(offset + 5, recurrence.getPeriodEnd().toString());
+        stmt.bindString(offset + 6, recurrence.getUID());
     }
 
     /**
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db.adapter;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.Pair;
+
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.MoneyAccumulator;
+import org.gnucash.android.ui.report.ReportsActivity.GroupInterval;
+import org.joda.time.LocalDateTime;
+import org.joda.time.Months;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
+import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+
+/**
+ * Computes the balances of accounts over a series of time periods for the reports.
+ * <p>All balances of a report are read with a single query which groups the splits by account
+ * and by period, instead of computing the balance of every account in every period separately.</p>
+ * <p>Sub-accounts are not included in the balance of an account.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class ReportAggregator {
+
+    private static final String LOG_TAG = "ReportAggregator";
+
+    private final SQLiteDatabase mDb;
+    private final AccountsDbAdapter mAccountsDbAdapter;
+
+    /**
+     * Creates an aggregator for the database of the accounts adapter
+     * @param accountsDbAdapter Accounts database adapter
+     */
+    public ReportAggregator(@NonNull AccountsDbAdapter accountsDbAdapter){
+        mAccountsDbAdapter = accountsDbAdapter;
+        mDb = accountsDbAdapter.mDb;
+    }
+
+    /**
+     * Returns the balances of accounts in each period within a time range.
+     * <p>For {@link GroupInterval#MONTH}, {@link GroupInterval#QUARTER} and {@link GroupInterval#YEAR},
+     * the range is extended to whole periods and both ends of the range are required.
+     * With {@link GroupInterval#ALL} there is a single period covering the range, and either end
+     * of the range can be -1 for no bound.</p>
+     * @param accountUIDs GUIDs of the accounts
+     * @param groupInterval Length of the periods
+     * @param startTimestamp Start of the time range in milliseconds
+     * @param endTimestamp End of the time range in milliseconds
+     * @param currencyCode Currency to which all balances are converted
+     * @return Balances of every account in every period
+     * @throws IllegalArgumentException if the group interval is not supported or the range is not bounded
+     */
+    public BalanceMatrix getBalances(@NonNull List<String> accountUIDs, @NonNull GroupInterval groupInterval,
+                                     long startTimestamp, long endTimestamp, @NonNull String currencyCode){
+        int firstPeriod = 0;
+        int periodCount = 1;
+        if (groupInterval != GroupInterval.ALL) {
+            if (startTimestamp == -1 || endTimestamp == -1)
+                throw new IllegalArgumentException("Time range is required for grouping by " + groupInterval);
+            LocalDateTime start = new LocalDateTime(startTimestamp);
+            firstPeriod = getPeriod(start, groupInterval);
+            periodCount = getPeriod(new LocalDateTime(endTimestamp), groupInterval) - firstPeriod + 1;
+            startTimestamp = getPeriodStart(start, groupInterval).toDate().getTime();
+            endTimestamp = getPeriodStart(start, groupInterval).plus(getPeriodLength(groupInterval).multipliedBy(periodCount))
+                    .toDate().getTime() - 1;
+        }
+
+        BalanceMatrix matrix = new BalanceMatrix(accountUIDs, periodCount, Money.createZeroInstance(currencyCode));
+        if (accountUIDs.isEmpty() || periodCount <= 0)
+            return matrix;
+
+        String selection = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " = 0 AND "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID
+                + " IN ( '" + TextUtils.join("' , '", accountUIDs) + "' )";
+        List<String> selectionArgs = new ArrayList<>();
+        if (startTimestamp != -1) {
+            selection += " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " >= ?";
+            selectionArgs.add(String.valueOf(startTimestamp));
+        }
+        if (endTimestamp != -1) {
+            selection += " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " <= ?";
+            selectionArgs.add(String.valueOf(endTimestamp));
+        }
+
+        Cursor cursor = mDb.query(SplitEntry.TABLE_NAME + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID,
+                new String[]{SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID,
+                        getPeriodExpression(groupInterval) + " AS period",
+                        "SUM ( CASE WHEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "
+                                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " ELSE - "
+                                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " END )",
+                        SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM},
+                selection, selectionArgs.toArray(new String[selectionArgs.size()]),
+                SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " , period , "
+                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM,
+                null, null);
+
+        BigDecimal[][] amounts = new BigDecimal[accountUIDs.size()][periodCount];
+        try {
+            while (cursor.moveToNext()) {
+                int accountIndex = matrix.indexOf(cursor.getString(0));
+                int period = cursor.getInt(1) - firstPeriod;
+                if (accountIndex < 0 || period < 0 || period >= periodCount)
+                    continue;
+                BigDecimal amount = Money.getBigDecimal(cursor.getLong(2), cursor.getLong(3));
+                BigDecimal total = amounts[accountIndex][period];
+                amounts[accountIndex][period] = total == null ? amount : total.add(amount);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        convertAmounts(matrix, amounts, currencyCode);
+        return matrix;
+    }
+
+    /**
+     * Converts the amounts of each account to {@code currencyCode} and stores them in the matrix.
+     * <p>The price is looked up once for each currency, not for every amount.
+     * Amounts for which no price exists are left out, as are amounts in the custom currency "XXX".</p>
+     */
+    private void convertAmounts(BalanceMatrix matrix, BigDecimal[][] amounts, String currencyCode){
+        AccountTree accountTree = mAccountsDbAdapter.getAccountTree();
+        CommoditiesDbAdapter commoditiesDbAdapter = null;
+        PriceCache priceCache = null;
+        Commodity commodity = null;
+        String currencyUID = null;
+        Map<String, Pair<Long, Long>> prices = new HashMap<>();
+
+        for (int accountIndex = 0; accountIndex < amounts.length; accountIndex++) {
+            String accountUID = matrix.mAccountUIDs.get(accountIndex);
+            String accountCurrencyCode = accountTree.getCurrencyCode(accountUID);
+            AccountType accountType = accountTree.getAccountType(accountUID);
+            if (accountCurrencyCode == null || accountCurrencyCode.equals("XXX"))
+                continue;
+
+            Pair<Long, Long> price = prices.get(accountCurrencyCode);
+            if (price == null && !accountCurrencyCode.equals(currencyCode)) {
+                if (commoditiesDbAdapter == null) {
+                    BookSession session = mAccountsDbAdapter.mBookSession;
+                    commoditiesDbAdapter = session != null
+                            ? session.getCommoditiesDbAdapter() : new CommoditiesDbAdapter(mDb);
+                    priceCache = (session != null ? session.getPricesDbAdapter() : new PricesDbAdapter(mDb))
+                            .getPriceCache();
+                    commodity = commoditiesDbAdapter.getCommodity(currencyCode);
+                    currencyUID = commoditiesDbAdapter.getCommodityUID(currencyCode);
+                }
+                price = priceCache.getPrice(commoditiesDbAdapter.getCommodityUID(accountCurrencyCode), currencyUID);
+                prices.put(accountCurrencyCode, price);
+                Log.d(LOG_TAG, "Price of " + accountCurrencyCode + " in " + currencyCode + ": " + price.first + "/" + price.second);
+            }
+            if (price != null && (price.first <= 0 || price.second <= 0))
+                continue; // no price exists, just ignore it
+
+            for (int period = 0; period < amounts[accountIndex].length; period++) {
+                BigDecimal amount = amounts[accountIndex][period];
+                if (amount == null || amount.signum() == 0)
+                    continue;
+                if (!accountType.hasDebitNormalBalance())
+                    amount = amount.negate();
+                Money balance = price == null
+                        ? new Money(amount, matrix.mZero.getCommodity())
+                        : new Money(amount.multiply(new BigDecimal(price.first))
+                                .divide(new BigDecimal(price.second), commodity.getSmallestFractionDigits(), BigDecimal.ROUND_HALF_EVEN),
+                                commodity);
+                matrix.mBalances[accountIndex][period] = balance;
+            }
+        }
+    }
+
+    /**
+     * Returns the SQL expression for the number of the period in which a transaction falls.
+     * <p>Periods are numbered consecutively, in the same way as {@link #getPeriod(LocalDateTime, GroupInterval)}</p>
+     */
+    private static String getPeriodExpression(GroupInterval groupInterval){
+        String time = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " / 1000 , 'unixepoch' , 'localtime'";
+        String year = "CAST ( strftime ( '%Y' , " + time + " ) AS INTEGER )";
+        String month = "CAST ( strftime ( '%m' , " + time + " ) AS INTEGER )";
+        switch (groupInterval) {
+            case MONTH:
+                return "( " + year + " * 12 + " + month + " - 1 )";
+            case QUARTER:
+                return "( " + year + " * 4 + ( " + month + " - 1 ) / 3 )";
+            case YEAR:
+                return year;
+            case ALL:
+                return "0";
+            default:
+                throw new IllegalArgumentException("Unsupported group interval " + groupInterval);
+        }
+    }
+
+    private static int getPeriod(LocalDateTime date, GroupInterval groupInterval){
+        switch (groupInterval) {
+            case MONTH:
+                return date.getYear() * 12 + date.getMonthOfYear() - 1;
+            case QUARTER:
+                return date.getYear() * 4 + (date.getMonthOfYear() - 1) / 3;
+            case YEAR:
+                return date.getYear();
+            default:
+                throw new IllegalArgumentException("Unsupported group interval " + groupInterval);
+        }
+    }
+
+    private static LocalDateTime getPeriodStart(LocalDateTime date, GroupInterval groupInterval){
+        LocalDateTime monthStart = date.withDayOfMonth(1).withMillisOfDay(0);
+        switch (groupInterval) {
+            case MONTH:
+                return monthStart;
+            case QUARTER:
+                return monthStart.withMonthOfYear((date.getMonthOfYear() - 1) / 3 * 3 + 1);
+            case YEAR:
+                return monthStart.withMonthOfYear(1);
+            default:
+                throw new IllegalArgumentException("Unsupported group interval " + groupInterval);
+        }
+    }
+
+    private static Months getPeriodLength(GroupInterval groupInterval){
+        switch (groupInterval) {
+            case MONTH:
+                return Months.ONE;
+            case QUARTER:
+                return Months.THREE;
+            case YEAR:
+                return Months.TWELVE;
+            default:
+                throw new IllegalArgumentException("Unsupported group interval " + groupInterval);
+        }
+    }
+
+    /**
+     * Balances of a list of accounts in consecutive periods.
+     * <p>Every account has a balance in every period, which is zero if the account has no splits in that period.
+     * All balances are in the same currency.</p>
+     */
+    public static class BalanceMatrix {
+        private final List<String> mAccountUIDs;
+        private final Map<String, Integer> mAccountIndexes;
+        private final Money[][] mBalances;
+        private final Money mZero;
+
+        BalanceMatrix(List<String> accountUIDs, int periodCount, Money zero){
+            mAccountUIDs = Collections.unmodifiableList(new ArrayList<>(accountUIDs));
+            mAccountIndexes = new HashMap<>(accountUIDs.size());
+            for (int i = 0; i < accountUIDs.size(); i++) {
+                mAccountIndexes.put(accountUIDs.get(i), i);
+            }
+            mZero = zero;
+            mBalances = new Money[accountUIDs.size()][Math.max(periodCount, 0)];
+            for (Money[] row : mBalances) {
+                Arrays.fill(row, zero);
+            }
+        }
+
+        int indexOf(String accountUID){
+            Integer index = mAccountIndexes.get(accountUID);
+            return index == null ? -1 : index;
+        }
+
+        /**
+         * Returns the GUIDs of the accounts in the matrix
+         * @return Unmodifiable list of account GUIDs
+         */
+        public List<String> getAccountUIDs(){
+            return mAccountUIDs;
+        }
+
+        /**
+         * Returns the number of periods in the matrix
+         * @return Number of periods
+         */
+        public int getPeriodCount(){
+            return mBalances.length == 0 ? 0 : mBalances[0].length;
+        }
+
+        /**
+         * Returns the balance of an account in a period
+         * @param accountUID GUID of the account
+         * @param period Index of the period, starting at 0 for the period containing the start of the time range
+         * @return Balance of the account in the period
+         * @throws IllegalArgumentException if the account is not part of the matrix
+         */
+        public Money getBalance(String accountUID, int period){
+            int accountIndex = indexOf(accountUID);
+            if (accountIndex < 0)
+                throw new IllegalArgumentException("Account " + accountUID + " is not part of the report");
+            return mBalances[accountIndex][period];
+        }
+
+        /**
+         * Returns the sum of the balances of some accounts in a period
+         * @param accountUIDs GUIDs of the accounts, which must be part of the matrix
+         * @param period Index of the period
+         * @return Total balance of the accounts in the period
+         */
+        public Money getTotal(Collection<String> accountUIDs, int period){
+            MoneyAccumulator total = new MoneyAccumulator(mZero.getCommodity());
+            for (String accountUID : accountUIDs) {
+                total.add(getBalance(accountUID, period));
+            }
+            return total.toMoney();
+        }
+    }
+}
@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static org.gnucash.android.db.DatabaseSchema.ScheduledActionEntry;
+import static org.gnucash.android.db.DatabaseSchema.UpcomingOccurrenceEntry;
 
 /**
  * Database adapter for fetching/saving/modifying scheduled events
@@ -39,8 +40,20 @@ import static org.gnucash.android.db.DatabaseSchema.ScheduledActionEntry;
  */
 public class ScheduledActionDbAdapter extends DatabaseAdapter<ScheduledAction> {
 
+    /**
+     * How far ahead the occurrences of scheduled actions are expanded, in milliseconds
+     */
+    public static final long UPCOMING_OCCURRENCES_HORIZON = 366L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Maximum number of occurrences which are expanded for a scheduled action
+     */
+    public static final int MAX_UPCOMING_OCCURRENCES = 400;
+
     private RecurrenceDbAdapter mRecurrenceDbAdapter;
 
+    private SQLiteStatement mInsertOccurrenceStatement;
+
     public ScheduledActionDbAdapter(SQLiteDatabase db, RecurrenceDbAdapter recurrenceDbAdapter){
         super(db, ScheduledActionEntry.TABLE_NAME,  new String[]{
                 ScheduledActionEntry.COLUMN_ACTION_UID        ,
@@ -74,8 +87,15 @@ public class ScheduledActionDbAdapter extends DatabaseAdapter<ScheduledAction> {
 
     @Override
     public void addRecord(@NonNull ScheduledAction scheduledAction, UpdateMethod updateMethod) {
-        mRecurrenceDbAdapter.addRecord(scheduledAction.getRecurrence(), updateMethod);
-        super.addRecord(scheduledAction, updateMethod);
+        mDb.beginTransaction();
+        try {
+            mRecurrenceDbAdapter.addRecord(scheduledAction.getRecurrence(), updateMethod);
+            super.addRecord(scheduledAction, updateMethod);
+            refreshUpcomingOccurrences(scheduledAction);
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
     }
 
     @Override
@@ -89,7 +109,17 @@ public class ScheduledActionDbAdapter extends DatabaseAdapter<ScheduledAction> {
         long nRecurrences = mRecurrenceDbAdapter.bulkAddRecords(recurrenceList, updateMethod);
         Log.d(LOG_TAG, String.format("Added %d recurrences for scheduled actions", nRecurrences));
 
-        return super.bulkAddRecords(scheduledActions, updateMethod);
+        long nRows = super.bulkAddRecords(scheduledActions, updateMethod);
+        mDb.beginTransaction();
+        try {
+            for (ScheduledAction scheduledAction : scheduledActions) {
+                refreshUpcomingOccurrences(scheduledAction);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+        return nRows;
     }
 
     /**
@@ -104,12 +134,10 @@ public class ScheduledActionDbAdapter extends DatabaseAdapter<ScheduledAction> {
     public long updateRecurrenceAttributes(ScheduledAction scheduledAction){
         //since we are updating, first fetch the existing recurrence UID and set it to the object
         //so that it will be updated and not a new one created
-        RecurrenceDbAdapter recurrenceDbAdapter = new RecurrenceDbAdapter(mDb);
-        String recurrenceUID = recurrenceDbAdapter.getAttribute(scheduledAction.getUID(), ScheduledActionEntry.COLUMN_RECURRENCE_UID);
+        String recurrenceUID = mRecurrenceDbAdapter.getAttribute(scheduledAction.getUID(), ScheduledActionEntry.COLUMN_RECURRENCE_UID);
 
         Recurrence recurrence = scheduledAction.getRecurrence();
         recurrence.setUID(recurrenceUID);
-        recurrenceDbAdapter.addRecord(recurrence, UpdateMethod.update);
 
         ContentValues contentValues = new ContentValues();
         extractBaseModelAttributes(contentValues, scheduledAction);
@@ -121,34 +149,158 @@ public class ScheduledActionDbAdapter extends DatabaseAdapter<ScheduledAction> {
         Log.d(LOG_TAG, "Updating scheduled event recurrence attributes");
         String where = ScheduledActionEntry.COLUMN_UID + "=?";
         String[] whereArgs = new String[]{scheduledAction.getUID()};
-        return mDb.update(ScheduledActionEntry.TABLE_NAME, contentValues, where, whereArgs);
+        long nRows;
+        mDb.beginTransaction();
+        try {
+            mRecurrenceDbAdapter.addRecord(recurrence, UpdateMethod.update);
+            nRows = update(ScheduledActionEntry.TABLE_NAME, contentValues, where, whereArgs);
+            //the execution count and last run of the scheduled action are only known to the database
+            refreshUpcomingOccurrences(getRecord(scheduledAction.getUID()));
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+        return nRows;
+    }
+
+    /**
+     * Replaces the upcoming occurrences of a scheduled action with those computed from its current state.
+     * <p>This should be called whenever the schedule, the execution count or the last run of the
+     * scheduled action have changed. The scheduled action must already be saved in the database</p>
+     * @param scheduledAction Scheduled action
+     * @see ScheduledAction#computeUpcomingExecutionTimes(long, int)
+     */
+    public void refreshUpcomingOccurrences(@NonNull ScheduledAction scheduledAction) {
+        //the service only runs scheduled actions which have occurrences, so never leave them deleted
+        mDb.beginTransaction();
+        try {
+            delete(UpcomingOccurrenceEntry.TABLE_NAME,
+                    UpcomingOccurrenceEntry.COLUMN_SCHEDX_ACTION_UID + "=?", new String[]{scheduledAction.getUID()});
+            if (scheduledAction.isEnabled())
+                insertUpcomingOccurrences(scheduledAction, System.currentTimeMillis() + UPCOMING_OCCURRENCES_HORIZON);
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * Recomputes the upcoming occurrences of all scheduled actions.
+     * <p>This moves the horizon of the occurrences forward, and is run by the daily maintenance of the book</p>
+     */
+    public void refreshAllUpcomingOccurrences() {
+        long untilTime = System.currentTimeMillis() + UPCOMING_OCCURRENCES_HORIZON;
+        mDb.beginTransaction();
+        try {
+            delete(UpcomingOccurrenceEntry.TABLE_NAME, null, null);
+            for (ScheduledAction scheduledAction : getAllEnabledScheduledActions()) {
+                insertUpcomingOccurrences(scheduledAction, untilTime);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    private void insertUpcomingOccurrences(ScheduledAction scheduledAction, long untilTime) {
+        SQLiteStatement statement = getInsertOccurrenceStatement();
+        int executionNumber = scheduledAction.getExecutionCount();
+        List<Long> times = scheduledAction.computeUpcomingExecutionTimes(untilTime, MAX_UPCOMING_OCCURRENCES);
+        //the adapter is shared by the threads of the book session
+        synchronized (statement) {
+            for (long time : times) {
+                statement.clearBindings();
+                statement.bindString(1, scheduledAction.getUID());
+                statement.bindLong(2, ++executionNumber);
+                statement.bindLong(3, time);
+                statement.execute();
+            }
+        }
+    }
+
+    private synchronized SQLiteStatement getInsertOccurrenceStatement() {
+        if (mInsertOccurrenceStatement == null) {
+            mInsertOccurrenceStatement = mDb.compileStatement("INSERT INTO " + UpcomingOccurrenceEntry.TABLE_NAME + " ( "
+                    + UpcomingOccurrenceEntry.COLUMN_SCHEDX_ACTION_UID + " , "
+                    + UpcomingOccurrenceEntry.COLUMN_EXECUTION_NUMBER + " , "
+                    + UpcomingOccurrenceEntry.COLUMN_TIME + " ) VALUES ( ? , ? , ? )");
+        }
+        return mInsertOccurrenceStatement;
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final ScheduledAction schedxAction) {
-        stmt.clearBindings();
-        stmt.bindString(1, schedxAction.getActionUID());
-        stmt.bindString(2, schedxAction.getActionType().name());
-        stmt.bindLong(3,   schedxAction.getStartTime());
-        stmt.bindLong(4, schedxAction.getEndTime());
-        stmt.bindLong(5, schedxAction.getLastRunTime());
-        stmt.bindLong(6, schedxAction.isEnabled() ? 1 : 0);
-        stmt.bindString(7, schedxAction.getCreatedTimestamp().toString());
+    public void close() {
+        synchronized (this) {
+            if (mInsertOccurrenceStatement != null) {
+                mInsertOccurrenceStatement.close();
+                mInsertOccurrenceStatement = null;
+            }
+        }
+        super.close();
+    }
+
+    /**
+     * Returns the enabled scheduled actions which have an occurrence due up to a time.
+     * <p>Scheduled actions whose start time or execution limit prevents them from running have no occurrences,
+     * so they are not returned</p>
+     * @param time Time in milliseconds since Epoch
+     * @return List of scheduled actions which are due
+     */
+    public List<ScheduledAction> getScheduledActionsDueBefore(long time) {
+        Cursor cursor = mDb.query(mTableName, null,
+                ScheduledActionEntry.COLUMN_ENABLED + "=1 AND " + ScheduledActionEntry.COLUMN_UID + " IN ( SELECT "
+                        + UpcomingOccurrenceEntry.COLUMN_SCHEDX_ACTION_UID + " FROM " + UpcomingOccurrenceEntry.TABLE_NAME
+                        + " WHERE " + UpcomingOccurrenceEntry.COLUMN_TIME + " <= ? )",
+                new String[]{Long.toString(time)}, null, null, null);
+        List<ScheduledAction> scheduledActions = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                scheduledActions.add(buildModelInstance(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return scheduledActions;
+    }
+
+    /**
+     * Returns a cursor to the occurrences of scheduled actions which are due in a time range, earliest first.
+     * <p>The occurrences only cover {@link #UPCOMING_OCCURRENCES_HORIZON} ahead and at most
+     * {@link #MAX_UPCOMING_OCCURRENCES} per scheduled action</p>
+     * @param startTime Start of the range in milliseconds since Epoch, inclusive
+     * @param endTime End of the range in milliseconds since Epoch, inclusive
+     * @return Cursor with the columns of {@link UpcomingOccurrenceEntry}
+     */
+    public Cursor fetchUpcomingOccurrences(long startTime, long endTime) {
+        return mDb.query(UpcomingOccurrenceEntry.TABLE_NAME, null,
+                UpcomingOccurrenceEntry.COLUMN_TIME + " BETWEEN ? AND ?",
+                new String[]{Long.toString(startTime), Long.toString(endTime)},
+                null, null, UpcomingOccurrenceEntry.COLUMN_TIME + " ASC");
+    }
+
+    @Override
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull final ScheduledAction schedxAction) {
+        stmt.bindString(offset + 1, schedxAction.getActionUID());
+        stmt.bindString(offset + 2, schedxAction.getActionType().name());
+        stmt.bindLong(offset + 3,   schedxAction.getStartTime());
+        stmt.bindLong(offset + 4, schedxAction.getEndTime());
+        stmt.bindLong(offset + 5, schedxAction.getLastRunTime());
+        stmt.bindLong(offset + 6, schedxAction.isEnabled() ? 1 : 0);
+        stmt.bindString(offset + 7, schedxAction.getCreatedTimestamp().toString());
         if (schedxAction.getTag() == null)
             stmt.bindNull(8);
         else
-            stmt.bindString(8, schedxAction.getTag());
-        stmt.bindString(9, Integer.toString(schedxAction.getTotalPlannedExecutionCount()));
-        stmt.bindString(10, schedxAction.getRecurrence().getUID());
-        stmt.bindLong(11,   schedxAction.shouldAutoCreate() ? 1 : 0);
-        stmt.bindLong(12,   schedxAction.shouldAutoNotify() ? 1 : 0);
-        stmt.bindLong(13,   schedxAction.getAdvanceCreateDays());
-        stmt.bindLong(14,   schedxAction.getAdvanceNotifyDays());
-        stmt.bindString(15, schedxAction.getTemplateAccountUID());
-
-        stmt.bindString(16, Integer.toString(schedxAction.getExecutionCount()));
-        stmt.bindString(17, schedxAction.getUID());
-        return stmt;
+            stmt.bindString(offset + 8, schedxAction.getTag());
+        stmt.bindString(offset + 9, Integer.toString(schedxAction.getTotalPlannedExecutionCount()));
+        stmt.bindString(offset + 10, schedxAction.getRecurrence().getUID());
+        stmt.bindLong(offset + 11,   schedxAction.shouldAutoCreate() ? 1 : 0);
+        stmt.bindLong(offset + 12,   schedxAction.shouldAutoNotify() ? 1 : 0);
+        stmt.bindLong(offset + 13,   schedxAction.getAdvanceCreateDays());
+        stmt.bindLong(offset + 14,   schedxAction.getAdvanceNotifyDays());
+        stmt.bindString(offset + 15, schedxAction.getTemplateAccountUID());
+
+        stmt.bindString(offset + 16, Integer.toString(schedxAction.getExecutionCount()));
+        stmt.bindString(offset + 17, schedxAction.getUID());
     }
     /**
      * Builds a {@link org.gnucash.android.model.ScheduledAction} instance from a row to cursor in the database.
@@ -22,22 +22,32 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.Pair;
 
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.QueryProfiler;
 import org.gnucash.android.model.Commodity;
 import org.gnucash.android.model.Money;
+import org.gnucash.android.model.MoneyAccumulator;
 import org.gnucash.android.model.Split;
 import org.gnucash.android.model.TransactionType;
 import org.gnucash.android.util.TimestampHelper;
 
+import java.io.File;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import static org.gnucash.android.db.DatabaseSchema.AccountBalanceEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
 
@@ -50,6 +60,49 @@ import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
  */
 public class SplitsDbAdapter extends DatabaseAdapter<Split> {
 
+    /**
+     * Listener for changes of the balances of accounts, in any book
+     * @see #setOnBalancesChangedListener(OnBalancesChangedListener)
+     */
+    public interface OnBalancesChangedListener {
+        /**
+         * Called after the balances of accounts have been recomputed, on the thread which modified the splits.
+         * If the splits were modified inside a database transaction, this is only called once
+         * the outermost transaction has ended, so that readers on other connections see the changes
+         * @param bookUID GUID of the book of the accounts
+         * @param accountUIDs GUIDs of the accounts whose splits changed, or {@code null} if the balances
+         *                    of all accounts have been recomputed
+         */
+        void onBalancesChanged(String bookUID, @Nullable Collection<String> accountUIDs);
+    }
+
+    private static volatile OnBalancesChangedListener sBalancesChangedListener;
+
+    /**
+     * Balance changes made in database transactions of the current thread which have not ended yet,
+     * by book GUID. A {@code null} set of accounts stands for all accounts of the book
+     * @see #notifyPendingBalanceChanges(SQLiteDatabase)
+     */
+    private static final ThreadLocal<Map<String, Set<String>>> sPendingBalanceChanges =
+            new ThreadLocal<Map<String, Set<String>>>() {
+                @Override
+                protected Map<String, Set<String>> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+
+    /**
+     * Flag for whether the account balances table should be updated when splits are modified
+     * @see #enableBalanceUpdates(boolean)
+     */
+    private boolean mBalanceUpdatesEnabled = true;
+
+    /**
+     * Adapters used for currency conversion of balances. They are created when first needed
+     */
+    private CommoditiesDbAdapter mCommoditiesDbAdapter;
+    private PricesDbAdapter mPricesDbAdapter;
+
     public SplitsDbAdapter(SQLiteDatabase db) {
         super(db, SplitEntry.TABLE_NAME, new String[]{
                 SplitEntry.COLUMN_MEMO,
@@ -81,7 +134,11 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
      */
     public void addRecord(@NonNull final Split split, UpdateMethod updateMethod){
         Log.d(LOG_TAG, "Replace transaction split in db");
+        //the split may have been moved from another account, whose balance also changes
+        Set<String> accountUIDs = getAccountUIDsForSplits(SplitEntry.COLUMN_UID + " = ?", new String[]{split.getUID()});
         super.addRecord(split, updateMethod);
+        accountUIDs.add(split.getAccountUID());
+        updateAccountBalances(accountUIDs);
 
         long transactionId = getTransactionID(split.getTransactionUID());
         //when a split is updated, we want mark the transaction as not exported
@@ -94,24 +151,54 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull final Split split) {
-        stmt.clearBindings();
+    public long bulkAddRecords(@NonNull List<Split> splitList, UpdateMethod updateMethod) {
+        Set<String> accountUIDs = new HashSet<>();
+        if (updateMethod != UpdateMethod.insert && !splitList.isEmpty()) {
+            List<String> splitUIDs = new ArrayList<>(splitList.size());
+            for (Split split : splitList) {
+                splitUIDs.add(split.getUID());
+            }
+            accountUIDs.addAll(getAccountUIDsForSplits(SplitEntry.COLUMN_UID
+                    + " IN ( '" + TextUtils.join("' , '", splitUIDs) + "' )", null));
+        }
+
+        long nRow = super.bulkAddRecords(splitList, updateMethod);
+        for (Split split : splitList) {
+            accountUIDs.add(split.getAccountUID());
+        }
+        updateAccountBalances(accountUIDs);
+        return nRow;
+    }
+
+    @Override
+    public int updateRecords(String where, String[] whereArgs, @NonNull String columnKey, String newValue) {
+        Set<String> accountUIDs = getAccountUIDsForSplits(where, whereArgs);
+        int nRows = super.updateRecords(where, whereArgs, columnKey, newValue);
+        if (columnKey.equals(SplitEntry.COLUMN_ACCOUNT_UID) && newValue != null) {
+            accountUIDs.add(newValue);
+        }
+        updateAccountBalances(accountUIDs);
+        return nRows;
+    }
+
+    @Override
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull Split split) {
         if (split.getMemo() != null) {
-            stmt.bindString(1, split.getMemo());
+            stmt.bindString(offset + 1, split.getMemo());
+        } else {
+            stmt.bindNull(offset + 1);
         }
-        stmt.bindString(2, split.getType().name());
-        stmt.bindLong(3, split.getValue().getNumerator());
-        stmt.bindLong(4, split.getValue().getDenominator());
-        stmt.bindLong(5, split.getQuantity().getNumerator());
-        stmt.bindLong(6, split.getQuantity().getDenominator());
-        stmt.bindString(7, split.getCreatedTimestamp().toString());
-        stmt.bindString(8, String.valueOf(split.getReconcileState()));
-        stmt.bindString(9, split.getReconcileDate().toString());
-        stmt.bindString(10, split.getAccountUID());
-        stmt.bindString(11, split.getTransactionUID());
-        stmt.bindString(12, split.getUID());
-
-        return stmt;
+        stmt.bindString(offset + 2, split.getType().name());
+        stmt.bindLong(offset + 3, split.getValue().getNumerator());
+        stmt.bindLong(offset + 4, split.getValue().getDenominator());
+        stmt.bindLong(offset + 5, split.getQuantity().getNumerator());
+        stmt.bindLong(offset + 6, split.getQuantity().getDenominator());
+        stmt.bindString(offset + 7, split.getCreatedTimestamp().toString());
+        stmt.bindString(offset + 8, String.valueOf(split.getReconcileState()));
+        stmt.bindString(offset + 9, split.getReconcileDate().toString());
+        stmt.bindString(offset + 10, split.getAccountUID());
+        stmt.bindString(offset + 11, split.getTransactionUID());
+        stmt.bindString(offset + 12, split.getUID());
     }
     /**
      * Builds a split instance from the data pointed to by the cursor provided
@@ -186,6 +273,19 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
         }
 
         Cursor cursor;
+        if (startTimestamp == -1 && endTimestamp == -1) {
+            //balances over all time are kept up to date in the account balances table
+            cursor = mDb.query(AccountBalanceEntry.TABLE_NAME,
+                    new String[]{"SUM ( " + AccountBalanceEntry.COLUMN_BALANCE_NUM + " )",
+                            AccountBalanceEntry.COLUMN_BALANCE_DENOM,
+                            AccountBalanceEntry.COLUMN_CURRENCY},
+                    AccountBalanceEntry.COLUMN_ACCOUNT_UID + " IN ( '" + TextUtils.join("' , '", accountUIDList) + "' )",
+                    null,
+                    AccountBalanceEntry.COLUMN_CURRENCY + " , " + AccountBalanceEntry.COLUMN_BALANCE_DENOM,
+                    null, null);
+            return sumBalances(cursor, currencyCode, hasDebitNormalBalance);
+        }
+
         String[] selectionArgs = null;
         String selection = DatabaseSchema.AccountEntry.TABLE_NAME + "_" + DatabaseSchema.CommonColumns.COLUMN_UID + " in ( '" + TextUtils.join("' , '", accountUIDList) + "' ) AND " +
                 TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " = 0";
@@ -209,54 +309,177 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
                         DatabaseSchema.AccountEntry.TABLE_NAME + "_" + DatabaseSchema.AccountEntry.COLUMN_CURRENCY},
                 selection, selectionArgs, DatabaseSchema.AccountEntry.TABLE_NAME + "_" + DatabaseSchema.AccountEntry.COLUMN_CURRENCY, null, null);
 
+        return sumBalances(cursor, currencyCode, hasDebitNormalBalance);
+    }
+
+    /**
+     * Adds up the amounts in the cursor, converting them to {@code currencyCode} where necessary.
+     * <p>Each row of the cursor should contain the amount numerator, the amount denominator
+     * and the currency code of the amount, in that order. The cursor is closed by this method.</p>
+     * @param cursor Cursor to the amounts to be summed up
+     * @param currencyCode Currency in which to return the sum
+     * @param hasDebitNormalBalance Does the final balance has normal debit credit meaning
+     * @return Sum of the amounts in the cursor
+     */
+    private Money sumBalances(Cursor cursor, String currencyCode, boolean hasDebitNormalBalance){
+        Map<String, MoneyAccumulator> totals = new HashMap<>();
         try {
-            Money total = Money.createZeroInstance(currencyCode);
-            CommoditiesDbAdapter commoditiesDbAdapter = null;
-            PricesDbAdapter pricesDbAdapter = null;
-            Commodity commodity = null;
-            String currencyUID = null;
             while (cursor.moveToNext()) {
                 long amount_num = cursor.getLong(0);
                 long amount_denom = cursor.getLong(1);
                 String commodityCode = cursor.getString(2);
-                //Log.d(getClass().getName(), commodity + " " + amount_num + "/" + amount_denom);
-                if (commodityCode.equals("XXX") || amount_num == 0) {
-                    // ignore custom currency
-                    continue;
+                MoneyAccumulator total = totals.get(commodityCode);
+                if (total == null) {
+                    total = new MoneyAccumulator(commodityCode);
+                    totals.put(commodityCode, total);
                 }
-                if (!hasDebitNormalBalance) {
-                    amount_num = -amount_num;
-                }
-                if (commodityCode.equals(currencyCode)) {
-                    // currency matches
-                    total = total.add(new Money(amount_num, amount_denom, currencyCode));
-                    //Log.d(getClass().getName(), "currency " + commodity + " sub - total " + total);
-                } else {
-                    // there is a second currency involved
-                    if (commoditiesDbAdapter == null) {
-                        commoditiesDbAdapter = new CommoditiesDbAdapter(mDb);
-                        pricesDbAdapter = new PricesDbAdapter(mDb);
-                        commodity = commoditiesDbAdapter.getCommodity(currencyCode);
-                        currencyUID = commoditiesDbAdapter.getCommodityUID(currencyCode);
-                    }
-                    // get price
-                    String commodityUID = commoditiesDbAdapter.getCommodityUID(commodityCode);
-                    Pair<Long, Long> price = pricesDbAdapter.getPrice(commodityUID, currencyUID);
-                    if (price.first <= 0 || price.second <= 0) {
-                        // no price exists, just ignore it
-                        continue;
+                total.add(amount_num, amount_denom);
+            }
+        } finally {
+            cursor.close();
+        }
+        Map<String, BigDecimal> amounts = new HashMap<>();
+        for (Map.Entry<String, MoneyAccumulator> entry : totals.entrySet()) {
+            amounts.put(entry.getKey(), entry.getValue().toBigDecimal());
+        }
+        return sumAmounts(amounts, currencyCode, hasDebitNormalBalance);
+    }
+
+    /**
+     * Adds up amounts in different currencies, converting them to {@code currencyCode} using the latest prices.
+     * <p>Each currency is converted once, using the cached prices of the book.
+     * The amounts are expected to be positive for debits and negative for credits.
+     * Amounts in currencies for which no price exists are ignored, as are amounts in the custom currency "XXX".</p>
+     * @param amounts Map of currency codes to the amount in that currency
+     * @param currencyCode Currency in which to return the sum
+     * @param hasDebitNormalBalance Does the final balance has normal debit credit meaning
+     * @return Sum of the amounts in {@code currencyCode}
+     */
+    public Money sumAmounts(@NonNull Map<String, BigDecimal> amounts, String currencyCode, boolean hasDebitNormalBalance){
+        MoneyAccumulator total = new MoneyAccumulator(currencyCode);
+        Commodity commodity = null;
+        String currencyUID = null;
+        PriceCache priceCache = null;
+        for (Map.Entry<String, BigDecimal> entry : amounts.entrySet()) {
+            String commodityCode = entry.getKey();
+            BigDecimal amount = entry.getValue();
+            if (commodityCode.equals("XXX") || amount.signum() == 0) {
+                // ignore custom currency
+                continue;
+            }
+            if (!hasDebitNormalBalance) {
+                amount = amount.negate();
+            }
+            if (commodityCode.equals(currencyCode)) {
+                // currency matches
+                total.add(amount);
+            } else {
+                // there is a second currency involved
+                if (mCommoditiesDbAdapter == null) {
+                    if (mBookSession != null) {
+                        mCommoditiesDbAdapter = mBookSession.getCommoditiesDbAdapter();
+                        mPricesDbAdapter = mBookSession.getPricesDbAdapter();
+                    } else {
+                        mCommoditiesDbAdapter = new CommoditiesDbAdapter(mDb);
+                        mPricesDbAdapter = new PricesDbAdapter(mDb);
                     }
-                    BigDecimal amount = Money.getBigDecimal(amount_num, amount_denom);
-                    BigDecimal amountConverted = amount.multiply(new BigDecimal(price.first))
-                            .divide(new BigDecimal(price.second), commodity.getSmallestFractionDigits(), BigDecimal.ROUND_HALF_EVEN);
-                    total = total.add(new Money(amountConverted, commodity));
-                    //Log.d(getClass().getName(), "currency " + commodity + " sub - total " + total);
                 }
+                if (commodity == null) {
+                    commodity = mCommoditiesDbAdapter.getCommodity(currencyCode);
+                    currencyUID = mCommoditiesDbAdapter.getCommodityUID(currencyCode);
+                    priceCache = mPricesDbAdapter.getPriceCache();
+                }
+                // get price
+                String commodityUID = mCommoditiesDbAdapter.getCommodityUID(commodityCode);
+                Pair<Long, Long> price = priceCache.getPrice(commodityUID, currencyUID);
+                if (price.first <= 0 || price.second <= 0) {
+                    // no price exists, just ignore it
+                    continue;
+                }
+                BigDecimal amountConverted = amount.multiply(new BigDecimal(price.first))
+                        .divide(new BigDecimal(price.second), commodity.getSmallestFractionDigits(), BigDecimal.ROUND_HALF_EVEN);
+                total.add(amountConverted);
+            }
+        }
+        return total.toMoney();
+    }
+
+    /**
+     * Returns the sum of the splits of every account, within the specified time range.
+     * <p>Sub-accounts are not taken into account and the amounts are not converted,
+     * see {@link AccountsDbAdapter#getAccountBalances(long, long)} for the complete balances.
+     * Splits of template transactions are ignored.</p>
+     * @param startTimestamp the start timestamp of the time range, or -1 for no lower bound
+     * @param endTimestamp the end timestamp of the time range, or -1 for no upper bound
+     * @return Map of account GUIDs to the sum of their splits in the account currency, debits being positive.
+     * Accounts without splits are not included.
+     */
+    public Map<String, BigDecimal> computeSplitSumsByAccount(long startTimestamp, long endTimestamp){
+        return computeSplitSumsByAccount(null, startTimestamp, endTimestamp);
+    }
+
+    /**
+     * Returns the sum of the splits of each of the specified accounts, within the specified time range.
+     * <p>This is the same as {@link #computeSplitSumsByAccount(long, long)}, but only the splits of
+     * the specified accounts are read.</p>
+     * @param accountUIDs GUIDs of the accounts, or {@code null} for all accounts
+     * @param startTimestamp the start timestamp of the time range, or -1 for no lower bound
+     * @param endTimestamp the end timestamp of the time range, or -1 for no upper bound
+     * @return Map of account GUIDs to the sum of their splits in the account currency, debits being positive.
+     * Accounts without splits are not included.
+     */
+    public Map<String, BigDecimal> computeSplitSumsByAccount(@Nullable Collection<String> accountUIDs,
+                                                              long startTimestamp, long endTimestamp){
+        String accountUIDList = accountUIDs == null ? null : "'" + TextUtils.join("' , '", accountUIDs) + "'";
+        Cursor cursor;
+        if (startTimestamp == -1 && endTimestamp == -1) {
+            cursor = mDb.query(AccountBalanceEntry.TABLE_NAME,
+                    new String[]{AccountBalanceEntry.COLUMN_ACCOUNT_UID,
+                            AccountBalanceEntry.COLUMN_BALANCE_NUM,
+                            AccountBalanceEntry.COLUMN_BALANCE_DENOM},
+                    accountUIDList == null ? null
+                            : AccountBalanceEntry.COLUMN_ACCOUNT_UID + " IN ( " + accountUIDList + " )",
+                    null, null, null, null);
+        } else {
+            String selection = TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " = 0";
+            if (accountUIDList != null)
+                selection += " AND " + DatabaseSchema.AccountEntry.TABLE_NAME + "_" + DatabaseSchema.AccountEntry.COLUMN_UID
+                        + " IN ( " + accountUIDList + " )";
+            String[] selectionArgs;
+            if (startTimestamp != -1 && endTimestamp != -1) {
+                selection += " AND " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " BETWEEN ? AND ? ";
+                selectionArgs = new String[]{String.valueOf(startTimestamp), String.valueOf(endTimestamp)};
+            } else if (startTimestamp == -1) {
+                selection += " AND " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " <= ?";
+                selectionArgs = new String[]{String.valueOf(endTimestamp)};
+            } else {
+                selection += " AND " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " >= ?";
+                selectionArgs = new String[]{String.valueOf(startTimestamp)};
+            }
+            cursor = mDb.query("trans_split_acct",
+                    new String[]{DatabaseSchema.AccountEntry.TABLE_NAME + "_" + DatabaseSchema.AccountEntry.COLUMN_UID,
+                            "SUM ( CASE WHEN " + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN " +
+                            SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM + " ELSE - " +
+                            SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM + " END )",
+                            SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_DENOM},
+                    selection, selectionArgs,
+                    DatabaseSchema.AccountEntry.TABLE_NAME + "_" + DatabaseSchema.AccountEntry.COLUMN_UID + " , "
+                            + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_DENOM,
+                    null, null);
+        }
+
+        Map<String, BigDecimal> accountSums = new HashMap<>();
+        try {
+            while (cursor.moveToNext()) {
+                String accountUID = cursor.getString(0);
+                BigDecimal amount = Money.getBigDecimal(cursor.getLong(1), cursor.getLong(2));
+                BigDecimal sum = accountSums.get(accountUID);
+                accountSums.put(accountUID, sum == null ? amount : sum.add(amount));
             }
-            return total;
         } finally {
             cursor.close();
         }
+        return accountSums;
     }
 
     /**
@@ -402,7 +625,10 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
     public boolean deleteRecord(long rowId) {
         Split split = getRecord(rowId);
         String transactionUID = split.getTransactionUID();
-        boolean result = mDb.delete(SplitEntry.TABLE_NAME, SplitEntry._ID + "=" + rowId, null) > 0;
+        //the transaction may also be deleted below, so collect all the affected accounts
+        Set<String> accountUIDs = getAccountUIDsForSplits(SplitEntry.COLUMN_TRANSACTION_UID + " = ?",
+                new String[]{transactionUID});
+        boolean result = delete(SplitEntry.TABLE_NAME, SplitEntry._ID + "=" + rowId, null) > 0;
 
         if (!result) //we didn't delete for whatever reason, invalid rowId etc
             return false;
@@ -412,15 +638,178 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
         try {
             if (cursor.getCount() > 0) {
                 long transactionID = getTransactionID(transactionUID);
-                result = mDb.delete(TransactionEntry.TABLE_NAME,
+                result = delete(TransactionEntry.TABLE_NAME,
                         TransactionEntry._ID + "=" + transactionID, null) > 0;
             }
         } finally {
             cursor.close();
         }
+        updateAccountBalances(accountUIDs);
         return result;
     }
 
+    /**
+     * Returns the GUIDs of the accounts to which the splits matching the condition belong
+     * @param where SQL where clause for the splits
+     * @param whereArgs String arguments for where clause
+     * @return Set of account GUIDs
+     */
+    public Set<String> getAccountUIDsForSplits(String where, String[] whereArgs){
+        Cursor cursor = mDb.query(true, SplitEntry.TABLE_NAME, new String[]{SplitEntry.COLUMN_ACCOUNT_UID},
+                where, whereArgs, null, null, null, null);
+        Set<String> accountUIDs = new HashSet<>();
+        try {
+            while (cursor.moveToNext()) {
+                accountUIDs.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return accountUIDs;
+    }
+
+    /**
+     * Recomputes the balances of the accounts from their splits and saves them in the account balances table.
+     * <p>This should be called whenever splits in the accounts have been added, modified or deleted.
+     * Splits of template transactions are not included in the balances.</p>
+     * @param accountUIDs GUIDs of the accounts whose splits changed
+     */
+    public void updateAccountBalances(@NonNull Collection<String> accountUIDs){
+        if (!mBalanceUpdatesEnabled || accountUIDs.isEmpty())
+            return;
+
+        String accountUIDList = "'" + TextUtils.join("' , '", accountUIDs) + "'";
+        mDb.beginTransaction();
+        try {
+            delete(AccountBalanceEntry.TABLE_NAME,
+                    AccountBalanceEntry.COLUMN_ACCOUNT_UID + " IN ( " + accountUIDList + " )", null);
+            String sql = buildAccountBalancesInsertSql(" AND " + SplitEntry.TABLE_NAME + "."
+                    + SplitEntry.COLUMN_ACCOUNT_UID + " IN ( " + accountUIDList + " )");
+            long startTime = QueryProfiler.startTiming();
+            mDb.execSQL(sql);
+            QueryProfiler.record(mDb, sql, startTime, -1);
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+        notifyBalancesChanged(accountUIDs);
+    }
+
+    /**
+     * Discards the contents of the account balances table and recomputes the balances of all accounts.
+     * <p>Use this after operations which modify many splits at once, like importing a book</p>
+     */
+    public void rebuildAccountBalances(){
+        Log.i(LOG_TAG, "Rebuilding account balances");
+        mDb.beginTransaction();
+        try {
+            delete(AccountBalanceEntry.TABLE_NAME, null, null);
+            String sql = buildAccountBalancesInsertSql("");
+            long startTime = QueryProfiler.startTiming();
+            mDb.execSQL(sql);
+            QueryProfiler.record(mDb, sql, startTime, -1);
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+        notifyBalancesChanged(null);
+    }
+
+    /**
+     * Sets the listener which is notified whenever account balances are recomputed.
+     * There is a single listener for the whole application
+     * @param listener Listener, or {@code null} to remove the listener
+     */
+    public static void setOnBalancesChangedListener(@Nullable OnBalancesChangedListener listener){
+        sBalancesChangedListener = listener;
+    }
+
+    private void notifyBalancesChanged(@Nullable Collection<String> accountUIDs){
+        if (sBalancesChangedListener == null)
+            return;
+
+        //the database file is always named after the GUID of the book
+        String bookUID = new File(mDb.getPath()).getName();
+        if (!mDb.inTransaction()) {
+            notifyBalancesChanged(bookUID, accountUIDs == null ? null : new ArrayList<>(accountUIDs));
+            return;
+        }
+
+        //the changes are not committed yet, they are notified once the outermost transaction ends
+        Map<String, Set<String>> pendingChanges = sPendingBalanceChanges.get();
+        if (accountUIDs == null) {
+            pendingChanges.put(bookUID, null);
+        } else if (!pendingChanges.containsKey(bookUID)) {
+            pendingChanges.put(bookUID, new HashSet<>(accountUIDs));
+        } else if (pendingChanges.get(bookUID) != null) {
+            pendingChanges.get(bookUID).addAll(accountUIDs);
+        }
+    }
+
+    /**
+     * Notifies the balance changes made in the database transaction which just ended on the current thread.
+     * <p>This should be called once the outermost transaction of the database has ended</p>
+     * @param db Database of the book
+     */
+    static void notifyPendingBalanceChanges(SQLiteDatabase db){
+        Map<String, Set<String>> pendingChanges = sPendingBalanceChanges.get();
+        if (pendingChanges.isEmpty())
+            return;
+
+        String bookUID = new File(db.getPath()).getName();
+        if (!pendingChanges.containsKey(bookUID))
+            return;
+        Set<String> accountUIDs = pendingChanges.remove(bookUID);
+        notifyBalancesChanged(bookUID, accountUIDs == null ? null : new ArrayList<>(accountUIDs));
+    }
+
+    private static void notifyBalancesChanged(String bookUID, @Nullable Collection<String> accountUIDs){
+        OnBalancesChangedListener listener = sBalancesChangedListener;
+        if (listener != null)
+            listener.onBalancesChanged(bookUID, accountUIDs);
+    }
+
+    /**
+     * Enables or disables updating of the account balances table when splits are modified.
+     * <p>When re-enabling the updates after bulk modifications, {@link #rebuildAccountBalances()}
+     * should be called to bring the balances up to date</p>
+     * @param enable {@code true} to update balances on split changes, {@code false} otherwise
+     */
+    public void enableBalanceUpdates(boolean enable){
+        mBalanceUpdatesEnabled = enable;
+    }
+
+    /**
+     * Returns the SQL statement for computing account balances from the splits and inserting them
+     * into the account balances table
+     * @param splitCondition Additional condition on the splits table, starting with " AND ", or an empty string
+     * @return SQL INSERT statement
+     */
+    private static String buildAccountBalancesInsertSql(String splitCondition){
+        return "INSERT INTO " + AccountBalanceEntry.TABLE_NAME + " ( "
+                + AccountBalanceEntry.COLUMN_ACCOUNT_UID + " , "
+                + AccountBalanceEntry.COLUMN_CURRENCY + " , "
+                + AccountBalanceEntry.COLUMN_BALANCE_NUM + " , "
+                + AccountBalanceEntry.COLUMN_BALANCE_DENOM + " ) "
+                + " SELECT " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                + DatabaseSchema.AccountEntry.TABLE_NAME + "." + DatabaseSchema.AccountEntry.COLUMN_CURRENCY + " , "
+                + " SUM ( CASE WHEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " ELSE - "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " END ) , "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM
+                + " FROM " + SplitEntry.TABLE_NAME
+                + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+                + " INNER JOIN " + DatabaseSchema.AccountEntry.TABLE_NAME + " ON "
+                + DatabaseSchema.AccountEntry.TABLE_NAME + "." + DatabaseSchema.AccountEntry.COLUMN_UID + " = "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID
+                + " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " = 0"
+                + splitCondition
+                + " GROUP BY " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM;
+    }
+
     /**
      * Returns the database record ID for the specified transaction UID
      * @param transactionUID Unique idendtifier of the transaction
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db.adapter;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.util.TimestampHelper;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
+import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+
+/**
+ * Iterates over transactions together with their splits, which are read from a single cursor.
+ * <p>The cursor has one row per split, with the columns of the transaction repeated in each row,
+ * and the rows of a transaction next to each other. Transactions are built one at a time while
+ * walking the cursor, so no further queries are needed. Commodities are looked up once per
+ * currency for each iterator.</p>
+ * <p>The iterator has to be closed, which closes the cursor.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see TransactionsDbAdapter#iterateTransactions(String, String[], String)
+ */
+public class TransactionIterator implements Iterator<Transaction>, Closeable {
+
+    /*
+    Columns of the split in the cursor whose names would collide with columns of the transaction
+     */
+    static final String COLUMN_SPLIT_ID             = "split_id";
+    static final String COLUMN_SPLIT_UID            = "split_uid";
+    static final String COLUMN_SPLIT_CREATED_AT     = "split_created_at";
+    static final String COLUMN_SPLIT_MODIFIED_AT    = "split_modified_at";
+    static final String COLUMN_SPLIT_ACCOUNT_CURRENCY = "split_account_currency";
+
+    /**
+     * Tables of the cursor, with the splits and their accounts outer joined,
+     * so that transactions without splits are returned too
+     */
+    static final String TABLES = TransactionEntry.TABLE_NAME
+            + " LEFT JOIN " + SplitEntry.TABLE_NAME + " ON "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " = "
+            + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID
+            + " LEFT JOIN " + AccountEntry.TABLE_NAME + " ON "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + " = "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID;
+
+    /**
+     * Projection of the cursor
+     */
+    static final String[] PROJECTION = new String[]{
+            TransactionEntry.TABLE_NAME + ".*",
+            SplitEntry.TABLE_NAME + "." + SplitEntry._ID + " AS " + COLUMN_SPLIT_ID,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_UID + " AS " + COLUMN_SPLIT_UID,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_CREATED_AT + " AS " + COLUMN_SPLIT_CREATED_AT,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_MODIFIED_AT + " AS " + COLUMN_SPLIT_MODIFIED_AT,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_VALUE_NUM,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_VALUE_DENOM,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_MEMO,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_RECONCILE_STATE,
+            SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_RECONCILE_DATE,
+            AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY + " AS " + COLUMN_SPLIT_ACCOUNT_CURRENCY
+    };
+
+    /**
+     * Order of the splits within a transaction, which has to follow the order of the transactions
+     */
+    static final String SPLIT_ORDER = TransactionEntry.TABLE_NAME + "." + TransactionEntry._ID + " ASC, "
+            + COLUMN_SPLIT_ID + " ASC";
+
+    private final Cursor mCursor;
+    private final CommoditiesDbAdapter mCommoditiesDbAdapter;
+
+    /**
+     * Commodities of the transactions and of the split amounts, keyed by currency code
+     */
+    private final Map<String, Commodity> mTransactionCommodities = new HashMap<>();
+    private final Map<String, Commodity> mAmountCommodities = new HashMap<>();
+
+    /**
+     * {@code true} if the cursor is on the first row of the next transaction
+     */
+    private boolean mHasNext;
+
+    private final int mIdIndex;
+    private final int mUIDIndex;
+    private final int mCreatedAtIndex;
+    private final int mModifiedAtIndex;
+    private final int mDescriptionIndex;
+    private final int mNotesIndex;
+    private final int mTimestampIndex;
+    private final int mExportedIndex;
+    private final int mTemplateIndex;
+    private final int mCurrencyIndex;
+    private final int mScheduledActionUIDIndex;
+
+    private final int mSplitIdIndex;
+    private final int mSplitUIDIndex;
+    private final int mSplitCreatedAtIndex;
+    private final int mSplitModifiedAtIndex;
+    private final int mSplitTypeIndex;
+    private final int mValueNumIndex;
+    private final int mValueDenomIndex;
+    private final int mQuantityNumIndex;
+    private final int mQuantityDenomIndex;
+    private final int mMemoIndex;
+    private final int mAccountUIDIndex;
+    private final int mReconcileStateIndex;
+    private final int mReconcileDateIndex;
+    private final int mAccountCurrencyIndex;
+
+    /**
+     * Creates an iterator over a cursor with the {@link #PROJECTION} on the {@link #TABLES}
+     * @param cursor Cursor whose rows are ordered by transaction, and by {@link #SPLIT_ORDER} within a transaction
+     * @param commoditiesDbAdapter Commodities adapter of the book of the transactions
+     */
+    TransactionIterator(@NonNull Cursor cursor, @NonNull CommoditiesDbAdapter commoditiesDbAdapter) {
+        mCursor = cursor;
+        mCommoditiesDbAdapter = commoditiesDbAdapter;
+
+        mIdIndex                 = cursor.getColumnIndexOrThrow(TransactionEntry._ID);
+        mUIDIndex                = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_UID);
+        mCreatedAtIndex          = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_CREATED_AT);
+        mModifiedAtIndex         = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_MODIFIED_AT);
+        mDescriptionIndex        = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_DESCRIPTION);
+        mNotesIndex              = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_NOTES);
+        mTimestampIndex          = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_TIMESTAMP);
+        mExportedIndex           = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_EXPORTED);
+        mTemplateIndex           = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_TEMPLATE);
+        mCurrencyIndex           = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_CURRENCY);
+        mScheduledActionUIDIndex = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_SCHEDX_ACTION_UID);
+
+        mSplitIdIndex            = cursor.getColumnIndexOrThrow(COLUMN_SPLIT_ID);
+        mSplitUIDIndex           = cursor.getColumnIndexOrThrow(COLUMN_SPLIT_UID);
+        mSplitCreatedAtIndex     = cursor.getColumnIndexOrThrow(COLUMN_SPLIT_CREATED_AT);
+        mSplitModifiedAtIndex    = cursor.getColumnIndexOrThrow(COLUMN_SPLIT_MODIFIED_AT);
+        mSplitTypeIndex          = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_TYPE);
+        mValueNumIndex           = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_VALUE_NUM);
+        mValueDenomIndex         = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_VALUE_DENOM);
+        mQuantityNumIndex        = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_QUANTITY_NUM);
+        mQuantityDenomIndex      = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_QUANTITY_DENOM);
+        mMemoIndex               = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_MEMO);
+        mAccountUIDIndex         = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_ACCOUNT_UID);
+        mReconcileStateIndex     = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_RECONCILE_STATE);
+        mReconcileDateIndex      = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_RECONCILE_DATE);
+        mAccountCurrencyIndex    = cursor.getColumnIndexOrThrow(COLUMN_SPLIT_ACCOUNT_CURRENCY);
+
+        mHasNext = cursor.moveToFirst();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return mHasNext;
+    }
+
+    /**
+     * Returns the next transaction with all of its splits
+     * @throws NoSuchElementException if there are no more transactions
+     */
+    @Override
+    public Transaction next() {
+        if (!mHasNext)
+            throw new NoSuchElementException();
+
+        Transaction transaction = new Transaction(mCursor.getString(mDescriptionIndex));
+        transaction.setUID(mCursor.getString(mUIDIndex));
+        transaction.setCreatedTimestamp(TimestampHelper.getTimestampFromUtcString(mCursor.getString(mCreatedAtIndex)));
+        transaction.setModifiedTimestamp(TimestampHelper.getTimestampFromUtcString(mCursor.getString(mModifiedAtIndex)));
+        transaction.setTime(mCursor.getLong(mTimestampIndex));
+        transaction.setNote(mCursor.getString(mNotesIndex));
+        transaction.setExported(mCursor.getInt(mExportedIndex) == 1);
+        transaction.setTemplate(mCursor.getInt(mTemplateIndex) == 1);
+        String currencyCode = mCursor.getString(mCurrencyIndex);
+        transaction.setCommodity(getTransactionCommodity(currencyCode));
+        transaction.setScheduledActionUID(mCursor.getString(mScheduledActionUIDIndex));
+
+        long transactionID = mCursor.getLong(mIdIndex);
+        List<Split> splits = new ArrayList<>();
+        do {
+            if (!mCursor.isNull(mSplitIdIndex))
+                splits.add(buildSplit(transaction.getUID(), currencyCode));
+            mHasNext = mCursor.moveToNext();
+        } while (mHasNext && mCursor.getLong(mIdIndex) == transactionID);
+        transaction.setSplits(splits);
+
+        return transaction;
+    }
+
+    /**
+     * Builds the split in the current row of the cursor, as {@link SplitsDbAdapter#buildModelInstance(Cursor)} does
+     * @param transactionUID GUID of the transaction of the split
+     * @param transactionCurrencyCode Currency of the transaction, in which the value of the split is
+     */
+    private Split buildSplit(String transactionUID, String transactionCurrencyCode) {
+        String accountUID = mCursor.getString(mAccountUIDIndex);
+        if (mCursor.isNull(mAccountCurrencyIndex))
+            throw new IllegalArgumentException("Account " + accountUID + " does not exist");
+
+        Money value = new Money(mCursor.getLong(mValueNumIndex), mCursor.getLong(mValueDenomIndex),
+                getAmountCommodity(transactionCurrencyCode));
+        Money quantity = new Money(mCursor.getLong(mQuantityNumIndex), mCursor.getLong(mQuantityDenomIndex),
+                getAmountCommodity(mCursor.getString(mAccountCurrencyIndex)));
+
+        Split split = new Split(value, accountUID);
+        split.setQuantity(quantity);
+        split.setUID(mCursor.getString(mSplitUIDIndex));
+        split.setCreatedTimestamp(TimestampHelper.getTimestampFromUtcString(mCursor.getString(mSplitCreatedAtIndex)));
+        split.setModifiedTimestamp(TimestampHelper.getTimestampFromUtcString(mCursor.getString(mSplitModifiedAtIndex)));
+        split.setTransactionUID(transactionUID);
+        split.setType(TransactionType.valueOf(mCursor.getString(mSplitTypeIndex)));
+        split.setMemo(mCursor.getString(mMemoIndex));
+        split.setReconcileState(mCursor.getString(mReconcileStateIndex).charAt(0));
+        String reconcileDate = mCursor.getString(mReconcileDateIndex);
+        if (reconcileDate != null && !reconcileDate.isEmpty())
+            split.setReconcileDate(TimestampHelper.getTimestampFromUtcString(reconcileDate));
+        return split;
+    }
+
+    private Commodity getTransactionCommodity(String currencyCode) {
+        Commodity commodity = mTransactionCommodities.get(currencyCode);
+        if (commodity == null && !mTransactionCommodities.containsKey(currencyCode)) {
+            commodity = mCommoditiesDbAdapter.getCommodity(currencyCode);
+            mTransactionCommodities.put(currencyCode, commodity);
+        }
+        return commodity;
+    }
+
+    private Commodity getAmountCommodity(String currencyCode) {
+        Commodity commodity = mAmountCommodities.get(currencyCode);
+        if (commodity == null) {
+            commodity = Commodity.getInstance(currencyCode);
+            mAmountCommodities.put(currencyCode, commodity);
+        }
+        return commodity;
+    }
+
+    /**
+     * Transactions are read-only
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Closes the cursor
+     */
+    @Override
+    public void close() {
+        mCursor.close();
+    }
+}
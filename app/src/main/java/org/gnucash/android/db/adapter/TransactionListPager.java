@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db.adapter;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.gnucash.android.model.Money;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+
+/**
+ * Loads the transactions of an account page by page, for display in a list.
+ * <p>Each page is read with one query, which also returns the amount of each transaction in the account,
+ * the number of splits and the name of the other account of the transaction.
+ * The pager keeps no state between pages apart from the type and currency of the account,
+ * so pages can be loaded on any thread.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see TransactionsDbAdapter#fetchTransactionPageForAccount(String, long, String, int)
+ */
+public class TransactionListPager {
+
+    /**
+     * Default number of transactions in a page
+     */
+    public static final int PAGE_SIZE = 200;
+
+    private final TransactionsDbAdapter mTransactionsDbAdapter;
+    private final String mAccountUID;
+    private final int mPageSize;
+
+    private volatile String mCurrencyCode;
+    private volatile boolean mHasDebitNormalBalance;
+
+    public TransactionListPager(@NonNull TransactionsDbAdapter transactionsDbAdapter, @NonNull String accountUID) {
+        this(transactionsDbAdapter, accountUID, PAGE_SIZE);
+    }
+
+    public TransactionListPager(@NonNull TransactionsDbAdapter transactionsDbAdapter, @NonNull String accountUID,
+                                int pageSize) {
+        mTransactionsDbAdapter = transactionsDbAdapter;
+        mAccountUID = accountUID;
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Returns the number of transactions in a full page.
+     * A page with fewer transactions is the last page
+     */
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Loads the page of transactions which follows a transaction
+     * @param after Last transaction of the previous page, or {@code null} to load the first page
+     * @return List of the transactions in the page, which is empty if there are no more transactions
+     */
+    public List<Item> loadPage(@Nullable Item after) {
+        if (mCurrencyCode == null) {
+            mHasDebitNormalBalance = mTransactionsDbAdapter.getAccountType(mAccountUID).hasDebitNormalBalance();
+            mCurrencyCode = mTransactionsDbAdapter.getAccountCurrencyCode(mAccountUID);
+        }
+
+        Cursor cursor = mTransactionsDbAdapter.fetchTransactionPageForAccount(mAccountUID,
+                after == null ? 0 : after.mTimestamp, after == null ? null : after.mUID, mPageSize);
+        List<Item> items = new ArrayList<>(cursor.getCount());
+        try {
+            int idColumn = cursor.getColumnIndexOrThrow(TransactionEntry._ID);
+            int uidColumn = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_UID);
+            int descriptionColumn = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_DESCRIPTION);
+            int timestampColumn = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_TIMESTAMP);
+            int amountNumColumn = cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_ACCOUNT_AMOUNT_NUM);
+            int amountDenomColumn = cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_ACCOUNT_AMOUNT_DENOM);
+            int amountMaxDenomColumn = cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_ACCOUNT_AMOUNT_MAX_DENOM);
+            int splitCountColumn = cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_SPLIT_COUNT);
+            int counterAccountColumn = cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_COUNTER_ACCOUNT_NAME);
+            while (cursor.moveToNext()) {
+                String transactionUID = cursor.getString(uidColumn);
+                Money amount;
+                long denominator = cursor.getLong(amountDenomColumn);
+                if (denominator == cursor.getLong(amountMaxDenomColumn)) {
+                    amount = new Money(cursor.getLong(amountNumColumn), denominator, mCurrencyCode);
+                    if (!mHasDebitNormalBalance)
+                        amount = amount.negate();
+                } else { //the splits cannot be added up in SQL
+                    amount = mTransactionsDbAdapter.getBalance(transactionUID, mAccountUID);
+                }
+                items.add(new Item(cursor.getLong(idColumn), transactionUID,
+                        cursor.getString(descriptionColumn), cursor.getLong(timestampColumn), amount,
+                        cursor.getInt(splitCountColumn), cursor.getString(counterAccountColumn)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    /**
+     * Transaction as shown in the transactions list of an account
+     */
+    public static class Item {
+        private final long mId;
+        private final String mUID;
+        private final String mDescription;
+        private final long mTimestamp;
+        private final Money mAmount;
+        private final int mSplitCount;
+        private final String mCounterAccountName;
+
+        Item(long id, String uid, String description, long timestamp, Money amount,
+             int splitCount, String counterAccountName) {
+            mId = id;
+            mUID = uid;
+            mDescription = description;
+            mTimestamp = timestamp;
+            mAmount = amount;
+            mSplitCount = splitCount;
+            mCounterAccountName = counterAccountName;
+        }
+
+        /**
+         * Returns the database record ID of the transaction
+         */
+        public long getId() {
+            return mId;
+        }
+
+        public String getUID() {
+            return mUID;
+        }
+
+        public String getDescription() {
+            return mDescription;
+        }
+
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /**
+         * Returns the amount of the transaction in the account
+         */
+        public Money getAmount() {
+            return mAmount;
+        }
+
+        public int getSplitCount() {
+            return mSplitCount;
+        }
+
+        /**
+         * Returns the full name of the account of another split of the transaction,
+         * or {@code null} if all the splits are in the account
+         */
+        @Nullable
+        public String getCounterAccountName() {
+            return mCounterAccountName;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import android.util.Log;
 import com.crashlytics.android.Crashlytics;
 
 import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.QueryProfiler;
 import org.gnucash.android.model.AccountType;
 import org.gnucash.android.model.Commodity;
 import org.gnucash.android.model.Money;
@@ -40,12 +41,22 @@ import org.gnucash.android.util.TimestampHelper;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import static org.gnucash.android.db.DatabaseSchema.AccountBalanceEntry;
 import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import static org.gnucash.android.db.DatabaseSchema.RecurrenceEntry;
 import static org.gnucash.android.db.DatabaseSchema.ScheduledActionEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import static org.gnucash.android.db.DatabaseSchema.TransactionSearchEntry;
+import static org.gnucash.android.db.DatabaseSchema.UpcomingOccurrenceEntry;
 
 /**
  * Manages persistence of {@link Transaction}s in the database
@@ -56,15 +67,67 @@ import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
  */
 public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
 
+    /**
+     * Column of the transaction page cursors with the number of splits of each transaction
+     * @see #fetchTransactionPageForAccount(String, long, String, int)
+     */
+    public static final String COLUMN_SPLIT_COUNT = "split_count";
+
+    /**
+     * Column of the transaction page cursors with the full name of an account of another split of the transaction
+     * @see #fetchTransactionPageForAccount(String, long, String, int)
+     */
+    public static final String COLUMN_COUNTER_ACCOUNT_NAME = "counter_account_name";
+
+    /**
+     * Age in milliseconds after which the rank of a transaction suggestion is halved, if it is not used again
+     */
+    private static final long SUGGESTION_AGE_UNIT = 30L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Column of the transaction page cursors with the numerator of the sum of the split quantities
+     * in the account, debits being positive
+     * @see #fetchTransactionPageForAccount(String, long, String, int)
+     */
+    public static final String COLUMN_ACCOUNT_AMOUNT_NUM = "account_amount_num";
+
+    /**
+     * Columns of the transaction page cursors with the smallest and largest denominator of the
+     * split quantities in the account. The sum in {@link #COLUMN_ACCOUNT_AMOUNT_NUM} is only valid if they are equal
+     * @see #fetchTransactionPageForAccount(String, long, String, int)
+     */
+    public static final String COLUMN_ACCOUNT_AMOUNT_DENOM = "account_amount_denom";
+    public static final String COLUMN_ACCOUNT_AMOUNT_MAX_DENOM = "account_amount_max_denom";
+
+    /**
+     * Maximum number of GUIDs bound in one query, below the limit of 999 variables of SQLite
+     */
+    private static final int MAX_SQL_VARIABLES = 500;
+
     private final SplitsDbAdapter mSplitsDbAdapter;
 
     private final CommoditiesDbAdapter mCommoditiesDbAdapter;
 
+    /**
+     * Flag for whether transactions left without splits are deleted after bulk inserts
+     * @see #enableEmptyTransactionCleanup(boolean)
+     */
+    private boolean mEmptyTransactionCleanupEnabled = true;
+
     /**
      * Overloaded constructor. Creates adapter for already open db
      * @param db SQlite db instance
      */
     public TransactionsDbAdapter(SQLiteDatabase db, SplitsDbAdapter splitsDbAdapter) {
+        this(db, splitsDbAdapter, new CommoditiesDbAdapter(db));
+    }
+
+    /**
+     * Creates an adapter which uses existing adapters for splits and commodities
+     * @param db SQlite db instance
+     */
+    TransactionsDbAdapter(SQLiteDatabase db, SplitsDbAdapter splitsDbAdapter,
+                          CommoditiesDbAdapter commoditiesDbAdapter) {
         super(db, TransactionEntry.TABLE_NAME, new String[]{
                 TransactionEntry.COLUMN_DESCRIPTION,
                 TransactionEntry.COLUMN_NOTES,
@@ -77,7 +140,7 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
                 TransactionEntry.COLUMN_TEMPLATE
         });
         mSplitsDbAdapter = splitsDbAdapter;
-        mCommoditiesDbAdapter = new CommoditiesDbAdapter(db);
+        mCommoditiesDbAdapter = commoditiesDbAdapter;
     }
 
     /**
@@ -92,6 +155,16 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
         return mSplitsDbAdapter;
     }
 
+    /**
+     * Enables or disables the deletion of transactions without splits after each bulk insert.
+     * <p>When writing many batches in a row, e.g. during an import, the clean up should be disabled
+     * and {@link #deleteTransactionsWithNoSplits()} called once at the end instead</p>
+     * @param enable {@code true} to clean up after each bulk insert, {@code false} otherwise
+     */
+    public void enableEmptyTransactionCleanup(boolean enable){
+        mEmptyTransactionCleanupEnabled = enable;
+    }
+
     /**
 	 * Adds an transaction to the database. 
 	 * If a transaction already exists in the database with the same unique ID, 
@@ -105,10 +178,14 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
         try {
             Split imbalanceSplit = transaction.createAutoBalanceSplit();
             if (imbalanceSplit != null){
-                String imbalanceAccountUID = new AccountsDbAdapter(mDb, this)
-                        .getOrCreateImbalanceAccountUID(transaction.getCommodity());
+                AccountsDbAdapter accountsDbAdapter = mBookSession != null
+                        ? mBookSession.getAccountsDbAdapter() : new AccountsDbAdapter(mDb, this);
+                String imbalanceAccountUID = accountsDbAdapter.getOrCreateImbalanceAccountUID(transaction.getCommodity());
                 imbalanceSplit.setAccountUID(imbalanceAccountUID);
             }
+            //replacing the transaction also removes its old splits, so remember their accounts
+            Set<String> accountUIDs = mSplitsDbAdapter.getAccountUIDsForSplits(
+                    SplitEntry.COLUMN_TRANSACTION_UID + " = ?", new String[]{transaction.getUID()});
             super.addRecord(transaction, updateMethod);
 
             Log.d(LOG_TAG, "Adding splits for transaction");
@@ -124,18 +201,19 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
             }
             Log.d(LOG_TAG, transaction.getSplits().size() + " splits added");
 
-            long deleted = mDb.delete(SplitEntry.TABLE_NAME,
+            long deleted = delete(SplitEntry.TABLE_NAME,
                     SplitEntry.COLUMN_TRANSACTION_UID + " = ? AND "
                             + SplitEntry.COLUMN_UID + " NOT IN ('" + TextUtils.join("' , '", splitUIDs) + "')",
                     new String[]{transaction.getUID()});
             Log.d(LOG_TAG, deleted + " splits deleted");
+            mSplitsDbAdapter.updateAccountBalances(accountUIDs);
 
             mDb.setTransactionSuccessful();
         } catch (SQLException sqlEx) {
             Log.e(LOG_TAG, sqlEx.getMessage());
             Crashlytics.logException(sqlEx);
         } finally {
-            mDb.endTransaction();
+            endTransaction();
         }
 	}
 
@@ -150,6 +228,16 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      */
     @Override
     public long bulkAddRecords(@NonNull List<Transaction> transactionList, UpdateMethod updateMethod){
+        List<String> transactionUIDs = new ArrayList<>(transactionList.size());
+        for (Transaction transaction : transactionList) {
+            transactionUIDs.add(transaction.getUID());
+        }
+        Set<String> accountUIDs = new HashSet<>();
+        if (updateMethod != UpdateMethod.insert && !transactionList.isEmpty()) {
+            accountUIDs = mSplitsDbAdapter.getAccountUIDsForSplits(SplitEntry.COLUMN_TRANSACTION_UID
+                    + " IN ( '" + TextUtils.join("' , '", transactionUIDs) + "' )", null);
+        }
+
         long start = System.nanoTime();
         long rowInserted = super.bulkAddRecords(transactionList, updateMethod);
         long end = System.nanoTime();
@@ -165,36 +253,33 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
                 Log.d(LOG_TAG, String.format("%d splits inserted in %d ns", nSplits, System.nanoTime()-start));
             }
             finally {
-                SQLiteStatement deleteEmptyTransaction = mDb.compileStatement("DELETE FROM " +
-                        TransactionEntry.TABLE_NAME + " WHERE NOT EXISTS ( SELECT * FROM " +
-                        SplitEntry.TABLE_NAME +
-                        " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID +
-                        " = " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " ) ");
-                deleteEmptyTransaction.execute();
+                if (mEmptyTransactionCleanupEnabled) {
+                    //only the transactions of this call can have lost their splits here
+                    deleteTransactionsWithNoSplits(transactionUIDs);
+                }
             }
         }
+        //accounts of the new splits were updated when the splits were added
+        mSplitsDbAdapter.updateAccountBalances(accountUIDs);
         return rowInserted;
     }
 
     @Override
-    protected @NonNull SQLiteStatement setBindings(@NonNull SQLiteStatement stmt, @NonNull Transaction transaction) {
-        stmt.clearBindings();
-        stmt.bindString(1, transaction.getDescription());
-        stmt.bindString(2, transaction.getNote());
-        stmt.bindLong(3, transaction.getTimeMillis());
-        stmt.bindLong(4, transaction.isExported() ? 1 : 0);
-        stmt.bindString(5, transaction.getCurrencyCode());
-        stmt.bindString(6, transaction.getCommodity().getUID());
-        stmt.bindString(7, TimestampHelper.getUtcStringFromTimestamp(transaction.getCreatedTimestamp()));
+    protected void bindRow(@NonNull SQLiteStatement stmt, int offset, @NonNull Transaction transaction) {
+        stmt.bindString(offset + 1, transaction.getDescription());
+        stmt.bindString(offset + 2, transaction.getNote());
+        stmt.bindLong(offset + 3, transaction.getTimeMillis());
+        stmt.bindLong(offset + 4, transaction.isExported() ? 1 : 0);
+        stmt.bindString(offset + 5, transaction.getCurrencyCode());
+        stmt.bindString(offset + 6, transaction.getCommodity().getUID());
+        stmt.bindString(offset + 7, TimestampHelper.getUtcStringFromTimestamp(transaction.getCreatedTimestamp()));
 
         if (transaction.getScheduledActionUID() == null)
-            stmt.bindNull(8);
+            stmt.bindNull(offset + 8);
         else
-            stmt.bindString(8, transaction.getScheduledActionUID());
-        stmt.bindLong(9, transaction.isTemplate() ? 1 : 0);
-        stmt.bindString(10, transaction.getUID());
-
-        return stmt;
+            stmt.bindString(offset + 8, transaction.getScheduledActionUID());
+        stmt.bindLong(offset + 9, transaction.isTemplate() ? 1 : 0);
+        stmt.bindString(offset + 10, transaction.getUID());
     }
 
     /**
@@ -220,6 +305,59 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
         return queryBuilder.query(mDb, projectionIn, selection, selectionArgs, null, null, sortOrder);
     }
 
+    /**
+     * Returns a cursor to a page of the transactions which have a split in the account, for display in a list.
+     * <p>The transactions are ordered by time and GUID, newest first. The next page starts after the last
+     * transaction of the previous page, so pages never overlap or skip transactions and the cost of a page
+     * does not depend on how many pages came before it.</p>
+     * <p>Besides the transaction columns, the cursor has the columns {@link #COLUMN_SPLIT_COUNT},
+     * {@link #COLUMN_COUNTER_ACCOUNT_NAME}, {@link #COLUMN_ACCOUNT_AMOUNT_NUM}, {@link #COLUMN_ACCOUNT_AMOUNT_DENOM}
+     * and {@link #COLUMN_ACCOUNT_AMOUNT_MAX_DENOM}, so that rows can be displayed without further queries.</p>
+     * @param accountUID GUID of the account
+     * @param afterTimestamp Time of the last transaction of the previous page
+     * @param afterUID GUID of the last transaction of the previous page, or {@code null} for the first page
+     * @param pageSize Maximum number of transactions in the page
+     * @return Cursor to the transactions of the page
+     */
+    public Cursor fetchTransactionPageForAccount(@NonNull String accountUID, long afterTimestamp,
+                                                 @Nullable String afterUID, int pageSize){
+        String transactionUID = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID;
+        String transactionTime = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP;
+        String sql = "SELECT " + TransactionEntry.TABLE_NAME + "." + TransactionEntry._ID + " , "
+                + transactionUID + " , "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_DESCRIPTION + " , "
+                + transactionTime + " , "
+                + " SUM ( CASE WHEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " ELSE - "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " END ) AS " + COLUMN_ACCOUNT_AMOUNT_NUM + " , "
+                + " MIN ( " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM + " ) AS " + COLUMN_ACCOUNT_AMOUNT_DENOM + " , "
+                + " MAX ( " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM + " ) AS " + COLUMN_ACCOUNT_AMOUNT_MAX_DENOM + " , "
+                + " ( SELECT COUNT(*) FROM " + SplitEntry.TABLE_NAME + " AS all_splits "
+                + " WHERE all_splits." + SplitEntry.COLUMN_TRANSACTION_UID + " = " + transactionUID
+                + " ) AS " + COLUMN_SPLIT_COUNT + " , "
+                + " ( SELECT " + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_FULL_NAME
+                + " FROM " + SplitEntry.TABLE_NAME + " AS other_splits INNER JOIN " + AccountEntry.TABLE_NAME
+                + " ON " + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + " = other_splits." + SplitEntry.COLUMN_ACCOUNT_UID
+                + " WHERE other_splits." + SplitEntry.COLUMN_TRANSACTION_UID + " = " + transactionUID
+                + " AND other_splits." + SplitEntry.COLUMN_ACCOUNT_UID + " != ? LIMIT 1 ) AS " + COLUMN_COUNTER_ACCOUNT_NAME
+                + " FROM " + TransactionEntry.TABLE_NAME + " INNER JOIN " + SplitEntry.TABLE_NAME
+                + " ON " + transactionUID + " = " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+                + " WHERE " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ? "
+                + " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " = 0";
+        String[] args;
+        if (afterUID == null) {
+            args = new String[]{accountUID, accountUID};
+        } else {
+            sql += " AND ( " + transactionTime + " < ? OR ( " + transactionTime + " = ? AND " + transactionUID + " < ? ) )";
+            String timestamp = Long.toString(afterTimestamp);
+            args = new String[]{accountUID, accountUID, timestamp, timestamp, afterUID};
+        }
+        sql += " GROUP BY " + transactionUID
+                + " ORDER BY " + transactionTime + " DESC , " + transactionUID + " DESC"
+                + " LIMIT " + pageSize;
+        return mDb.rawQuery(sql, args);
+    }
+
     /**
      * Returns a cursor to all scheduled transactions which have at least one split in the account
      * <p>This is basically a set of all template transactions for this account</p>
@@ -249,18 +387,26 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      * @param accountUID GUID of the account
      */
     public void deleteTransactionsForAccount(String accountUID){
+        Set<String> accountUIDs = mSplitsDbAdapter.getAccountUIDsForSplits(SplitEntry.COLUMN_TRANSACTION_UID + " IN "
+                + " (SELECT " + SplitEntry.COLUMN_TRANSACTION_UID + " FROM " + SplitEntry.TABLE_NAME + " WHERE "
+                + SplitEntry.COLUMN_ACCOUNT_UID + " = ?)", new String[]{accountUID});
         String rawDeleteQuery = "DELETE FROM " + TransactionEntry.TABLE_NAME + " WHERE " + TransactionEntry.COLUMN_UID + " IN "
                 + " (SELECT " + SplitEntry.COLUMN_TRANSACTION_UID + " FROM " + SplitEntry.TABLE_NAME + " WHERE "
                 + SplitEntry.COLUMN_ACCOUNT_UID + " = ?)";
+        long startTime = QueryProfiler.startTiming();
         mDb.execSQL(rawDeleteQuery, new String[]{accountUID});
+        QueryProfiler.record(mDb, rawDeleteQuery, startTime, -1);
+        mSplitsDbAdapter.updateAccountBalances(accountUIDs);
     }
 
     /**
-     * Deletes all transactions which have no splits associated with them
+     * Deletes all transactions which have no splits associated with them.
+     * <p>This scans the whole transactions table. It is run by the daily maintenance of the books,
+     * see {@link org.gnucash.android.service.ScheduledActionService}, and once at the end of each XML import</p>
      * @return Number of records deleted
      */
     public int deleteTransactionsWithNoSplits(){
-        return mDb.delete(
+        return delete(
                 TransactionEntry.TABLE_NAME,
                 "NOT EXISTS ( SELECT * FROM " + SplitEntry.TABLE_NAME +
                         " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID +
@@ -269,19 +415,58 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
         );
     }
 
+    /**
+     * Deletes those of the given transactions which have no splits associated with them.
+     * <p>Only the given transactions are looked up, by their GUIDs, so the cost does not depend on the size of the book</p>
+     * @param transactionUIDs GUIDs of the transactions to check
+     * @return Number of records deleted
+     */
+    public int deleteTransactionsWithNoSplits(@NonNull List<String> transactionUIDs){
+        int deleted = 0;
+        for (int start = 0; start < transactionUIDs.size(); start += MAX_SQL_VARIABLES) {
+            List<String> chunk = transactionUIDs.subList(start, Math.min(start + MAX_SQL_VARIABLES, transactionUIDs.size()));
+            String placeholders = TextUtils.join(",", Collections.nCopies(chunk.size(), "?"));
+            deleted += delete(
+                    TransactionEntry.TABLE_NAME,
+                    TransactionEntry.COLUMN_UID + " IN (" + placeholders + ") AND NOT EXISTS ( SELECT * FROM "
+                            + SplitEntry.TABLE_NAME + " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID
+                            + " = " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " ) ",
+                    chunk.toArray(new String[chunk.size()])
+            );
+        }
+        return deleted;
+    }
+
     /**
      * Fetches all recurring transactions from the database.
-     * <p>Recurring transactions are the transaction templates which have an entry in the scheduled events table</p>
+     * <p>Recurring transactions are the transaction templates which have an entry in the scheduled events table.
+     * The cursor also holds the GUID of the scheduled action, and the time of its next occurrence
+     * or {@code null} if it has none. The schedule of the scheduled action is included under the
+     * column names of {@link ScheduledActionEntry} and {@link RecurrenceEntry}, so that it can be
+     * described without loading the scheduled action</p>
      * @return Cursor holding set of all recurring transactions
      */
     public Cursor fetchAllScheduledTransactions(){
         SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
         queryBuilder.setTables(TransactionEntry.TABLE_NAME + " INNER JOIN " + ScheduledActionEntry.TABLE_NAME + " ON "
                 + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
-                + ScheduledActionEntry.TABLE_NAME + "." + ScheduledActionEntry.COLUMN_ACTION_UID);
+                + ScheduledActionEntry.TABLE_NAME + "." + ScheduledActionEntry.COLUMN_ACTION_UID
+                + " INNER JOIN " + RecurrenceEntry.TABLE_NAME + " ON "
+                + ScheduledActionEntry.TABLE_NAME + "." + ScheduledActionEntry.COLUMN_RECURRENCE_UID + " = "
+                + RecurrenceEntry.TABLE_NAME + "." + RecurrenceEntry.COLUMN_UID);
 
         String[] projectionIn = new String[]{TransactionEntry.TABLE_NAME + ".*",
-                ScheduledActionEntry.TABLE_NAME+"."+ScheduledActionEntry.COLUMN_UID + " AS " + "origin_scheduled_action_uid"};
+                ScheduledActionEntry.TABLE_NAME+"."+ScheduledActionEntry.COLUMN_UID + " AS " + "origin_scheduled_action_uid",
+                ScheduledActionEntry.TABLE_NAME + "." + ScheduledActionEntry.COLUMN_START_TIME,
+                ScheduledActionEntry.TABLE_NAME + "." + ScheduledActionEntry.COLUMN_END_TIME,
+                ScheduledActionEntry.TABLE_NAME + "." + ScheduledActionEntry.COLUMN_LAST_RUN,
+                ScheduledActionEntry.TABLE_NAME + "." + ScheduledActionEntry.COLUMN_TOTAL_FREQUENCY,
+                RecurrenceEntry.TABLE_NAME + "." + RecurrenceEntry.COLUMN_PERIOD_TYPE,
+                RecurrenceEntry.TABLE_NAME + "." + RecurrenceEntry.COLUMN_MULTIPLIER,
+                RecurrenceEntry.TABLE_NAME + "." + RecurrenceEntry.COLUMN_PERIOD_END,
+                "( SELECT MIN(" + UpcomingOccurrenceEntry.COLUMN_TIME + ") FROM " + UpcomingOccurrenceEntry.TABLE_NAME
+                        + " WHERE " + UpcomingOccurrenceEntry.COLUMN_SCHEDX_ACTION_UID + " = "
+                        + ScheduledActionEntry.TABLE_NAME + "." + ScheduledActionEntry.COLUMN_UID + " ) AS " + "next_occurrence_time"};
         String sortOrder = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_DESCRIPTION + " ASC";
 //        queryBuilder.setDistinct(true);
 
@@ -291,19 +476,10 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
 	/**
 	 * Returns list of all transactions for account with UID <code>accountUID</code>
 	 * @param accountUID UID of account whose transactions are to be retrieved
-	 * @return List of {@link Transaction}s for account with UID <code>accountUID</code>
+	 * @return List of {@link Transaction}s for account with UID <code>accountUID</code>, newest first
 	 */
     public List<Transaction> getAllTransactionsForAccount(String accountUID){
-		Cursor c = fetchAllTransactionsForAccount(accountUID);
-		ArrayList<Transaction> transactionsList = new ArrayList<>();
-        try {
-            while (c.moveToNext()) {
-                transactionsList.add(buildModelInstance(c));
-            }
-        } finally {
-            c.close();
-        }
-		return transactionsList;
+        return toList(iterateTransactionsForAccount(accountUID, false));
 	}
 
     /**
@@ -311,14 +487,91 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      * @return List of all transactions
      */
     public List<Transaction> getAllTransactions(){
-        Cursor cursor = fetchAllRecords();
-        List<Transaction> transactions = new ArrayList<Transaction>();
+        return toList(iterateTransactions(null, null, null));
+    }
+
+    /**
+     * Returns the transactions with the given GUIDs, together with their splits.
+     * <p>The transactions are loaded with one query per {@value #MAX_SQL_VARIABLES} GUIDs</p>
+     * @param transactionUIDs GUIDs of the transactions
+     * @return Transactions in the order of the GUIDs. GUIDs which do not exist in the database are skipped
+     */
+    public List<Transaction> getTransactions(@NonNull Collection<String> transactionUIDs){
+        List<String> uids = new ArrayList<>(transactionUIDs);
+        Map<String, Transaction> transactions = new HashMap<>(uids.size());
+        for (int start = 0; start < uids.size(); start += MAX_SQL_VARIABLES) {
+            List<String> chunk = uids.subList(start, Math.min(start + MAX_SQL_VARIABLES, uids.size()));
+            String placeholders = TextUtils.join(",", Collections.nCopies(chunk.size(), "?"));
+            TransactionIterator iterator = iterateTransactions(
+                    TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " IN (" + placeholders + ")",
+                    chunk.toArray(new String[chunk.size()]), null);
+            try {
+                while (iterator.hasNext()) {
+                    Transaction transaction = iterator.next();
+                    transactions.put(transaction.getUID(), transaction);
+                }
+            } finally {
+                iterator.close();
+            }
+        }
+
+        List<Transaction> result = new ArrayList<>(transactions.size());
+        for (String uid : uids) {
+            Transaction transaction = transactions.get(uid);
+            if (transaction != null)
+                result.add(transaction);
+        }
+        return result;
+    }
+
+    /**
+     * Returns an iterator over transactions together with all of their splits.
+     * <p>The transactions and splits are read with a single query, instead of one query for the
+     * splits of each transaction. The iterator has to be closed when it is no longer needed.</p>
+     * @param where SQL WHERE clause without the "WHERE" itself, on the columns of the transactions table.
+     *              Columns have to be qualified with the table name. {@code null} for all transactions
+     * @param whereArgs Arguments to substitute question marks for
+     * @param orderBy Order of the transactions, on the columns of the transactions table qualified
+     *                with the table name. {@code null} for the order in which the transactions were added
+     * @return Iterator over the transactions
+     */
+    public TransactionIterator iterateTransactions(@Nullable String where, @Nullable String[] whereArgs,
+                                                   @Nullable String orderBy){
+        String sortOrder = orderBy == null ? TransactionIterator.SPLIT_ORDER
+                : orderBy + ", " + TransactionIterator.SPLIT_ORDER;
+        Cursor cursor = mDb.query(TransactionIterator.TABLES, TransactionIterator.PROJECTION,
+                where, whereArgs, null, null, sortOrder);
+        return new TransactionIterator(cursor, mCommoditiesDbAdapter);
+    }
+
+    /**
+     * Returns an iterator over the transactions which have a split in the account, newest first.
+     * The iterator has to be closed when it is no longer needed
+     * @param accountUID GUID of the account
+     * @param template {@code true} for the template transactions of scheduled actions, {@code false} for the others
+     * @return Iterator over the transactions, with all of their splits
+     * @see #iterateTransactions(String, String[], String)
+     */
+    public TransactionIterator iterateTransactionsForAccount(String accountUID, boolean template){
+        String where = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " IN (SELECT "
+                + SplitEntry.COLUMN_TRANSACTION_UID + " FROM " + SplitEntry.TABLE_NAME
+                + " WHERE " + SplitEntry.COLUMN_ACCOUNT_UID + " = ?)"
+                + " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " = " + (template ? 1 : 0);
+        return iterateTransactions(where, new String[]{accountUID},
+                TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " DESC");
+    }
+
+    /**
+     * Reads all transactions of an iterator and closes it
+     */
+    private static List<Transaction> toList(TransactionIterator iterator){
+        List<Transaction> transactions = new ArrayList<>();
         try {
-            while (cursor.moveToNext()) {
-                transactions.add(buildModelInstance(cursor));
+            while (iterator.hasNext()) {
+                transactions.add(iterator.next());
             }
         } finally {
-            cursor.close();
+            iterator.close();
         }
         return transactions;
     }
@@ -483,16 +736,7 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      * @return List of all scheduled transactions
      */
     public List<Transaction> getScheduledTransactionsForAccount(String accountUID){
-        Cursor cursor = fetchScheduledTransactionsForAccount(accountUID);
-        List<Transaction> scheduledTransactions = new ArrayList<>();
-        try {
-            while (cursor.moveToNext()) {
-                scheduledTransactions.add(buildModelInstance(cursor));
-            }
-            return scheduledTransactions;
-        } finally {
-            cursor.close();
-        }
+        return toList(iterateTransactionsForAccount(accountUID, true));
     }
 
     /**
@@ -510,30 +754,106 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
     }
 
     /**
-     * Returns a cursor to transactions whose name (UI: description) start with the <code>prefix</code>
+     * Returns a cursor to transactions whose name (UI: description) contains words starting with the words of <code>prefix</code>
      * <p>This method is used for autocomplete suggestions when creating new transactions. <br/>
-     * The suggestions are either transactions which have at least one split with {@code accountUID} or templates.</p>
-     * @param prefix Starting characters of the transaction name
+     * The suggestions are either transactions which have at least one split with {@code accountUID} or templates.
+     * There is one suggestion per description, which is the latest transaction with the description.
+     * Suggestions are ranked by how often and how recently their description was used.</p>
+     * <p>The descriptions are looked up in the full-text index, so a word matches if it starts with one of
+     * the words typed, wherever it is in the description.</p>
+     * @param prefix Starting characters of the words of the transaction name
      * @param accountUID GUID of account within which to search for transactions
      * @return Cursor to the data set containing all matching transactions
      */
     public Cursor fetchTransactionSuggestions(String prefix, String accountUID){
-        SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
-        queryBuilder.setTables(TransactionEntry.TABLE_NAME
-                + " INNER JOIN " + SplitEntry.TABLE_NAME + " ON "
-                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
-                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID);
-        queryBuilder.setDistinct(true);
-        String[] projectionIn = new String[]{TransactionEntry.TABLE_NAME + ".*"};
-        String selection = "(" + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?"
-                + " OR " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + "=1 )"
-                + " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_DESCRIPTION + " LIKE '" + prefix + "%'";
-        String[] selectionArgs = new String[]{accountUID};
-        String sortOrder = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " DESC";
-        String groupBy = TransactionEntry.COLUMN_DESCRIPTION;
-        String limit = Integer.toString(5);
+        String matchQuery = buildSearchMatchQuery(prefix);
+        String from = TransactionEntry.TABLE_NAME;
+        List<String> args = new ArrayList<>();
+        String where = "";
+        if (matchQuery != null) {
+            from = TransactionSearchEntry.TABLE_NAME + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                    + TransactionEntry.TABLE_NAME + "." + TransactionEntry._ID + " = "
+                    + TransactionSearchEntry.TABLE_NAME + "." + TransactionSearchEntry.COLUMN_DOCID;
+            where = TransactionSearchEntry.TABLE_NAME + "." + TransactionSearchEntry.COLUMN_DESCRIPTION + " MATCH ? AND ";
+            args.add(matchQuery);
+        }
+        args.add(accountUID);
+
+        //frequency of use divided by the age of the last use in months, so that old habits fade out
+        String sql = "SELECT " + TransactionEntry.TABLE_NAME + ".* , "
+                + " MAX(" + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + ") AS last_used , "
+                + " COUNT(*) AS use_count "
+                + " FROM " + from
+                + " WHERE " + where + "( " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " = 1"
+                + " OR EXISTS ( SELECT 1 FROM " + SplitEntry.TABLE_NAME
+                + " WHERE " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " = "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID
+                + " AND " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ? ) )"
+                + " GROUP BY " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_DESCRIPTION
+                + " ORDER BY use_count / ( 1.0 + MAX(0, " + System.currentTimeMillis() + " - last_used) / "
+                + SUGGESTION_AGE_UNIT + ".0 ) DESC"
+                + " LIMIT 5";
+        return mDb.rawQuery(sql, args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * Searches the descriptions of transactions and the memos of their splits.
+     * <p>Each word of the query has to match the start of a word in the description or in one of the memos.
+     * Template transactions are not included. The latest transactions come first.</p>
+     * @param query Words to search for, as typed by the user
+     * @param limit Maximum number of transactions to return
+     * @return Cursor to the matching transactions, which additionally contains the {@link SplitEntry#COLUMN_ACCOUNT_UID}
+     * of one of the splits of each transaction and the {@link AccountEntry#COLUMN_FULL_NAME} of that account.
+     * The cursor is empty if the query contains no words
+     */
+    public Cursor searchTransactions(String query, int limit){
+        String matchQuery = buildSearchMatchQuery(query);
+        String results = "SELECT " + TransactionEntry.TABLE_NAME + ".* , "
+                + " ( SELECT " + SplitEntry.COLUMN_ACCOUNT_UID + " FROM " + SplitEntry.TABLE_NAME
+                + " WHERE " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " = "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " LIMIT 1 ) AS "
+                + SplitEntry.COLUMN_ACCOUNT_UID
+                + " FROM " + TransactionSearchEntry.TABLE_NAME + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry._ID + " = "
+                + TransactionSearchEntry.TABLE_NAME + "." + TransactionSearchEntry.COLUMN_DOCID
+                + " WHERE " + (matchQuery == null ? "0" : TransactionSearchEntry.TABLE_NAME + " MATCH ?")
+                + " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " = 0"
+                + " ORDER BY " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " DESC"
+                + " LIMIT " + limit;
+        //the account names are joined to the few results only
+        String sql = "SELECT results.* , " + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_FULL_NAME
+                + " FROM ( " + results + " ) AS results"
+                + " LEFT OUTER JOIN " + AccountEntry.TABLE_NAME + " ON " + AccountEntry.TABLE_NAME + "."
+                + AccountEntry.COLUMN_UID + " = results." + SplitEntry.COLUMN_ACCOUNT_UID
+                + " ORDER BY results." + TransactionEntry.COLUMN_TIMESTAMP + " DESC";
+        return mDb.rawQuery(sql, matchQuery == null ? null : new String[]{matchQuery});
+    }
 
-        return queryBuilder.query(mDb, projectionIn, selection, selectionArgs, groupBy, null, sortOrder, limit);
+    /**
+     * Converts text typed by the user into a full-text query matching words which start with each of the typed words.
+     * Characters which are not letters or digits separate words, so the text cannot contain query operators
+     * @param text Text typed by the user
+     * @return Full-text query, or {@code null} if the text contains no words
+     */
+    @Nullable
+    private static String buildSearchMatchQuery(@Nullable String text){
+        if (text == null)
+            return null;
+        StringBuilder query = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                //operators like OR are upper case, and the tokenizer folds the case of ASCII letters anyway
+                word.append(c < 128 ? Character.toLowerCase(c) : c);
+            } else if (word.length() > 0) {
+                if (query.length() > 0)
+                    query.append(' ');
+                query.append(word).append('*');
+                word.setLength(0);
+            }
+        }
+        return query.length() == 0 ? null : query.toString();
     }
 
     /**
@@ -544,7 +864,7 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      * @return Number of records affected
      */
     public int updateTransaction(ContentValues contentValues, String whereClause, String[] whereArgs){
-        return mDb.update(TransactionEntry.TABLE_NAME, contentValues, whereClause, whereArgs);
+        return update(TransactionEntry.TABLE_NAME, contentValues, whereClause, whereArgs);
     }
 
     /**
@@ -578,7 +898,26 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      */
     public int deleteAllNonTemplateTransactions(){
         String where = TransactionEntry.COLUMN_TEMPLATE + "=0";
-        return mDb.delete(mTableName, where, null);
+        int count = delete(mTableName, where, null);
+        mSplitsDbAdapter.rebuildAccountBalances();
+        return count;
+    }
+
+    @Override
+    public boolean deleteRecord(long rowId) {
+        Set<String> accountUIDs = mSplitsDbAdapter.getAccountUIDsForSplits(SplitEntry.COLUMN_TRANSACTION_UID
+                + " IN ( SELECT " + TransactionEntry.COLUMN_UID + " FROM " + TransactionEntry.TABLE_NAME
+                + " WHERE " + TransactionEntry._ID + " = " + rowId + " )", null);
+        boolean result = super.deleteRecord(rowId);
+        mSplitsDbAdapter.updateAccountBalances(accountUIDs);
+        return result;
+    }
+
+    @Override
+    public int deleteAllRecords() {
+        //without any transactions, all account balances are zero
+        delete(AccountBalanceEntry.TABLE_NAME, null, null);
+        return super.deleteAllRecords();
     }
 
     /**
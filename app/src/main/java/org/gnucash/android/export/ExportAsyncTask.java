@@ -220,17 +220,7 @@ public class ExportAsyncTask extends AsyncTask<ExportParams, Void, Boolean> {
      * @return Object of one of {@link QifExporter}, {@link OfxExporter} or {@link GncXmlExporter}
      */
     private Exporter getExporter() {
-        switch (mExportParams.getExportFormat()) {
-            case QIF:
-                return new QifExporter(mExportParams, mDb);
-
-            case OFX:
-                return new OfxExporter(mExportParams, mDb);
-
-            case XML:
-            default:
-                return new GncXmlExporter(mExportParams, mDb);
-        }
+        return ExportScheduler.createExporter(mExportParams, mDb);
     }
 
     /**
@@ -470,7 +460,7 @@ public class ExportAsyncTask extends AsyncTask<ExportParams, Void, Boolean> {
      */
     private void backupAndDeleteTransactions(){
         Log.i(TAG, "Backup and deleting transactions after export");
-        GncXmlExporter.createBackup(); //create backup before deleting everything
+        GncXmlExporter.createFullBackup(); //create backup before deleting everything
         List<Transaction> openingBalances = new ArrayList<>();
         boolean preserveOpeningBalances = GnuCashApplication.shouldSaveOpeningBalances(false);
 
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.export;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.db.adapter.BookSession;
+import org.gnucash.android.export.ofx.OfxExporter;
+import org.gnucash.android.export.qif.QifExporter;
+import org.gnucash.android.export.xml.GncXmlExporter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs exports and backups of several books on a bounded pool of worker threads.
+ * <p>Jobs of different books, or of different formats of the same book, run at the same time.
+ * All jobs of a book use the {@link BookSession} of the book, so each book is opened only once.
+ * Jobs which write the same files, i.e. the same format of the same book, run one after the other.</p>
+ * <p>Jobs are submitted in batches. A batch reports the state of each job as it changes and
+ * collects the results of all of its jobs once they are finished.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class ExportScheduler {
+    private static final String LOG_TAG = "ExportScheduler";
+
+    /**
+     * Maximum number of worker threads of the default scheduler
+     */
+    public static final int MAX_THREADS = 6;
+
+    private static ExportScheduler sInstance;
+
+    private final ExecutorService mExecutor;
+
+    /**
+     * Locks of the jobs which write the same files, keyed by book GUID and export format
+     */
+    private final Map<String, Object> mOutputLocks = new HashMap<>();
+
+    /**
+     * Receives the changes of the states of the jobs of a batch
+     */
+    public interface OnJobStateChangedListener {
+        /**
+         * Called on the worker thread of the job whenever the state of a job changes
+         * @param batch Batch of the job
+         * @param job Job whose state changed
+         */
+        void onJobStateChanged(Batch batch, ExportJob job);
+    }
+
+    /**
+     * Creates a scheduler
+     * @param threadCount Maximum number of jobs which run at the same time
+     */
+    public ExportScheduler(int threadCount) {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        mExecutor = Executors.newFixedThreadPool(Math.max(1, threadCount), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, LOG_TAG + "-" + threadNumber.getAndIncrement());
+            }
+        });
+    }
+
+    /**
+     * Returns the scheduler of the application, which uses one thread per processor,
+     * but at least two and at most {@value #MAX_THREADS} threads
+     */
+    public static synchronized ExportScheduler getInstance() {
+        if (sInstance == null) {
+            int processors = Runtime.getRuntime().availableProcessors();
+            sInstance = new ExportScheduler(Math.min(Math.max(processors, 2), MAX_THREADS));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Submits jobs for execution. The jobs are started in the order of the list
+     * @param jobs Jobs to run. A job can only be submitted once
+     * @param listener Listener for the changes of the states of the jobs, or {@code null}
+     * @return Batch of the jobs, with which the jobs can be awaited or cancelled
+     * @throws IllegalStateException if a job has already been submitted
+     */
+    public Batch submit(@NonNull List<ExportJob> jobs, @Nullable OnJobStateChangedListener listener) {
+        final Batch batch = new Batch(jobs, listener);
+        for (final ExportJob job : jobs) {
+            synchronized (job) {
+                if (job.mBatch != null)
+                    throw new IllegalStateException("Job has already been submitted");
+                job.mBatch = batch;
+            }
+        }
+        for (final ExportJob job : jobs) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runJob(job);
+                    } finally {
+                        batch.mPendingJobs.countDown();
+                    }
+                }
+            });
+        }
+        return batch;
+    }
+
+    /**
+     * Stops the worker threads once the submitted jobs are finished. No jobs can be submitted afterwards
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    private void runJob(ExportJob job) {
+        if (!job.setState(ExportJob.State.QUEUED, ExportJob.State.RUNNING))
+            return; //cancelled
+        job.mBatch.notifyStateChanged(job);
+
+        synchronized (getOutputLock(job)) {
+            try {
+                if (job.mBackup) {
+                    if (!GncXmlExporter.createBackup(job.mBookUID))
+                        throw new Exporter.ExporterException(job.mExportParams, "Backup of book " + job.mBookUID + " failed");
+                } else {
+                    BookSession session = BookSession.open(job.mBookUID);
+                    try {
+                        Exporter exporter = createExporter(job.mExportParams, session.getDatabase());
+                        job.mExportedFiles = exporter.generateExport();
+                    } finally {
+                        session.close();
+                    }
+                }
+                job.setState(ExportJob.State.RUNNING, ExportJob.State.SUCCEEDED);
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Error running " + job, e);
+                Crashlytics.logException(e);
+                job.mError = e;
+                job.setState(ExportJob.State.RUNNING, ExportJob.State.FAILED);
+            }
+        }
+        job.mBatch.notifyStateChanged(job);
+    }
+
+    private Object getOutputLock(ExportJob job) {
+        String key = job.mBookUID + "/" + job.mExportParams.getExportFormat().name();
+        synchronized (mOutputLocks) {
+            Object lock = mOutputLocks.get(key);
+            if (lock == null) {
+                lock = new Object();
+                mOutputLocks.put(key, lock);
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * Returns an exporter for the export format of the parameters
+     * @param exportParams Export options
+     * @param db Database of the book to export
+     * @return Object of one of {@link QifExporter}, {@link OfxExporter} or {@link GncXmlExporter}
+     */
+    static Exporter createExporter(ExportParams exportParams, SQLiteDatabase db) {
+        switch (exportParams.getExportFormat()) {
+            case QIF:
+                return new QifExporter(exportParams, db);
+
+            case OFX:
+                return new OfxExporter(exportParams, db);
+
+            case XML:
+            default:
+                return new GncXmlExporter(exportParams, db);
+        }
+    }
+
+    /**
+     * Export or backup of one book
+     */
+    public static class ExportJob {
+
+        /**
+         * States of a job. A job is queued until a worker thread is free,
+         * and ends in one of the states {@link #SUCCEEDED}, {@link #FAILED} or {@link #CANCELLED}
+         */
+        public enum State {QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED}
+
+        private final String mBookUID;
+        private final ExportParams mExportParams;
+        private final boolean mBackup;
+
+        private State mState = State.QUEUED;
+        private Batch mBatch;
+        private volatile List<String> mExportedFiles = Collections.emptyList();
+        private volatile Exception mError;
+
+        private ExportJob(String bookUID, ExportParams exportParams, boolean backup) {
+            mBookUID = bookUID;
+            mExportParams = exportParams;
+            mBackup = backup;
+        }
+
+        /**
+         * Creates a job which exports a book to the cache folder of the exporter
+         * @param bookUID GUID of the book
+         * @param exportParams Export options
+         */
+        public static ExportJob export(@NonNull String bookUID, @NonNull ExportParams exportParams) {
+            return new ExportJob(bookUID, exportParams, false);
+        }
+
+        /**
+         * Creates a job which saves a backup of a book, as {@link GncXmlExporter#createBackup(String)} does
+         * @param bookUID GUID of the book
+         */
+        public static ExportJob backup(@NonNull String bookUID) {
+            return new ExportJob(bookUID, new ExportParams(ExportFormat.XML), true);
+        }
+
+        public String getBookUID() {
+            return mBookUID;
+        }
+
+        public ExportParams getExportParams() {
+            return mExportParams;
+        }
+
+        public boolean isBackup() {
+            return mBackup;
+        }
+
+        public synchronized State getState() {
+            return mState;
+        }
+
+        /**
+         * Returns {@code true} if the job has ended
+         */
+        public synchronized boolean isFinished() {
+            return mState != State.QUEUED && mState != State.RUNNING;
+        }
+
+        /**
+         * Returns the paths of the files written by a successful export. Backups return no files
+         */
+        public List<String> getExportedFiles() {
+            return mExportedFiles;
+        }
+
+        /**
+         * Returns the error which made the job fail, or {@code null}
+         */
+        @Nullable
+        public Exception getError() {
+            return mError;
+        }
+
+        /**
+         * Cancels the job if it has not been started yet. Jobs which are running are not interrupted
+         * @return {@code true} if the job was cancelled
+         */
+        public boolean cancel() {
+            if (!setState(State.QUEUED, State.CANCELLED))
+                return false;
+            if (mBatch != null)
+                mBatch.notifyStateChanged(this);
+            return true;
+        }
+
+        private synchronized boolean setState(State expected, State newState) {
+            if (mState != expected)
+                return false;
+            mState = newState;
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return (mBackup ? "backup" : mExportParams.getExportFormat().name() + " export") + " of book " + mBookUID;
+        }
+    }
+
+    /**
+     * Jobs submitted together, and their merged results
+     */
+    public static class Batch {
+        private final List<ExportJob> mJobs;
+        private final OnJobStateChangedListener mListener;
+        private final CountDownLatch mPendingJobs;
+
+        private Batch(List<ExportJob> jobs, @Nullable OnJobStateChangedListener listener) {
+            mJobs = Collections.unmodifiableList(new ArrayList<>(jobs));
+            mListener = listener;
+            mPendingJobs = new CountDownLatch(jobs.size());
+        }
+
+        private void notifyStateChanged(ExportJob job) {
+            if (mListener == null)
+                return;
+            try {
+                mListener.onJobStateChanged(this, job);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Error notifying the state of " + job, e);
+            }
+        }
+
+        public List<ExportJob> getJobs() {
+            return mJobs;
+        }
+
+        /**
+         * Returns the number of jobs which have ended, in whichever state
+         */
+        public int getFinishedJobCount() {
+            int count = 0;
+            for (ExportJob job : mJobs) {
+                if (job.isFinished())
+                    count++;
+            }
+            return count;
+        }
+
+        /**
+         * Returns {@code true} if all jobs have ended
+         */
+        public boolean isFinished() {
+            return mPendingJobs.getCount() == 0;
+        }
+
+        /**
+         * Cancels all jobs of the batch which have not been started yet
+         */
+        public void cancel() {
+            for (ExportJob job : mJobs) {
+                job.cancel();
+            }
+        }
+
+        /**
+         * Waits until all jobs of the batch have ended
+         * @throws InterruptedException if the waiting thread is interrupted
+         */
+        public void await() throws InterruptedException {
+            mPendingJobs.await();
+        }
+
+        /**
+         * Waits until all jobs of the batch have ended, or the timeout expires
+         * @return {@code true} if all jobs have ended
+         * @throws InterruptedException if the waiting thread is interrupted
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return mPendingJobs.await(timeout, unit);
+        }
+
+        /**
+         * Returns {@code true} if all jobs of the batch succeeded
+         */
+        public boolean isSuccessful() {
+            return getJobs(ExportJob.State.SUCCEEDED).size() == mJobs.size();
+        }
+
+        /**
+         * Returns the jobs which are in a state
+         */
+        public List<ExportJob> getJobs(ExportJob.State state) {
+            List<ExportJob> jobs = new ArrayList<>();
+            for (ExportJob job : mJobs) {
+                if (job.getState() == state)
+                    jobs.add(job);
+            }
+            return jobs;
+        }
+
+        /**
+         * Returns the files written by all successful jobs, in the order of the jobs
+         */
+        public List<String> getExportedFiles() {
+            List<String> exportedFiles = new ArrayList<>();
+            for (ExportJob job : getJobs(ExportJob.State.SUCCEEDED)) {
+                exportedFiles.addAll(job.getExportedFiles());
+            }
+            return exportedFiles;
+        }
+    }
+}
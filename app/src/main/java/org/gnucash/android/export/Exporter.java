@@ -78,8 +78,9 @@ public abstract class Exporter {
 
     /**
      * Cache directory to which files will be first exported before moved to final destination.
-     * <p>There is a different cache dir per export format, which has the name of the export format.<br/>
-     *    The cache dir is cleared every time a new {@link Exporter} is instantiated.
+     * <p>There is a different cache dir per export format and book, in a folder with the name of the export format.<br/>
+     *    The cache dir is cleared every time a new {@link Exporter} is instantiated, so exports of different books
+     *    do not delete each other's files.
      *    The files created here are only accessible within this application, and should be copied to SD card before they can be shared
      * </p>
      */
@@ -137,8 +138,8 @@ public abstract class Exporter {
 
         mBookUID = new File(mDb.getPath()).getName(); //this depends on the database file always having the name of the book GUID
         mExportCacheFilePath = null;
-        mCacheDir = new File(mContext.getCacheDir(), params.getExportFormat().name());
-        mCacheDir.mkdir();
+        mCacheDir = new File(new File(mContext.getCacheDir(), params.getExportFormat().name()), mBookUID);
+        mCacheDir.mkdirs();
         purgeDirectory(mCacheDir);
     }
 
@@ -159,8 +160,11 @@ public abstract class Exporter {
      * @return String containing the file name
      */
     public static String buildExportFilename(ExportFormat format, String bookName) {
-        return EXPORT_FILENAME_DATE_FORMAT.format(new Date(System.currentTimeMillis()))
-                + "_gnucash_export_" + sanitizeFilename(bookName) + format.getExtension();
+        String timestamp;
+        synchronized (EXPORT_FILENAME_DATE_FORMAT) {
+            timestamp = EXPORT_FILENAME_DATE_FORMAT.format(new Date(System.currentTimeMillis()));
+        }
+        return timestamp + "_gnucash_export_" + sanitizeFilename(bookName) + format.getExtension();
     }
 
     /**
@@ -175,7 +179,10 @@ public abstract class Exporter {
             return timeMillis;
         }
         try {
-            Date date = EXPORT_FILENAME_DATE_FORMAT.parse(tokens[0] + "_" + tokens[1]);
+            Date date;
+            synchronized (EXPORT_FILENAME_DATE_FORMAT) {
+                date = EXPORT_FILENAME_DATE_FORMAT.parse(tokens[0] + "_" + tokens[1]);
+            }
             timeMillis = date.getTime();
         } catch (ParseException e) {
             Log.e("Exporter", "Error parsing time from file name: " + e.getMessage());
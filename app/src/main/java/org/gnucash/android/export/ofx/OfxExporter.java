@@ -19,42 +19,43 @@ package org.gnucash.android.export.ofx;
 
 import android.database.sqlite.SQLiteDatabase;
 import android.preference.PreferenceManager;
-import android.util.Log;
-
-import com.crashlytics.android.Crashlytics;
 
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
-import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionIterator;
 import org.gnucash.android.export.ExportParams;
 import org.gnucash.android.export.Exporter;
 import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Account.OfxAccountType;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
 import org.gnucash.android.util.PreferencesHelper;
 import org.gnucash.android.util.TimestampHelper;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.ProcessingInstruction;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.io.StringWriter;
 import java.io.Writer;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 
 /**
@@ -64,10 +65,12 @@ import javax.xml.transform.stream.StreamResult;
  */
 public class OfxExporter extends Exporter{
 
+    private static final Attributes NO_ATTRIBUTES = new AttributesImpl();
+
     /**
-	 * List of accounts in the expense report
-	 */
-	private List<Account> mAccountsList;
+     * Account types of the accounts which are the destination of transfers, keyed by account GUID
+     */
+    private final Map<String, OfxAccountType> mTransferAccountTypes = new HashMap<>();
 
     /**
 	 * Builds an XML representation of the {@link Account}s and {@link Transaction}s in the database
@@ -87,97 +90,34 @@ public class OfxExporter extends Exporter{
         LOG_TAG = "OfxExporter";
     }
 
-    /**
-	 * Converts all expenses into OFX XML format and adds them to the XML document
-	 * @param doc DOM document of the OFX expenses.
-	 * @param parent Parent node for all expenses in report
-	 */
-	private void generateOfx(Document doc, Element parent){
-		Element transactionUid = doc.createElement(OfxHelper.TAG_TRANSACTION_UID);
-		//unsolicited because the data exported is not as a result of a request
-		transactionUid.appendChild(doc.createTextNode(OfxHelper.UNSOLICITED_TRANSACTION_ID));
-
-		Element statementTransactionResponse = doc.createElement(OfxHelper.TAG_STATEMENT_TRANSACTION_RESPONSE);
-		statementTransactionResponse.appendChild(transactionUid);
-		
-		Element bankmsgs = doc.createElement(OfxHelper.TAG_BANK_MESSAGES_V1);
-		bankmsgs.appendChild(statementTransactionResponse);
-		
-		parent.appendChild(bankmsgs);		
-		
-		AccountsDbAdapter accountsDbAdapter = mAccountsDbAdapter;
-		for (Account account : mAccountsList) {		
-			if (account.getTransactionCount() == 0)
-				continue; 
-
-            //do not export imbalance accounts for OFX transactions and double-entry disabled
-            if (!GnuCashApplication.isDoubleEntryEnabled() && account.getName().contains(mContext.getString(R.string.imbalance_account_name)))
-                continue;
-
-
-			//add account details (transactions) to the XML document			
-			account.toOfx(doc, statementTransactionResponse, mExportParams.getExportStartTime());
-			
-			//mark as exported
-			accountsDbAdapter.markAsExported(account.getUID());
-			
-		}
-	}
-
-    /**
-     * Generate OFX export file from the transactions in the database
-     * @return String containing OFX export
-     * @throws ExporterException
-     */
-    private String generateOfxExport() throws ExporterException {
-        DocumentBuilderFactory docFactory = DocumentBuilderFactory
-                .newInstance();
-        DocumentBuilder docBuilder;
-        try {
-            docBuilder = docFactory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            throw new ExporterException(mExportParams, e);
-        }
-
-        Document document = docBuilder.newDocument();
-        Element root = document.createElement("OFX");
-
-        ProcessingInstruction pi = document.createProcessingInstruction("OFX", OfxHelper.OFX_HEADER);
-        document.appendChild(pi);
-        document.appendChild(root);
-
-        generateOfx(document, root);
-
-        boolean useXmlHeader = PreferenceManager.getDefaultSharedPreferences(mContext)
-                .getBoolean(mContext.getString(R.string.key_xml_ofx_header), false);
-
-        PreferencesHelper.setLastExportTime(TimestampHelper.getTimestampFromNow());
-
-        StringWriter stringWriter = new StringWriter();
-        //if we want SGML OFX headers, write first to string and then prepend header
-        if (useXmlHeader){
-            write(document, stringWriter, false);
-            return stringWriter.toString();
-        } else {
-            Node ofxNode = document.getElementsByTagName("OFX").item(0);
-            write(ofxNode, stringWriter, true);
-            return OfxHelper.OFX_SGML_HEADER + '\n' + stringWriter.toString();
-        }
-    }
-
     @Override
     public List<String> generateExport() throws ExporterException {
-        mAccountsList = mAccountsDbAdapter.getExportableAccounts(mExportParams.getExportStartTime());
-        if (mAccountsList.isEmpty())
+        List<Account> accountsList = mAccountsDbAdapter.getSimpleExportableAccounts(mExportParams.getExportStartTime());
+        if (accountsList.isEmpty())
             return new ArrayList<>(); // Nothing to export, so no files generated
 
-        BufferedWriter writer = null;
+        boolean useXmlHeader = PreferenceManager.getDefaultSharedPreferences(mContext)
+                .getBoolean(mContext.getString(R.string.key_xml_ofx_header), false);
+
+        PreferencesHelper.setLastExportTime(TimestampHelper.getTimestampFromNow(), mBookUID);
 
+        Writer writer = null;
         try {
             File file = new File(getExportCacheFilePath());
             writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
-            writer.write(generateOfxExport());
-        } catch (IOException e) {
+            //SGML OFX headers are written before the OFX element, in place of the XML declaration
+            if (!useXmlHeader)
+                writer.write(OfxHelper.OFX_SGML_HEADER + '\n');
+
+            TransformerHandler handler = newTransformerHandler(writer, !useXmlHeader);
+            handler.startDocument();
+            if (useXmlHeader)
+                handler.processingInstruction("OFX", OfxHelper.OFX_HEADER);
+            startElement(handler, "OFX");
+            generateOfx(handler, accountsList);
+            endElement(handler, "OFX");
+            handler.endDocument();
+        } catch (IOException | TransformerConfigurationException | SAXException e) {
             throw new ExporterException(mExportParams, e);
         } finally {
             if (writer != null) {
@@ -196,30 +136,184 @@ public class OfxExporter extends Exporter{
     }
 
     /**
-     * Writes out the document held in <code>node</code> to <code>outputWriter</code>
-     * @param node {@link Node} containing the OFX document structure. Usually the parent node
-     * @param outputWriter {@link java.io.Writer} to use in writing the file to stream
+     * Creates the serializer of the OFX document.
+     * <p>The document is passed to the serializer as a stream of SAX events, so that it is never
+     * held in memory. The serializer is configured like the one used for DOM documents before,
+     * so the output is the same</p>
+     * @param writer Writer for the serialized document
      * @param omitXmlDeclaration Flag which causes the XML declaration to be omitted
+     * @return Handler accepting the events of the document
+     * @throws TransformerConfigurationException if no serializer is available
      */
-    private void write(Node node, Writer outputWriter, boolean omitXmlDeclaration){
-        try {
-            TransformerFactory transformerFactory = TransformerFactory
-                    .newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            DOMSource source = new DOMSource(node);
-            StreamResult result = new StreamResult(outputWriter);
-
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            if (omitXmlDeclaration) {
-                transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    private TransformerHandler newTransformerHandler(Writer writer, boolean omitXmlDeclaration)
+            throws TransformerConfigurationException {
+        SAXTransformerFactory transformerFactory = (SAXTransformerFactory) TransformerFactory.newInstance();
+        TransformerHandler handler = transformerFactory.newTransformerHandler();
+        //the output properties have to be set before the result
+        Transformer transformer = handler.getTransformer();
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        if (omitXmlDeclaration) {
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        }
+        handler.setResult(new StreamResult(writer));
+        return handler;
+    }
+
+    /**
+	 * Converts all expenses into OFX XML format and writes them to the document
+	 * @param handler Handler of the OFX document
+	 * @param accountsList Accounts with transactions to export, without their transactions
+	 */
+	private void generateOfx(ContentHandler handler, List<Account> accountsList) throws SAXException {
+        startElement(handler, OfxHelper.TAG_BANK_MESSAGES_V1);
+        startElement(handler, OfxHelper.TAG_STATEMENT_TRANSACTION_RESPONSE);
+        //unsolicited because the data exported is not as a result of a request
+        writeElement(handler, OfxHelper.TAG_TRANSACTION_UID, OfxHelper.UNSOLICITED_TRANSACTION_ID);
+
+		for (Account account : accountsList) {
+            //do not export imbalance accounts for OFX transactions and double-entry disabled
+            if (!GnuCashApplication.isDoubleEntryEnabled() && account.getName().contains(mContext.getString(R.string.imbalance_account_name)))
+                continue;
+
+            TransactionIterator transactions = mTransactionsDbAdapter.iterateTransactionsForAccount(account.getUID(), false);
+            try {
+                if (!transactions.hasNext())
+                    continue;
+
+                //add account details (transactions) to the XML document
+                writeAccount(handler, account, transactions);
+            } finally {
+                transactions.close();
             }
 
-            transformer.transform(source, result);
-        } catch (TransformerException tfException) {
-            Log.e(LOG_TAG, tfException.getMessage());
-            Crashlytics.logException(tfException);
+			//mark as exported
+			mAccountsDbAdapter.markAsExported(account.getUID());
+		}
+
+        endElement(handler, OfxHelper.TAG_STATEMENT_TRANSACTION_RESPONSE);
+        endElement(handler, OfxHelper.TAG_BANK_MESSAGES_V1);
+	}
+
+    /**
+     * Writes the statement of an account, loading its transactions one at a time
+     * @param handler Handler of the OFX document
+     * @param account Account to write
+     * @param transactions Transactions of the account, with their splits
+     */
+    private void writeAccount(ContentHandler handler, Account account, TransactionIterator transactions) throws SAXException {
+        startElement(handler, OfxHelper.TAG_STATEMENT_TRANSACTIONS);
+        writeElement(handler, OfxHelper.TAG_CURRENCY_DEF, account.getCommodity().getCurrencyCode());
+
+        //================= BEGIN BANK ACCOUNT INFO (BANKACCTFROM) =================================
+        startElement(handler, OfxHelper.TAG_BANK_ACCOUNT_FROM);
+        writeElement(handler, OfxHelper.TAG_BANK_ID, OfxHelper.APP_ID);
+        writeElement(handler, OfxHelper.TAG_ACCOUNT_ID, account.getUID());
+        writeElement(handler, OfxHelper.TAG_ACCOUNT_TYPE, Account.convertToOfxAccountType(account.getAccountType()).toString());
+        endElement(handler, OfxHelper.TAG_BANK_ACCOUNT_FROM);
+        //================= END BANK ACCOUNT INFO ============================================
+
+        //================= BEGIN TRANSACTIONS LIST =================================
+        String formattedCurrentTimeString = OfxHelper.getFormattedCurrentTime();
+        startElement(handler, OfxHelper.TAG_BANK_TRANSACTION_LIST);
+        writeElement(handler, OfxHelper.TAG_DATE_START, formattedCurrentTimeString);
+        writeElement(handler, OfxHelper.TAG_DATE_END, formattedCurrentTimeString);
+        Timestamp exportStartTime = mExportParams.getExportStartTime();
+        while (transactions.hasNext()) {
+            Transaction transaction = transactions.next();
+            if (transaction.getModifiedTimestamp().before(exportStartTime))
+                continue;
+            writeTransaction(handler, transaction, account.getUID());
         }
+        endElement(handler, OfxHelper.TAG_BANK_TRANSACTION_LIST);
+        //================= END TRANSACTIONS LIST =================================
+
+        //================= BEGIN ACCOUNT BALANCE INFO =================================
+        //Account.getBalance() does not sum up the transactions (Money.add() returns a new instance),
+        //so the ledger balance has always been zero. It is kept that way to keep the output unchanged
+        startElement(handler, OfxHelper.TAG_LEDGER_BALANCE);
+        writeElement(handler, OfxHelper.TAG_BALANCE_AMOUNT, account.getBalance().toPlainString());
+        writeElement(handler, OfxHelper.TAG_DATE_AS_OF, formattedCurrentTimeString);
+        endElement(handler, OfxHelper.TAG_LEDGER_BALANCE);
+        //================= END ACCOUNT BALANCE INFO =================================
+
+        endElement(handler, OfxHelper.TAG_STATEMENT_TRANSACTIONS);
+    }
+
+    /**
+     * Writes the statement transaction of a transaction.
+     * The GUID of the account is needed in order to properly export double entry transactions
+     * @param handler Handler of the OFX document
+     * @param transaction Transaction to write, with its splits
+     * @param accountUID GUID of the account whose statement is written
+     */
+    private void writeTransaction(ContentHandler handler, Transaction transaction, String accountUID) throws SAXException {
+        Money balance = transaction.getBalance(accountUID);
+        TransactionType transactionType = balance.isNegative() ? TransactionType.DEBIT : TransactionType.CREDIT;
+        String formattedTime = OfxHelper.getOfxFormattedTime(transaction.getTimeMillis());
+
+        startElement(handler, OfxHelper.TAG_STATEMENT_TRANSACTION);
+        writeElement(handler, OfxHelper.TAG_TRANSACTION_TYPE, transactionType.toString());
+        writeElement(handler, OfxHelper.TAG_DATE_POSTED, formattedTime);
+        writeElement(handler, OfxHelper.TAG_DATE_USER, formattedTime);
+        writeElement(handler, OfxHelper.TAG_TRANSACTION_AMOUNT, balance.toPlainString());
+        writeElement(handler, OfxHelper.TAG_TRANSACTION_FITID, transaction.getUID());
+        writeElement(handler, OfxHelper.TAG_NAME, transaction.getDescription());
+
+        String notes = transaction.getNote();
+        if (notes != null && notes.length() > 0)
+            writeElement(handler, OfxHelper.TAG_MEMO, notes);
+
+        List<Split> splits = transaction.getSplits();
+        if (splits.size() == 2){ //if we have exactly one other split, then treat it like a transfer
+            String transferAccountUID = accountUID;
+            for (Split split : splits) {
+                if (!split.getAccountUID().equals(accountUID)){
+                    transferAccountUID = split.getAccountUID();
+                    break;
+                }
+            }
+            startElement(handler, OfxHelper.TAG_BANK_ACCOUNT_TO);
+            writeElement(handler, OfxHelper.TAG_BANK_ID, OfxHelper.APP_ID);
+            writeElement(handler, OfxHelper.TAG_ACCOUNT_ID, transferAccountUID);
+            writeElement(handler, OfxHelper.TAG_ACCOUNT_TYPE, getTransferAccountType(transferAccountUID).toString());
+            endElement(handler, OfxHelper.TAG_BANK_ACCOUNT_TO);
+        }
+
+        endElement(handler, OfxHelper.TAG_STATEMENT_TRANSACTION);
+    }
+
+    /**
+     * Returns the OFX account type of the account with GUID {@code accountUID}, which is looked up only once per export
+     */
+    private OfxAccountType getTransferAccountType(String accountUID) {
+        OfxAccountType accountType = mTransferAccountTypes.get(accountUID);
+        if (accountType == null) {
+            accountType = Account.convertToOfxAccountType(mAccountsDbAdapter.getAccountType(accountUID));
+            mTransferAccountTypes.put(accountUID, accountType);
+        }
+        return accountType;
+    }
+
+    private static void startElement(ContentHandler handler, String name) throws SAXException {
+        handler.startElement("", name, name, NO_ATTRIBUTES);
+    }
+
+    private static void endElement(ContentHandler handler, String name) throws SAXException {
+        handler.endElement("", name, name);
+    }
+
+    /**
+     * Writes an element which contains only text
+     * @param handler Handler of the OFX document
+     * @param name Name of the element
+     * @param text Content of the element
+     */
+    private static void writeElement(ContentHandler handler, String name, String text) throws SAXException {
+        startElement(handler, name);
+        char[] chars = text == null ? new char[0] : text.toCharArray();
+        handler.characters(chars, 0, chars.length);
+        endElement(handler, name);
     }
 
     /**
@@ -98,7 +98,10 @@ public class OfxHelper {
      */
     public static String getOfxFormattedTime(long milliseconds){
         Date date = new Date(milliseconds);
-        String dateString = OFX_DATE_FORMATTER.format(date);
+        String dateString;
+        synchronized (OFX_DATE_FORMATTER) {
+            dateString = OFX_DATE_FORMATTER.format(date);
+        }
         TimeZone tz = Calendar.getInstance().getTimeZone();
         int offset = tz.getRawOffset();
         int hours   = (int) (( offset / (1000*60*60)) % 24);
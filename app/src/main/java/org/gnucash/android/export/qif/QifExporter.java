@@ -19,6 +19,7 @@ package org.gnucash.android.export.qif;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.Nullable;
 
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
@@ -28,18 +29,18 @@ import org.gnucash.android.model.Commodity;
 import org.gnucash.android.util.PreferencesHelper;
 import org.gnucash.android.util.TimestampHelper;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Currency;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
@@ -52,6 +53,19 @@ import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
  * @author Yongxin Wang <fefe.wyx@gmail.com>
  */
 public class QifExporter extends Exporter{
+    /**
+     * Maximum number of currencies exported at the same time by default.
+     * This is the number of connections which {@link SQLiteDatabase} keeps for reading in WAL mode
+     */
+    public static final int MAX_PARALLELISM = 4;
+
+    /**
+     * Formats of the split amounts, indexed by the number of decimal places
+     */
+    private static final String[] AMOUNT_FORMATS = {"%.0f", "%.1f", "%.2f", "%.3f"};
+
+    private int mParallelism = Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARALLELISM);
+
     /**
      * Initialize the exporter
      * @param params Export options
@@ -73,208 +87,331 @@ public class QifExporter extends Exporter{
 
     @Override
     public List<String> generateExport() throws ExporterException {
-        final String newLine = "\n";
-        TransactionsDbAdapter transactionsDbAdapter = mTransactionsDbAdapter;
         try {
-            String lastExportTimeStamp = TimestampHelper.getUtcStringFromTimestamp(mExportParams.getExportStartTime());
-            Cursor cursor = transactionsDbAdapter.fetchTransactionsWithSplitsWithTransactionAccount(
-                    new String[]{
-                            TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID + " AS trans_uid",
-                            TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " AS trans_time",
-                            TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_DESCRIPTION + " AS trans_desc",
-                            SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM + " AS split_quantity_num",
-                            SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_DENOM + " AS split_quantity_denom",
-                            SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_TYPE + " AS split_type",
-                            SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_MEMO + " AS split_memo",
-                            "trans_extra_info.trans_acct_balance AS trans_acct_balance",
-                            "trans_extra_info.trans_split_count AS trans_split_count",
-                            "account1." + AccountEntry.COLUMN_UID + " AS acct1_uid",
-                            "account1." + AccountEntry.COLUMN_FULL_NAME + " AS acct1_full_name",
-                            "account1." + AccountEntry.COLUMN_CURRENCY + " AS acct1_currency",
-                            "account1." + AccountEntry.COLUMN_TYPE + " AS acct1_type",
-                            AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_FULL_NAME + " AS acct2_full_name"
-                    },
-                    // no recurrence transactions
-                    TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " == 0 AND " +
-                            // in qif, split from the one account entry is not recorded (will be auto balanced)
-                            "( " + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID + " != account1." + AccountEntry.COLUMN_UID + " OR " +
-                            // or if the transaction has only one split (the whole transaction would be lost if it is not selected)
-                            "trans_split_count == 1 )" +
-                            (
-                                    " AND " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_MODIFIED_AT + " > \"" + lastExportTimeStamp + "\""
-                            ),
-                    null,
-                    // trans_time ASC : put transactions in time order
-                    // trans_uid ASC  : put splits from the same transaction together
-                   "acct1_currency ASC, trans_time ASC, trans_uid ASC"
-                    );
-
-            File file = new File(getExportCacheFilePath());
-            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
-
-            try {
-                String currentCurrencyCode = "";
-                String currentAccountUID = "";
-                String currentTransactionUID = "";
-                while (cursor.moveToNext()) {
-                    String currencyCode = cursor.getString(cursor.getColumnIndexOrThrow("acct1_currency"));
-                    String accountUID = cursor.getString(cursor.getColumnIndexOrThrow("acct1_uid"));
-                    String transactionUID = cursor.getString(cursor.getColumnIndexOrThrow("trans_uid"));
-                    if (!transactionUID.equals(currentTransactionUID)) {
-                        if (!currentTransactionUID.equals("")) {
-                            writer.append(QifHelper.ENTRY_TERMINATOR).append(newLine);
-                            // end last transaction
-                        }
-                        if (!accountUID.equals(currentAccountUID)) {
-                            // no need to end account
-                            //if (!currentAccountUID.equals("")) {
-                            //    // end last account
-                            //}
-                            if (!currencyCode.equals(currentCurrencyCode)) {
-                                currentCurrencyCode = currencyCode;
-                                writer.append(QifHelper.INTERNAL_CURRENCY_PREFIX)
-                                        .append(currencyCode)
-                                        .append(newLine);
-                            }
-                            // start new account
-                            currentAccountUID = accountUID;
-                            writer.append(QifHelper.ACCOUNT_HEADER).append(newLine);
-                            writer.append(QifHelper.ACCOUNT_NAME_PREFIX)
-                                    .append(cursor.getString(cursor.getColumnIndexOrThrow("acct1_full_name")))
-                                    .append(newLine);
-                            writer.append(QifHelper.ENTRY_TERMINATOR).append(newLine);
-                            writer.append(QifHelper.getQifHeader(cursor.getString(cursor.getColumnIndexOrThrow("acct1_type"))))
-                                    .append(newLine);
-                        }
-                        // start new transaction
-                        currentTransactionUID = transactionUID;
-                        writer.append(QifHelper.DATE_PREFIX)
-                                .append(QifHelper.formatDate(cursor.getLong(cursor.getColumnIndexOrThrow("trans_time"))))
-                                .append(newLine);
-                        writer.append(QifHelper.MEMO_PREFIX)
-                                .append(cursor.getString(cursor.getColumnIndexOrThrow("trans_desc")))
-                                .append(newLine);
-                        // deal with imbalance first
-                        double imbalance = cursor.getDouble(cursor.getColumnIndexOrThrow("trans_acct_balance"));
-                        BigDecimal decimalImbalance = BigDecimal.valueOf(imbalance).setScale(2, BigDecimal.ROUND_HALF_UP);
-                        if (decimalImbalance.compareTo(BigDecimal.ZERO) != 0) {
-                            writer.append(QifHelper.SPLIT_CATEGORY_PREFIX)
-                                    .append(AccountsDbAdapter.getImbalanceAccountName(
-                                            Commodity.getInstance(cursor.getString(cursor.getColumnIndexOrThrow("acct1_currency")))
-                                    ))
-                                    .append(newLine);
-                            writer.append(QifHelper.SPLIT_AMOUNT_PREFIX)
-                                    .append(decimalImbalance.toPlainString())
-                                    .append(newLine);
-                        }
-                    }
-                    if (cursor.getInt(cursor.getColumnIndexOrThrow("trans_split_count")) == 1) {
-                        // No other splits should be recorded if this is the only split.
-                        continue;
-                    }
-                    // all splits
-                    // amount associated with the header account will not be exported.
-                    // It can be auto balanced when importing to GnuCash
-                    writer.append(QifHelper.SPLIT_CATEGORY_PREFIX)
-                            .append(cursor.getString(cursor.getColumnIndexOrThrow("acct2_full_name")))
-                            .append(newLine);
-                    String splitMemo = cursor.getString(cursor.getColumnIndexOrThrow("split_memo"));
-                    if (splitMemo != null && splitMemo.length() > 0) {
-                        writer.append(QifHelper.SPLIT_MEMO_PREFIX)
-                                .append(splitMemo)
-                                .append(newLine);
-                    }
-                    String splitType = cursor.getString(cursor.getColumnIndexOrThrow("split_type"));
-                    Double quantity_num = cursor.getDouble(cursor.getColumnIndexOrThrow("split_quantity_num"));
-                    int quantity_denom = cursor.getInt(cursor.getColumnIndexOrThrow("split_quantity_denom"));
-                    int precision = 0;
-                    switch (quantity_denom) {
-                        case 0: // will sometimes happen for zero values
-                            break;
-                        case 1:
-                            precision = 0;
-                            break;
-                        case 10:
-                            precision = 1;
-                            break;
-                        case 100:
-                            precision = 2;
-                            break;
-                        case 1000:
-                            precision = 3;
-                            break;
-                        default:
-                            throw new ExporterException(mExportParams, "split quantity has illegal denominator: "+ quantity_denom);
-                    }
-                    Double quantity = 0.0;
-                    if (quantity_denom != 0) {
-                        quantity = quantity_num / quantity_denom;
-                    }
-                    writer.append(QifHelper.SPLIT_AMOUNT_PREFIX)
-                            .append(splitType.equals("DEBIT") ? "-" : "")
-                            .append(String.format("%." + precision + "f", quantity))
-                            .append(newLine);
-                }
-                if (!currentTransactionUID.equals("")) {
-                    // end last transaction
-                    writer.append(QifHelper.ENTRY_TERMINATOR).append(newLine);
+            List<String> exportedFiles = null;
+            // without write-ahead logging, all queries share one connection and would run one after the other
+            if (mParallelism > 1 && mDb.isWriteAheadLoggingEnabled()) {
+                List<String> currencyCodes = fetchExportedCurrencies();
+                if (currencyCodes.size() > 1) {
+                    exportedFiles = exportCurrenciesConcurrently(currencyCodes,
+                            Math.min(mParallelism, currencyCodes.size()));
                 }
-                writer.flush();
-            } finally {
-                cursor.close();
-                writer.close();
             }
+            if (exportedFiles == null)
+                exportedFiles = exportTransactions(null, null);
 
             ContentValues contentValues = new ContentValues();
             contentValues.put(TransactionEntry.COLUMN_EXPORTED, 1);
-            transactionsDbAdapter.updateTransaction(contentValues, null, null);
+            mTransactionsDbAdapter.updateTransaction(contentValues, null, null);
 
             /// export successful
-            PreferencesHelper.setLastExportTime(TimestampHelper.getTimestampFromNow());
-            return splitQIF(file);
+            PreferencesHelper.setLastExportTime(TimestampHelper.getTimestampFromNow(), mBookUID);
+            return exportedFiles;
         } catch (IOException e) {
             throw new ExporterException(mExportParams, e);
         }
     }
 
     /**
-     * Splits a Qif file into several ones for each currency.
-     *
-     * @param file File object of the Qif file to split.
-     * @return a list of paths of the newly created Qif files.
-     * @throws IOException if something went wrong while splitting the file.
+     * Sets the maximum number of currencies which are exported at the same time.
+     * <p>The file of each currency is written by its own thread, from its own query. The queries run on
+     * the reader connections of the database, so this only has an effect if write-ahead logging is enabled.
+     * With a value of 1 all currencies are exported in a single pass over the database.
+     * Defaults to the number of available processors, but at most {@value #MAX_PARALLELISM}</p>
+     * @param parallelism Maximum number of threads used for the export
      */
-    public List<String> splitQIF(File file) throws IOException {
-        // split only at the last dot
-        String[] pathParts = file.getPath().split("(?=\\.[^\\.]+$)");
-        ArrayList<String> splitFiles = new ArrayList<>();
-        String line;
-        BufferedReader in = new BufferedReader(new FileReader(file));
-        BufferedWriter out = null;
+    public void setParallelism(int parallelism) {
+        mParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Returns the WHERE clause selecting the rows of the QIF export
+     * @param currencyCode Currency of the accounts to export, or {@code null} to export all accounts
+     */
+    private String getExportSelection(@Nullable String currencyCode) {
+        String lastExportTimeStamp = TimestampHelper.getUtcStringFromTimestamp(mExportParams.getExportStartTime());
+        // no recurrence transactions
+        return TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " == 0 AND " +
+                // in qif, split from the one account entry is not recorded (will be auto balanced)
+                "( " + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID + " != account1." + AccountEntry.COLUMN_UID + " OR " +
+                // or if the transaction has only one split (the whole transaction would be lost if it is not selected)
+                "trans_split_count == 1 )" +
+                " AND " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_MODIFIED_AT + " > \"" + lastExportTimeStamp + "\"" +
+                (currencyCode == null ? "" : " AND account1." + AccountEntry.COLUMN_CURRENCY + " = ?");
+    }
+
+    /**
+     * Returns the codes of the currencies of the accounts which have transactions to export, in ascending order
+     */
+    private List<String> fetchExportedCurrencies() {
+        Cursor cursor = mTransactionsDbAdapter.fetchTransactionsWithSplitsWithTransactionAccount(
+                new String[]{"DISTINCT account1." + AccountEntry.COLUMN_CURRENCY + " AS acct1_currency"},
+                getExportSelection(null), null, "acct1_currency ASC");
+        List<String> currencyCodes = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                currencyCodes.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return currencyCodes;
+    }
+
+    /**
+     * Exports each currency in its own task, running at most {@code threadCount} tasks at the same time.
+     * <p>The tasks run their queries outside of any transaction, so each of them reads from
+     * a reader connection of the database</p>
+     * @param currencyCodes Codes of the currencies to export
+     * @param threadCount Number of threads to use
+     * @return Paths of the exported files, in the order of the currencies
+     * @throws IOException if a file could not be written
+     */
+    private List<String> exportCurrenciesConcurrently(List<String> currencyCodes, int threadCount) throws IOException {
+        // resolve the file name before the tasks start, since it is cached on first use
+        getExportCacheFilePath();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
         try {
-            while ((line = in.readLine()) != null) {
-                if (line.startsWith(QifHelper.INTERNAL_CURRENCY_PREFIX)) {
-                    String currencyCode = line.substring(1);
-                    if (out != null) {
-                        out.close();
+            List<Future<List<String>>> partitions = new ArrayList<>(currencyCodes.size());
+            for (final String currencyCode : currencyCodes) {
+                // resolve the commodity here, since it may need the database adapters of the active book
+                final String imbalanceAccountName = AccountsDbAdapter.getImbalanceAccountName(
+                        Commodity.getInstance(currencyCode));
+                partitions.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() throws Exception {
+                        return exportTransactions(currencyCode, imbalanceAccountName);
                     }
-                    String newFileName = pathParts[0] + "_" + currencyCode + pathParts[1];
-                    splitFiles.add(newFileName);
-                    out = new BufferedWriter(new FileWriter(newFileName));
-                } else {
-                    if (out == null) {
-                        throw new IllegalArgumentException(file.getPath() + " format is not correct");
+                }));
+            }
+
+            List<String> exportedFiles = new ArrayList<>(currencyCodes.size());
+            for (Future<List<String>> partition : partitions) {
+                exportedFiles.addAll(partition.get());
+            }
+            return exportedFiles;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExporterException(mExportParams, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof ExporterException)
+                throw (ExporterException) cause;
+            throw new ExporterException(mExportParams, cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Exports the transactions of the accounts in one currency, or of all accounts, in a single pass over the database.
+     * <p>The transactions are written directly to one file per currency. The rows are ordered by currency,
+     * so the file of a currency is completed before the next one is started and only one file is open at a time.</p>
+     * @param partitionCurrencyCode Currency of the accounts to export, or {@code null} to export all accounts
+     * @param partitionImbalanceAccountName Name of the imbalance account of {@code partitionCurrencyCode},
+     *                                      or {@code null} to look it up for each currency
+     * @return Paths of the exported files, one per currency
+     * @throws IOException if a file could not be written
+     */
+    private List<String> exportTransactions(@Nullable String partitionCurrencyCode,
+                                            @Nullable String partitionImbalanceAccountName) throws IOException {
+        final String newLine = "\n";
+        Cursor cursor = mTransactionsDbAdapter.fetchTransactionsWithSplitsWithTransactionAccount(
+                new String[]{
+                        TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID + " AS trans_uid",
+                        TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " AS trans_time",
+                        TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_DESCRIPTION + " AS trans_desc",
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM + " AS split_quantity_num",
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_DENOM + " AS split_quantity_denom",
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_TYPE + " AS split_type",
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_MEMO + " AS split_memo",
+                        "trans_extra_info.trans_acct_balance AS trans_acct_balance",
+                        "trans_extra_info.trans_split_count AS trans_split_count",
+                        "account1." + AccountEntry.COLUMN_UID + " AS acct1_uid",
+                        "account1." + AccountEntry.COLUMN_FULL_NAME + " AS acct1_full_name",
+                        "account1." + AccountEntry.COLUMN_CURRENCY + " AS acct1_currency",
+                        "account1." + AccountEntry.COLUMN_TYPE + " AS acct1_type",
+                        AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_FULL_NAME + " AS acct2_full_name"
+                },
+                getExportSelection(partitionCurrencyCode),
+                partitionCurrencyCode == null ? null : new String[]{partitionCurrencyCode},
+                // trans_time ASC : put transactions in time order
+                // trans_uid ASC  : put splits from the same transaction together
+                "acct1_currency ASC, trans_time ASC, trans_uid ASC"
+        );
+
+        List<String> exportedFiles = new ArrayList<>();
+        BufferedWriter writer = null;
+        try {
+            ColumnIndexes columns = new ColumnIndexes(cursor);
+            String currentCurrencyCode = "";
+            String currentAccountUID = "";
+            String currentTransactionUID = "";
+            String imbalanceAccountName = null;
+            while (cursor.moveToNext()) {
+                String currencyCode = cursor.getString(columns.mCurrency);
+                String accountUID = cursor.getString(columns.mAccountUID);
+                String transactionUID = cursor.getString(columns.mTransactionUID);
+                if (!transactionUID.equals(currentTransactionUID)) {
+                    if (!currentTransactionUID.equals("")) {
+                        writer.append(QifHelper.ENTRY_TERMINATOR).append(newLine);
+                        // end last transaction
+                    }
+                    if (!currencyCode.equals(currentCurrencyCode)) {
+                        // start the file of the new currency
+                        if (writer != null)
+                            writer.close();
+                        String fileName = getCurrencyFilePath(currencyCode);
+                        exportedFiles.add(fileName);
+                        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), "UTF-8"));
+                        currentCurrencyCode = currencyCode;
+                        currentAccountUID = "";
+                        currentTransactionUID = "";
+                        if (partitionImbalanceAccountName != null) {
+                            imbalanceAccountName = partitionImbalanceAccountName;
+                        } else {
+                            imbalanceAccountName = AccountsDbAdapter.getImbalanceAccountName(
+                                    Commodity.getInstance(currencyCode));
+                        }
+                    }
+                    if (!accountUID.equals(currentAccountUID)) {
+                        // start new account
+                        currentAccountUID = accountUID;
+                        writer.append(QifHelper.ACCOUNT_HEADER).append(newLine);
+                        writer.append(QifHelper.ACCOUNT_NAME_PREFIX)
+                                .append(cursor.getString(columns.mAccountFullName))
+                                .append(newLine);
+                        writer.append(QifHelper.ENTRY_TERMINATOR).append(newLine);
+                        writer.append(QifHelper.getQifHeader(cursor.getString(columns.mAccountType)))
+                                .append(newLine);
+                    }
+                    // start new transaction
+                    currentTransactionUID = transactionUID;
+                    writer.append(QifHelper.DATE_PREFIX)
+                            .append(QifHelper.formatDate(cursor.getLong(columns.mTransactionTime)))
+                            .append(newLine);
+                    writer.append(QifHelper.MEMO_PREFIX)
+                            .append(cursor.getString(columns.mTransactionDescription))
+                            .append(newLine);
+                    // deal with imbalance first
+                    double imbalance = cursor.getDouble(columns.mImbalance);
+                    BigDecimal decimalImbalance = BigDecimal.valueOf(imbalance).setScale(2, BigDecimal.ROUND_HALF_UP);
+                    if (decimalImbalance.compareTo(BigDecimal.ZERO) != 0) {
+                        writer.append(QifHelper.SPLIT_CATEGORY_PREFIX)
+                                .append(imbalanceAccountName)
+                                .append(newLine);
+                        writer.append(QifHelper.SPLIT_AMOUNT_PREFIX)
+                                .append(decimalImbalance.toPlainString())
+                                .append(newLine);
                     }
-                    out.append(line).append('\n');
                 }
+                if (cursor.getInt(columns.mSplitCount) == 1) {
+                    // No other splits should be recorded if this is the only split.
+                    continue;
+                }
+                // all splits
+                // amount associated with the header account will not be exported.
+                // It can be auto balanced when importing to GnuCash
+                writer.append(QifHelper.SPLIT_CATEGORY_PREFIX)
+                        .append(cursor.getString(columns.mSplitAccountFullName))
+                        .append(newLine);
+                String splitMemo = cursor.getString(columns.mSplitMemo);
+                if (splitMemo != null && splitMemo.length() > 0) {
+                    writer.append(QifHelper.SPLIT_MEMO_PREFIX)
+                            .append(splitMemo)
+                            .append(newLine);
+                }
+                String splitType = cursor.getString(columns.mSplitType);
+                double quantity_num = cursor.getDouble(columns.mQuantityNum);
+                int quantity_denom = cursor.getInt(columns.mQuantityDenom);
+                int precision = 0;
+                switch (quantity_denom) {
+                    case 0: // will sometimes happen for zero values
+                        break;
+                    case 1:
+                        precision = 0;
+                        break;
+                    case 10:
+                        precision = 1;
+                        break;
+                    case 100:
+                        precision = 2;
+                        break;
+                    case 1000:
+                        precision = 3;
+                        break;
+                    default:
+                        throw new ExporterException(mExportParams, "split quantity has illegal denominator: "+ quantity_denom);
+                }
+                double quantity = 0.0;
+                if (quantity_denom != 0) {
+                    quantity = quantity_num / quantity_denom;
+                }
+                writer.append(QifHelper.SPLIT_AMOUNT_PREFIX)
+                        .append(splitType.equals("DEBIT") ? "-" : "")
+                        .append(String.format(AMOUNT_FORMATS[precision], quantity))
+                        .append(newLine);
             }
-        } finally {
-            in.close();
-            if (out != null) {
-                out.close();
+            if (!currentTransactionUID.equals("")) {
+                // end last transaction
+                writer.append(QifHelper.ENTRY_TERMINATOR).append(newLine);
             }
+        } finally {
+            cursor.close();
+            if (writer != null)
+                writer.close();
+        }
+        return exportedFiles;
+    }
+
+    /**
+     * Returns the path of the file to which the transactions in a currency are exported.
+     * <p>The currency code is inserted before the file extension of the export cache file</p>
+     * @param currencyCode Code of the currency
+     */
+    private String getCurrencyFilePath(String currencyCode) {
+        // split only at the last dot
+        String[] pathParts = getExportCacheFilePath().split("(?=\\.[^\\.]+$)");
+        return pathParts[0] + "_" + currencyCode + (pathParts.length > 1 ? pathParts[1] : "");
+    }
+
+    /**
+     * Indexes of the columns of the export cursor, which are resolved once per cursor
+     */
+    private static class ColumnIndexes {
+        final int mTransactionUID;
+        final int mTransactionTime;
+        final int mTransactionDescription;
+        final int mQuantityNum;
+        final int mQuantityDenom;
+        final int mSplitType;
+        final int mSplitMemo;
+        final int mImbalance;
+        final int mSplitCount;
+        final int mAccountUID;
+        final int mAccountFullName;
+        final int mCurrency;
+        final int mAccountType;
+        final int mSplitAccountFullName;
+
+        ColumnIndexes(Cursor cursor) {
+            mTransactionUID         = cursor.getColumnIndexOrThrow("trans_uid");
+            mTransactionTime        = cursor.getColumnIndexOrThrow("trans_time");
+            mTransactionDescription = cursor.getColumnIndexOrThrow("trans_desc");
+            mQuantityNum            = cursor.getColumnIndexOrThrow("split_quantity_num");
+            mQuantityDenom          = cursor.getColumnIndexOrThrow("split_quantity_denom");
+            mSplitType              = cursor.getColumnIndexOrThrow("split_type");
+            mSplitMemo              = cursor.getColumnIndexOrThrow("split_memo");
+            mImbalance              = cursor.getColumnIndexOrThrow("trans_acct_balance");
+            mSplitCount             = cursor.getColumnIndexOrThrow("trans_split_count");
+            mAccountUID             = cursor.getColumnIndexOrThrow("acct1_uid");
+            mAccountFullName        = cursor.getColumnIndexOrThrow("acct1_full_name");
+            mCurrency               = cursor.getColumnIndexOrThrow("acct1_currency");
+            mAccountType            = cursor.getColumnIndexOrThrow("acct1_type");
+            mSplitAccountFullName   = cursor.getColumnIndexOrThrow("acct2_full_name");
         }
-        return splitFiles;
     }
 
     /**
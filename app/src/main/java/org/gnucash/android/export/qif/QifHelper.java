@@ -43,7 +43,16 @@ public class QifHelper {
     public static final String INTERNAL_CURRENCY_PREFIX = "*";
 
     public static final String ENTRY_TERMINATOR = "^";
-    private static final SimpleDateFormat QIF_DATE_FORMATTER = new SimpleDateFormat("yyyy/M/d");
+
+    /**
+     * Date formatter of each thread, since {@link QifExporter} writes the file of each currency on its own thread
+     */
+    private static final ThreadLocal<SimpleDateFormat> QIF_DATE_FORMATTER = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy/M/d");
+        }
+    };
 
     /**
      * Formats the date for QIF in the form d MMMM YYYY.
@@ -53,7 +62,7 @@ public class QifHelper {
      */
     public static final String formatDate(long timeMillis){
         Date date = new Date(timeMillis);
-        return QIF_DATE_FORMATTER.format(date);
+        return QIF_DATE_FORMATTER.get().format(date);
     }
 
     /**
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.export.xml;
+
+import android.support.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of the backups written by {@link GncXmlExporter}.
+ * <p>All codecs write gzip streams, so every backup can be restored by the app and opened by
+ * desktop GnuCash. They only differ in the compression level, which trades the size of the
+ * backup against the time and battery spent writing it.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public enum BackupCodec {
+    /**
+     * Default gzip compression (level 6)
+     */
+    GZIP(Deflater.DEFAULT_COMPRESSION),
+
+    /**
+     * Fastest gzip compression (level 1)
+     */
+    GZIP_FAST(Deflater.BEST_SPEED),
+
+    /**
+     * Smallest gzip compression (level 9)
+     */
+    GZIP_BEST(Deflater.BEST_COMPRESSION),
+
+    /**
+     * Uncompressed data in a gzip container, for internal snapshots which are written often
+     * and not kept for long
+     */
+    SNAPSHOT(Deflater.NO_COMPRESSION);
+
+    /**
+     * Size of the buffers between the XML serializer, the encoder, the compressor and the file
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int mLevel;
+
+    BackupCodec(int level) {
+        mLevel = level;
+    }
+
+    /**
+     * Returns the deflate level of the codec, between 0 and 9, or -1 for the default level
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * Returns a stream which compresses the data written to it.
+     * Closing the returned stream also closes {@code outputStream}
+     * @param outputStream Stream of the compressed data
+     * @return Compressing output stream
+     * @throws IOException if the gzip header could not be written
+     */
+    public OutputStream newOutputStream(OutputStream outputStream) throws IOException {
+        return newGzipOutputStream(outputStream, mLevel);
+    }
+
+    /**
+     * Returns a writer which encodes its text as UTF-8 and compresses it.
+     * Closing the returned writer also closes {@code outputStream}
+     * @param outputStream Stream of the compressed data
+     * @return Buffered writer
+     * @throws IOException if the gzip header could not be written
+     */
+    public Writer newWriter(OutputStream outputStream) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(newOutputStream(outputStream), "UTF-8"), BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a gzip stream with any compression level
+     * @param outputStream Stream of the compressed data
+     * @param level Deflate level between 0 and 9, or -1 for the default level
+     * @return Compressing output stream
+     * @throws IOException if the gzip header could not be written
+     * @throws IllegalArgumentException if the level is out of range
+     */
+    public static OutputStream newGzipOutputStream(OutputStream outputStream, final int level) throws IOException {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        return new GZIPOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE), BUFFER_SIZE) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    /**
+     * Returns the codec with the name stored in the preferences
+     * @param name Name of the codec, or {@code null}
+     * @return Codec with the name, or {@link #GZIP} if there is none
+     */
+    public static BackupCodec fromName(@Nullable String name) {
+        if (name != null) {
+            for (BackupCodec codec : values()) {
+                if (codec.name().equals(name))
+                    return codec;
+            }
+        }
+        return GZIP;
+    }
+}
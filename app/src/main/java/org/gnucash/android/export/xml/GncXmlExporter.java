@@ -20,23 +20,23 @@ package org.gnucash.android.export.xml;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.crashlytics.android.Crashlytics;
 
+import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.adapter.BookSession;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
-import org.gnucash.android.db.adapter.CommoditiesDbAdapter;
-import org.gnucash.android.db.adapter.RecurrenceDbAdapter;
-import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.export.ExportFormat;
 import org.gnucash.android.export.ExportParams;
 import org.gnucash.android.export.Exporter;
 import org.gnucash.android.model.Account;
 import org.gnucash.android.model.AccountType;
 import org.gnucash.android.model.BaseModel;
-import org.gnucash.android.model.Book;
 import org.gnucash.android.model.Budget;
 import org.gnucash.android.model.BudgetAmount;
 import org.gnucash.android.model.Commodity;
@@ -46,11 +46,13 @@ import org.gnucash.android.model.Recurrence;
 import org.gnucash.android.model.ScheduledAction;
 import org.gnucash.android.model.TransactionType;
 import org.gnucash.android.util.BookUtils;
+import org.gnucash.android.util.PreferencesHelper;
 import org.gnucash.android.util.TimestampHelper;
 import org.xmlpull.v1.XmlPullParserFactory;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -63,8 +65,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.zip.GZIPOutputStream;
 
+import static org.gnucash.android.db.DatabaseSchema.DeletedRecordEntry;
 import static org.gnucash.android.db.DatabaseSchema.ScheduledActionEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
@@ -77,12 +79,33 @@ import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
  */
 public class GncXmlExporter extends Exporter{
 
+    /**
+     * Extension of the incremental backups created by {@link #createBackup(String)}
+     */
+    public static final String INCREMENTAL_BACKUP_EXTENSION = ".delta.zip";
+
+    /**
+     * Time after which the next backup in the backup folder of a book is a full backup again
+     */
+    private static final long FULL_BACKUP_INTERVAL_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
     /**
      * Root account for template accounts
      */
     private Account mRootTemplateAccount;
     private Map<String, Account> mTransactionToTemplateAccountMap = new TreeMap<>();
 
+    /**
+     * Name of the backup file on which an incremental export is based, or null for a full export
+     */
+    private String mPreviousBackup;
+
+    /**
+     * Accounts, transactions and prices modified at or after this UTC time are included in an incremental export.
+     * The time is formatted without milliseconds, like the modified_at values written by SQLite
+     */
+    private String mModifiedSince;
+
     /**
      * Construct a new exporter with export parameters
      * @param params Parameters for the export
@@ -103,6 +126,30 @@ public class GncXmlExporter extends Exporter{
         LOG_TAG = "GncXmlExporter";
     }
 
+    /**
+     * Makes this an incremental export, which is applied on top of a previous backup when restoring.
+     * <p>Only the accounts, transactions and prices which have been modified since {@code modifiedSince}
+     * are exported, together with the GUIDs of those which have been deleted since then.
+     * Commodities, scheduled actions with their template transactions and budgets are always exported
+     * completely, since there are few of them.</p>
+     * @param previousBackup Name of the backup file, in the same folder, on which the export is based
+     * @param modifiedSince Time at which the previous backup was started
+     */
+    public void setIncremental(@NonNull String previousBackup, @NonNull Timestamp modifiedSince) {
+        mPreviousBackup = previousBackup;
+        // modified_at is mostly written by SQLite without milliseconds, so compare at the second
+        mModifiedSince = TimestampHelper.getUtcStringFromTimestamp(modifiedSince).substring(0, 19);
+    }
+
+    /**
+     * Returns {@code true} if this is an incremental export
+     * @return {@code true} if only changes since a previous backup are exported, {@code false} otherwise
+     * @see #setIncremental(String, Timestamp)
+     */
+    public boolean isIncremental() {
+        return mPreviousBackup != null;
+    }
+
     private void exportSlots(XmlSerializer xmlSerializer,
                              List<String> slotKey,
                              List<String> slotType,
@@ -128,7 +175,13 @@ public class GncXmlExporter extends Exporter{
     private void exportAccounts(XmlSerializer xmlSerializer) throws IOException {
         // gnucash desktop requires that parent account appears before its descendants.
         // sort by full-name to fulfill the request
-        Cursor cursor = mAccountsDbAdapter.fetchAccounts(null, null, DatabaseSchema.AccountEntry.COLUMN_FULL_NAME + " ASC");
+        String where = null;
+        String[] whereArgs = null;
+        if (isIncremental()) {
+            where = DatabaseSchema.AccountEntry.COLUMN_MODIFIED_AT + " >= ?";
+            whereArgs = new String[]{mModifiedSince};
+        }
+        Cursor cursor = mAccountsDbAdapter.fetchAccounts(where, whereArgs, DatabaseSchema.AccountEntry.COLUMN_FULL_NAME + " ASC");
         while (cursor.moveToNext()) {
             // write account
             xmlSerializer.startTag(null, GncXmlHelper.TAG_ACCOUNT);
@@ -158,7 +211,7 @@ public class GncXmlExporter extends Exporter{
             xmlSerializer.endTag(null, GncXmlHelper.TAG_COMMODITY_ID);
             xmlSerializer.endTag(null, GncXmlHelper.TAG_ACCT_COMMODITY);
             // commodity scu
-            Commodity commodity = CommoditiesDbAdapter.getInstance().getCommodity(acctCurrencyCode);
+            Commodity commodity = mCommoditiesDbAdapter.getCommodity(acctCurrencyCode);
             xmlSerializer.startTag(null, GncXmlHelper.TAG_COMMODITY_SCU);
             xmlSerializer.text(Integer.toString(commodity.getSmallestFraction()));
             xmlSerializer.endTag(null, GncXmlHelper.TAG_COMMODITY_SCU);
@@ -271,8 +324,16 @@ public class GncXmlExporter extends Exporter{
      */
     private void exportTransactions(XmlSerializer xmlSerializer, boolean exportTemplates) throws IOException {
         String where = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + "=0";
+        String[] whereArgs = null;
         if (exportTemplates) {
             where = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + "=1";
+        } else if (isIncremental()) {
+            // a transaction is also modified if only one of its splits has been changed
+            where += " AND ( " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_MODIFIED_AT + " >= ?"
+                    + " OR " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " IN ( SELECT "
+                    + SplitEntry.COLUMN_TRANSACTION_UID + " FROM " + SplitEntry.TABLE_NAME
+                    + " WHERE " + SplitEntry.COLUMN_MODIFIED_AT + " >= ? ) )";
+            whereArgs = new String[]{mModifiedSince, mModifiedSince};
         }
         Cursor cursor = mTransactionsDbAdapter.fetchTransactionsWithSplits(
                 new String[]{
@@ -291,7 +352,7 @@ public class GncXmlExporter extends Exporter{
                         SplitEntry.TABLE_NAME+"."+ SplitEntry.COLUMN_VALUE_DENOM + " AS split_value_denom",
                         SplitEntry.TABLE_NAME+"."+ SplitEntry.COLUMN_QUANTITY_NUM + " AS split_quantity_num",
                         SplitEntry.TABLE_NAME+"."+ SplitEntry.COLUMN_QUANTITY_DENOM + " AS split_quantity_denom",                        SplitEntry.TABLE_NAME+"."+ SplitEntry.COLUMN_ACCOUNT_UID + " AS split_acct_uid"},
-                        where, null,
+                        where, whereArgs,
                         TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " ASC , " +
                         TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " ASC ");
         String lastTrxUID = "";
@@ -336,7 +397,7 @@ public class GncXmlExporter extends Exporter{
                 xmlSerializer.endTag(null, GncXmlHelper.TAG_TRX_ID);
                 // currency
                 String currencyCode = cursor.getString(cursor.getColumnIndexOrThrow("trans_currency"));
-                trnCommodity = CommoditiesDbAdapter.getInstance().getCommodity(currencyCode);//Currency.getInstance(currencyCode);
+                trnCommodity = mCommoditiesDbAdapter.getCommodity(currencyCode);//Currency.getInstance(currencyCode);
                 xmlSerializer.startTag(null, GncXmlHelper.TAG_TRX_CURRENCY);
                 xmlSerializer.startTag(null, GncXmlHelper.TAG_COMMODITY_SPACE);
                 xmlSerializer.text("ISO4217");
@@ -523,7 +584,7 @@ public class GncXmlExporter extends Exporter{
 
             ScheduledAction.ActionType actionType = scheduledAction.getActionType();
             if (actionType == ScheduledAction.ActionType.TRANSACTION) {
-                String description = TransactionsDbAdapter.getInstance().getAttribute(actionUID, TransactionEntry.COLUMN_DESCRIPTION);
+                String description = mTransactionsDbAdapter.getAttribute(actionUID, TransactionEntry.COLUMN_DESCRIPTION);
                 xmlSerializer.text(description);
             } else {
                 xmlSerializer.text(actionType.name());
@@ -594,9 +655,7 @@ public class GncXmlExporter extends Exporter{
             xmlSerializer.startTag(null, GncXmlHelper.TAG_GNC_RECURRENCE);
             xmlSerializer.attribute(null, GncXmlHelper.ATTR_KEY_VERSION, GncXmlHelper.RECURRENCE_VERSION);
 
-            String recurrenceUID = cursor.getString(cursor.getColumnIndexOrThrow(ScheduledActionEntry.COLUMN_RECURRENCE_UID));
-            Recurrence recurrence = RecurrenceDbAdapter.getInstance().getRecord(recurrenceUID);
-            exportRecurrence(xmlSerializer, recurrence);
+            exportRecurrence(xmlSerializer, scheduledAction.getRecurrence());
             xmlSerializer.endTag(null, GncXmlHelper.TAG_GNC_RECURRENCE);
             xmlSerializer.endTag(null, GncXmlHelper.TAG_SX_SCHEDULE);
 
@@ -606,7 +665,7 @@ public class GncXmlExporter extends Exporter{
 
     /**
      * Serializes a date as a {@code tag} which has a nested {@link GncXmlHelper#TAG_GDATE} which
-     * has the date as a text element formatted using {@link GncXmlHelper#DATE_FORMATTER}
+     * has the date as a text element formatted using {@link GncXmlHelper#formatGDate(long)}
      * @param xmlSerializer XML serializer
      * @param tag Enclosing tag
      * @param timeMillis Date to be formatted and output
@@ -615,7 +674,7 @@ public class GncXmlExporter extends Exporter{
     private void serializeDate(XmlSerializer xmlSerializer, String tag, long timeMillis) throws IOException {
         xmlSerializer.startTag(null, tag);
         xmlSerializer.startTag(null, GncXmlHelper.TAG_GDATE);
-        xmlSerializer.text(GncXmlHelper.DATE_FORMATTER.format(timeMillis));
+        xmlSerializer.text(GncXmlHelper.formatGDate(timeMillis));
         xmlSerializer.endTag(null, GncXmlHelper.TAG_GDATE);
         xmlSerializer.endTag(null, tag);
     }
@@ -637,7 +696,13 @@ public class GncXmlExporter extends Exporter{
     private void exportPrices(XmlSerializer xmlSerializer) throws IOException {
         xmlSerializer.startTag(null, GncXmlHelper.TAG_PRICEDB);
         xmlSerializer.attribute(null, GncXmlHelper.ATTR_KEY_VERSION, "1");
-        Cursor cursor = mPricesDbAdapter.fetchAllRecords();
+        Cursor cursor;
+        if (isIncremental()) {
+            cursor = mPricesDbAdapter.fetchAllRecords(DatabaseSchema.PriceEntry.COLUMN_MODIFIED_AT + " >= ?",
+                    new String[]{mModifiedSince}, null);
+        } else {
+            cursor = mPricesDbAdapter.fetchAllRecords();
+        }
         try {
             while(cursor.moveToNext()) {
                 xmlSerializer.startTag(null, GncXmlHelper.TAG_PRICE);
@@ -774,14 +839,37 @@ public class GncXmlExporter extends Exporter{
         cursor.close();
     }
 
+    /**
+     * Serializes the GUIDs of the accounts, transactions and prices which have been deleted
+     * since the previous backup of an incremental export
+     * @param xmlSerializer XML serializer
+     * @throws IOException if the XML serializer cannot be written to
+     */
+    private void exportDeletedRecords(XmlSerializer xmlSerializer) throws IOException {
+        Cursor cursor = mDb.query(DeletedRecordEntry.TABLE_NAME,
+                new String[]{DeletedRecordEntry.COLUMN_TABLE_NAME, DeletedRecordEntry.COLUMN_UID},
+                DeletedRecordEntry.COLUMN_DELETED_AT + " >= ?", new String[]{mModifiedSince},
+                null, null, DeletedRecordEntry._ID + " ASC");
+        try {
+            while (cursor.moveToNext()) {
+                xmlSerializer.startTag(null, GncXmlHelper.TAG_DELETED_RECORD);
+                xmlSerializer.attribute(null, GncXmlHelper.ATTR_KEY_TYPE, cursor.getString(0));
+                xmlSerializer.text(cursor.getString(1));
+                xmlSerializer.endTag(null, GncXmlHelper.TAG_DELETED_RECORD);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Override
     public List<String> generateExport() throws ExporterException {
         OutputStreamWriter writer = null;
         String outputFile = getExportCacheFilePath();
         try {
             FileOutputStream fileOutputStream = new FileOutputStream(outputFile);
-            BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream);
-            writer = new OutputStreamWriter(bufferedOutputStream);
+            BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream, BackupCodec.BUFFER_SIZE);
+            writer = new OutputStreamWriter(bufferedOutputStream, "UTF-8");
 
             generateExport(writer);
         } catch (IOException ex){
@@ -825,6 +913,10 @@ public class GncXmlExporter extends Exporter{
             for (String ns : namespaces) {
                 xmlSerializer.attribute(null, "xmlns:" + ns, "http://www.gnucash.org/XML/" + ns);
             }
+            if (isIncremental()) {
+                xmlSerializer.attribute(null, "xmlns:" + GncXmlHelper.NAMESPACE_GNCA,
+                        "http://www.gnucash.org/XML/" + GncXmlHelper.NAMESPACE_GNCA);
+            }
             // book count
             xmlSerializer.startTag(null, GncXmlHelper.TAG_COUNT_DATA);
             xmlSerializer.attribute(null, GncXmlHelper.ATTR_KEY_CD_TYPE, GncXmlHelper.ATTR_VALUE_BOOK);
@@ -838,6 +930,11 @@ public class GncXmlExporter extends Exporter{
             xmlSerializer.attribute(null, GncXmlHelper.ATTR_KEY_TYPE, GncXmlHelper.ATTR_VALUE_GUID);
             xmlSerializer.text(BaseModel.generateUID());
             xmlSerializer.endTag(null, GncXmlHelper.TAG_BOOK_ID);
+            if (isIncremental()) {
+                xmlSerializer.startTag(null, GncXmlHelper.TAG_PREVIOUS_BACKUP);
+                xmlSerializer.text(mPreviousBackup);
+                xmlSerializer.endTag(null, GncXmlHelper.TAG_PREVIOUS_BACKUP);
+            }
             //commodity count
             List<Commodity> commodities = mAccountsDbAdapter.getCommoditiesInUse();
             for (int i = 0; i < commodities.size(); i++) {
@@ -890,6 +987,10 @@ public class GncXmlExporter extends Exporter{
             //budgets
             exportBudgets(xmlSerializer);
 
+            if (isIncremental()) {
+                exportDeletedRecords(xmlSerializer);
+            }
+
             xmlSerializer.endTag(null, GncXmlHelper.TAG_BOOK);
             xmlSerializer.endTag(null, GncXmlHelper.TAG_ROOT);
             xmlSerializer.endDocument();
@@ -918,44 +1019,155 @@ public class GncXmlExporter extends Exporter{
 
     /**
      * Create a backup of the book in the default backup location
+     * <p>If the user has chosen a backup file for the book, the whole book is written to it. Otherwise the backup
+     * is saved to the backup folder of the book, where a full backup is made once a week
+     * and the backups in between are incremental backups with only the changes since the previous backup.</p>
      * @param bookUID Unique ID of the book
      * @return {@code true} if backup was successful, {@code false} otherwise
      */
     public static boolean createBackup(String bookUID){
-        OutputStream outputStream;
+        return createBackup(bookUID, getBackupCodec());
+    }
+
+    /**
+     * Create a backup of the book in the default backup location, as {@link #createBackup(String)} does
+     * @param bookUID Unique ID of the book
+     * @param codec Compression of the backup
+     * @return {@code true} if backup was successful, {@code false} otherwise
+     */
+    public static boolean createBackup(String bookUID, BackupCodec codec){
+        return createBackup(bookUID, codec, false);
+    }
+
+    /**
+     * Creates a full backup of the active book in the default backup location.
+     * <p>This is the safety backup taken before all accounts or transactions are deleted.
+     * Unlike {@link #createBackup()}, it is never an incremental backup, so it can be restored on its own</p>
+     * @return {@code true} if backup was successful, {@code false} otherwise
+     */
+    public static boolean createFullBackup(){
+        return createBackup(BooksDbAdapter.getInstance().getActiveBookUID(), getBackupCodec(), true);
+    }
+
+    /**
+     * Create a backup of the book in the default backup location
+     * @param bookUID Unique ID of the book
+     * @param codec Compression of the backup
+     * @param forceFullBackup {@code true} to write the whole book even if an incremental backup is due
+     * @return {@code true} if backup was successful, {@code false} otherwise
+     */
+    private static boolean createBackup(String bookUID, BackupCodec codec, boolean forceFullBackup){
+        BookSession session = BookSession.open(bookUID);
+        SQLiteDatabase db = session.getDatabase();
         try {
+            Timestamp startTime = TimestampHelper.getTimestampFromNow();
             String backupFile = BookUtils.getBookBackupFileUri(bookUID);
             if (backupFile != null){
-                outputStream = GnuCashApplication.getAppContext().getContentResolver().openOutputStream(Uri.parse(backupFile));
+                OutputStream outputStream = GnuCashApplication.getAppContext().getContentResolver().openOutputStream(Uri.parse(backupFile));
+                writeBackup(new GncXmlExporter(new ExportParams(ExportFormat.XML), db), outputStream, codec);
             } else { //no Uri set by user, use default location on SD card
-                backupFile = getBackupFilePath(bookUID);
-                outputStream = new FileOutputStream(backupFile);
+                createBackupInFolder(bookUID, db, codec, startTime, forceFullBackup);
             }
-
-            BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream);
-            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(bufferedOutputStream);
-            OutputStreamWriter writer = new OutputStreamWriter(gzipOutputStream);
-
-            ExportParams params = new ExportParams(ExportFormat.XML);
-            new GncXmlExporter(params).generateExport(writer);
-            writer.close();
+            purgeDeletedRecords(bookUID, db, startTime);
             return true;
         } catch (IOException | ExporterException e) {
             Crashlytics.logException(e);
             Log.e("GncXmlExporter", "Error creating XML  backup", e);
             return false;
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Returns the compression of the backups chosen in the settings
+     * @return Backup codec, {@link BackupCodec#GZIP} by default
+     */
+    public static BackupCodec getBackupCodec(){
+        return BackupCodec.fromName(PreferenceManager.getDefaultSharedPreferences(GnuCashApplication.getAppContext())
+                .getString(GnuCashApplication.getAppContext().getString(R.string.key_backup_codec), null));
+    }
+
+    /**
+     * Returns {@code true} if the file is an incremental backup created by {@link #createBackup(String)}.
+     * Such a backup can only be restored together with the backups it is based on
+     * @param fileName Name of the backup file
+     * @return {@code true} if the file is an incremental backup, {@code false} otherwise
+     */
+    public static boolean isIncrementalBackup(String fileName){
+        return fileName.endsWith(INCREMENTAL_BACKUP_EXTENSION);
+    }
+
+    /**
+     * Saves a full or an incremental backup of the book to its backup folder
+     * @param bookUID GUID of the book
+     * @param db Database of the book
+     * @param codec Compression of the backup
+     * @param startTime Time at which the backup was started
+     * @param forceFullBackup {@code true} to write the whole book even if an incremental backup is due
+     * @throws IOException if the backup file could not be written
+     */
+    private static void createBackupInFolder(String bookUID, SQLiteDatabase db, BackupCodec codec,
+                                             Timestamp startTime, boolean forceFullBackup) throws IOException {
+        File backupFolder = new File(Exporter.getBackupFolderPath(bookUID));
+        String bookName = BooksDbAdapter.getInstance().getAttribute(bookUID, DatabaseSchema.BookEntry.COLUMN_DISPLAY_NAME);
+        String fileName = buildExportFilename(ExportFormat.XML, bookName);
+
+        String previousBackup = PreferencesHelper.getLastBackupFile(bookUID);
+        Timestamp previousBackupTime = PreferencesHelper.getLastBackupTime(bookUID);
+        boolean fullBackup = forceFullBackup
+                || previousBackup == null
+                || !new File(backupFolder, previousBackup).exists()
+                || new File(backupFolder, fileName + INCREMENTAL_BACKUP_EXTENSION).exists()
+                || startTime.before(previousBackupTime)
+                || startTime.getTime() - PreferencesHelper.getLastFullBackupTime(bookUID).getTime() >= FULL_BACKUP_INTERVAL_MILLIS;
+
+        GncXmlExporter exporter = new GncXmlExporter(new ExportParams(ExportFormat.XML), db);
+        if (fullBackup) {
+            fileName += ".zip";
+        } else {
+            fileName += INCREMENTAL_BACKUP_EXTENSION;
+            exporter.setIncremental(previousBackup, previousBackupTime);
+        }
+        File backupFile = new File(backupFolder, fileName);
+        try {
+            writeBackup(exporter, new FileOutputStream(backupFile), codec);
+        } catch (IOException | ExporterException e) {
+            backupFile.delete(); //the next backup must not be based on an incomplete file
+            throw e;
+        }
+        PreferencesHelper.setLastBackup(bookUID, fileName, startTime, fullBackup);
+    }
+
+    /**
+     * Writes the compressed export to a stream, which is closed afterwards
+     * @param exporter Exporter of the book
+     * @param outputStream Output stream of the backup
+     * @param codec Compression of the backup
+     * @throws IOException if the stream could not be written
+     */
+    private static void writeBackup(GncXmlExporter exporter, OutputStream outputStream, BackupCodec codec) throws IOException {
+        Writer writer = codec.newWriter(outputStream);
+        try {
+            exporter.generateExport(writer);
+        } finally {
+            writer.close();
         }
     }
 
     /**
-     * Returns the full path of a file to make database backup of the specified book
-     * Backups are done in XML format and are zipped (with ".zip" extension).
+     * Removes the records of deletions which are no longer needed after a successful backup.
+     * <p>The next incremental backup only contains the deletions since the last backup in the backup folder,
+     * so the deletions before it are removed. If there is no backup in the folder yet, the next backup
+     * there is a full backup, and all deletions before this backup are removed</p>
      * @param bookUID GUID of the book
-     * @return the file path for backups of the database.
-     * @see #getBackupFolderPath(String)
+     * @param db Database of the book
+     * @param backupTime Time at which the backup was started
      */
-    private static String getBackupFilePath(String bookUID){
-        Book book = BooksDbAdapter.getInstance().getRecord(bookUID);
-        return Exporter.getBackupFolderPath(book.getUID()) + buildExportFilename(ExportFormat.XML, book.getDisplayName()) + ".zip";
+    private static void purgeDeletedRecords(String bookUID, SQLiteDatabase db, Timestamp backupTime){
+        Timestamp purgeBefore = PreferencesHelper.getLastBackupFile(bookUID) == null
+                ? backupTime : PreferencesHelper.getLastBackupTime(bookUID);
+        String time = TimestampHelper.getUtcStringFromTimestamp(purgeBefore).substring(0, 19);
+        db.delete(DeletedRecordEntry.TABLE_NAME, DeletedRecordEntry.COLUMN_DELETED_AT + " < ?", new String[]{time});
     }
 }
@@ -144,12 +144,42 @@ public abstract class GncXmlHelper {
     public static final String TAG_BUDGET_RECURRENCE        = "bgt:recurrence";
     public static final String TAG_BUDGET_SLOTS             = "bgt:slots";
 
+    /*
+    Elements of incremental backups, which are not part of the GnuCash XML format
+     */
+    public static final String NAMESPACE_GNCA               = "gnca";
+    public static final String TAG_PREVIOUS_BACKUP          = "gnca:previous-backup";
+    public static final String TAG_DELETED_RECORD           = "gnca:deleted";
 
     public static final String RECURRENCE_VERSION           = "1.0.0";
     public static final String BOOK_VERSION                 = "2.0.0";
+    /**
+     * @deprecated Not thread-safe. Use {@link #formatDate(long)} and {@link #parseDate(String)}
+     */
+    @Deprecated
     public static final SimpleDateFormat TIME_FORMATTER     = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z", Locale.US);
+    /**
+     * @deprecated Not thread-safe. Use {@link #formatGDate(long)} and {@link #parseGDate(String)}
+     */
+    @Deprecated
     public static final SimpleDateFormat DATE_FORMATTER     = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
 
+    /**
+     * Formatters of the timestamps and dates, one per thread since books can be exported concurrently
+     */
+    private static final ThreadLocal<SimpleDateFormat> TIME_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z", Locale.US);
+        }
+    };
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        }
+    };
+
     public static final String KEY_PLACEHOLDER              = "placeholder";
     public static final String KEY_COLOR                    = "color";
     public static final String KEY_FAVORITE                 = "favorite";
@@ -170,7 +200,25 @@ public abstract class GncXmlHelper {
      * @param milliseconds Milliseconds since epoch
      */
     public static String formatDate(long milliseconds){
-        return TIME_FORMATTER.format(new Date(milliseconds));
+        return TIME_FORMAT.get().format(new Date(milliseconds));
+    }
+
+    /**
+     * Formats dates without time for the GnuCash XML format, e.g. in {@code gdate} elements
+     * @param milliseconds Milliseconds since epoch
+     */
+    public static String formatGDate(long milliseconds){
+        return DATE_FORMAT.get().format(new Date(milliseconds));
+    }
+
+    /**
+     * Parses a date string formatted in the format "yyyy-MM-dd"
+     * @param dateString String date representation
+     * @return Time in milliseconds since epoch
+     * @throws ParseException if the date string could not be parsed
+     */
+    public static long parseGDate(String dateString) throws ParseException {
+        return DATE_FORMAT.get().parse(dateString).getTime();
     }
 
     /**
@@ -180,7 +228,7 @@ public abstract class GncXmlHelper {
      * @throws ParseException if the date string could not be parsed e.g. because of different format
      */
     public static long parseDate(String dateString) throws ParseException {
-        Date date = TIME_FORMATTER.parse(dateString);
+        Date date = TIME_FORMAT.get().parse(dateString);
         return date.getTime();
     }
 
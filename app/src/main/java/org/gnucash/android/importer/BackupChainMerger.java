@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.importer;
+
+import android.util.Xml;
+
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.export.xml.GncXmlExporter;
+import org.gnucash.android.export.xml.GncXmlHelper;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Combines a full backup and the incremental backups based on it into one GnuCash XML document.
+ * <p>Each incremental backup names the backup it is based on, so the chain is followed back from the
+ * requested backup to the last full backup. The incremental backups are read into memory, since they only hold
+ * the changes, while the full backup is streamed: its accounts, transactions and prices are replaced by newer
+ * versions or dropped if they have been deleted, and the records which are new are added after them.
+ * Commodities, template transactions, scheduled actions and budgets are taken from the newest
+ * incremental backup, which always contains all of them.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+class BackupChainMerger {
+
+    /*
+    Kinds of the elements in a book, in the order in which they appear in the XML
+     */
+    private static final int KIND_OTHER = 0;
+    private static final int KIND_COMMODITY = 1;
+    private static final int KIND_PRICE = 2;
+    private static final int KIND_ACCOUNT = 3;
+    private static final int KIND_TRANSACTION = 4;
+    private static final int KIND_TEMPLATES = 5;
+    private static final int KIND_SCHEDULED_ACTION = 6;
+    private static final int KIND_BUDGET = 7;
+    private static final int KIND_COUNT = 8;
+
+    /**
+     * Accounts, transactions and prices by kind and GUID, which replace or are added to those of the full backup
+     */
+    private final List<Map<String, Element>> mRecords = new ArrayList<>(KIND_COUNT);
+
+    /**
+     * GUIDs of the accounts, transactions and prices which have been deleted, by kind
+     */
+    private final List<Set<String>> mDeleted = new ArrayList<>(KIND_COUNT);
+
+    /**
+     * Commodities, template transactions, scheduled actions and budgets of the newest incremental backup, by kind
+     */
+    private final List<List<Element>> mSections = new ArrayList<>(KIND_COUNT);
+
+    /**
+     * Kinds whose new records or sections have already been written
+     */
+    private final boolean[] mWritten = new boolean[KIND_COUNT];
+
+    private final File mFullBackup;
+
+    /**
+     * Reads the chain of backups which ends with {@code backupFile}
+     * @param backupFile Incremental backup to restore
+     * @throws IOException if one of the backups cannot be read or is missing
+     */
+    BackupChainMerger(File backupFile) throws IOException {
+        for (int i = 0; i < KIND_COUNT; i++) {
+            mRecords.add(new LinkedHashMap<String, Element>());
+            mDeleted.add(new HashSet<String>());
+            mSections.add(null);
+        }
+
+        List<Element> chain = new ArrayList<>();
+        File file = backupFile;
+        while (GncXmlExporter.isIncrementalBackup(file.getName())) {
+            Element book = readBook(file);
+            chain.add(0, book);
+            String previousBackup = null;
+            for (Element element : book.mChildren) {
+                if (element.mName.equals(GncXmlHelper.TAG_PREVIOUS_BACKUP))
+                    previousBackup = element.mText.toString();
+            }
+            if (previousBackup == null)
+                throw new IOException("Incremental backup " + file.getName() + " does not name its previous backup");
+            file = new File(backupFile.getParentFile(), previousBackup);
+            if (!file.exists())
+                throw new IOException("Backup " + previousBackup + " which is needed to restore "
+                        + backupFile.getName() + " is missing");
+        }
+        mFullBackup = file;
+
+        for (Element book : chain) {
+            addChanges(book);
+        }
+    }
+
+    /**
+     * Writes the book with all the changes applied
+     * @param writer Output for the GnuCash XML
+     */
+    void merge(Writer writer) throws IOException {
+        InputStream inputStream = new GZIPInputStream(new BufferedInputStream(new FileInputStream(mFullBackup)));
+        try {
+            XmlPullParser parser = newParser(inputStream);
+            XmlSerializer serializer = Xml.newSerializer();
+            serializer.setOutput(writer);
+            serializer.startDocument("utf-8", true);
+
+            parser.nextTag();
+            writeStartTag(serializer, parser); // root element
+            while (parser.nextTag() == XmlPullParser.START_TAG) {
+                if (parser.getName().equals(GncXmlHelper.TAG_BOOK))
+                    mergeBook(parser, serializer);
+                else
+                    writeElement(serializer, readElement(parser));
+            }
+            serializer.endTag(null, parser.getName());
+            serializer.endDocument();
+            serializer.flush();
+        } catch (XmlPullParserException e) {
+            throw new IOException("Error reading backup " + mFullBackup.getName(), e);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void mergeBook(XmlPullParser parser, XmlSerializer serializer) throws IOException, XmlPullParserException {
+        writeStartTag(serializer, parser);
+        while (parser.nextTag() == XmlPullParser.START_TAG) {
+            if (parser.getName().equals(GncXmlHelper.TAG_PRICEDB)) {
+                writePendingBefore(serializer, KIND_PRICE);
+                writeStartTag(serializer, parser);
+                while (parser.nextTag() == XmlPullParser.START_TAG) {
+                    writeMerged(serializer, KIND_PRICE, readElement(parser));
+                }
+                writeRecords(serializer, KIND_PRICE);
+                serializer.endTag(null, GncXmlHelper.TAG_PRICEDB);
+                mWritten[KIND_PRICE] = true;
+                continue;
+            }
+            Element element = readElement(parser);
+            int kind = getKind(element.mName);
+            if (kind != KIND_OTHER)
+                writePendingBefore(serializer, kind);
+            writeMerged(serializer, kind, element);
+        }
+        writePendingBefore(serializer, KIND_COUNT);
+        serializer.endTag(null, GncXmlHelper.TAG_BOOK);
+    }
+
+    /**
+     * Writes an element of the full backup, or what replaces it
+     */
+    private void writeMerged(XmlSerializer serializer, int kind, Element element) throws IOException {
+        switch (kind) {
+            case KIND_PRICE:
+            case KIND_ACCOUNT:
+            case KIND_TRANSACTION:
+                String uid = getUID(element);
+                Element newer = mRecords.get(kind).remove(uid);
+                if (newer != null)
+                    writeElement(serializer, newer);
+                else if (!mDeleted.get(kind).contains(uid))
+                    writeElement(serializer, element);
+                break;
+            case KIND_OTHER:
+                writeElement(serializer, element);
+                break;
+            default:
+                if (mSections.get(kind) == null) {
+                    writeElement(serializer, element);
+                } else if (!mWritten[kind]) {
+                    writeSection(serializer, kind);
+                    mWritten[kind] = true;
+                }
+        }
+    }
+
+    /**
+     * Writes the records and sections of all kinds before {@code kind} which have not been written yet
+     */
+    private void writePendingBefore(XmlSerializer serializer, int kind) throws IOException {
+        for (int i = KIND_OTHER + 1; i < kind; i++) {
+            if (mWritten[i])
+                continue;
+            mWritten[i] = true;
+            if (i == KIND_PRICE) {
+                if (!mRecords.get(i).isEmpty()) {
+                    serializer.startTag(null, GncXmlHelper.TAG_PRICEDB);
+                    serializer.attribute(null, GncXmlHelper.ATTR_KEY_VERSION, "1");
+                    writeRecords(serializer, i);
+                    serializer.endTag(null, GncXmlHelper.TAG_PRICEDB);
+                }
+            } else if (i == KIND_ACCOUNT || i == KIND_TRANSACTION) {
+                writeRecords(serializer, i);
+            } else if (mSections.get(i) != null) {
+                writeSection(serializer, i);
+            }
+        }
+    }
+
+    private void writeRecords(XmlSerializer serializer, int kind) throws IOException {
+        for (Element element : mRecords.get(kind).values()) {
+            writeElement(serializer, element);
+        }
+        mRecords.get(kind).clear();
+    }
+
+    private void writeSection(XmlSerializer serializer, int kind) throws IOException {
+        for (Element element : mSections.get(kind)) {
+            writeElement(serializer, element);
+        }
+    }
+
+    /**
+     * Applies the changes of an incremental backup on top of those of the backups before it
+     * @param book Book element of the incremental backup
+     */
+    private void addChanges(Element book) {
+        // deletions come first, in case a record has been deleted and created again with the same GUID
+        for (Element element : book.mChildren) {
+            if (element.mName.equals(GncXmlHelper.TAG_DELETED_RECORD)) {
+                int kind = getKindOfTable(element.getAttribute(GncXmlHelper.ATTR_KEY_TYPE));
+                String uid = element.mText.toString();
+                mRecords.get(kind).remove(uid);
+                mDeleted.get(kind).add(uid);
+            }
+        }
+        for (int i = 0; i < KIND_COUNT; i++) {
+            if (i == KIND_COMMODITY || i >= KIND_TEMPLATES)
+                mSections.set(i, new ArrayList<Element>());
+        }
+        for (Element element : book.mChildren) {
+            if (element.mName.equals(GncXmlHelper.TAG_PRICEDB)) {
+                for (Element price : element.mChildren) {
+                    mRecords.get(KIND_PRICE).put(getUID(price), price);
+                }
+                continue;
+            }
+            int kind = getKind(element.mName);
+            if (kind == KIND_ACCOUNT || kind == KIND_TRANSACTION)
+                mRecords.get(kind).put(getUID(element), element);
+            else if (kind != KIND_OTHER)
+                mSections.get(kind).add(element);
+        }
+    }
+
+    private static int getKind(String tagName) {
+        switch (tagName) {
+            case GncXmlHelper.TAG_COMMODITY:
+                return KIND_COMMODITY;
+            case GncXmlHelper.TAG_PRICE:
+                return KIND_PRICE;
+            case GncXmlHelper.TAG_ACCOUNT:
+                return KIND_ACCOUNT;
+            case GncXmlHelper.TAG_TRANSACTION:
+                return KIND_TRANSACTION;
+            case GncXmlHelper.TAG_TEMPLATE_TRANSACTIONS:
+                return KIND_TEMPLATES;
+            case GncXmlHelper.TAG_SCHEDULED_ACTION:
+                return KIND_SCHEDULED_ACTION;
+            case GncXmlHelper.TAG_BUDGET:
+                return KIND_BUDGET;
+            default:
+                return KIND_OTHER;
+        }
+    }
+
+    private static int getKindOfTable(String tableName) {
+        switch (tableName) {
+            case DatabaseSchema.AccountEntry.TABLE_NAME:
+                return KIND_ACCOUNT;
+            case DatabaseSchema.TransactionEntry.TABLE_NAME:
+                return KIND_TRANSACTION;
+            case DatabaseSchema.PriceEntry.TABLE_NAME:
+                return KIND_PRICE;
+            default:
+                throw new IllegalArgumentException("Deleted records of table " + tableName + " cannot be restored");
+        }
+    }
+
+    /**
+     * Returns the GUID of an account, transaction or price element
+     */
+    private static String getUID(Element element) {
+        for (Element child : element.mChildren) {
+            switch (child.mName) {
+                case GncXmlHelper.TAG_ACCT_ID:
+                case GncXmlHelper.TAG_TRX_ID:
+                case GncXmlHelper.TAG_PRICE_ID:
+                    return child.mText.toString();
+            }
+        }
+        throw new IllegalArgumentException("No GUID found in " + element.mName);
+    }
+
+    /**
+     * Reads the book element of an incremental backup
+     */
+    private static Element readBook(File file) throws IOException {
+        InputStream inputStream = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            XmlPullParser parser = newParser(inputStream);
+            parser.nextTag();
+            while (parser.nextTag() == XmlPullParser.START_TAG) {
+                if (parser.getName().equals(GncXmlHelper.TAG_BOOK))
+                    return readElement(parser);
+                readElement(parser);
+            }
+            throw new IOException("No book found in backup " + file.getName());
+        } catch (XmlPullParserException e) {
+            throw new IOException("Error reading backup " + file.getName(), e);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static XmlPullParser newParser(InputStream inputStream) throws XmlPullParserException {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        parser.setInput(inputStream, null);
+        return parser;
+    }
+
+    /**
+     * Reads the element at the current start tag, including its children, and moves the parser to its end tag
+     */
+    private static Element readElement(XmlPullParser parser) throws IOException, XmlPullParserException {
+        Element element = new Element(parser.getName());
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            element.mAttributes.add(parser.getAttributeName(i));
+            element.mAttributes.add(parser.getAttributeValue(i));
+        }
+        while (true) {
+            switch (parser.next()) {
+                case XmlPullParser.START_TAG:
+                    element.mChildren.add(readElement(parser));
+                    break;
+                case XmlPullParser.TEXT:
+                    element.mText.append(parser.getText());
+                    break;
+                case XmlPullParser.END_TAG:
+                    return element;
+                case XmlPullParser.END_DOCUMENT:
+                    throw new XmlPullParserException("Unexpected end of document in " + element.mName);
+            }
+        }
+    }
+
+    private static void writeStartTag(XmlSerializer serializer, XmlPullParser parser) throws IOException {
+        serializer.startTag(null, parser.getName());
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            serializer.attribute(null, parser.getAttributeName(i), parser.getAttributeValue(i));
+        }
+    }
+
+    private static void writeElement(XmlSerializer serializer, Element element) throws IOException {
+        serializer.startTag(null, element.mName);
+        for (int i = 0; i < element.mAttributes.size(); i += 2) {
+            serializer.attribute(null, element.mAttributes.get(i), element.mAttributes.get(i + 1));
+        }
+        if (element.mChildren.isEmpty()) {
+            serializer.text(element.mText.toString());
+        } else {
+            for (Element child : element.mChildren) {
+                writeElement(serializer, child);
+            }
+        }
+        serializer.endTag(null, element.mName);
+    }
+
+    /**
+     * Element of a backup with its attributes, text and child elements.
+     * The text of elements which have children is only the whitespace between them
+     */
+    private static class Element {
+        final String mName;
+        final List<String> mAttributes = new ArrayList<>(2); // names and values
+        final StringBuilder mText = new StringBuilder();
+        final List<Element> mChildren = new ArrayList<>();
+
+        Element(String name) {
+            mName = name;
+        }
+
+        String getAttribute(String name) {
+            for (int i = 0; i < mAttributes.size(); i += 2) {
+                if (mAttributes.get(i).equals(name))
+                    return mAttributes.get(i + 1);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.importer;
+
+import android.util.Log;
+
+import org.xml.sax.SAXException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread which runs the database writes of an import in the order in which they are submitted.
+ * <p>The queue of pending writes is bounded, so the parser blocks when it gets too far ahead of the database.
+ * All writes of an import have to go through the same thread, because an SQLite transaction belongs to
+ * the thread which started it.</p>
+ * <p>If a write fails, the remaining writes are skipped and the error is reported to the parser
+ * the next time it submits a write or waits for the writes to finish.</p>
+ * <p>The cleanup task is run on the writer thread when it stops, whether the writes were finished,
+ * failed, or the thread was interrupted.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+class DatabaseWriterThread extends Thread {
+
+    private static final String LOG_TAG = DatabaseWriterThread.class.getSimpleName();
+
+    /**
+     * Time to wait for space in the queue before checking that the writer thread is still running
+     */
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    /**
+     * Marks the end of the queue
+     */
+    private static final Runnable END_OF_WRITES = new Runnable() {
+        @Override
+        public void run() {
+            //nothing to write
+        }
+    };
+
+    private final BlockingQueue<Runnable> mWrites;
+
+    /**
+     * Task run on the writer thread when it stops
+     */
+    private final Runnable mCleanup;
+
+    /**
+     * First error which occurred while writing, if any
+     */
+    private volatile RuntimeException mError;
+
+    /**
+     * Creates and starts the writer thread
+     * @param capacity Maximum number of writes waiting to be run
+     * @param cleanup Task which is run on the writer thread when it stops, even if a write has failed
+     */
+    DatabaseWriterThread(int capacity, Runnable cleanup) {
+        super("GnuCashImportWriter");
+        mWrites = new ArrayBlockingQueue<>(capacity);
+        mCleanup = cleanup;
+        start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                Runnable write = mWrites.take();
+                if (write == END_OF_WRITES)
+                    return;
+                if (mError != null)
+                    continue; // keep taking writes so that the parser is never blocked
+                try {
+                    write.run();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Error while writing imported data", e);
+                    mError = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.w(LOG_TAG, "Interrupted while waiting for writes");
+            if (mError == null)
+                mError = new IllegalStateException("Import interrupted", e);
+        } finally {
+            runCleanup();
+        }
+    }
+
+    /**
+     * Queues a write, waiting if too many writes are pending
+     * @param write Database write
+     * @throws SAXException if a previous write has failed
+     */
+    void submit(Runnable write) throws SAXException {
+        checkError();
+        enqueue(write);
+    }
+
+    /**
+     * Waits until all the submitted writes have been run and the cleanup task has run
+     * @throws SAXException if one of the writes or the cleanup has failed
+     */
+    void finish() throws SAXException {
+        if (isAlive())
+            enqueue(END_OF_WRITES);
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SAXException(e);
+        }
+        checkError();
+    }
+
+    /**
+     * Puts a task in the queue, waiting while the queue is full.
+     * <p>The writer thread is checked while waiting, so the parser does not block forever if it has stopped</p>
+     * @throws SAXException if the writer thread has stopped
+     */
+    private void enqueue(Runnable write) throws SAXException {
+        try {
+            while (!mWrites.offer(write, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!isAlive()) {
+                    checkError();
+                    throw new SAXException("The import writer has stopped");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SAXException(e);
+        }
+    }
+
+    private void runCleanup() {
+        try {
+            mCleanup.run();
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Error while finishing the import", e);
+            if (mError == null)
+                mError = e;
+        }
+    }
+
+    private void checkError() throws SAXException {
+        if (mError != null)
+            throw new SAXException("Error while saving imported data: " + mError.getMessage(), mError);
+    }
+}
@@ -103,6 +103,16 @@ public class GncXmlHandler extends DefaultHandler {
     //TODO: Allow use of #aarrggbb format as well
     public static final String ACCOUNT_COLOR_HEX_REGEX = "^#(?:[0-9a-fA-F]{3}){2}$";
 
+    /**
+     * Number of parsed transactions which are held in memory before they are written to the database
+     */
+    static final int TRANSACTION_BATCH_SIZE = 1000;
+
+    /**
+     * Number of batches which may wait for the database writer thread, see {@link #GncXmlHandler(boolean)}
+     */
+    private static final int PENDING_WRITES = 2;
+
     /**
      * Adapter for saving the imported accounts
      */
@@ -149,7 +159,8 @@ public class GncXmlHandler extends DefaultHandler {
     Transaction mTransaction;
 
     /**
-     * All the transaction instances found in a file to be inserted, used in bulk mode
+     * Transactions which have been parsed but not yet written to the database.
+     * The list is flushed every {@link #TRANSACTION_BATCH_SIZE} transactions
      */
     List<Transaction> mTransactionList;
 
@@ -189,10 +200,16 @@ public class GncXmlHandler extends DefaultHandler {
     boolean mNegativeQuantity;
 
     /**
-     * The list for all added split for autobalancing
+     * The list for all added split for autobalancing, whose imbalance account has not been set yet
      */
     List<Split> mAutoBalanceSplits;
 
+    /**
+     * Top level imbalance accounts, by currency code.
+     * Built when the first auto-balance split has to be resolved, see {@link #getImbalanceAccount(String)}
+     */
+    Map<String, Account> mImbalanceAccounts;
+
     /**
      * Ignore certain elements in GnuCash XML file, such as "<gnc:template-transactions>"
      */
@@ -281,11 +298,37 @@ public class GncXmlHandler extends DefaultHandler {
     private Book mBook;
     private SQLiteDatabase mainDb;
 
+    /**
+     * Whether the database transaction for the import has been started
+     */
+    private boolean mImportStarted = false;
+
+    /**
+     * Commodities of the database by currency code, so that parsing does not need to query the database
+     */
+    private Map<String, Commodity> mCommodities;
+
+    /**
+     * Thread which writes to the database while parsing continues, or null if writes are done while parsing
+     */
+    private DatabaseWriterThread mWriter;
+
     /**
      * Creates a handler for handling XML stream events when parsing the XML backup file
      */
     public GncXmlHandler() {
+        this(false);
+    }
+
+    /**
+     * Creates a handler for handling XML stream events when parsing the XML backup file
+     * @param writeInBackground If {@code true}, the database writes are done on a separate thread
+     *                          while parsing goes on, otherwise they are done by the parsing thread
+     */
+    public GncXmlHandler(boolean writeInBackground) {
         init();
+        if (writeInBackground)
+            mWriter = new DatabaseWriterThread(PENDING_WRITES, mEndImport);
     }
 
     /**
@@ -295,6 +338,8 @@ public class GncXmlHandler extends DefaultHandler {
         mBook = new Book();
 
         DatabaseHelper databaseHelper = new DatabaseHelper(GnuCashApplication.getAppContext(), mBook.getUID());
+        //nothing reads the book while it is imported, and the whole import would end up in the log
+        databaseHelper.setWriteAheadLoggingEnabled(false);
         mainDb = databaseHelper.getWritableDatabase();
         mTransactionsDbAdapter = new TransactionsDbAdapter(mainDb, new SplitsDbAdapter(mainDb));
         mAccountsDbAdapter = new AccountsDbAdapter(mainDb, mTransactionsDbAdapter);
@@ -321,12 +366,21 @@ public class GncXmlHandler extends DefaultHandler {
 
         mPriceList = new ArrayList<>();
         mCurrencyCount = new HashMap<>();
+
+        mCommodities = new HashMap<>();
+        for (Commodity commodity : mCommoditiesDbAdapter.getAllRecords()) {
+            if (!mCommodities.containsKey(commodity.getCurrencyCode()))
+                mCommodities.put(commodity.getCurrencyCode(), commodity);
+        }
     }
 
     @Override
     public void startElement(String uri, String localName,
                              String qualifiedName, Attributes attributes) throws SAXException {
         switch (qualifiedName){
+            case GncXmlHelper.TAG_PREVIOUS_BACKUP:
+                throw new SAXException("This is an incremental backup. It can only be restored from the backup "
+                        + "folder, together with the backups it is based on");
             case GncXmlHelper.TAG_ACCOUNT:
                 mAccount = new Account(""); // dummy name, will be replaced when we find name tag
                 mISO4217Currency = false;
@@ -404,8 +458,6 @@ public class GncXmlHandler extends DefaultHandler {
     @Override
     public void endElement(String uri, String localName, String qualifiedName) throws SAXException {
         // FIXME: 22.10.2015 First parse the number of accounts/transactions and use the numer to init the array lists
-        String characterString = mContent.toString().trim();
-
         if (mIgnoreElement != null) {
             // Ignore everything inside
             if (qualifiedName.equals(mIgnoreElement)) {
@@ -415,6 +467,8 @@ public class GncXmlHandler extends DefaultHandler {
             return;
         }
 
+        String characterString = getTrimmedContent();
+
         switch (qualifiedName) {
             case GncXmlHelper.TAG_ACCT_NAME:
                 mAccount.setName(characterString);
@@ -438,7 +492,7 @@ public class GncXmlHandler extends DefaultHandler {
                 break;
             case GncXmlHelper.TAG_COMMODITY_ID:
                 String currencyCode = mISO4217Currency ? characterString : NO_CURRENCY_CODE;
-                Commodity commodity = mCommoditiesDbAdapter.getCommodity(currencyCode);
+                Commodity commodity = mCommodities.get(currencyCode);
                 if (mAccount != null) {
                     if (commodity != null) {
                         mAccount.setCommodity(commodity);
@@ -457,11 +511,11 @@ public class GncXmlHandler extends DefaultHandler {
                 }
                 if (mPrice != null) {
                     if (mPriceCommodity) {
-                        mPrice.setCommodityUID(mCommoditiesDbAdapter.getCommodityUID(currencyCode));
+                        mPrice.setCommodityUID(getCommodityUID(currencyCode));
                         mPriceCommodity = false;
                     }
                     if (mPriceCurrency) {
-                        mPrice.setCurrencyUID(mCommoditiesDbAdapter.getCommodityUID(currencyCode));
+                        mPrice.setCurrencyUID(getCommodityUID(currencyCode));
                         mPriceCurrency = false;
                     }
                 }
@@ -476,6 +530,8 @@ public class GncXmlHandler extends DefaultHandler {
                 if (!mInTemplates) { //we ignore template accounts, we have no use for them. FIXME someday and import the templates too
                     mAccountList.add(mAccount);
                     mAccountMap.put(mAccount.getUID(), mAccount);
+                    if (mImbalanceAccounts != null)
+                        addImbalanceAccount(mAccount);
                     // check ROOT account
                     if (mAccount.getAccountType() == AccountType.ROOT) {
                         if (mRootAccount == null) {
@@ -706,6 +762,8 @@ public class GncXmlHandler extends DefaultHandler {
                 mRecurrencePeriod = 0;
                 mIgnoreTemplateTransaction = true;
                 mTransaction = null;
+                if (mTransactionList.size() >= TRANSACTION_BATCH_SIZE)
+                    flushTransactions();
                 break;
             case GncXmlHelper.TAG_TEMPLATE_TRANSACTIONS:
                 mInTemplates = false;
@@ -748,7 +806,7 @@ public class GncXmlHandler extends DefaultHandler {
                 break;
             case GncXmlHelper.TAG_GDATE:
                 try {
-                    long date = GncXmlHelper.DATE_FORMATTER.parse(characterString).getTime();
+                    long date = GncXmlHelper.parseGDate(characterString);
                     if (mIsScheduledStart && mScheduledAction != null) {
                         mScheduledAction.setCreatedTimestamp(new Timestamp(date));
                         mIsScheduledStart = false;
@@ -866,52 +924,43 @@ public class GncXmlHandler extends DefaultHandler {
         mContent.append(chars, start, length);
     }
 
+    /**
+     * Returns the characters accumulated since the last element, without leading and trailing whitespace.
+     * <p>The whitespace is skipped inside {@link #mContent}, so no string is allocated for elements
+     * which only contain whitespace, like the container elements</p>
+     * @return Trimmed content of the element
+     */
+    private String getTrimmedContent() {
+        int start = 0;
+        int end = mContent.length();
+        while (start < end && mContent.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && mContent.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return start == end ? "" : mContent.substring(start, end);
+    }
+
     @Override
     public void endDocument() throws SAXException {
         super.endDocument();
         HashMap<String, String> mapFullName = new HashMap<>(mAccountList.size());
-        HashMap<String, Account> mapImbalanceAccount = new HashMap<>();
 
         // The XML has no ROOT, create one
-        if (mRootAccount == null) {
-            mRootAccount = new Account("ROOT");
-            mRootAccount.setAccountType(AccountType.ROOT);
-            mAccountList.add(mRootAccount);
-            mAccountMap.put(mRootAccount.getUID(), mRootAccount);
-        }
+        createRootAccountIfMissing();
 
-        String imbalancePrefix = AccountsDbAdapter.getImbalanceAccountPrefix();
+        // Set the account for created balancing splits to correct imbalance accounts
+        resolveAutoBalanceSplits();
 
-        // Add all account without a parent to ROOT, and collect top level imbalance accounts
+        // Add all account without a parent to ROOT
         for(Account account:mAccountList) {
             mapFullName.put(account.getUID(), null);
-            boolean topLevel = false;
             if (account.getParentUID() == null && account.getAccountType() != AccountType.ROOT) {
                 account.setParentUID(mRootAccount.getUID());
-                topLevel = true;
-            }
-            if (topLevel || (mRootAccount.getUID().equals(account.getParentUID()))) {
-                if (account.getName().startsWith(imbalancePrefix)) {
-                    mapImbalanceAccount.put(account.getName().substring(imbalancePrefix.length()), account);
-                }
             }
         }
 
-        // Set the account for created balancing splits to correct imbalance accounts
-        for (Split split: mAutoBalanceSplits) {
-            // XXX: yes, getAccountUID() returns a currency code in this case (see Transaction.createAutoBalanceSplit())
-            String currencyCode = split.getAccountUID();
-            Account imbAccount = mapImbalanceAccount.get(currencyCode);
-            if (imbAccount == null) {
-                imbAccount = new Account(imbalancePrefix + currencyCode, mCommoditiesDbAdapter.getCommodity(currencyCode));
-                imbAccount.setParentUID(mRootAccount.getUID());
-                imbAccount.setAccountType(AccountType.BANK);
-                mapImbalanceAccount.put(currencyCode, imbAccount);
-                mAccountList.add(imbAccount);
-            }
-            split.setAccountUID(imbAccount.getUID());
-        }
-
         java.util.Stack<Account> stack = new Stack<>();
         for (Account account:mAccountList){
             if (mapFullName.get(account.getUID()) != null) {
@@ -969,24 +1018,34 @@ public class GncXmlHandler extends DefaultHandler {
 
     /**
      * Saves the imported data to the database
-     * @return GUID of the newly created book, or null if not successful
      */
-    private void saveToDatabase() {
-        BooksDbAdapter booksDbAdapter = BooksDbAdapter.getInstance();
+    private void saveToDatabase() throws SAXException {
+        final BooksDbAdapter booksDbAdapter = BooksDbAdapter.getInstance();
         mBook.setRootAccountUID(mRootAccount.getUID());
         mBook.setDisplayName(booksDbAdapter.generateDefaultBookName());
         //we on purpose do not set the book active. Only import. Caller should handle activation
-        
+
+        flushTransactions();
+        runWrite(new Runnable() {
+            @Override
+            public void run() {
+                writeBook(booksDbAdapter);
+            }
+        });
+        if (mWriter != null)
+            mWriter.finish();
+    }
+
+    /**
+     * Writes the parsed records, apart from the transactions which have already been written
+     * by {@link #flushTransactions()}, and commits the import
+     * @param booksDbAdapter Adapter for adding the new book
+     */
+    private void writeBook(BooksDbAdapter booksDbAdapter) {
         long startTime = System.nanoTime();
-        mAccountsDbAdapter.beginTransaction();
+        beginImport();
         Log.d(getClass().getSimpleName(), "bulk insert starts");
         try {
-            // disable foreign key. The database structure should be ensured by the data inserted.
-            // it will make insertion much faster.
-            mAccountsDbAdapter.enableForeignKey(false);
-            Log.d(getClass().getSimpleName(), "before clean up db");
-            mAccountsDbAdapter.deleteAllRecords();
-            Log.d(getClass().getSimpleName(), String.format("deb clean up done %d ns", System.nanoTime()-startTime));
             long nAccounts = mAccountsDbAdapter.bulkAddRecords(mAccountList, DatabaseAdapter.UpdateMethod.insert);
             Log.d("Handler:", String.format("%d accounts inserted", nAccounts));
             //We need to add scheduled actions first because there is a foreign key constraint on transactions
@@ -997,12 +1056,15 @@ public class GncXmlHandler extends DefaultHandler {
             long nTempTransactions = mTransactionsDbAdapter.bulkAddRecords(mTemplateTransactions, DatabaseAdapter.UpdateMethod.insert);
             Log.d("Handler:", String.format("%d template transactions inserted", nTempTransactions));
 
-            long nTransactions = mTransactionsDbAdapter.bulkAddRecords(mTransactionList, DatabaseAdapter.UpdateMethod.insert);
-            Log.d("Handler:", String.format("%d transactions inserted", nTransactions));
+            // one sweep for the whole book, instead of one after each batch of transactions
+            mTransactionsDbAdapter.deleteTransactionsWithNoSplits();
 
             long nPrices = mPricesDbAdapter.bulkAddRecords(mPriceList, DatabaseAdapter.UpdateMethod.insert);
             Log.d(getClass().getSimpleName(), String.format("%d prices inserted", nPrices));
 
+            mTransactionsDbAdapter.getSplitDbAdapter().enableBalanceUpdates(true);
+            mTransactionsDbAdapter.getSplitDbAdapter().rebuildAccountBalances();
+
             //// TODO: 01.06.2016 Re-enable import of Budget stuff when the UI is complete
 //            long nBudgets = mBudgetsDbAdapter.bulkAddRecords(mBudgetList, DatabaseAdapter.UpdateMethod.insert);
 //            Log.d(getClass().getSimpleName(), String.format("%d budgets inserted", nBudgets));
@@ -1010,16 +1072,214 @@ public class GncXmlHandler extends DefaultHandler {
             long endTime = System.nanoTime();
             Log.d(getClass().getSimpleName(), String.format("bulk insert time: %d", endTime - startTime));
 
-            //if all of the import went smoothly, then add the book to the book db
-            booksDbAdapter.addRecord(mBook, DatabaseAdapter.UpdateMethod.insert);
             mAccountsDbAdapter.setTransactionSuccessful();
+            finishImport();
+            // the import was committed without syncing to disk. The book is only added to the book db
+            // once its database has been synced with the restored settings, so it survives a crash
+            mAccountsDbAdapter.syncToDisk();
+            booksDbAdapter.addRecord(mBook, DatabaseAdapter.UpdateMethod.insert);
         } finally {
-            mAccountsDbAdapter.enableForeignKey(true);
-            mAccountsDbAdapter.endTransaction();
+            endImport();
+        }
+    }
+
+    /**
+     * Starts the database transaction in which the whole book is imported, if it has not been started yet.
+     * <p>Transactions are written while the file is still being parsed, before the accounts they refer to,
+     * so foreign key checks are disabled until {@link #endImport()}</p>
+     */
+    private void beginImport() {
+        if (mImportStarted)
+            return;
+        // disable foreign key. The database structure should be ensured by the data inserted.
+        // it will make insertion much faster. This has no effect inside a transaction, so it is done first
+        mAccountsDbAdapter.enableForeignKey(false);
+        // the database is not synced to disk until the import has been committed, see writeBook()
+        mAccountsDbAdapter.enableBulkImportMode(true);
+        mAccountsDbAdapter.beginTransaction();
+        mImportStarted = true;
+        // the account balances are computed in one go after all splits have been inserted
+        mTransactionsDbAdapter.getSplitDbAdapter().enableBalanceUpdates(false);
+        // transactions without splits are deleted once, at the end of the import
+        mTransactionsDbAdapter.enableEmptyTransactionCleanup(false);
+        long startTime = System.nanoTime();
+        mAccountsDbAdapter.deleteAllRecords();
+        Log.d(getClass().getSimpleName(), String.format("deb clean up done %d ns", System.nanoTime()-startTime));
+    }
+
+    /**
+     * Ends the database transaction of the import and closes the database.
+     * <p>Everything written so far is rolled back unless the transaction has been marked as successful</p>
+     */
+    private void endImport() {
+        if (!mainDb.isOpen())
+            return;
+        try {
+            finishImport();
+        } finally {
+            DatabaseAdapter[] adapters = {mAccountsDbAdapter, mTransactionsDbAdapter,
+                    mTransactionsDbAdapter.getSplitDbAdapter(), mScheduledActionsDbAdapter,
+                    mCommoditiesDbAdapter, mPricesDbAdapter, mBudgetsDbAdapter};
+            for (DatabaseAdapter adapter : adapters) {
+                adapter.close();
+            }
             mainDb.close(); //close it after import
         }
     }
 
+    /**
+     * Ends the database transaction of the import, if it is still open, and restores the database settings
+     * which were changed by {@link #beginImport()}
+     */
+    private void finishImport() {
+        if (mImportStarted) {
+            mTransactionsDbAdapter.getSplitDbAdapter().enableBalanceUpdates(true);
+            mTransactionsDbAdapter.enableEmptyTransactionCleanup(true);
+            mImportStarted = false;
+            mAccountsDbAdapter.endTransaction();
+        }
+        mAccountsDbAdapter.enableForeignKey(true);
+        mAccountsDbAdapter.enableBulkImportMode(false);
+    }
+
+    /**
+     * Runs {@link #endImport()}. Used as the cleanup task of the writer thread
+     */
+    private final Runnable mEndImport = new Runnable() {
+        @Override
+        public void run() {
+            endImport();
+        }
+    };
+
+    /**
+     * Discards everything which has been imported so far.
+     * <p>This should be called if parsing fails, since {@link #endDocument()} is not reached in that case</p>
+     */
+    public void abortImport() {
+        if (mWriter == null) {
+            endImport();
+        } else {
+            try {
+                mWriter.finish();
+            } catch (SAXException e) {
+                Log.e(LOG_TAG, "Error while aborting import", e);
+            }
+        }
+    }
+
+    /**
+     * Runs a database write, either directly or on the writer thread
+     * @param write Database write
+     * @throws SAXException if an earlier write on the writer thread has failed
+     */
+    private void runWrite(Runnable write) throws SAXException {
+        if (mWriter == null)
+            write.run();
+        else
+            mWriter.submit(write);
+    }
+
+    /**
+     * Writes the transactions which have been parsed so far to the database and releases them
+     */
+    private void flushTransactions() throws SAXException {
+        if (mTransactionList.isEmpty())
+            return;
+        resolveAutoBalanceSplits();
+        final List<Transaction> transactions = mTransactionList;
+        mTransactionList = new ArrayList<>(TRANSACTION_BATCH_SIZE);
+        runWrite(new Runnable() {
+            @Override
+            public void run() {
+                beginImport();
+                long nTransactions = mTransactionsDbAdapter.bulkAddRecords(transactions, DatabaseAdapter.UpdateMethod.insert);
+                Log.d("Handler:", String.format("%d transactions inserted", nTransactions));
+            }
+        });
+    }
+
+    /**
+     * Returns the GUID of a commodity in the database
+     * @param currencyCode Currency code of the commodity
+     * @return GUID of the commodity
+     * @throws IllegalArgumentException if there is no commodity with the currency code
+     */
+    private String getCommodityUID(String currencyCode) {
+        Commodity commodity = mCommodities.get(currencyCode);
+        if (commodity == null)
+            throw new IllegalArgumentException("Currency code not found in commodities");
+        return commodity.getUID();
+    }
+
+    /**
+     * Creates a ROOT account for the book if none has been parsed
+     */
+    private void createRootAccountIfMissing() {
+        if (mRootAccount == null) {
+            mRootAccount = new Account("ROOT");
+            mRootAccount.setAccountType(AccountType.ROOT);
+            mAccountList.add(mRootAccount);
+            mAccountMap.put(mRootAccount.getUID(), mRootAccount);
+        }
+    }
+
+    /**
+     * Sets the account of the pending auto-balance splits to the imbalance account of their currency
+     */
+    private void resolveAutoBalanceSplits() {
+        for (Split split: mAutoBalanceSplits) {
+            // XXX: yes, getAccountUID() returns a currency code in this case (see Transaction.createAutoBalanceSplit())
+            split.setAccountUID(getImbalanceAccount(split.getAccountUID()).getUID());
+        }
+        mAutoBalanceSplits.clear();
+    }
+
+    /**
+     * Returns the top level imbalance account for a currency, creating it if it does not exist in the book.
+     * <p>The imbalance accounts are collected from the accounts parsed so far when this method is first called.
+     * Accounts always come before transactions in GnuCash XML files.</p>
+     * @param currencyCode Currency code of the imbalance
+     * @return Imbalance account
+     */
+    private Account getImbalanceAccount(String currencyCode) {
+        if (mImbalanceAccounts == null) {
+            createRootAccountIfMissing();
+            mImbalanceAccounts = new HashMap<>();
+            for (Account account : mAccountList) {
+                addImbalanceAccount(account);
+            }
+        }
+        Account imbAccount = mImbalanceAccounts.get(currencyCode);
+        if (imbAccount == null) {
+            imbAccount = new Account(AccountsDbAdapter.getImbalanceAccountPrefix() + currencyCode,
+                    mCommodities.get(currencyCode));
+            imbAccount.setParentUID(mRootAccount.getUID());
+            imbAccount.setAccountType(AccountType.BANK);
+            mImbalanceAccounts.put(currencyCode, imbAccount);
+            mAccountList.add(imbAccount);
+            mAccountMap.put(imbAccount.getUID(), imbAccount);
+        }
+        return imbAccount;
+    }
+
+    /**
+     * Registers an account in {@link #mImbalanceAccounts} if it is a top level imbalance account
+     * @param account Parsed account
+     */
+    private void addImbalanceAccount(Account account) {
+        if (account.getAccountType() == AccountType.ROOT)
+            return;
+        String imbalancePrefix = AccountsDbAdapter.getImbalanceAccountPrefix();
+        boolean topLevel = account.getParentUID() == null
+                || (mRootAccount != null && mRootAccount.getUID().equals(account.getParentUID()));
+        if (topLevel && account.getName().startsWith(imbalancePrefix)) {
+            String currencyCode = account.getName().substring(imbalancePrefix.length());
+            if (!mImbalanceAccounts.containsKey(currencyCode))
+                mImbalanceAccounts.put(currencyCode, account);
+        }
+    }
+
     /**
      * Returns the unique identifier of the just-imported book
      * @return GUID of the newly imported book
@@ -17,18 +17,30 @@
 package org.gnucash.android.importer;
 
 import android.util.Log;
+import android.util.Xml;
 
+import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.export.xml.GncXmlExporter;
 import org.gnucash.android.util.PreferencesHelper;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PushbackInputStream;
-import java.util.zip.GZIPInputStream;
+import java.io.Writer;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -41,32 +53,72 @@ import javax.xml.parsers.SAXParserFactory;
  */
 public class GncXmlImporter {
 
+    /**
+     * XML parsers which can be used to read the file.
+     * Both produce the same events for {@link GncXmlHandler}
+     */
+    public enum Engine {
+        /**
+         * SAX parser from {@link SAXParserFactory}
+         */
+        SAX,
+        /**
+         * Android {@link XmlPullParser}, which hands its own character buffer to the handler
+         * instead of copying the text of every element
+         */
+        PULL
+    }
+
     /**
      * Parse GnuCash XML input and populates the database
      * @param gncXmlInputStream InputStream source of the GnuCash XML file
      * @return GUID of the book into which the XML was imported
      */
     public static String parse(InputStream gncXmlInputStream) throws ParserConfigurationException, SAXException, IOException {
-        SAXParserFactory spf = SAXParserFactory.newInstance();
-        SAXParser sp = spf.newSAXParser();
-        XMLReader xr = sp.getXMLReader();
+        return parse(gncXmlInputStream, Engine.SAX);
+    }
 
+    /**
+     * Parse GnuCash XML input with the specified parser and populates the database
+     * @param gncXmlInputStream InputStream source of the GnuCash XML file
+     * @param engine XML parser to use
+     * @return GUID of the book into which the XML was imported
+     */
+    public static String parse(InputStream gncXmlInputStream, Engine engine) throws ParserConfigurationException, SAXException, IOException {
         BufferedInputStream bos;
+        InflaterPipeInputStream inflater = null;
         PushbackInputStream pb = new PushbackInputStream( gncXmlInputStream, 2 ); //we need a pushbackstream to look ahead
         byte [] signature = new byte[2];
         pb.read( signature ); //read the signature
         pb.unread( signature ); //push back the signature to the stream
         if( signature[ 0 ] == (byte) 0x1f && signature[ 1 ] == (byte) 0x8b ) //check if matches standard gzip magic number
-            bos = new BufferedInputStream(new GZIPInputStream(pb));
+            bos = new BufferedInputStream(inflater = new InflaterPipeInputStream(pb)); //inflate while parsing
         else
             bos = new BufferedInputStream(pb);
 
         //TODO: Set an error handler which can log errors
         Log.d(GncXmlImporter.class.getSimpleName(), "Start import");
-        GncXmlHandler handler = new GncXmlHandler();
-        xr.setContentHandler(handler);
+        //the file is parsed on this thread while the parsed data is saved on a writer thread
+        GncXmlHandler handler = new GncXmlHandler(true);
         long startTime = System.nanoTime();
-        xr.parse(new InputSource(bos));
+        boolean parsed = false;
+        try {
+            if (engine == Engine.PULL) {
+                pullParse(bos, handler);
+            } else {
+                SAXParserFactory spf = SAXParserFactory.newInstance();
+                SAXParser sp = spf.newSAXParser();
+                XMLReader xr = sp.getXMLReader();
+                xr.setContentHandler(handler);
+                xr.parse(new InputSource(bos));
+            }
+            parsed = true;
+        } finally {
+            if (!parsed) //transactions are written while parsing, discard them
+                handler.abortImport();
+            if (inflater != null)
+                inflater.close(); //stops the inflater thread, does not close the input stream of the caller
+        }
         long endTime = System.nanoTime();
         Log.d(GncXmlImporter.class.getSimpleName(), String.format("%d ns spent on importing the file", endTime-startTime));
 
@@ -78,4 +130,81 @@ public class GncXmlImporter {
 
         return bookUID;
     }
+
+    /**
+     * Restores a backup from the backup folder of a book.
+     * <p>An incremental backup is combined with the full backup and the incremental backups before it,
+     * which must be in the same folder, and the result is imported as a new book.</p>
+     * @param backupFile Full or incremental backup file
+     * @return GUID of the book into which the backup was imported
+     * @see GncXmlExporter#createBackup(String)
+     */
+    public static String restoreBackup(File backupFile) throws ParserConfigurationException, SAXException, IOException {
+        File xmlFile = backupFile;
+        if (GncXmlExporter.isIncrementalBackup(backupFile.getName())) {
+            BackupChainMerger merger = new BackupChainMerger(backupFile);
+            xmlFile = File.createTempFile("restore", ".gnca", GnuCashApplication.getAppContext().getCacheDir());
+            Writer writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(xmlFile)), "UTF-8");
+            try {
+                merger.merge(writer);
+            } catch (IOException e) {
+                xmlFile.delete();
+                throw e;
+            } finally {
+                writer.close();
+            }
+        }
+
+        InputStream inputStream = new FileInputStream(xmlFile);
+        try {
+            return parse(inputStream);
+        } finally {
+            inputStream.close();
+            if (xmlFile != backupFile)
+                xmlFile.delete();
+        }
+    }
+
+    /**
+     * Reads the XML with a pull parser and passes the events on to a SAX content handler.
+     * <p>Namespaces are not processed, so the handler receives the prefixed tag names as qualified names,
+     * in the same way as with the default SAX parser. Element text is passed directly from
+     * the buffer of the pull parser.</p>
+     * @param inputStream XML input
+     * @param handler Handler for the parsed elements
+     */
+    static void pullParse(InputStream inputStream, ContentHandler handler) throws SAXException, IOException {
+        AttributesImpl attributes = new AttributesImpl();
+        int[] textRange = new int[2];
+        try {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+            parser.setInput(inputStream, null);
+            handler.startDocument();
+            int eventType = parser.getEventType();
+            while (eventType != XmlPullParser.END_DOCUMENT) {
+                switch (eventType) {
+                    case XmlPullParser.START_TAG:
+                        attributes.clear();
+                        for (int i = 0; i < parser.getAttributeCount(); i++) {
+                            String attributeName = parser.getAttributeName(i);
+                            attributes.addAttribute("", attributeName, attributeName, "CDATA", parser.getAttributeValue(i));
+                        }
+                        handler.startElement("", parser.getName(), parser.getName(), attributes);
+                        break;
+                    case XmlPullParser.TEXT:
+                        char[] text = parser.getTextCharacters(textRange);
+                        handler.characters(text, textRange[0], textRange[1]);
+                        break;
+                    case XmlPullParser.END_TAG:
+                        handler.endElement("", parser.getName(), parser.getName());
+                        break;
+                }
+                eventType = parser.next();
+            }
+            handler.endDocument();
+        } catch (XmlPullParserException e) {
+            throw new SAXException(e.getMessage(), e);
+        }
+    }
 }
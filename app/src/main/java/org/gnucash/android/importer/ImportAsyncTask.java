@@ -18,6 +18,7 @@ package org.gnucash.android.importer;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.ProgressDialog;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -33,9 +34,11 @@ import com.crashlytics.android.Crashlytics;
 import org.gnucash.android.R;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.export.xml.GncXmlExporter;
 import org.gnucash.android.ui.util.TaskDelegate;
 import org.gnucash.android.util.BookUtils;
 
+import java.io.File;
 import java.io.InputStream;
 
 /**
@@ -77,8 +80,14 @@ public class ImportAsyncTask extends AsyncTask<Uri, Void, Boolean> {
     @Override
     protected Boolean doInBackground(Uri... uris) {
         try {
-            InputStream accountInputStream = mContext.getContentResolver().openInputStream(uris[0]);
-            mImportedBookUID = GncXmlImporter.parse(accountInputStream);
+            Uri uri = uris[0];
+            if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())
+                    && GncXmlExporter.isIncrementalBackup(uri.getLastPathSegment())) {
+                mImportedBookUID = GncXmlImporter.restoreBackup(new File(uri.getPath()));
+            } else {
+                InputStream accountInputStream = mContext.getContentResolver().openInputStream(uri);
+                mImportedBookUID = GncXmlImporter.parse(accountInputStream);
+            }
 
         } catch (Exception exception){
             Log.e(ImportAsyncTask.class.getName(), "" + exception.getMessage());
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.importer;
+
+import android.util.Log;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stream of the decompressed content of a gzip stream, which is inflated on a separate thread.
+ * <p>The inflated bytes are passed through a pipe with a fixed buffer size, so inflating stops
+ * whenever the reader falls behind by more than the buffer size.</p>
+ * <p>Errors which occur while inflating are thrown by the read methods once the data before the
+ * error has been read. The compressed stream is not closed.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+class InflaterPipeInputStream extends FilterInputStream {
+
+    private static final String LOG_TAG = InflaterPipeInputStream.class.getSimpleName();
+
+    /**
+     * Size of the buffer between the inflater thread and the reader
+     */
+    private static final int PIPE_SIZE = 256 * 1024;
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final Thread mInflaterThread;
+
+    /**
+     * Error which stopped the inflater thread, if any
+     */
+    private volatile IOException mError;
+
+    /**
+     * Whether the reader has closed the stream. Writing to the pipe fails after that, which is expected
+     */
+    private volatile boolean mClosed;
+
+    /**
+     * Starts inflating the compressed stream
+     * @param gzipInputStream Stream of gzip compressed data
+     */
+    InflaterPipeInputStream(final InputStream gzipInputStream) throws IOException {
+        super(new PipedInputStream(PIPE_SIZE));
+        final PipedOutputStream pipe = new PipedOutputStream((PipedInputStream) in);
+        mInflaterThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[CHUNK_SIZE];
+                try {
+                    GZIPInputStream inflater = new GZIPInputStream(gzipInputStream, CHUNK_SIZE);
+                    int count;
+                    while ((count = inflater.read(buffer)) != -1) {
+                        pipe.write(buffer, 0, count);
+                    }
+                } catch (IOException e) {
+                    if (mClosed) {
+                        Log.d(LOG_TAG, "Inflating stopped, the stream was closed");
+                    } else {
+                        Log.e(LOG_TAG, "Error while inflating", e);
+                        mError = e;
+                    }
+                } finally {
+                    try {
+                        pipe.close();
+                    } catch (IOException e) {
+                        Log.w(LOG_TAG, "Error closing pipe", e);
+                    }
+                }
+            }
+        }, "GnuCashImportInflater");
+        mInflaterThread.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = super.read();
+        if (result == -1)
+            checkError();
+        return result;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int result = super.read(buffer, offset, count);
+        if (result == -1)
+            checkError();
+        return result;
+    }
+
+    /**
+     * Closes the pipe. If the inflater thread is still running, it stops at its next write
+     */
+    @Override
+    public void close() throws IOException {
+        mClosed = true;
+        super.close();
+        mInflaterThread.interrupt();
+    }
+
+    private void checkError() throws IOException {
+        if (mError != null)
+            throw mError;
+    }
+}
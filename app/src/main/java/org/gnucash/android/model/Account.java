@@ -447,7 +447,9 @@ public class Account extends BaseModel {
      * @param doc             XML DOM document for the OFX data
      * @param parent          Parent node to which to add this account's transactions in XML
      * @param exportStartTime Time from which to export transactions which are created/modified after
+     * @deprecated The {@link org.gnucash.android.export.ofx.OfxExporter} streams the OFX document instead of building a DOM
      */
+    @Deprecated
     public void toOfx(Document doc, Element parent, Timestamp exportStartTime) {
         Element currency = doc.createElement(OfxHelper.TAG_CURRENCY_DEF);
         currency.appendChild(doc.createTextNode(mCommodity.getCurrencyCode()));
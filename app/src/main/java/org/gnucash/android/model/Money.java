@@ -135,6 +135,19 @@ public final class Money implements Comparable<Money>{
 		setCommodity(currencyCode);
 	}
 
+	/**
+	 * Constructs a new money amount given the numerator and denominator of the amount,
+	 * without looking up the commodity
+	 * @param numerator Numerator as integer
+	 * @param denominator Denominator as integer
+	 * @param commodity Commodity of the amount
+	 * @see #Money(long, long, String)
+	 */
+	public Money(long numerator, long denominator, @NonNull Commodity commodity){
+		mAmount = getBigDecimal(numerator, denominator);
+		setCommodity(commodity);
+	}
+
     /**
      * Copy constructor.
      * Creates a new Money object which is a clone of <code>money</code>
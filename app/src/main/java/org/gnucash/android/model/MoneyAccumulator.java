@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.model;
+
+import android.support.annotation.NonNull;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Mutable sum of amounts in a single commodity.
+ * <p>Adding up many {@link Money} objects creates several new objects for every addition.
+ * The accumulator instead keeps the sum as a numerator over a power of ten denominator,
+ * the same way amounts are stored in the database, and only creates a {@link Money} when the
+ * result is requested. If the sum no longer fits in a {@code long}, it continues with {@link BigDecimal}.</p>
+ * <p>Denominators which are not powers of ten are interpreted like {@link Money#getBigDecimal(long, long)} does.
+ * Instances are not thread-safe.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class MoneyAccumulator {
+
+    /**
+     * Largest power of ten which fits in a long
+     */
+    private static final int MAX_SCALE = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_SCALE; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Commodity of the sum. It is looked up from {@link #mCurrencyCode} only when a {@link Money} is requested
+     */
+    private Commodity mCommodity;
+
+    private final String mCurrencyCode;
+
+    /**
+     * Numerator of the sum, valid as long as {@link #mOverflow} is {@code null}
+     */
+    private long mNumerator = 0;
+
+    /**
+     * The sum is {@code mNumerator / 10^mScale}
+     */
+    private int mScale = 0;
+
+    /**
+     * Sum of the amounts, once it does not fit in {@link #mNumerator} any more
+     */
+    private BigDecimal mOverflow = null;
+
+    /**
+     * Creates an accumulator with a sum of zero
+     * @param commodity Commodity of the amounts to add up
+     */
+    public MoneyAccumulator(@NonNull Commodity commodity){
+        mCommodity = commodity;
+        mCurrencyCode = commodity.getCurrencyCode();
+    }
+
+    /**
+     * Creates an accumulator with a sum of zero.
+     * <p>The commodity is not looked up until {@link #toMoney()} is called</p>
+     * @param currencyCode Currency code of the amounts to add up
+     */
+    public MoneyAccumulator(@NonNull String currencyCode){
+        mCurrencyCode = currencyCode;
+    }
+
+    /**
+     * Adds an amount given as a numerator and denominator, as stored in the database
+     * @param numerator Numerator of the amount
+     * @param denominator Denominator of the amount
+     * @return This accumulator
+     */
+    public MoneyAccumulator add(long numerator, long denominator){
+        if (numerator == 0)
+            return this;
+        if (mOverflow == null) {
+            int scale = getScale(denominator);
+            if (scale >= 0 && addScaled(numerator, scale))
+                return this;
+            mOverflow = toBigDecimal();
+        }
+        mOverflow = mOverflow.add(Money.getBigDecimal(numerator, denominator));
+        return this;
+    }
+
+    /**
+     * Subtracts an amount given as a numerator and denominator
+     * @param numerator Numerator of the amount
+     * @param denominator Denominator of the amount
+     * @return This accumulator
+     */
+    public MoneyAccumulator subtract(long numerator, long denominator){
+        if (numerator == Long.MIN_VALUE)
+            return add(Money.getBigDecimal(numerator, denominator).negate());
+        return add(-numerator, denominator);
+    }
+
+    /**
+     * Adds an amount
+     * @param amount Amount to add
+     * @return This accumulator
+     */
+    public MoneyAccumulator add(@NonNull BigDecimal amount){
+        if (amount.signum() == 0)
+            return this;
+        if (mOverflow == null) {
+            int scale = amount.scale();
+            BigInteger unscaled = amount.unscaledValue();
+            if (scale >= 0 && scale <= MAX_SCALE && unscaled.bitLength() < 64
+                    && addScaled(unscaled.longValue(), scale))
+                return this;
+            mOverflow = toBigDecimal();
+        }
+        mOverflow = mOverflow.add(amount);
+        return this;
+    }
+
+    /**
+     * Adds a money amount. The commodity of the amount is not checked
+     * @param amount Amount to add
+     * @return This accumulator
+     */
+    public MoneyAccumulator add(@NonNull Money amount){
+        return add(amount.asBigDecimal());
+    }
+
+    /**
+     * Subtracts a money amount. The commodity of the amount is not checked
+     * @param amount Amount to subtract
+     * @return This accumulator
+     */
+    public MoneyAccumulator subtract(@NonNull Money amount){
+        return add(amount.asBigDecimal().negate());
+    }
+
+    /**
+     * Returns {@code true} if the sum is zero
+     * @return {@code true} if the sum is zero, {@code false} otherwise
+     */
+    public boolean isZero(){
+        return mOverflow == null ? mNumerator == 0 : mOverflow.signum() == 0;
+    }
+
+    /**
+     * Returns the sum of the amounts added so far
+     * @return Sum as a BigDecimal
+     */
+    public BigDecimal toBigDecimal(){
+        return mOverflow == null ? BigDecimal.valueOf(mNumerator, mScale) : mOverflow;
+    }
+
+    /**
+     * Returns the sum of the amounts added so far
+     * @return Sum in the commodity of the accumulator
+     */
+    public Money toMoney(){
+        if (mCommodity == null)
+            mCommodity = Commodity.getInstance(mCurrencyCode);
+        return new Money(toBigDecimal(), mCommodity);
+    }
+
+    /**
+     * Adds {@code numerator / 10^scale} to the long sum.
+     * @return {@code false} if the result does not fit in a long, in which case the sum is unchanged
+     */
+    private boolean addScaled(long numerator, int scale){
+        long sum = mNumerator;
+        if (scale > mScale) {
+            sum = multiply(sum, POWERS_OF_TEN[scale - mScale]);
+            if (sum == Long.MIN_VALUE)
+                return false;
+        } else if (scale < mScale) {
+            numerator = multiply(numerator, POWERS_OF_TEN[mScale - scale]);
+            if (numerator == Long.MIN_VALUE)
+                return false;
+        }
+        long result = sum + numerator;
+        if (((sum ^ result) & (numerator ^ result)) < 0)
+            return false;
+        mNumerator = result;
+        mScale = Math.max(scale, mScale);
+        return true;
+    }
+
+    /**
+     * Multiplies two numbers, returning {@link Long#MIN_VALUE} on overflow.
+     * {@code factor} must be positive
+     */
+    private static long multiply(long value, long factor){
+        if (value > Long.MAX_VALUE / factor || value < -Long.MAX_VALUE / factor)
+            return Long.MIN_VALUE;
+        return value * factor;
+    }
+
+    /**
+     * Returns the scale of a power of ten denominator in the same way as {@link Money#getBigDecimal(long, long)},
+     * or -1 if it is not a power of ten which can be handled without BigDecimal
+     */
+    private static int getScale(long denominator){
+        for (int scale = 0; scale <= MAX_SCALE; scale++) {
+            if (POWERS_OF_TEN[scale] == denominator)
+                return scale;
+        }
+        return -1;
+    }
+}
@@ -24,8 +24,10 @@ import org.joda.time.LocalDateTime;
 
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 
@@ -199,6 +201,58 @@ public class ScheduledAction extends BaseModel{
         return computeNextScheduledExecutionTimeStartingAt(getLastRunTime());
     }
 
+    /**
+     * Computes the due times of the next executions of this scheduled action, starting with
+     * the first one which has not been executed yet.
+     *
+     * <p>Transactions are created for every planned execution, including the missed ones, so their times
+     * follow {@link #computeNextCountBasedScheduledExecutionTime()}. Backups are run only once for missed
+     * executions, so at most the time of {@link #computeNextTimeBasedScheduledExecutionTime()} is returned.
+     * The end time and the total number of planned executions are taken into account, but not whether
+     * the scheduled action is enabled.</p>
+     *
+     * @param untilTime Time in milliseconds up to which executions are computed
+     * @param maxCount Maximum number of executions to compute
+     * @return Due times in milliseconds, in ascending order
+     */
+    public List<Long> computeUpcomingExecutionTimes(long untilTime, int maxCount) {
+        List<Long> times = new ArrayList<>();
+        if (mTotalFrequency > 0 && mExecutionCount >= mTotalFrequency)
+            return times;
+
+        if (mActionType == ActionType.BACKUP) {
+            long time = computeNextTimeBasedScheduledExecutionTime();
+            if ((mEndDate <= 0 || time <= mEndDate) && time <= untilTime && maxCount > 0)
+                times.add(time);
+            return times;
+        }
+
+        // weekly schedules without weekdays are executed once at their start time,
+        // afterwards they are always due "tomorrow"
+        if (mRecurrence.getPeriodType() == PeriodType.WEEK && mRecurrence.getByDays().isEmpty()) {
+            if (mExecutionCount == 0 && (mEndDate <= 0 || mStartDate <= mEndDate)
+                    && mStartDate <= untilTime && maxCount > 0)
+                times.add(mStartDate);
+            return times;
+        }
+
+        int executionCount = mExecutionCount;
+        try {
+            while (times.size() < maxCount) {
+                long time = computeNextCountBasedScheduledExecutionTime();
+                if (time > untilTime || (mEndDate > 0 && time > mEndDate))
+                    break;
+                times.add(time);
+                mExecutionCount++;
+                if (mTotalFrequency > 0 && mExecutionCount >= mTotalFrequency)
+                    break;
+            }
+        } finally {
+            mExecutionCount = executionCount;
+        }
+        return times;
+    }
+
     /**
      * Computes the next time that this scheduled action is supposed to be
      * executed starting at startTime.
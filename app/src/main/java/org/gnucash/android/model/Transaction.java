@@ -262,7 +262,7 @@ public class Transaction extends BaseModel{
      * @return Money imbalance of the transaction or zero if it is a multi-currency transaction
      */
     public Money getImbalance(){
-        Money imbalance = Money.createZeroInstance(mCommodity.getCurrencyCode());
+        MoneyAccumulator imbalance = new MoneyAccumulator(mCommodity);
         for (Split split : mSplitList) {
             if (!split.getQuantity().getCommodity().equals(mCommodity)) {
                 // this may happen when importing XML exported from GNCA before 2.0.0
@@ -272,11 +272,11 @@ public class Transaction extends BaseModel{
             }
             Money amount = split.getValue().abs();
             if (split.getType() == TransactionType.DEBIT)
-                imbalance = imbalance.subtract(amount);
+                imbalance.subtract(amount);
             else
-                imbalance = imbalance.add(amount);
+                imbalance.add(amount);
         }
-        return imbalance;
+        return imbalance.toMoney();
     }
 
     /**
@@ -294,7 +294,7 @@ public class Transaction extends BaseModel{
         String accountCurrencyCode = accountsDbAdapter.getAccountCurrencyCode(accountUID);
 
         boolean isDebitAccount = accountType.hasDebitNormalBalance();
-        Money balance = Money.createZeroInstance(accountCurrencyCode);
+        MoneyAccumulator balance = new MoneyAccumulator(accountCurrencyCode);
         for (Split split : splitList) {
             if (!split.getAccountUID().equals(accountUID))
                 continue;
@@ -307,19 +307,19 @@ public class Transaction extends BaseModel{
             boolean isDebitSplit = split.getType() == TransactionType.DEBIT;
             if (isDebitAccount) {
                 if (isDebitSplit) {
-                    balance = balance.add(absAmount);
+                    balance.add(absAmount);
                 } else {
-                    balance = balance.subtract(absAmount);
+                    balance.subtract(absAmount);
                 }
             } else {
                 if (isDebitSplit) {
-                    balance = balance.subtract(absAmount);
+                    balance.subtract(absAmount);
                 } else {
-                    balance = balance.add(absAmount);
+                    balance.add(absAmount);
                 }
             }
         }
-        return balance;
+        return balance.toMoney();
     }
 
     /**
@@ -469,7 +469,9 @@ public class Transaction extends BaseModel{
 	 * The Unique ID of the account is needed in order to properly export double entry transactions
      * @param doc XML document to which transaction should be added
      * @param accountUID Unique Identifier of the account which called the method.  @return Element in DOM corresponding to transaction
+     * @deprecated The {@link org.gnucash.android.export.ofx.OfxExporter} streams the OFX document instead of building a DOM
      */
+    @Deprecated
 	public Element toOFX(Document doc, String accountUID){
         Money balance = getBalance(accountUID);
         TransactionType transactionType = balance.isNegative() ? TransactionType.DEBIT : TransactionType.CREDIT;
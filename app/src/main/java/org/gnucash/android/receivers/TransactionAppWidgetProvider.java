@@ -39,6 +39,8 @@ public class TransactionAppWidgetProvider extends AppWidgetProvider {
 	public void onUpdate(Context context, AppWidgetManager appWidgetManager,
 			int[] appWidgetIds) {
 		super.onUpdate(context, appWidgetManager, appWidgetIds);
+		//balances up to now change over time, e.g. when future transactions become due
+		WidgetConfigurationActivity.invalidateWidgets(context, appWidgetIds);
 		for (int appWidgetId : appWidgetIds) {
 			WidgetConfigurationActivity.updateWidget(context, appWidgetId);
 		}
@@ -18,10 +18,8 @@ package org.gnucash.android.service;
 
 import android.app.IntentService;
 import android.content.ContentValues;
-import android.content.Context;
 import android.content.Intent;
 import android.database.sqlite.SQLiteDatabase;
-import android.net.Uri;
 import android.os.PowerManager;
 import android.support.annotation.VisibleForTesting;
 import android.util.Log;
@@ -29,8 +27,8 @@ import android.util.Log;
 import com.crashlytics.android.Crashlytics;
 
 import org.gnucash.android.app.GnuCashApplication;
-import org.gnucash.android.db.DatabaseHelper;
 import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.adapter.BookSession;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
 import org.gnucash.android.db.adapter.DatabaseAdapter;
 import org.gnucash.android.db.adapter.RecurrenceDbAdapter;
@@ -38,23 +36,18 @@ import org.gnucash.android.db.adapter.ScheduledActionDbAdapter;
 import org.gnucash.android.db.adapter.SplitsDbAdapter;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.export.ExportAsyncTask;
-import org.gnucash.android.export.ExportFormat;
 import org.gnucash.android.export.ExportParams;
-import org.gnucash.android.export.xml.GncXmlExporter;
+import org.gnucash.android.export.ExportScheduler;
 import org.gnucash.android.model.Book;
 import org.gnucash.android.model.ScheduledAction;
 import org.gnucash.android.model.Transaction;
-import org.gnucash.android.util.BookUtils;
+import org.gnucash.android.util.PreferencesHelper;
 
-import java.io.BufferedOutputStream;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Service for running scheduled events.
@@ -67,6 +60,11 @@ public class ScheduledActionService extends IntentService {
 
     public static final String LOG_TAG = "ScheduledActionService";
 
+    /**
+     * Minimum time in milliseconds between two maintenance runs of a book
+     */
+    private static final long MAINTENANCE_INTERVAL_MILLIS = 24L * 60 * 60 * 1000;
+
     public ScheduledActionService() {
         super(LOG_TAG);
     }
@@ -84,19 +82,21 @@ public class ScheduledActionService extends IntentService {
             BooksDbAdapter booksDbAdapter = BooksDbAdapter.getInstance();
             List<Book> books = booksDbAdapter.getAllRecords();
             for (Book book : books) { //// TODO: 20.04.2017 Retrieve only the book UIDs with new method
-                DatabaseHelper dbHelper = new DatabaseHelper(GnuCashApplication.getAppContext(), book.getUID());
-                SQLiteDatabase db = dbHelper.getWritableDatabase();
-                RecurrenceDbAdapter recurrenceDbAdapter = new RecurrenceDbAdapter(db);
-                ScheduledActionDbAdapter scheduledActionDbAdapter = new ScheduledActionDbAdapter(db, recurrenceDbAdapter);
-
-                List<ScheduledAction> scheduledActions = scheduledActionDbAdapter.getAllEnabledScheduledActions();
-                Log.i(LOG_TAG, String.format("Processing %d total scheduled actions for Book: %s",
-                        scheduledActions.size(), book.getDisplayName()));
-                processScheduledActions(scheduledActions, db);
-
-                //close all databases except the currently active database
-                if (!db.getPath().equals(GnuCashApplication.getActiveDb().getPath()))
-                    db.close();
+                BookSession session = BookSession.open(book.getUID());
+                try {
+                    //the maintenance expands the occurrences which the due actions are looked up from,
+                    //including the first time after the database was upgraded
+                    runMaintenance(book.getUID(), session.getTransactionsDbAdapter(),
+                            session.getScheduledActionDbAdapter());
+                    List<ScheduledAction> scheduledActions = session.getScheduledActionDbAdapter()
+                            .getScheduledActionsDueBefore(System.currentTimeMillis());
+                    Log.i(LOG_TAG, String.format("Processing %d due scheduled actions for Book: %s",
+                            scheduledActions.size(), book.getDisplayName()));
+                    processScheduledActions(scheduledActions, session.getDatabase(),
+                            session.getScheduledActionDbAdapter());
+                } finally {
+                    session.close();
+                }
             }
 
             Log.i(LOG_TAG, "Completed service @ " + java.text.DateFormat.getDateTimeInstance().format(new Date()));
@@ -113,6 +113,17 @@ public class ScheduledActionService extends IntentService {
     //made public static for testing. Do not call these methods directly
     @VisibleForTesting
     public static void processScheduledActions(List<ScheduledAction> scheduledActions, SQLiteDatabase db) {
+        processScheduledActions(scheduledActions, db, new ScheduledActionDbAdapter(db, new RecurrenceDbAdapter(db)));
+    }
+
+    /**
+     * Process scheduled actions and execute any pending actions
+     * @param scheduledActions List of scheduled actions
+     * @param db Database of the book
+     * @param scheduledActionDbAdapter Scheduled actions adapter of the book
+     */
+    private static void processScheduledActions(List<ScheduledAction> scheduledActions, SQLiteDatabase db,
+                                                ScheduledActionDbAdapter scheduledActionDbAdapter) {
         for (ScheduledAction scheduledAction : scheduledActions) {
 
             long now        = System.currentTimeMillis();
@@ -128,15 +139,18 @@ public class ScheduledActionService extends IntentService {
                 continue;
             }
 
-            executeScheduledEvent(scheduledAction, db);
+            executeScheduledEvent(scheduledAction, db, scheduledActionDbAdapter);
         }
     }
 
     /**
      * Executes a scheduled event according to the specified parameters
      * @param scheduledAction ScheduledEvent to be executed
+     * @param db Database of the book
+     * @param scheduledActionDbAdapter Scheduled actions adapter of the book
      */
-    private static void executeScheduledEvent(ScheduledAction scheduledAction, SQLiteDatabase db){
+    private static void executeScheduledEvent(ScheduledAction scheduledAction, SQLiteDatabase db,
+                                              ScheduledActionDbAdapter scheduledActionDbAdapter){
         Log.i(LOG_TAG, "Executing scheduled action: " + scheduledAction.toString());
         int executionCount = 0;
 
@@ -162,8 +176,10 @@ public class ScheduledActionService extends IntentService {
                     scheduledAction.getLastRunTime());
             contentValues.put(DatabaseSchema.ScheduledActionEntry.COLUMN_EXECUTION_COUNT,
                     scheduledAction.getExecutionCount());
-            db.update(DatabaseSchema.ScheduledActionEntry.TABLE_NAME, contentValues,
+            int updated = db.update(DatabaseSchema.ScheduledActionEntry.TABLE_NAME, contentValues,
                     DatabaseSchema.ScheduledActionEntry.COLUMN_UID + "=?", new String[]{scheduledAction.getUID()});
+            if (updated > 0) // the next occurrences now start after the executions which were just done
+                scheduledActionDbAdapter.refreshUpcomingOccurrences(scheduledAction);
         }
     }
 
@@ -262,33 +278,57 @@ public class ScheduledActionService extends IntentService {
         return executionCount;
     }
 
+    /**
+     * Runs the clean-up tasks of a book which scan whole tables, at most once per day.
+     * <p>Transactions which lost all of their splits are deleted here, and the upcoming occurrences
+     * of the scheduled actions are expanded again so that they keep reaching the same time ahead</p>
+     * @param bookUID GUID of the book
+     * @param transactionsDbAdapter Transactions adapter of the book
+     * @param scheduledActionDbAdapter Scheduled actions adapter of the book
+     * @return {@code true} if the maintenance was run, {@code false} if it is not due yet
+     */
+    //made public static for testing. Do not call this method directly
+    @VisibleForTesting
+    public static boolean runMaintenance(String bookUID, TransactionsDbAdapter transactionsDbAdapter,
+                                         ScheduledActionDbAdapter scheduledActionDbAdapter){
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Timestamp lastMaintenance = PreferencesHelper.getLastMaintenanceTime(bookUID);
+        if (now.getTime() - lastMaintenance.getTime() < MAINTENANCE_INTERVAL_MILLIS
+                && !now.before(lastMaintenance))
+            return false;
+
+        int deleted = transactionsDbAdapter.deleteTransactionsWithNoSplits();
+        Log.i(LOG_TAG, String.format("Deleted %d transactions without splits from book %s", deleted, bookUID));
+        scheduledActionDbAdapter.refreshAllUpcomingOccurrences();
+        PreferencesHelper.setLastMaintenanceTime(bookUID, now);
+        return true;
+    }
+
     /**
      * Perform an automatic backup of all books in the database.
-     * This method is run everytime the service is executed
+     * This method is run everytime the service is executed.
+     * <p>The books are backed up concurrently by the {@link ExportScheduler}, and this method
+     * returns once all backups are finished</p>
      */
     private static void autoBackup(){
         BooksDbAdapter booksDbAdapter = BooksDbAdapter.getInstance();
         List<String> bookUIDs = booksDbAdapter.getAllBookUIDs();
-        Context context = GnuCashApplication.getAppContext();
 
+        List<ExportScheduler.ExportJob> jobs = new ArrayList<>();
         for (String bookUID : bookUIDs) {
-            String backupFile = BookUtils.getBookBackupFileUri(bookUID);
-            if (backupFile == null){
-                GncXmlExporter.createBackup();
-                continue;
-            }
+            jobs.add(ExportScheduler.ExportJob.backup(bookUID));
+        }
+        ExportScheduler.Batch batch = ExportScheduler.getInstance().submit(jobs, null);
+        try {
+            batch.await();
+        } catch (InterruptedException e) {
+            batch.cancel();
+            Thread.currentThread().interrupt();
+            Log.w(LOG_TAG, "Auto backup interrupted");
+        }
 
-            try (BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(context.getContentResolver().openOutputStream(Uri.parse(backupFile)))){
-                GZIPOutputStream gzipOutputStream = new GZIPOutputStream(bufferedOutputStream);
-                OutputStreamWriter writer = new OutputStreamWriter(gzipOutputStream);
-                ExportParams params = new ExportParams(ExportFormat.XML);
-                new GncXmlExporter(params).generateExport(writer);
-                writer.close();
-            } catch (IOException ex) {
-                Log.e(LOG_TAG, "Auto backup failed for book " + bookUID);
-                ex.printStackTrace();
-                Crashlytics.logException(ex);
-            }
+        for (ExportScheduler.ExportJob job : batch.getJobs(ExportScheduler.ExportJob.State.FAILED)) {
+            Log.e(LOG_TAG, "Auto backup failed for book " + job.getBookUID());
         }
     }
 }
@@ -24,9 +24,9 @@ import android.content.Intent;
 import android.content.res.Configuration;
 import android.database.Cursor;
 import android.graphics.Color;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
 import android.support.v4.content.Loader;
@@ -54,19 +54,16 @@ import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.DatabaseCursorLoader;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
-import org.gnucash.android.db.adapter.BudgetsDbAdapter;
 import org.gnucash.android.model.Account;
-import org.gnucash.android.model.Budget;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.ui.common.FormActivity;
 import org.gnucash.android.ui.common.Refreshable;
 import org.gnucash.android.ui.common.UxArgument;
-import org.gnucash.android.ui.util.AccountBalanceTask;
+import org.gnucash.android.ui.transaction.TransactionsActivity;
+import org.gnucash.android.ui.util.BalanceLoader;
 import org.gnucash.android.ui.util.CursorRecyclerAdapter;
 import org.gnucash.android.ui.util.widget.EmptyRecyclerView;
 
-import java.util.List;
-
 import butterknife.BindView;
 import butterknife.ButterKnife;
 
@@ -134,6 +131,11 @@ public class AccountsListFragment extends Fragment implements
      */
     private android.support.v7.widget.SearchView mSearchView;
 
+    /**
+     * Loads the balances of the accounts shown in the list
+     */
+    private BalanceLoader mBalanceLoader;
+
     public static AccountsListFragment newInstance(DisplayMode displayMode){
         AccountsListFragment fragment = new AccountsListFragment();
         fragment.mDisplayMode = displayMode;
@@ -196,6 +198,7 @@ public class AccountsListFragment extends Fragment implements
 
 
         // specify an adapter (see also next example)
+        mBalanceLoader = new BalanceLoader();
         mAccountRecyclerAdapter = new AccountRecyclerAdapter(null);
         mRecyclerView.setAdapter(mAccountRecyclerAdapter);
 
@@ -322,6 +325,8 @@ public class AccountsListFragment extends Fragment implements
         super.onDestroy();
         if (mAccountRecyclerAdapter != null)
             mAccountRecyclerAdapter.swapCursor(null);
+        if (mBalanceLoader != null)
+            mBalanceLoader.shutdown();
     }
 
     /**
@@ -353,6 +358,7 @@ public class AccountsListFragment extends Fragment implements
     @Override
     public void onLoadFinished(Loader<Cursor> loaderCursor, Cursor cursor) {
         Log.d(TAG, "Accounts loader finished. Swapping in cursor");
+        mBalanceLoader.invalidate();
         mAccountRecyclerAdapter.swapCursor(cursor);
         mAccountRecyclerAdapter.notifyDataSetChanged();
     }
@@ -436,7 +442,7 @@ public class AccountsListFragment extends Fragment implements
 
             if (mFilter != null){
                 cursor = ((AccountsDbAdapter)mDatabaseAdapter)
-                        .fetchAccounts(DatabaseSchema.AccountEntry.COLUMN_HIDDEN + "= 0 AND "
+                        .fetchAccountListItems(DatabaseSchema.AccountEntry.COLUMN_HIDDEN + "= 0 AND "
                                 + DatabaseSchema.AccountEntry.COLUMN_NAME + " LIKE '%" + mFilter + "%'",
                                 null, null);
             } else {
@@ -483,11 +489,10 @@ public class AccountsListFragment extends Fragment implements
         @Override
         public void onBindViewHolderCursor(final AccountViewHolder holder, final Cursor cursor) {
             final String accountUID = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_UID));
-            mAccountsDbAdapter = AccountsDbAdapter.getInstance();
-            holder.accoundId = mAccountsDbAdapter.getID(accountUID);
+            holder.accoundId = cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry._ID));
 
             holder.accountName.setText(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_NAME)));
-            int subAccountCount = mAccountsDbAdapter.getSubAccountCount(accountUID);
+            int subAccountCount = cursor.getInt(cursor.getColumnIndexOrThrow(AccountsDbAdapter.COLUMN_SUB_ACCOUNT_COUNT));
             if (subAccountCount > 0) {
                 holder.description.setVisibility(View.VISIBLE);
                 String text = getResources().getQuantityString(R.plurals.label_sub_accounts, subAccountCount, subAccountCount);
@@ -496,18 +501,21 @@ public class AccountsListFragment extends Fragment implements
                 holder.description.setVisibility(View.GONE);
 
             // add a summary of transactions to the account view
-
-                // Make sure the balance task is truly multithread
-            new AccountBalanceTask(holder.accountBalance).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, accountUID);
+            //TODO: include fetch only active budgets
+            boolean hasSingleBudget = cursor.getInt(cursor.getColumnIndexOrThrow(AccountsDbAdapter.COLUMN_BUDGET_COUNT)) == 1;
+            holder.accountBalance.setText(null);
+            holder.budgetIndicator.setVisibility(View.GONE);
+            mBalanceLoader.requestBalance(holder, accountUID, hasSingleBudget);
 
             String accountColor = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_COLOR_CODE));
             int colorCode = accountColor == null ? Color.TRANSPARENT : Color.parseColor(accountColor);
             holder.colorStripView.setBackgroundColor(colorCode);
 
-            boolean isPlaceholderAccount = mAccountsDbAdapter.isPlaceholderAccount(accountUID);
+            boolean isPlaceholderAccount = cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_PLACEHOLDER)) == 1;
             if (isPlaceholderAccount) {
                 holder.createTransaction.setVisibility(View.GONE);
             } else {
+                holder.createTransaction.setVisibility(View.VISIBLE);
                 holder.createTransaction.setOnClickListener(new View.OnClickListener() {
 
                     @Override
@@ -521,21 +529,8 @@ public class AccountsListFragment extends Fragment implements
                 });
             }
 
-            List<Budget> budgets = BudgetsDbAdapter.getInstance().getAccountBudgets(accountUID);
-            //TODO: include fetch only active budgets
-            if (budgets.size() == 1){
-                Budget budget = budgets.get(0);
-                Money balance = mAccountsDbAdapter.getAccountBalance(accountUID, budget.getStartofCurrentPeriod(), budget.getEndOfCurrentPeriod());
-                double budgetProgress = balance.divide(budget.getAmount(accountUID)).asBigDecimal().doubleValue() * 100;
-
-                holder.budgetIndicator.setVisibility(View.VISIBLE);
-                holder.budgetIndicator.setProgress((int) budgetProgress);
-            } else {
-                holder.budgetIndicator.setVisibility(View.GONE);
-            }
-
-
-            if (mAccountsDbAdapter.isFavoriteAccount(accountUID)){
+            boolean isFavoriteAccount = cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_FAVORITE)) == 1;
+            if (isFavoriteAccount){
                 holder.favoriteStatus.setImageResource(R.drawable.ic_star_black_24dp);
             } else {
                 holder.favoriteStatus.setImageResource(R.drawable.ic_star_border_black_24dp);
@@ -567,7 +562,14 @@ public class AccountsListFragment extends Fragment implements
         }
 
 
-        class AccountViewHolder extends RecyclerView.ViewHolder implements PopupMenu.OnMenuItemClickListener{
+        @Override
+        public void onViewRecycled(AccountViewHolder holder) {
+            super.onViewRecycled(holder);
+            mBalanceLoader.cancel(holder);
+        }
+
+        class AccountViewHolder extends RecyclerView.ViewHolder implements PopupMenu.OnMenuItemClickListener,
+                BalanceLoader.OnBalanceLoadedListener {
             @BindView(R.id.primary_text) TextView accountName;
             @BindView(R.id.secondary_text) TextView description;
             @BindView(R.id.account_balance) TextView accountBalance;
@@ -596,6 +598,15 @@ public class AccountsListFragment extends Fragment implements
             }
 
 
+            @Override
+            public void onBalanceLoaded(String accountUID, Money balance, @Nullable Integer budgetProgress) {
+                TransactionsActivity.displayBalance(accountBalance, balance);
+                if (budgetProgress != null) {
+                    budgetIndicator.setVisibility(View.VISIBLE);
+                    budgetIndicator.setProgress(budgetProgress);
+                }
+            }
+
             @Override
             public boolean onMenuItemClick(MenuItem item) {
                 switch (item.getItemId()){
@@ -231,7 +231,7 @@ public class DeleteAccountDialogFragment extends DialogFragment {
                 //now kill them all!!
                 accountsDbAdapter.recursiveDeleteAccount(accountsDbAdapter.getID(mOriginAccountUID));
 
-                WidgetConfigurationActivity.updateAllWidgets(getActivity());
+                WidgetConfigurationActivity.refreshAllWidgets(getActivity());
                 ((Refreshable)getTargetFragment()).refresh();
                 dismiss();
             }
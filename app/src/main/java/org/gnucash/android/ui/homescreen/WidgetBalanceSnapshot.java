@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.homescreen;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.model.Money;
+
+import java.math.BigDecimal;
+
+import static android.content.Context.MODE_PRIVATE;
+
+/**
+ * Last computed state of the account displayed in a homescreen widget.
+ * <p>Widgets are rendered from their snapshot, so that updating a widget does not need to open the
+ * database of its book. Snapshots are stored together with the configuration of the widget and are
+ * marked dirty when the balance of the account changes. Dirty snapshots are recomputed in the
+ * background by the {@link WidgetSnapshotRefresher}</p>
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class WidgetBalanceSnapshot {
+
+	private static final String KEY_ACCOUNT_UID     = "snapshot_account_uid";
+	private static final String KEY_ACCOUNT_NAME    = "snapshot_account_name";
+	private static final String KEY_BALANCE         = "snapshot_balance";
+	private static final String KEY_CURRENCY_CODE   = "snapshot_currency_code";
+	private static final String KEY_COMPUTED_AT     = "snapshot_computed_at";
+	private static final String KEY_PLACEHOLDER     = "snapshot_placeholder";
+	private static final String KEY_ACCOUNT_MISSING = "snapshot_account_missing";
+	private static final String KEY_DIRTY           = "snapshot_dirty";
+
+	private String mAccountUID;
+	private String mAccountName;
+	private BigDecimal mBalance = BigDecimal.ZERO;
+	private String mCurrencyCode;
+	private long mComputedAt;
+	private boolean mPlaceholder;
+	private boolean mAccountMissing;
+	private boolean mDirty;
+
+	private WidgetBalanceSnapshot() {
+		//use the factory methods
+	}
+
+	/**
+	 * Creates a snapshot of an account
+	 * @param accountUID GUID of the account
+	 * @param accountName Name of the account
+	 * @param balance Balance of the account, including its sub-accounts
+	 * @param placeholder {@code true} if the account is a placeholder account
+	 * @return Snapshot computed now
+	 */
+	private static WidgetBalanceSnapshot forAccount(@NonNull String accountUID, String accountName,
+													@NonNull Money balance, boolean placeholder) {
+		WidgetBalanceSnapshot snapshot = new WidgetBalanceSnapshot();
+		snapshot.mAccountUID = accountUID;
+		snapshot.mAccountName = accountName;
+		snapshot.mBalance = balance.asBigDecimal();
+		snapshot.mCurrencyCode = balance.getCommodity().getCurrencyCode();
+		snapshot.mPlaceholder = placeholder;
+		snapshot.mComputedAt = System.currentTimeMillis();
+		return snapshot;
+	}
+
+	/**
+	 * Creates a snapshot recording that the account no longer exists
+	 * @param accountUID GUID of the deleted account
+	 * @return Snapshot computed now
+	 */
+	private static WidgetBalanceSnapshot forMissingAccount(@NonNull String accountUID) {
+		WidgetBalanceSnapshot snapshot = new WidgetBalanceSnapshot();
+		snapshot.mAccountUID = accountUID;
+		snapshot.mAccountMissing = true;
+		snapshot.mComputedAt = System.currentTimeMillis();
+		return snapshot;
+	}
+
+	/**
+	 * Computes the snapshot of an account from the database
+	 * @param accountsDbAdapter Accounts adapter of the book of the account
+	 * @param accountUID GUID of the account
+	 * @return Snapshot computed now, which records if the account does not exist
+	 */
+	public static WidgetBalanceSnapshot compute(AccountsDbAdapter accountsDbAdapter, @NonNull String accountUID) {
+		try {
+			String accountName = accountsDbAdapter.getAccountName(accountUID);
+			Money balance = accountsDbAdapter.getAccountBalance(accountUID, -1, System.currentTimeMillis());
+			boolean placeholder = accountsDbAdapter.isPlaceholderAccount(accountUID);
+			return forAccount(accountUID, accountName, balance, placeholder);
+		} catch (IllegalArgumentException e) {
+			return forMissingAccount(accountUID);
+		}
+	}
+
+	/**
+	 * Loads the snapshot of a widget
+	 * @param context Application context
+	 * @param appWidgetId ID of the widget
+	 * @return Snapshot of the widget, or {@code null} if none has been computed yet
+	 */
+	@Nullable
+	public static WidgetBalanceSnapshot load(Context context, int appWidgetId) {
+		SharedPreferences preferences = getPreferences(context, appWidgetId);
+		String accountUID = preferences.getString(KEY_ACCOUNT_UID, null);
+		if (accountUID == null)
+			return null;
+
+		WidgetBalanceSnapshot snapshot = new WidgetBalanceSnapshot();
+		snapshot.mAccountUID = accountUID;
+		snapshot.mAccountName = preferences.getString(KEY_ACCOUNT_NAME, null);
+		snapshot.mCurrencyCode = preferences.getString(KEY_CURRENCY_CODE, null);
+		snapshot.mComputedAt = preferences.getLong(KEY_COMPUTED_AT, 0);
+		snapshot.mPlaceholder = preferences.getBoolean(KEY_PLACEHOLDER, false);
+		snapshot.mAccountMissing = preferences.getBoolean(KEY_ACCOUNT_MISSING, false);
+		snapshot.mDirty = preferences.getBoolean(KEY_DIRTY, false);
+		try {
+			snapshot.mBalance = new BigDecimal(preferences.getString(KEY_BALANCE, "0"));
+		} catch (NumberFormatException e) {
+			snapshot.mDirty = true;
+		}
+		if (!snapshot.mAccountMissing && snapshot.mCurrencyCode == null)
+			snapshot.mDirty = true;
+		return snapshot;
+	}
+
+	/**
+	 * Saves the snapshot of a widget. The saved snapshot is clean
+	 * @param context Application context
+	 * @param appWidgetId ID of the widget
+	 */
+	public void save(Context context, int appWidgetId) {
+		mDirty = false;
+		getPreferences(context, appWidgetId).edit()
+				.putString(KEY_ACCOUNT_UID, mAccountUID)
+				.putString(KEY_ACCOUNT_NAME, mAccountName)
+				.putString(KEY_BALANCE, mBalance.toPlainString())
+				.putString(KEY_CURRENCY_CODE, mCurrencyCode)
+				.putLong(KEY_COMPUTED_AT, mComputedAt)
+				.putBoolean(KEY_PLACEHOLDER, mPlaceholder)
+				.putBoolean(KEY_ACCOUNT_MISSING, mAccountMissing)
+				.putBoolean(KEY_DIRTY, false)
+				.apply();
+	}
+
+	/**
+	 * Marks the snapshot of a widget as outdated, so that it is recomputed on the next refresh
+	 * @param context Application context
+	 * @param appWidgetId ID of the widget
+	 */
+	public static void markDirty(Context context, int appWidgetId) {
+		getPreferences(context, appWidgetId).edit()
+				.putBoolean(KEY_DIRTY, true)
+				.apply();
+	}
+
+	private static SharedPreferences getPreferences(Context context, int appWidgetId) {
+		return context.getSharedPreferences("widget:" + appWidgetId, MODE_PRIVATE);
+	}
+
+	/**
+	 * Returns {@code true} if the snapshot has to be recomputed before it shows the given account
+	 * @param accountUID GUID of the account configured for the widget
+	 */
+	public boolean needsRefresh(String accountUID) {
+		return mDirty || !mAccountUID.equals(accountUID);
+	}
+
+	public String getAccountUID() {
+		return mAccountUID;
+	}
+
+	public String getAccountName() {
+		return mAccountName;
+	}
+
+	/**
+	 * Returns the balance of the account at the time the snapshot was computed
+	 */
+	public Money getBalance() {
+		return new Money(mBalance.toPlainString(), mCurrencyCode);
+	}
+
+	public long getComputedAt() {
+		return mComputedAt;
+	}
+
+	public boolean isPlaceholder() {
+		return mPlaceholder;
+	}
+
+	public boolean isAccountMissing() {
+		return mAccountMissing;
+	}
+
+	public boolean isDirty() {
+		return mDirty;
+	}
+}
@@ -25,7 +25,6 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.support.v4.widget.SimpleCursorAdapter;
 import android.support.v7.preference.PreferenceManager;
@@ -40,12 +39,10 @@ import android.widget.Spinner;
 import android.widget.Toast;
 
 import org.gnucash.android.R;
-import org.gnucash.android.db.BookDbHelper;
-import org.gnucash.android.db.DatabaseHelper;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.BookSession;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
-import org.gnucash.android.model.Account;
 import org.gnucash.android.model.Book;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.receivers.TransactionAppWidgetProvider;
@@ -69,6 +66,10 @@ import butterknife.ButterKnife;
  */
 public class WidgetConfigurationActivity extends Activity {
 	private AccountsDbAdapter mAccountsDbAdapter;
+	/**
+	 * Session of the book selected in the books spinner, if it has been changed
+	 */
+	private BookSession mBookSession;
     private int mAppWidgetId;
 	
 	@BindView(R.id.input_accounts_spinner) Spinner mAccountsSpinner;
@@ -130,6 +131,13 @@ public class WidgetConfigurationActivity extends Activity {
 		bindListeners();
 	}
 
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		if (mBookSession != null)
+			mBookSession.close();
+	}
+
 	/**
 	 * Sets click listeners for the buttons in the dialog
 	 */
@@ -138,8 +146,11 @@ public class WidgetConfigurationActivity extends Activity {
 			@Override
 			public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
 				Book book = BooksDbAdapter.getInstance().getRecord(id);
-				SQLiteDatabase db = new DatabaseHelper(WidgetConfigurationActivity.this, book.getUID()).getWritableDatabase();
-				mAccountsDbAdapter = new AccountsDbAdapter(db);
+				BookSession previousSession = mBookSession;
+				mBookSession = BookSession.open(book.getUID());
+				if (previousSession != null)
+					previousSession.close();
+				mAccountsDbAdapter = mBookSession.getAccountsDbAdapter();
 
 				Cursor cursor = mAccountsDbAdapter.fetchAllRecordsOrderedByFullName();
 				mAccountsCursorAdapter.swapCursor(cursor);
@@ -174,6 +185,9 @@ public class WidgetConfigurationActivity extends Activity {
 				boolean hideAccountBalance = mHideAccountBalance.isChecked();
 				
 				configureWidget(WidgetConfigurationActivity.this, mAppWidgetId, bookUID, accountUID, hideAccountBalance);
+				//the book is already open, so compute the first snapshot right away
+				WidgetBalanceSnapshot.compute(mAccountsDbAdapter, accountUID)
+						.save(WidgetConfigurationActivity.this, mAppWidgetId);
 				updateWidget(WidgetConfigurationActivity.this, mAppWidgetId);
 						
 				Intent resultValue = new Intent();
@@ -244,30 +258,48 @@ public class WidgetConfigurationActivity extends Activity {
 	/**
 	 * Updates the widget with id <code>appWidgetId</code> with information from the 
 	 * account with record ID <code>accountId</code>
-     * If the account has been deleted, then a notice is posted in the widget
+	 * <p>The widget is rendered from its balance snapshot, without opening the database of the book.
+	 * If the snapshot is outdated, a refresh is scheduled which updates the widget again in the background</p>
 	 * @param appWidgetId ID of the widget to be updated
 	 */
 	public static void updateWidget(final Context context, int appWidgetId) {
 		Log.i("WidgetConfiguration", "Updating widget: " + appWidgetId);
-		AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-
 		loadOldPreferences(context, appWidgetId);
 
+		SharedPreferences preferences = context.getSharedPreferences("widget:" + appWidgetId, MODE_PRIVATE);
+		String accountUID = preferences.getString(UxArgument.SELECTED_ACCOUNT_UID, null);
+		if (accountUID == null) {
+			return;
+		}
+
+		renderWidget(context, appWidgetId);
+		WidgetBalanceSnapshot snapshot = WidgetBalanceSnapshot.load(context, appWidgetId);
+		if (snapshot == null || snapshot.needsRefresh(accountUID)) {
+			WidgetSnapshotRefresher.getInstance().scheduleRefresh();
+		}
+	}
+
+	/**
+	 * Renders the widget from its balance snapshot.
+	 * If the account has been deleted, then a notice is posted in the widget
+	 * @param context Application context
+	 * @param appWidgetId ID of the widget
+	 */
+	static void renderWidget(final Context context, int appWidgetId) {
+		AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+
 		SharedPreferences preferences = context.getSharedPreferences("widget:" + appWidgetId, MODE_PRIVATE);
 		String bookUID = preferences.getString(UxArgument.BOOK_UID, null);
 		String accountUID = preferences.getString(UxArgument.SELECTED_ACCOUNT_UID, null);
 		boolean hideAccountBalance = preferences.getBoolean(UxArgument.HIDE_ACCOUNT_BALANCE_IN_WIDGET, false);
 
-		if (bookUID == null || accountUID == null) {
+		WidgetBalanceSnapshot snapshot = WidgetBalanceSnapshot.load(context, appWidgetId);
+		if (bookUID == null || accountUID == null || snapshot == null
+				|| !snapshot.getAccountUID().equals(accountUID)) {
 			return;
 		}
 
-		AccountsDbAdapter accountsDbAdapter = new AccountsDbAdapter(BookDbHelper.getDatabase(bookUID));
-
-		final Account account;
-        try {
-            account = accountsDbAdapter.getRecord(accountUID);
-        } catch (IllegalArgumentException e) {
+		if (snapshot.isAccountMissing()) {
 			Log.i("WidgetConfiguration", "Account not found, resetting widget " + appWidgetId);
 			//if account has been deleted, let the user know
 			RemoteViews views = new RemoteViews(context.getPackageName(),
@@ -288,13 +320,12 @@ public class WidgetConfigurationActivity extends Activity {
 		
 		final RemoteViews views = new RemoteViews(context.getPackageName(),
 				R.layout.widget_4x1);
-		views.setTextViewText(R.id.account_name, account.getName());
-
-		Money accountBalance = accountsDbAdapter.getAccountBalance(accountUID, -1, System.currentTimeMillis());
+		views.setTextViewText(R.id.account_name, snapshot.getAccountName());
 
 		if (hideAccountBalance) {
 			views.setViewVisibility(R.id.transactions_summary, View.GONE);
 		} else {
+			Money accountBalance = snapshot.getBalance();
 			views.setTextViewText(R.id.transactions_summary,
 					accountBalance.formattedString(Locale.getDefault()));
 			int color = accountBalance.isNegative() ? R.color.debit_red : R.color.credit_green;
@@ -311,7 +342,7 @@ public class WidgetConfigurationActivity extends Activity {
 				.getActivity(context, appWidgetId, accountViewIntent, 0);
 		views.setOnClickPendingIntent(R.id.widget_layout, accountPendingIntent);
 		
-		if (accountsDbAdapter.isPlaceholderAccount(accountUID)) {
+		if (snapshot.isPlaceholder()) {
 			views.setOnClickPendingIntent(R.id.btn_view_account, accountPendingIntent);
 			views.setViewVisibility(R.id.btn_new_transaction, View.GONE);
 		} else {
@@ -331,24 +362,45 @@ public class WidgetConfigurationActivity extends Activity {
 	}
 
 	/**
-	 * Updates all widgets belonging to the application
+	 * Updates all widgets belonging to the application from their balance snapshots.
+	 * <p>Snapshots are marked outdated automatically when transactions in their accounts change,
+	 * so this does not recompute any balances itself</p>
 	 * @param context Application context
 	 */
 	public static void updateAllWidgets(final Context context){
 		Log.i("WidgetConfiguration", "Updating all widgets");
+		for (int appWidgetId : getAppWidgetIds(context)) {
+			updateWidget(context, appWidgetId);
+		}
+	}
+
+	/**
+	 * Marks the balance snapshots of all widgets outdated and recomputes them in the background.
+	 * This should be called after changes which are not reported as balance changes, like the deletion of accounts
+	 * @param context Application context
+	 */
+	public static void refreshAllWidgets(final Context context){
+		Log.i("WidgetConfiguration", "Refreshing all widgets");
+		for (int appWidgetId : getAppWidgetIds(context)) {
+			WidgetBalanceSnapshot.markDirty(context, appWidgetId);
+		}
+		WidgetSnapshotRefresher.getInstance().scheduleRefresh();
+	}
+
+	/**
+	 * Marks the balance snapshots of some widgets outdated, so that they are recomputed on their next update
+	 * @param context Application context
+	 * @param appWidgetIds IDs of the widgets
+	 */
+	public static void invalidateWidgets(final Context context, int[] appWidgetIds){
+		for (int appWidgetId : appWidgetIds) {
+			WidgetBalanceSnapshot.markDirty(context, appWidgetId);
+		}
+	}
+
+	private static int[] getAppWidgetIds(Context context){
 		AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
 		ComponentName componentName = new ComponentName(context, TransactionAppWidgetProvider.class);
-		final int[] appWidgetIds = widgetManager.getAppWidgetIds(componentName);
-
-		//update widgets asynchronously so as not to block method which called the update
-		//inside the computation of the account balance
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				for (final int widgetId : appWidgetIds) {
-					updateWidget(context, widgetId);
-				}
-			}
-		}).start();
+		return widgetManager.getAppWidgetIds(componentName);
 	}
 }
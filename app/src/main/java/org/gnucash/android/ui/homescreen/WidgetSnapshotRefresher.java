@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.homescreen;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.adapter.AccountTree;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.BookSession;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.receivers.TransactionAppWidgetProvider;
+import org.gnucash.android.ui.common.UxArgument;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static android.content.Context.MODE_PRIVATE;
+
+/**
+ * Keeps the balance snapshots of the homescreen widgets up to date.
+ * <p>Changes of account balances are collected as they are reported by the {@link SplitsDbAdapter}.
+ * A single background job runs shortly after the first change, marks the snapshots of the affected
+ * widgets dirty and recomputes all dirty snapshots, opening the database of each book only once.
+ * Further changes made while the job is pending are handled by the same job.</p>
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class WidgetSnapshotRefresher implements SplitsDbAdapter.OnBalancesChangedListener {
+
+	private static final String LOG_TAG = "WidgetRefresher";
+
+	/**
+	 * Delay in milliseconds between the first change and the refresh of the widgets
+	 */
+	private static final long REFRESH_DELAY = 500;
+
+	private static WidgetSnapshotRefresher sInstance;
+
+	private final Context mContext;
+
+	/**
+	 * GUIDs of the accounts whose balances changed since the last refresh, keyed by book GUID.
+	 * A {@code null} value means that all balances of the book changed. Guarded by {@code this}
+	 */
+	private final Map<String, Set<String>> mChangedAccounts = new HashMap<>();
+
+	private boolean mRefreshScheduled = false;
+
+	private Handler mHandler;
+
+	private final Runnable mRefreshJob = new Runnable() {
+		@Override
+		public void run() {
+			refresh();
+		}
+	};
+
+	/**
+	 * Creates a refresher
+	 * @param context Application context
+	 * @param handler Handler on which refreshes are run, or {@code null} to run them on a background thread
+	 */
+	@VisibleForTesting
+	protected WidgetSnapshotRefresher(Context context, @Nullable Handler handler) {
+		mContext = context.getApplicationContext();
+		mHandler = handler;
+	}
+
+	/**
+	 * Returns the refresher of the application
+	 */
+	public static synchronized WidgetSnapshotRefresher getInstance() {
+		if (sInstance == null)
+			sInstance = new WidgetSnapshotRefresher(GnuCashApplication.getAppContext(), null);
+		return sInstance;
+	}
+
+	@Override
+	public void onBalancesChanged(String bookUID, @Nullable Collection<String> accountUIDs) {
+		synchronized (this) {
+			if (accountUIDs == null) {
+				mChangedAccounts.put(bookUID, null);
+			} else if (!mChangedAccounts.containsKey(bookUID)) {
+				mChangedAccounts.put(bookUID, new HashSet<>(accountUIDs));
+			} else {
+				Set<String> changedAccounts = mChangedAccounts.get(bookUID);
+				if (changedAccounts != null)
+					changedAccounts.addAll(accountUIDs);
+			}
+		}
+		scheduleRefresh();
+	}
+
+	/**
+	 * Schedules the refresh of the dirty widget snapshots, unless a refresh is already pending
+	 */
+	public synchronized void scheduleRefresh() {
+		if (mRefreshScheduled)
+			return;
+		if (mHandler == null) {
+			HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+			thread.start();
+			mHandler = new Handler(thread.getLooper());
+		}
+		mRefreshScheduled = true;
+		mHandler.postDelayed(mRefreshJob, REFRESH_DELAY);
+	}
+
+	/**
+	 * Marks the snapshots affected by the collected balance changes dirty, and recomputes the dirty snapshots
+	 */
+	private void refresh() {
+		Map<String, Set<String>> changedAccounts;
+		synchronized (this) {
+			mRefreshScheduled = false;
+			changedAccounts = new HashMap<>(mChangedAccounts);
+			mChangedAccounts.clear();
+		}
+
+		Map<String, List<Integer>> widgetsByBook = new HashMap<>();
+		for (int appWidgetId : getAppWidgetIds()) {
+			String bookUID = getConfiguration(appWidgetId).getString(UxArgument.BOOK_UID, null);
+			if (bookUID == null)
+				continue;
+			List<Integer> widgets = widgetsByBook.get(bookUID);
+			if (widgets == null) {
+				widgets = new ArrayList<>();
+				widgetsByBook.put(bookUID, widgets);
+			}
+			widgets.add(appWidgetId);
+		}
+
+		for (Map.Entry<String, List<Integer>> entry : widgetsByBook.entrySet()) {
+			String bookUID = entry.getKey();
+			try {
+				refreshBook(bookUID, entry.getValue(), changedAccounts.containsKey(bookUID),
+						changedAccounts.get(bookUID));
+			} catch (Exception e) {
+				Crashlytics.logException(e);
+				Log.e(LOG_TAG, "Error refreshing widgets of book " + bookUID, e);
+			}
+		}
+	}
+
+	/**
+	 * Refreshes the widgets of one book
+	 * @param bookUID GUID of the book
+	 * @param appWidgetIds IDs of the widgets which display accounts of the book
+	 * @param changed {@code true} if balances of the book changed since the last refresh
+	 * @param changedAccountUIDs GUIDs of the accounts whose balances changed, or {@code null} if all balances changed
+	 */
+	private void refreshBook(String bookUID, List<Integer> appWidgetIds, boolean changed,
+							 @Nullable Set<String> changedAccountUIDs) {
+		List<Integer> staleWidgets = new ArrayList<>();
+		for (int appWidgetId : appWidgetIds) {
+			String accountUID = getConfiguration(appWidgetId).getString(UxArgument.SELECTED_ACCOUNT_UID, null);
+			WidgetBalanceSnapshot snapshot = WidgetBalanceSnapshot.load(mContext, appWidgetId);
+			if (accountUID != null && (changed || snapshot == null || snapshot.needsRefresh(accountUID)))
+				staleWidgets.add(appWidgetId);
+		}
+		if (staleWidgets.isEmpty())
+			return;
+
+		BookSession session = BookSession.open(bookUID);
+		try {
+			AccountsDbAdapter accountsDbAdapter = session.getAccountsDbAdapter();
+			//balances include sub-accounts, so a change in an account changes all of its ancestors too
+			Set<String> affectedAccountUIDs = null;
+			if (changedAccountUIDs != null)
+				affectedAccountUIDs = getSelfAndAncestorUIDs(accountsDbAdapter.getAccountTree(), changedAccountUIDs);
+
+			for (int appWidgetId : staleWidgets) {
+				String accountUID = getConfiguration(appWidgetId).getString(UxArgument.SELECTED_ACCOUNT_UID, null);
+				WidgetBalanceSnapshot snapshot = WidgetBalanceSnapshot.load(mContext, appWidgetId);
+				boolean affected = affectedAccountUIDs == null || affectedAccountUIDs.contains(accountUID);
+				if (snapshot != null && !snapshot.needsRefresh(accountUID) && !affected)
+					continue;
+
+				snapshot = WidgetBalanceSnapshot.compute(accountsDbAdapter, accountUID);
+				snapshot.save(mContext, appWidgetId);
+				renderWidget(appWidgetId);
+			}
+		} finally {
+			session.close();
+		}
+	}
+
+	/**
+	 * Returns the IDs of all homescreen widgets of the application
+	 */
+	protected int[] getAppWidgetIds() {
+		return AppWidgetManager.getInstance(mContext).getAppWidgetIds(
+				new ComponentName(mContext, TransactionAppWidgetProvider.class));
+	}
+
+	/**
+	 * Renders a widget after its snapshot has been recomputed
+	 * @param appWidgetId ID of the widget
+	 */
+	protected void renderWidget(int appWidgetId) {
+		WidgetConfigurationActivity.renderWidget(mContext, appWidgetId);
+	}
+
+	/**
+	 * Returns the GUIDs of the given accounts together with the GUIDs of all of their ancestors
+	 */
+	private static Set<String> getSelfAndAncestorUIDs(@NonNull AccountTree accountTree,
+													  @NonNull Collection<String> accountUIDs) {
+		Set<String> result = new HashSet<>();
+		for (String accountUID : accountUIDs) {
+			String uid = accountUID;
+			while (uid != null && result.add(uid)) {
+				uid = accountTree.getParentUID(uid);
+			}
+		}
+		return result;
+	}
+
+	private SharedPreferences getConfiguration(int appWidgetId) {
+		return mContext.getSharedPreferences("widget:" + appWidgetId, MODE_PRIVATE);
+	}
+}
@@ -35,7 +35,9 @@ import com.github.mikephil.charting.data.PieData;
 import com.github.mikephil.charting.data.PieDataSet;
 
 import org.gnucash.android.R;
+import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.ReportAggregator;
 import org.gnucash.android.model.Account;
 import org.gnucash.android.model.AccountType;
 import org.gnucash.android.model.Money;
@@ -178,22 +180,29 @@ public class ReportsOverviewFragment extends BaseReportFragment {
         PieDataSet dataSet = new PieDataSet(null, "");
         List<String> labels = new ArrayList<>();
         List<Integer> colors = new ArrayList<>();
+        List<Account> accounts = new ArrayList<>();
+        List<String> accountUIDs = new ArrayList<>();
         for (Account account : mAccountsDbAdapter.getSimpleAccountList()) {
             if (account.getAccountType() == AccountType.EXPENSE
                     && !account.isPlaceholderAccount()
                     && account.getCommodity().equals(mCommodity)) {
-
-                long start = new LocalDate().minusMonths(2).dayOfMonth().withMinimumValue().toDate().getTime();
-                long end = new LocalDate().plusDays(1).toDate().getTime();
-                double balance = mAccountsDbAdapter.getAccountsBalance(
-                        Collections.singletonList(account.getUID()), start, end).asDouble();
-                if (balance > 0) {
-                    dataSet.addEntry(new Entry((float) balance, dataSet.getEntryCount()));
-                    colors.add(account.getColor() != Account.DEFAULT_COLOR
-                            ? account.getColor()
-                            : ReportsActivity.COLORS[(dataSet.getEntryCount() - 1) % ReportsActivity.COLORS.length]);
-                    labels.add(account.getName());
-                }
+                accounts.add(account);
+                accountUIDs.add(account.getUID());
+            }
+        }
+        long start = new LocalDate().minusMonths(2).dayOfMonth().withMinimumValue().toDate().getTime();
+        long end = new LocalDate().plusDays(1).toDate().getTime();
+        ReportAggregator.BalanceMatrix balances = new ReportAggregator(mAccountsDbAdapter).getBalances(accountUIDs,
+                ReportsActivity.GroupInterval.ALL, start, end, GnuCashApplication.getDefaultCurrencyCode());
+
+        for (Account account : accounts) {
+            double balance = balances.getBalance(account.getUID(), 0).asDouble();
+            if (balance > 0) {
+                dataSet.addEntry(new Entry((float) balance, dataSet.getEntryCount()));
+                colors.add(account.getColor() != Account.DEFAULT_COLOR
+                        ? account.getColor()
+                        : ReportsActivity.COLORS[(dataSet.getEntryCount() - 1) % ReportsActivity.COLORS.length]);
+                labels.add(account.getName());
             }
         }
         dataSet.setColors(colors);
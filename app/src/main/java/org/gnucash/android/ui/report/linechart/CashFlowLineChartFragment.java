@@ -33,7 +33,9 @@ import com.github.mikephil.charting.highlight.Highlight;
 import com.github.mikephil.charting.utils.LargeValueFormatter;
 
 import org.gnucash.android.R;
+import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.ReportAggregator;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.model.Account;
 import org.gnucash.android.model.AccountType;
@@ -136,6 +138,26 @@ public class CashFlowLineChartFragment extends BaseReportFragment {
 
         int count = getDateDiff(new LocalDateTime(startDate.toDate().getTime()), new LocalDateTime(endDate.toDate().getTime()));
         Log.d(TAG, "X-axis count" + count);
+
+        Map<AccountType, List<String>> accountUIDsMap = new HashMap<>();
+        List<String> accountUIDs = new ArrayList<>();
+        for (Account account : mAccountsDbAdapter.getSimpleAccountList()) {
+            if (accountTypeList.contains(account.getAccountType())
+                    && !account.isPlaceholderAccount()
+                    && account.getCommodity().equals(mCommodity)) {
+                List<String> typeAccountUIDs = accountUIDsMap.get(account.getAccountType());
+                if (typeAccountUIDs == null) {
+                    typeAccountUIDs = new ArrayList<>();
+                    accountUIDsMap.put(account.getAccountType(), typeAccountUIDs);
+                }
+                typeAccountUIDs.add(account.getUID());
+                accountUIDs.add(account.getUID());
+            }
+        }
+        ReportAggregator.BalanceMatrix balances = new ReportAggregator(mAccountsDbAdapter).getBalances(accountUIDs,
+                mGroupInterval, startDate.toDate().getTime(), endDate.toDate().getTime(),
+                GnuCashApplication.getDefaultCurrencyCode());
+
         List<String> xValues = new ArrayList<>();
         for (int i = 0; i <= count; i++) {
             switch (mGroupInterval) {
@@ -161,7 +183,10 @@ public class CashFlowLineChartFragment extends BaseReportFragment {
 
         List<LineDataSet> dataSets = new ArrayList<>();
         for (AccountType accountType : accountTypeList) {
-            LineDataSet set = new LineDataSet(getEntryList(accountType), accountType.toString());
+            List<String> typeAccountUIDs = accountUIDsMap.get(accountType);
+            LineDataSet set = new LineDataSet(getEntryList(accountType,
+                    typeAccountUIDs == null ? Collections.<String>emptyList() : typeAccountUIDs, balances),
+                    accountType.toString());
             set.setDrawFilled(true);
             set.setLineWidth(2);
             set.setColor(COLORS[dataSets.size()]);
@@ -201,18 +226,12 @@ public class CashFlowLineChartFragment extends BaseReportFragment {
     /**
      * Returns entries which represent a user data of the specified account type
      * @param accountType account's type which user data will be processed
+     * @param accountUIDs GUIDs of the accounts of the type
+     * @param balances balances of the accounts in each period of the chart
      * @return entries which represent a user data
      */
-    private List<Entry> getEntryList(AccountType accountType) {
-        List<String> accountUIDList = new ArrayList<>();
-        for (Account account : mAccountsDbAdapter.getSimpleAccountList()) {
-            if (account.getAccountType() == accountType
-                    && !account.isPlaceholderAccount()
-                    && account.getCommodity().equals(mCommodity)) {
-                accountUIDList.add(account.getUID());
-            }
-        }
-
+    private List<Entry> getEntryList(AccountType accountType, List<String> accountUIDs,
+                                     ReportAggregator.BalanceMatrix balances) {
         LocalDateTime earliest;
         LocalDateTime latest;
         if (mReportPeriodStart == -1 && mReportPeriodEnd == -1) {
@@ -229,33 +248,22 @@ public class CashFlowLineChartFragment extends BaseReportFragment {
         int count = getDateDiff(earliest, latest);
         List<Entry> values = new ArrayList<>(count + 1);
         for (int i = 0; i <= count; i++) {
-            long start = 0;
-            long end = 0;
+            int period = i + xAxisOffset;
+            float balance = period >= 0 && period < balances.getPeriodCount()
+                    ? (float) balances.getTotal(accountUIDs, period).asDouble() : 0;
+            values.add(new Entry(balance, period));
+            Log.d(TAG, accountType + earliest.toString(" MMM yyyy") + ", balance = " + balance);
             switch (mGroupInterval) {
                 case QUARTER:
-                    int quarter = getQuarter(earliest);
-                    start = earliest.withMonthOfYear(quarter * 3 - 2).dayOfMonth().withMinimumValue().millisOfDay().withMinimumValue().toDate().getTime();
-                    end = earliest.withMonthOfYear(quarter * 3).dayOfMonth().withMaximumValue().millisOfDay().withMaximumValue().toDate().getTime();
-
                     earliest = earliest.plusMonths(3);
                     break;
                 case MONTH:
-                    start = earliest.dayOfMonth().withMinimumValue().millisOfDay().withMinimumValue().toDate().getTime();
-                    end = earliest.dayOfMonth().withMaximumValue().millisOfDay().withMaximumValue().toDate().getTime();
-
                     earliest = earliest.plusMonths(1);
                     break;
                 case YEAR:
-                    start = earliest.dayOfYear().withMinimumValue().millisOfDay().withMinimumValue().toDate().getTime();
-                    end = earliest.dayOfYear().withMaximumValue().millisOfDay().withMaximumValue().toDate().getTime();
-
                     earliest = earliest.plusYears(1);
                     break;
             }
-            float balance = (float) mAccountsDbAdapter.getAccountsBalance(accountUIDList, start, end).asDouble();
-            values.add(new Entry(balance, i + xAxisOffset));
-            Log.d(TAG, accountType + earliest.toString(" MMM yyyy") + ", balance = " + balance);
-
         }
 
         return values;
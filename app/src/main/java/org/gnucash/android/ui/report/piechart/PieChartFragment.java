@@ -32,7 +32,9 @@ import com.github.mikephil.charting.data.PieDataSet;
 import com.github.mikephil.charting.highlight.Highlight;
 
 import org.gnucash.android.R;
+import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.ReportAggregator;
 import org.gnucash.android.model.Account;
 import org.gnucash.android.ui.report.BaseReportFragment;
 import org.gnucash.android.ui.report.ReportType;
@@ -148,26 +150,34 @@ public class PieChartFragment extends BaseReportFragment {
         PieDataSet dataSet = new PieDataSet(null, "");
         List<String> labels = new ArrayList<>();
         List<Integer> colors = new ArrayList<>();
+        List<Account> accounts = new ArrayList<>();
+        List<String> accountUIDs = new ArrayList<>();
         for (Account account : mAccountsDbAdapter.getSimpleAccountList()) {
             if (account.getAccountType() == mAccountType
                     && !account.isPlaceholderAccount()
                     && account.getCommodity().equals(mCommodity)) {
-
-                double balance = mAccountsDbAdapter.getAccountsBalance(Collections.singletonList(account.getUID()),
-                        mReportPeriodStart, mReportPeriodEnd).asDouble();
-                if (balance > 0) {
-                    dataSet.addEntry(new Entry((float) balance, dataSet.getEntryCount()));
-                    int color;
-                    if (mUseAccountColor) {
-                        color = (account.getColor() != Account.DEFAULT_COLOR)
-                                ? account.getColor()
-                                : ReportsActivity.COLORS[(dataSet.getEntryCount() - 1) % ReportsActivity.COLORS.length];
-                    } else {
-                        color = ReportsActivity.COLORS[(dataSet.getEntryCount() - 1) % ReportsActivity.COLORS.length];
-                    }
-                    colors.add(color);
-                    labels.add(account.getName());
+                accounts.add(account);
+                accountUIDs.add(account.getUID());
+            }
+        }
+        ReportAggregator.BalanceMatrix balances = new ReportAggregator(mAccountsDbAdapter).getBalances(accountUIDs,
+                ReportsActivity.GroupInterval.ALL, mReportPeriodStart, mReportPeriodEnd,
+                GnuCashApplication.getDefaultCurrencyCode());
+
+        for (Account account : accounts) {
+            double balance = balances.getBalance(account.getUID(), 0).asDouble();
+            if (balance > 0) {
+                dataSet.addEntry(new Entry((float) balance, dataSet.getEntryCount()));
+                int color;
+                if (mUseAccountColor) {
+                    color = (account.getColor() != Account.DEFAULT_COLOR)
+                            ? account.getColor()
+                            : ReportsActivity.COLORS[(dataSet.getEntryCount() - 1) % ReportsActivity.COLORS.length];
+                } else {
+                    color = ReportsActivity.COLORS[(dataSet.getEntryCount() - 1) % ReportsActivity.COLORS.length];
                 }
+                colors.add(color);
+                labels.add(account.getName());
             }
         }
         dataSet.setColors(colors);
@@ -37,6 +37,7 @@ import org.gnucash.android.ui.transaction.TransactionsActivity;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import butterknife.BindView;
 
@@ -56,6 +57,10 @@ public class BalanceSheetFragment extends BaseReportFragment {
 
     private Money mAssetsBalance;
     private Money mLiabilitiesBalance;
+    /**
+     * Balances of all the accounts including their sub-accounts, keyed by account GUID
+     */
+    private Map<String, Money> mAccountBalances;
     private List<AccountType> mAssetAccountTypes;
     private List<AccountType> mLiabilityAccountTypes;
     private List<AccountType> mEquityAccountTypes;
@@ -103,6 +108,7 @@ public class BalanceSheetFragment extends BaseReportFragment {
 
     @Override
     protected void generateReport() {
+        mAccountBalances = mAccountsDbAdapter.getAccountBalances(-1, -1);
         mAssetsBalance = mAccountsDbAdapter.getAccountBalance(mAssetAccountTypes, -1, System.currentTimeMillis());
         mLiabilitiesBalance = mAccountsDbAdapter.getAccountBalance(mLiabilityAccountTypes, -1, System.currentTimeMillis());
     }
@@ -138,7 +144,7 @@ public class BalanceSheetFragment extends BaseReportFragment {
         while (cursor.moveToNext()){
             String accountUID = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_UID));
             String name = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_NAME));
-            Money balance = mAccountsDbAdapter.getAccountBalance(accountUID);
+            Money balance = mAccountBalances.get(accountUID);
             View view = inflater.inflate(R.layout.row_balance_sheet, tableLayout, false);
             ((TextView)view.findViewById(R.id.account_name)).setText(name);
             TextView balanceTextView = (TextView) view.findViewById(R.id.account_balance);
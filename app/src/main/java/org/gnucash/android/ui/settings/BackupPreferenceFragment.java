@@ -28,6 +28,7 @@ import android.os.Bundle;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.preference.CheckBoxPreference;
+import android.support.v7.preference.ListPreference;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.preference.PreferenceManager;
@@ -143,6 +144,12 @@ public class BackupPreferenceFragment extends PreferenceFragmentCompat implement
         }
         pref.setOnPreferenceChangeListener(this);
 
+		ListPreference backupCodecPref = (ListPreference) findPreference(getString(R.string.key_backup_codec));
+		if (backupCodecPref.getEntry() != null){
+			backupCodecPref.setSummary(backupCodecPref.getEntry());
+		}
+		backupCodecPref.setOnPreferenceChangeListener(this);
+
 		pref = findPreference(getString(R.string.key_restore_backup));
 		pref.setOnPreferenceClickListener(this);
 
@@ -227,6 +234,13 @@ public class BackupPreferenceFragment extends PreferenceFragmentCompat implement
                 preference.setSummary(R.string.summary_default_export_format);
             }
         }
+
+		if (preference.getKey().equals(getString(R.string.key_backup_codec))){
+			ListPreference listPreference = (ListPreference) preference;
+			int index = listPreference.findIndexOfValue(newValue.toString());
+			if (index >= 0)
+				preference.setSummary(listPreference.getEntries()[index]);
+		}
 		return true;
 	}
 
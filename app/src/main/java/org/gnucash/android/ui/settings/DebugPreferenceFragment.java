@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.settings;
+
+import android.os.Bundle;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceFragmentCompat;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.R;
+import org.gnucash.android.db.QueryProfiler;
+import org.gnucash.android.export.Exporter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Fragment for the debugging preferences, which control the {@link QueryProfiler}
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class DebugPreferenceFragment extends PreferenceFragmentCompat implements
+		Preference.OnPreferenceClickListener, Preference.OnPreferenceChangeListener {
+
+	private static final String LOG_TAG = "DebugPrefFragment";
+
+	@Override
+	public void onCreatePreferences(Bundle bundle, String s) {
+		addPreferencesFromResource(R.xml.fragment_debug_preferences);
+	}
+
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+
+		ActionBar actionBar = ((AppCompatActivity) getActivity()).getSupportActionBar();
+		actionBar.setHomeButtonEnabled(true);
+		actionBar.setDisplayHomeAsUpEnabled(true);
+		actionBar.setTitle(R.string.header_debug_settings);
+	}
+
+	@Override
+	public void onResume() {
+		super.onResume();
+		findPreference(getString(R.string.key_enable_query_profiler)).setOnPreferenceChangeListener(this);
+		findPreference(getString(R.string.key_slow_query_threshold)).setOnPreferenceChangeListener(this);
+		findPreference(getString(R.string.key_query_statistics)).setOnPreferenceClickListener(this);
+		findPreference(getString(R.string.key_save_query_profile)).setOnPreferenceClickListener(this);
+		findPreference(getString(R.string.key_reset_query_profile)).setOnPreferenceClickListener(this);
+		updateStatisticsSummary();
+	}
+
+	@Override
+	public boolean onPreferenceChange(Preference preference, Object newValue) {
+		String key = preference.getKey();
+		if (key.equals(getString(R.string.key_enable_query_profiler))) {
+			QueryProfiler.setEnabled((Boolean) newValue);
+			return true;
+		}
+
+		if (key.equals(getString(R.string.key_slow_query_threshold))) {
+			try {
+				QueryProfiler.setSlowQueryThreshold(Long.parseLong(newValue.toString().trim()));
+				return true;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean onPreferenceClick(Preference preference) {
+		String key = preference.getKey();
+
+		if (key.equals(getString(R.string.key_save_query_profile))) {
+			saveQueryProfile();
+		}
+
+		if (key.equals(getString(R.string.key_reset_query_profile))) {
+			QueryProfiler.reset();
+		}
+
+		updateStatisticsSummary();
+		return true;
+	}
+
+	/**
+	 * Shows the number of queries measured so far
+	 */
+	private void updateStatisticsSummary() {
+		long queryCount = 0;
+		int callSiteCount = 0;
+		for (QueryProfiler.CallSiteStatistics statistics : QueryProfiler.getStatistics()) {
+			queryCount += statistics.getCount();
+			callSiteCount++;
+		}
+		findPreference(getString(R.string.key_query_statistics)).setSummary(getString(R.string.summary_query_statistics,
+				queryCount, callSiteCount, QueryProfiler.getSlowQueries().size()));
+	}
+
+	/**
+	 * Writes the query profile to a new file in the application folder on external storage
+	 */
+	private void saveQueryProfile() {
+		String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+		File file = new File(Exporter.BASE_FOLDER_PATH, "query_profile_" + timestamp + ".txt");
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+			try {
+				QueryProfiler.dump(writer);
+			} finally {
+				writer.close();
+			}
+			Toast.makeText(getActivity(), getString(R.string.toast_query_profile_saved, file.getAbsolutePath()),
+					Toast.LENGTH_LONG).show();
+		} catch (IOException e) {
+			Crashlytics.logException(e);
+			Log.e(LOG_TAG, "Error saving query profile", e);
+			Toast.makeText(getActivity(), R.string.toast_query_profile_failed, Toast.LENGTH_SHORT).show();
+		}
+	}
+}
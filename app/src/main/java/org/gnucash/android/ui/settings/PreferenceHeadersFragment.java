@@ -17,8 +17,10 @@
 package org.gnucash.android.ui.settings;
 
 import android.os.Bundle;
+import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
 
+import org.gnucash.android.BuildConfig;
 import org.gnucash.android.R;
 
 /**
@@ -30,6 +32,10 @@ public class PreferenceHeadersFragment extends PreferenceFragmentCompat {
     @Override
     public void onCreatePreferences(Bundle bundle, String s) {
         addPreferencesFromResource(R.xml.preference_fragment_headers);
+        if (!BuildConfig.DEBUG) {
+            Preference debugHeader = findPreference(getString(R.string.key_prefs_header_debug));
+            getPreferenceScreen().removePreference(debugHeader);
+        }
     }
 
 }
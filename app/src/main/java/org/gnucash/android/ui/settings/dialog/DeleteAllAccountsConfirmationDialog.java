@@ -52,10 +52,10 @@ public class DeleteAllAccountsConfirmationDialog extends DialogFragment {
                         new DialogInterface.OnClickListener() {
                             public void onClick(DialogInterface dialog, int whichButton) {
                                 Context context = getDialog().getContext();
-                                GncXmlExporter.createBackup();
+                                GncXmlExporter.createFullBackup();
                                 AccountsDbAdapter.getInstance().deleteAllRecords();
                                 Toast.makeText(context, R.string.toast_all_accounts_deleted, Toast.LENGTH_SHORT).show();
-                                WidgetConfigurationActivity.updateAllWidgets(context);
+                                WidgetConfigurationActivity.refreshAllWidgets(context);
                             }
                         }
                 )
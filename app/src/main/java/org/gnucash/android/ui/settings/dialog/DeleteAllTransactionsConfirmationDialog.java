@@ -59,7 +59,7 @@ public class DeleteAllTransactionsConfirmationDialog extends DialogFragment {
                 .setPositiveButton(R.string.alert_dialog_ok_delete,
                         new DialogInterface.OnClickListener() {
                             public void onClick(DialogInterface dialog, int whichButton) {
-                                GncXmlExporter.createBackup();
+                                GncXmlExporter.createFullBackup();
 
                                 Context context = getActivity();
                                 AccountsDbAdapter accountsDbAdapter = AccountsDbAdapter.getInstance();
@@ -76,7 +76,7 @@ public class DeleteAllTransactionsConfirmationDialog extends DialogFragment {
                                     transactionsDbAdapter.bulkAddRecords(openingBalances, DatabaseAdapter.UpdateMethod.insert);
                                 }
                                 Toast.makeText(context, R.string.toast_all_transactions_deleted, Toast.LENGTH_SHORT).show();
-                                WidgetConfigurationActivity.updateAllWidgets(getActivity());
+                                WidgetConfigurationActivity.refreshAllWidgets(getActivity());
                             }
                         }
 
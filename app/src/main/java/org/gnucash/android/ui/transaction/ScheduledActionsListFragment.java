@@ -55,11 +55,14 @@ import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.ScheduledActionDbAdapter;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.export.ExportParams;
+import org.gnucash.android.model.PeriodType;
+import org.gnucash.android.model.Recurrence;
 import org.gnucash.android.model.ScheduledAction;
 import org.gnucash.android.model.Transaction;
 import org.gnucash.android.ui.common.FormActivity;
 import org.gnucash.android.ui.common.UxArgument;
 
+import java.sql.Timestamp;
 import java.text.DateFormat;
 import java.util.Date;
 import java.util.List;
@@ -471,19 +474,49 @@ public class ScheduledActionsListFragment extends ListFragment implements
             }
             TextView descriptionTextView = (TextView) view.findViewById(R.id.secondary_text);
 
-            ScheduledActionDbAdapter scheduledActionDbAdapter = ScheduledActionDbAdapter.getInstance();
             String scheduledActionUID = cursor.getString(cursor.getColumnIndexOrThrow("origin_scheduled_action_uid")); //column created from join when fetching scheduled transactions
             view.setTag(scheduledActionUID);
-            ScheduledAction scheduledAction = scheduledActionDbAdapter.getRecord(scheduledActionUID);
+            ScheduledAction scheduledAction = buildSchedule(cursor);
             long endTime = scheduledAction.getEndTime();
             if (endTime > 0 && endTime < System.currentTimeMillis()){
                 ((TextView)view.findViewById(R.id.primary_text)).setTextColor(getResources().getColor(android.R.color.darker_gray));
                 descriptionTextView.setText(getString(R.string.label_scheduled_action_ended,
                         DateFormat.getInstance().format(new Date(scheduledAction.getLastRunTime()))));
             } else {
-                descriptionTextView.setText(scheduledAction.getRepeatString());
+                int nextOccurrenceIndex = cursor.getColumnIndexOrThrow("next_occurrence_time"); //column created from subquery
+                if (cursor.isNull(nextOccurrenceIndex)) {
+                    descriptionTextView.setText(scheduledAction.getRepeatString());
+                } else {
+                    descriptionTextView.setText(getString(R.string.label_scheduled_action_next,
+                            scheduledAction.getRepeatString(),
+                            DateFormat.getDateInstance().format(new Date(cursor.getLong(nextOccurrenceIndex)))));
+                }
             }
         }
+
+        /**
+         * Builds the schedule of the scheduled action of the current row from the columns joined
+         * by {@link TransactionsDbAdapter#fetchAllScheduledTransactions()}, without querying the database
+         * @param cursor Cursor positioned on the row
+         * @return Scheduled action with its recurrence, start and end time, last run and planned executions
+         */
+        private ScheduledAction buildSchedule(Cursor cursor) {
+            String periodType = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.RecurrenceEntry.COLUMN_PERIOD_TYPE));
+            Recurrence recurrence = new Recurrence(PeriodType.valueOf(periodType));
+            recurrence.setMultiplier(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseSchema.RecurrenceEntry.COLUMN_MULTIPLIER)));
+            String periodEnd = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.RecurrenceEntry.COLUMN_PERIOD_END));
+            if (periodEnd != null)
+                recurrence.setPeriodEnd(Timestamp.valueOf(periodEnd));
+
+            ScheduledAction scheduledAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
+            scheduledAction.setStartTime(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.ScheduledActionEntry.COLUMN_START_TIME)));
+            scheduledAction.setEndTime(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.ScheduledActionEntry.COLUMN_END_TIME)));
+            scheduledAction.setLastRun(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.ScheduledActionEntry.COLUMN_LAST_RUN)));
+            scheduledAction.setTotalPlannedExecutionCount(
+                    cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseSchema.ScheduledActionEntry.COLUMN_TOTAL_FREQUENCY)));
+            scheduledAction.setRecurrence(recurrence);
+            return scheduledAction;
+        }
     }
 
     /**
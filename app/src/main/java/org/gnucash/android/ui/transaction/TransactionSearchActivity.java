@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.transaction;
+
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.Loader;
+import android.support.v4.view.MenuItemCompat;
+import android.support.v4.widget.SimpleCursorAdapter;
+import android.support.v7.widget.SearchView;
+import android.text.format.DateUtils;
+import android.view.Menu;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import org.gnucash.android.R;
+import org.gnucash.android.db.DatabaseCursorLoader;
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.ui.common.BaseDrawerActivity;
+import org.gnucash.android.ui.common.UxArgument;
+
+import butterknife.BindView;
+
+/**
+ * Activity for searching the descriptions and memos of the transactions in all accounts of the active book
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class TransactionSearchActivity extends BaseDrawerActivity implements
+        SearchView.OnQueryTextListener, LoaderManager.LoaderCallbacks<Cursor> {
+
+    /**
+     * Maximum number of transactions listed
+     */
+    private static final int MAX_RESULTS = 100;
+
+    private static final String STATE_QUERY = "search_query";
+
+    @BindView(R.id.search_results) ListView mListView;
+    @BindView(R.id.empty_view) TextView mEmptyView;
+
+    private SimpleCursorAdapter mCursorAdapter;
+
+    /**
+     * Text which is currently searched for
+     */
+    private String mQuery = "";
+
+    @Override
+    public int getContentView() {
+        return R.layout.activity_transaction_search;
+    }
+
+    @Override
+    public int getTitleRes() {
+        return R.string.nav_menu_search_transactions;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (savedInstanceState != null)
+            mQuery = savedInstanceState.getString(STATE_QUERY, "");
+
+        mCursorAdapter = new SearchResultsCursorAdapter(this);
+        mListView.setAdapter(mCursorAdapter);
+        mListView.setEmptyView(mEmptyView);
+        mListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                Cursor cursor = mCursorAdapter.getCursor();
+                cursor.moveToPosition(position);
+                Intent intent = new Intent(TransactionSearchActivity.this, TransactionDetailActivity.class);
+                intent.putExtra(UxArgument.SELECTED_TRANSACTION_UID,
+                        cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry.COLUMN_UID)));
+                intent.putExtra(UxArgument.SELECTED_ACCOUNT_UID,
+                        cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.SplitEntry.COLUMN_ACCOUNT_UID)));
+                startActivity(intent);
+            }
+        });
+
+        getSupportLoaderManager().initLoader(0, null, this);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_QUERY, mQuery);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.transaction_search_actions, menu);
+        SearchView searchView = (SearchView) MenuItemCompat.getActionView(menu.findItem(R.id.menu_search));
+        searchView.setIconifiedByDefault(false);
+        searchView.setQueryHint(getString(R.string.menu_search_transactions));
+        searchView.setQuery(mQuery, false);
+        searchView.setOnQueryTextListener(this);
+        return true;
+    }
+
+    @Override
+    public boolean onQueryTextSubmit(String query) {
+        onQueryTextChange(query);
+        return false; //let the search view hide the keyboard
+    }
+
+    @Override
+    public boolean onQueryTextChange(String newText) {
+        if (newText.equals(mQuery))
+            return true;
+        mQuery = newText;
+        getSupportLoaderManager().restartLoader(0, null, this);
+        return true;
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        return new TransactionSearchCursorLoader(this, mQuery);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        mCursorAdapter.swapCursor(cursor);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mCursorAdapter.swapCursor(null);
+    }
+
+    /**
+     * Adapter showing the description of each transaction found, together with its date and account
+     */
+    private static class SearchResultsCursorAdapter extends SimpleCursorAdapter {
+
+        SearchResultsCursorAdapter(Context context) {
+            super(context, R.layout.dropdown_item_2lines, null,
+                    new String[]{DatabaseSchema.TransactionEntry.COLUMN_DESCRIPTION},
+                    new int[]{R.id.primary_text}, 0);
+        }
+
+        @Override
+        public void bindView(View view, Context context, Cursor cursor) {
+            super.bindView(view, context, cursor);
+            long timestamp = cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry.COLUMN_TIMESTAMP));
+            String dateString = DateUtils.formatDateTime(context, timestamp,
+                    DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_YEAR);
+            String accountName = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_FULL_NAME));
+            if (accountName == null)
+                accountName = "";
+
+            TextView secondaryTextView = (TextView) view.findViewById(R.id.secondary_text);
+            secondaryTextView.setText(context.getString(R.string.label_search_result_summary, dateString, accountName));
+        }
+    }
+
+    /**
+     * {@link DatabaseCursorLoader} for searching transactions in the background
+     */
+    private static class TransactionSearchCursorLoader extends DatabaseCursorLoader {
+        private final String mQuery;
+
+        TransactionSearchCursorLoader(Context context, String query) {
+            super(context);
+            mQuery = query;
+        }
+
+        @Override
+        public Cursor loadInBackground() {
+            mDatabaseAdapter = TransactionsDbAdapter.getInstance();
+            Cursor cursor = ((TransactionsDbAdapter) mDatabaseAdapter).searchTransactions(mQuery, MAX_RESULTS);
+            registerContentObserver(cursor);
+            return cursor;
+        }
+    }
+}
@@ -19,11 +19,12 @@ package org.gnucash.android.ui.transaction;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Configuration;
-import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
+import android.support.v4.content.AsyncTaskLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
@@ -43,14 +44,9 @@ import android.widget.TextView;
 
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
-import org.gnucash.android.db.DatabaseCursorLoader;
-import org.gnucash.android.db.DatabaseSchema;
-import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.DatabaseAdapter;
-import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionListPager;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
-import org.gnucash.android.model.Money;
-import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
 import org.gnucash.android.ui.common.FormActivity;
 import org.gnucash.android.ui.common.Refreshable;
@@ -58,9 +54,9 @@ import org.gnucash.android.ui.common.UxArgument;
 import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
 import org.gnucash.android.ui.settings.PreferenceActivity;
 import org.gnucash.android.ui.transaction.dialog.BulkMoveDialogFragment;
-import org.gnucash.android.ui.util.CursorRecyclerAdapter;
 import org.gnucash.android.ui.util.widget.EmptyRecyclerView;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import butterknife.BindView;
@@ -72,13 +68,18 @@ import butterknife.ButterKnife;
  *
  */
 public class TransactionsListFragment extends Fragment implements
-        Refreshable, LoaderCallbacks<Cursor>{
+        Refreshable, LoaderCallbacks<List<TransactionListPager.Item>>{
 
 	/**
 	 * Logging tag
 	 */
 	protected static final String LOG_TAG = "TransactionListFragment";
 
+	/**
+	 * Number of rows before the end of the loaded transactions at which the next page is loaded
+	 */
+	private static final int PREFETCH_DISTANCE = 50;
+
     private TransactionsDbAdapter mTransactionsDbAdapter;
     private String mAccountUID;
 
@@ -137,7 +138,7 @@ public class TransactionsListFragment extends Fragment implements
 		aBar.setDisplayShowTitleEnabled(false);
 		aBar.setDisplayHomeAsUpEnabled(true);
 
-		mTransactionRecyclerAdapter = new TransactionRecyclerAdapter(null);
+		mTransactionRecyclerAdapter = new TransactionRecyclerAdapter();
 		mRecyclerView.setAdapter(mTransactionRecyclerAdapter);
 
 		setHasOptionsMenu(true);		
@@ -203,53 +204,155 @@ public class TransactionsListFragment extends Fragment implements
 	}
 	
 	@Override
-	public Loader<Cursor> onCreateLoader(int arg0, Bundle arg1) {
+	public Loader<List<TransactionListPager.Item>> onCreateLoader(int arg0, Bundle arg1) {
 		Log.d(LOG_TAG, "Creating transactions loader");
-		return new TransactionsCursorLoader(getActivity(), mAccountUID);
+		return new TransactionsPageLoader(getActivity(), mAccountUID);
 	}
 
 	@Override
-	public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-		Log.d(LOG_TAG, "Transactions loader finished. Swapping in cursor");
-		mTransactionRecyclerAdapter.swapCursor(cursor);
-		mTransactionRecyclerAdapter.notifyDataSetChanged();
+	public void onLoadFinished(Loader<List<TransactionListPager.Item>> loader, List<TransactionListPager.Item> firstPage) {
+		Log.d(LOG_TAG, "Transactions loader finished. Swapping in first page");
+		mTransactionRecyclerAdapter.setFirstPage(((TransactionsPageLoader) loader).getPager(), firstPage);
 	}
 
 	@Override
-	public void onLoaderReset(Loader<Cursor> loader) {
+	public void onLoaderReset(Loader<List<TransactionListPager.Item>> loader) {
 		Log.d(LOG_TAG, "Resetting transactions loader");
-		mTransactionRecyclerAdapter.swapCursor(null);
+		mTransactionRecyclerAdapter.setFirstPage(null, null);
 	}
 
 	/**
-	 * {@link DatabaseCursorLoader} for loading transactions asynchronously from the database
+	 * Loader for the first page of the transactions of an account.
+	 * The following pages are loaded by the adapter as the list is scrolled
 	 * @author Ngewi Fet <ngewif@gmail.com>
 	 */
-	protected static class TransactionsCursorLoader extends DatabaseCursorLoader {
-		private String accountUID;
-		
-		public TransactionsCursorLoader(Context context, String accountUID) {
-			super(context);			
-			this.accountUID = accountUID;
+	protected static class TransactionsPageLoader extends AsyncTaskLoader<List<TransactionListPager.Item>> {
+		private final TransactionListPager mPager;
+		private List<TransactionListPager.Item> mFirstPage;
+
+		public TransactionsPageLoader(Context context, String accountUID) {
+			super(context);
+			mPager = new TransactionListPager(TransactionsDbAdapter.getInstance(), accountUID);
 		}
-		
+
+		/**
+		 * Returns the pager which loads the following pages of the same account
+		 */
+		public TransactionListPager getPager() {
+			return mPager;
+		}
+
+		@Override
+		public List<TransactionListPager.Item> loadInBackground() {
+			return mPager.loadPage(null);
+		}
+
 		@Override
-		public Cursor loadInBackground() {
-			mDatabaseAdapter = TransactionsDbAdapter.getInstance();
-			Cursor c = ((TransactionsDbAdapter) mDatabaseAdapter).fetchAllTransactionsForAccount(accountUID);
-			if (c != null)
-				registerContentObserver(c);
-			return c;
-		}		
+		public void deliverResult(List<TransactionListPager.Item> data) {
+			if (isReset())
+				return;
+			mFirstPage = data;
+			if (isStarted())
+				super.deliverResult(data);
+		}
+
+		@Override
+		protected void onStartLoading() {
+			if (mFirstPage != null)
+				deliverResult(mFirstPage);
+			if (takeContentChanged() || mFirstPage == null)
+				forceLoad();
+		}
+
+		@Override
+		protected void onStopLoading() {
+			cancelLoad();
+		}
+
+		@Override
+		protected void onReset() {
+			super.onReset();
+			onStopLoading();
+			mFirstPage = null;
+		}
 	}
 
-	public class TransactionRecyclerAdapter extends CursorRecyclerAdapter<TransactionRecyclerAdapter.ViewHolder>{
+	public class TransactionRecyclerAdapter extends RecyclerView.Adapter<TransactionRecyclerAdapter.ViewHolder>{
 
 		public static final int ITEM_TYPE_COMPACT 	= 0x111;
 		public static final int ITEM_TYPE_FULL		= 0x100;
 
-		public TransactionRecyclerAdapter(Cursor cursor) {
-			super(cursor);
+		private final List<TransactionListPager.Item> mItems = new ArrayList<>();
+
+		private TransactionListPager mPager;
+
+		/**
+		 * {@code true} if the last loaded page was full, so there may be more transactions
+		 */
+		private boolean mHasMorePages = false;
+
+		private NextPageTask mNextPageTask;
+
+		/**
+		 * Replaces the transactions in the list with the first page of the transactions of an account
+		 * @param pager Pager for loading the following pages, or {@code null} to clear the list
+		 * @param firstPage Transactions of the first page
+		 */
+		public void setFirstPage(@Nullable TransactionListPager pager, @Nullable List<TransactionListPager.Item> firstPage) {
+			if (mNextPageTask != null) {
+				mNextPageTask.cancel(false);
+				mNextPageTask = null;
+			}
+			mPager = pager;
+			mItems.clear();
+			if (firstPage != null)
+				mItems.addAll(firstPage);
+			mHasMorePages = pager != null && firstPage != null && firstPage.size() == pager.getPageSize();
+			notifyDataSetChanged();
+		}
+
+		@Override
+		public int getItemCount() {
+			return mItems.size();
+		}
+
+		/**
+		 * Starts loading the next page when a row close to the end of the loaded transactions is shown
+		 */
+		private void prefetchNextPage(int position) {
+			if (!mHasMorePages || mNextPageTask != null || position < mItems.size() - PREFETCH_DISTANCE)
+				return;
+			mNextPageTask = new NextPageTask(mPager, mItems.get(mItems.size() - 1));
+			mNextPageTask.execute();
+		}
+
+		/**
+		 * Loads the page after a transaction and appends it to the list
+		 */
+		private class NextPageTask extends AsyncTask<Void, Void, List<TransactionListPager.Item>> {
+			private final TransactionListPager mTaskPager;
+			private final TransactionListPager.Item mAfter;
+
+			NextPageTask(TransactionListPager pager, TransactionListPager.Item after) {
+				mTaskPager = pager;
+				mAfter = after;
+			}
+
+			@Override
+			protected List<TransactionListPager.Item> doInBackground(Void... params) {
+				return mTaskPager.loadPage(mAfter);
+			}
+
+			@Override
+			protected void onPostExecute(List<TransactionListPager.Item> page) {
+				if (mNextPageTask != this)
+					return; //the list has been reloaded in the meantime
+				mNextPageTask = null;
+				int start = mItems.size();
+				mItems.addAll(page);
+				mHasMorePages = page.size() == mTaskPager.getPageSize();
+				notifyItemRangeInserted(start, page.size());
+			}
 		}
 
 		@Override
@@ -266,18 +369,17 @@ public class TransactionsListFragment extends Fragment implements
 		}
 
 		@Override
-		public void onBindViewHolderCursor(ViewHolder holder, Cursor cursor) {
-			holder.transactionId = cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry._ID));
+		public void onBindViewHolder(ViewHolder holder, int position) {
+			prefetchNextPage(position);
+			TransactionListPager.Item item = mItems.get(position);
+			holder.transactionId = item.getId();
 
-			String description = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry.COLUMN_DESCRIPTION));
-			holder.primaryText.setText(description);
+			holder.primaryText.setText(item.getDescription());
 
-			final String transactionUID = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry.COLUMN_UID));
-			Money amount = mTransactionsDbAdapter.getBalance(transactionUID, mAccountUID);
-			TransactionsActivity.displayBalance(holder.transactionAmount, amount);
+			final String transactionUID = item.getUID();
+			TransactionsActivity.displayBalance(holder.transactionAmount, item.getAmount());
 
-			long dateMillis = cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry.COLUMN_TIMESTAMP));
-			String dateText = TransactionsActivity.getPrettyDateFormat(getActivity(), dateMillis);
+			String dateText = TransactionsActivity.getPrettyDateFormat(getActivity(), item.getTimestamp());
 
 			final long id = holder.transactionId;
 			holder.itemView.setOnClickListener(new View.OnClickListener() {
@@ -290,21 +392,13 @@ public class TransactionsListFragment extends Fragment implements
 			if (mUseCompactView) {
 				holder.secondaryText.setText(dateText);
 			} else {
-
-				List<Split> splits = SplitsDbAdapter.getInstance().getSplitsForTransaction(transactionUID);
 				String text = "";
-
-				if (splits.size() == 2 && splits.get(0).isPairOf(splits.get(1))) {
-					for (Split split : splits) {
-						if (!split.getAccountUID().equals(mAccountUID)) {
-							text = AccountsDbAdapter.getInstance().getFullyQualifiedAccountName(split.getAccountUID());
-							break;
-						}
-					}
+				if (item.getSplitCount() == 2 && item.getCounterAccountName() != null) {
+					text = item.getCounterAccountName();
 				}
 
-				if (splits.size() > 2) {
-					text = splits.size() + " splits";
+				if (item.getSplitCount() > 2) {
+					text = item.getSplitCount() + " splits";
 				}
 				holder.secondaryText.setText(text);
 				holder.transactionDate.setText(dateText);
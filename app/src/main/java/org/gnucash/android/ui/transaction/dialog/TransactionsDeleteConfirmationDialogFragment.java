@@ -65,7 +65,7 @@ public class TransactionsDeleteConfirmationDialogFragment extends DialogFragment
                             public void onClick(DialogInterface dialog, int whichButton) {
                                 TransactionsDbAdapter transactionsDbAdapter = TransactionsDbAdapter.getInstance();
                                 if (rowId == 0) {
-                                    GncXmlExporter.createBackup(); //create backup before deleting everything
+                                    GncXmlExporter.createFullBackup(); //create backup before deleting everything
                                     List<Transaction> openingBalances = new ArrayList<Transaction>();
                                     boolean preserveOpeningBalances = GnuCashApplication.shouldSaveOpeningBalances(false);
                                     if (preserveOpeningBalances) {
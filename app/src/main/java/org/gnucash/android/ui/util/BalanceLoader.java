@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.BudgetsDbAdapter;
+import org.gnucash.android.model.Budget;
+import org.gnucash.android.model.Money;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the balances of the accounts shown in a list, in batches on a background thread.
+ * <p>Rows request the balance of their account when they are bound and cancel the request when
+ * they are recycled. All the requests made while the list is laid out are answered with one query,
+ * and rows which show the same account share one request. Loaded balances are kept until
+ * {@link #invalidate()} is called. Batches which were started before that are loaded again.</p>
+ * <p>All methods must be called on the main thread, and the listeners are called on the main thread.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class BalanceLoader {
+    private static final String LOG_TAG = BalanceLoader.class.getSimpleName();
+
+    /**
+     * Receives the balance of an account
+     */
+    public interface OnBalanceLoadedListener {
+        /**
+         * Called when the balance of the requested account has been loaded
+         * @param accountUID GUID of the account
+         * @param balance Balance of the account, including sub-accounts
+         * @param budgetProgress Percentage of the budget of the account which has been spent in the current period,
+         *                       or {@code null} if the progress was not requested or the account has no single budget
+         */
+        void onBalanceLoaded(String accountUID, Money balance, @Nullable Integer budgetProgress);
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Account requested by each listener which is waiting for a balance
+     */
+    private final Map<OnBalanceLoadedListener, String> mListeners = new HashMap<>();
+
+    /**
+     * Accounts whose balance has to be loaded in the next batch, with whether the budget progress is needed.
+     * Accessed from the main thread and the loader thread
+     */
+    private final Map<String, Boolean> mPendingRequests = new HashMap<>();
+
+    private final Map<String, LoadedBalance> mLoadedBalances = new HashMap<>();
+
+    private boolean mBatchScheduled = false;
+
+    /**
+     * Incremented by {@link #invalidate()}. Batches started in an earlier generation may have read
+     * the data before it changed, so their balances are not used
+     */
+    private int mGeneration = 0;
+
+    /**
+     * Requests the balance of an account.
+     * <p>If the balance has already been loaded, the listener is called immediately.
+     * A listener can wait for only one account, so a previous request of the listener is cancelled.</p>
+     * @param listener Listener for the balance, usually the view holder of the row
+     * @param accountUID GUID of the account
+     * @param withBudgetProgress {@code true} if the progress of the budget of the account should be loaded as well
+     */
+    public void requestBalance(@NonNull OnBalanceLoadedListener listener, @NonNull String accountUID,
+                               boolean withBudgetProgress) {
+        cancel(listener);
+        LoadedBalance loadedBalance = mLoadedBalances.get(accountUID);
+        if (loadedBalance != null && (loadedBalance.mHasBudgetProgress || !withBudgetProgress)) {
+            listener.onBalanceLoaded(accountUID, loadedBalance.mBalance, loadedBalance.mBudgetProgress);
+            return;
+        }
+
+        mListeners.put(listener, accountUID);
+        synchronized (mPendingRequests) {
+            Boolean pendingWithBudgetProgress = mPendingRequests.get(accountUID);
+            mPendingRequests.put(accountUID,
+                    withBudgetProgress || (pendingWithBudgetProgress != null && pendingWithBudgetProgress));
+        }
+        if (!mBatchScheduled) {
+            mBatchScheduled = true;
+            // wait for the other rows bound in the same layout pass before starting the batch
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mBatchScheduled = false;
+                    if (!mExecutor.isShutdown())
+                        mExecutor.execute(new BatchLoader(mGeneration));
+                }
+            });
+        }
+    }
+
+    /**
+     * Cancels the request of a listener, for example because its row has been scrolled out of view.
+     * The balance is not loaded if no other listener is waiting for it
+     * @param listener Listener which made the request
+     */
+    public void cancel(@NonNull OnBalanceLoadedListener listener) {
+        String accountUID = mListeners.remove(listener);
+        if (accountUID == null || mListeners.containsValue(accountUID))
+            return;
+        synchronized (mPendingRequests) {
+            mPendingRequests.remove(accountUID);
+        }
+    }
+
+    /**
+     * Discards the loaded balances, so that they are loaded again on the next request.
+     * Call this whenever the accounts or transactions may have changed
+     */
+    public void invalidate() {
+        mLoadedBalances.clear();
+        mGeneration++;
+    }
+
+    /**
+     * Cancels all requests and stops the loader thread. The loader cannot be used afterwards
+     */
+    public void shutdown() {
+        mListeners.clear();
+        synchronized (mPendingRequests) {
+            mPendingRequests.clear();
+        }
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Passes loaded balances to the listeners which are waiting for them.
+     * <p>If the balances were loaded before the last {@link #invalidate()}, they are requested again instead</p>
+     * @param balances Balances by account GUID
+     * @param generation Generation in which the batch was started
+     */
+    private void deliver(Map<String, LoadedBalance> balances, int generation) {
+        boolean stale = generation != mGeneration;
+        if (!stale)
+            mLoadedBalances.putAll(balances);
+        Map<OnBalanceLoadedListener, String> listeners = new HashMap<>(mListeners);
+        for (Map.Entry<OnBalanceLoadedListener, String> entry : listeners.entrySet()) {
+            LoadedBalance loadedBalance = balances.get(entry.getValue());
+            if (loadedBalance == null)
+                continue;
+            if (stale) {
+                requestBalance(entry.getKey(), entry.getValue(), loadedBalance.mHasBudgetProgress);
+                continue;
+            }
+            mListeners.remove(entry.getKey());
+            entry.getKey().onBalanceLoaded(entry.getValue(), loadedBalance.mBalance, loadedBalance.mBudgetProgress);
+        }
+    }
+
+    /**
+     * Loads the balances of all pending requests
+     */
+    private class BatchLoader implements Runnable {
+        private final int mBatchGeneration;
+
+        BatchLoader(int generation) {
+            mBatchGeneration = generation;
+        }
+
+        @Override
+        public void run() {
+            Map<String, Boolean> requests;
+            synchronized (mPendingRequests) {
+                if (mPendingRequests.isEmpty())
+                    return; // answered by an earlier batch or cancelled
+                requests = new HashMap<>(mPendingRequests);
+                mPendingRequests.clear();
+            }
+
+            final Map<String, LoadedBalance> balances = new HashMap<>(requests.size());
+            try {
+                AccountsDbAdapter accountsDbAdapter = AccountsDbAdapter.getInstance();
+                Map<String, Money> accountBalances = accountsDbAdapter.getAccountBalances(
+                        requests.keySet(), -1, System.currentTimeMillis());
+                List<String> budgetAccountUIDs = new ArrayList<>();
+                for (String accountUID : accountBalances.keySet()) {
+                    if (requests.get(accountUID))
+                        budgetAccountUIDs.add(accountUID);
+                }
+                Map<String, Integer> budgetProgress = computeBudgetProgress(accountsDbAdapter, budgetAccountUIDs);
+                for (Map.Entry<String, Money> entry : accountBalances.entrySet()) {
+                    String accountUID = entry.getKey();
+                    balances.put(accountUID, new LoadedBalance(entry.getValue(),
+                            budgetProgress.get(accountUID), requests.get(accountUID)));
+                }
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Error loading account balances", e);
+                Crashlytics.logException(e);
+                return;
+            }
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(balances, mBatchGeneration);
+                }
+            });
+        }
+
+        /**
+         * Computes the progress of the budgets of the accounts which have a single budget.
+         * <p>The budgets of all the accounts are loaded together. The accounts of a budget share its
+         * current period, so their balances in the period are loaded with one query per budget</p>
+         * @param accountsDbAdapter Adapter of the accounts
+         * @param accountUIDs GUIDs of the accounts
+         * @return Budget progress by account GUID. Accounts without a single budget are not included
+         */
+        private Map<String, Integer> computeBudgetProgress(AccountsDbAdapter accountsDbAdapter,
+                                                           Collection<String> accountUIDs) {
+            Map<String, Integer> budgetProgress = new HashMap<>();
+            if (accountUIDs.isEmpty())
+                return budgetProgress;
+
+            Map<Budget, List<String>> accountsByBudget = new HashMap<>();
+            for (Map.Entry<String, List<Budget>> entry
+                    : BudgetsDbAdapter.getInstance().getAccountBudgets(accountUIDs).entrySet()) {
+                if (entry.getValue().size() != 1)
+                    continue;
+                Budget budget = entry.getValue().get(0);
+                List<String> budgetAccountUIDs = accountsByBudget.get(budget);
+                if (budgetAccountUIDs == null) {
+                    budgetAccountUIDs = new ArrayList<>();
+                    accountsByBudget.put(budget, budgetAccountUIDs);
+                }
+                budgetAccountUIDs.add(entry.getKey());
+            }
+
+            for (Map.Entry<Budget, List<String>> entry : accountsByBudget.entrySet()) {
+                Budget budget = entry.getKey();
+                Map<String, Money> periodBalances = accountsDbAdapter.getAccountBalances(entry.getValue(),
+                        budget.getStartofCurrentPeriod(), budget.getEndOfCurrentPeriod());
+                for (Map.Entry<String, Money> balance : periodBalances.entrySet()) {
+                    String accountUID = balance.getKey();
+                    double progress = balance.getValue().divide(budget.getAmount(accountUID))
+                            .asBigDecimal().doubleValue() * 100;
+                    budgetProgress.put(accountUID, (int) progress);
+                }
+            }
+            return budgetProgress;
+        }
+    }
+
+    private static class LoadedBalance {
+        final Money mBalance;
+        final Integer mBudgetProgress;
+        final boolean mHasBudgetProgress;
+
+        LoadedBalance(Money balance, Integer budgetProgress, boolean hasBudgetProgress) {
+            mBalance = balance;
+            mBudgetProgress = budgetProgress;
+            mHasBudgetProgress = hasBudgetProgress;
+        }
+    }
+}
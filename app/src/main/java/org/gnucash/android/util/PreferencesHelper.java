@@ -45,6 +45,18 @@ public final class PreferencesHelper {
      */
     public static final String PREFERENCE_LAST_EXPORT_TIME_KEY = "last_export_time";
 
+    /**
+     * Preference keys for the last backup in the backup folder of a book, on which the next incremental backup is based
+     */
+    private static final String LAST_BACKUP_FILE_KEY = "last_backup_file";
+    private static final String LAST_BACKUP_TIME_KEY = "last_backup_time";
+    private static final String LAST_FULL_BACKUP_TIME_KEY = "last_full_backup_time";
+
+    /**
+     * Preference key for the time of the last maintenance of a book
+     */
+    private static final String LAST_MAINTENANCE_TIME_KEY = "last_maintenance_time";
+
     private static final String AUTOREGISTER_PREF = "autoregister";
     private static final String AUTOREGISTER_VERSION_KEY = "autoregister_provider_version";
     private static final String AUTOREGISTER_ENABLED_KEY = "autoregister_enabled";
@@ -105,6 +117,84 @@ public final class PreferencesHelper {
         return TimestampHelper.getTimestampFromUtcString(utcString);
     }
 
+    /**
+     * Saves the last backup which was written to the backup folder of a book
+     * @param bookUID GUID of the book
+     * @param fileName Name of the backup file
+     * @param startTime Time at which the backup was started
+     * @param fullBackup {@code true} if the file contains the whole book, {@code false} if it is an incremental backup
+     */
+    public static void setLastBackup(String bookUID, String fileName, Timestamp startTime, boolean fullBackup) {
+        String utcString = TimestampHelper.getUtcStringFromTimestamp(startTime);
+        SharedPreferences.Editor editor = GnuCashApplication.getAppContext()
+                .getSharedPreferences(bookUID, Context.MODE_PRIVATE)
+                .edit()
+                .putString(LAST_BACKUP_FILE_KEY, fileName)
+                .putString(LAST_BACKUP_TIME_KEY, utcString);
+        if (fullBackup)
+            editor.putString(LAST_FULL_BACKUP_TIME_KEY, utcString);
+        editor.apply();
+    }
+
+    /**
+     * Returns the name of the last backup file which was written to the backup folder of a book
+     * @param bookUID GUID of the book
+     * @return Name of the backup file, or {@code null} if no backup has been made yet
+     */
+    public static String getLastBackupFile(String bookUID) {
+        return GnuCashApplication.getAppContext()
+                .getSharedPreferences(bookUID, Context.MODE_PRIVATE)
+                .getString(LAST_BACKUP_FILE_KEY, null);
+    }
+
+    /**
+     * Returns the time at which the last backup of a book was started
+     * @param bookUID GUID of the book
+     * @return Start time of the last backup, or the epoch if there has been none
+     */
+    public static Timestamp getLastBackupTime(String bookUID) {
+        return getTimestamp(bookUID, LAST_BACKUP_TIME_KEY);
+    }
+
+    /**
+     * Returns the time at which the last full backup of a book was started
+     * @param bookUID GUID of the book
+     * @return Start time of the last full backup, or the epoch if there has been none
+     */
+    public static Timestamp getLastFullBackupTime(String bookUID) {
+        return getTimestamp(bookUID, LAST_FULL_BACKUP_TIME_KEY);
+    }
+
+    /**
+     * Saves the time at which the last maintenance of a book was run
+     * @param bookUID GUID of the book
+     * @param time Time of the maintenance
+     */
+    public static void setLastMaintenanceTime(String bookUID, Timestamp time) {
+        GnuCashApplication.getAppContext()
+                .getSharedPreferences(bookUID, Context.MODE_PRIVATE)
+                .edit()
+                .putString(LAST_MAINTENANCE_TIME_KEY, TimestampHelper.getUtcStringFromTimestamp(time))
+                .apply();
+    }
+
+    /**
+     * Returns the time at which the last maintenance of a book was run
+     * @param bookUID GUID of the book
+     * @return Time of the last maintenance, or the epoch if there has been none
+     */
+    public static Timestamp getLastMaintenanceTime(String bookUID) {
+        return getTimestamp(bookUID, LAST_MAINTENANCE_TIME_KEY);
+    }
+
+    private static Timestamp getTimestamp(String bookUID, String key) {
+        String utcString = GnuCashApplication.getAppContext()
+                .getSharedPreferences(bookUID, Context.MODE_PRIVATE)
+                .getString(key, null);
+        return utcString == null ? TimestampHelper.getTimestampFromEpochZero()
+                : TimestampHelper.getTimestampFromUtcString(utcString);
+    }
+
     /**
      * Get the current version of auto-register configuration.
      *
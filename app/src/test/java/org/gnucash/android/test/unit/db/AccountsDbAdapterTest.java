@@ -15,6 +15,7 @@
  */
 package org.gnucash.android.test.unit.db;
 
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import org.assertj.core.data.Index;
@@ -22,6 +23,7 @@ import org.gnucash.android.BuildConfig;
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.DatabaseHelper;
+import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
 import org.gnucash.android.db.adapter.BudgetAmountsDbAdapter;
@@ -58,7 +60,10 @@ import org.xml.sax.SAXException;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -351,6 +356,137 @@ public class AccountsDbAdapterTest{
         assertThat(balance).isEqualTo(expectedBalance);
     }
 
+    /**
+     * Tests that the stored account balances follow changes to the splits in the accounts
+     */
+    @Test
+    public void shouldUpdateAccountBalanceWhenSplitsChange(){
+        Account account = new Account("Test", Commodity.USD);
+        account.setAccountType(AccountType.ASSET);
+        Account transferAcct = new Account("Transfer", Commodity.USD);
+        Account otherAcct = new Account("Other", Commodity.USD);
+
+        mAccountsDbAdapter.addRecord(account);
+        mAccountsDbAdapter.addRecord(transferAcct);
+        mAccountsDbAdapter.addRecord(otherAcct);
+
+        Transaction transaction = new Transaction("Test description");
+        Split split = new Split(new Money("25.50", "USD"), account.getUID());
+        split.setType(TransactionType.DEBIT);
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(transferAcct.getUID()));
+        mTransactionsDbAdapter.addRecord(transaction);
+
+        assertThat(mAccountsDbAdapter.getAccountBalance(account.getUID())).isEqualTo(new Money("25.50", "USD"));
+
+        mTransactionsDbAdapter.moveTransaction(transaction.getUID(), account.getUID(), otherAcct.getUID());
+        assertThat(mAccountsDbAdapter.getAccountBalance(account.getUID()).isAmountZero()).isTrue();
+        assertThat(mAccountsDbAdapter.getAccountBalance(otherAcct.getUID())).isEqualTo(new Money("25.50", "USD"));
+
+        mTransactionsDbAdapter.deleteRecord(transaction.getUID());
+        assertThat(mAccountsDbAdapter.getAccountBalance(otherAcct.getUID()).isAmountZero()).isTrue();
+        assertThat(mAccountsDbAdapter.getAccountBalance(transferAcct.getUID()).isAmountZero()).isTrue();
+    }
+
+    /**
+     * Tests that balances computed for all accounts at once include the sub-accounts
+     * and match the balances computed individually
+     */
+    @Test
+    public void shouldRollUpBalancesOfSubAccounts(){
+        Account parent = new Account("Parent", Commodity.USD);
+        parent.setAccountType(AccountType.ASSET);
+        Account child = new Account("Child", Commodity.USD);
+        child.setAccountType(AccountType.ASSET);
+        child.setParentUID(parent.getUID());
+        Account grandChild = new Account("Grandchild", Commodity.USD);
+        grandChild.setAccountType(AccountType.ASSET);
+        grandChild.setParentUID(child.getUID());
+        Account expense = new Account("Expense", Commodity.USD);
+        expense.setAccountType(AccountType.EXPENSE);
+
+        mAccountsDbAdapter.addRecord(parent);
+        mAccountsDbAdapter.addRecord(child);
+        mAccountsDbAdapter.addRecord(grandChild);
+        mAccountsDbAdapter.addRecord(expense);
+
+        Transaction transaction = new Transaction("Salary");
+        Split split = new Split(new Money("100", "USD"), grandChild.getUID());
+        split.setType(TransactionType.DEBIT);
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(expense.getUID()));
+        mTransactionsDbAdapter.addRecord(transaction);
+
+        transaction = new Transaction("Deposit");
+        split = new Split(new Money("25", "USD"), parent.getUID());
+        split.setType(TransactionType.DEBIT);
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(expense.getUID()));
+        mTransactionsDbAdapter.addRecord(transaction);
+
+        assertThat(mAccountsDbAdapter.getDescendantAccountUIDs(parent.getUID(), null, null))
+                .containsExactly(child.getUID(), grandChild.getUID());
+
+        Map<String, Money> balances = mAccountsDbAdapter.getAccountBalances(-1, -1);
+        assertThat(balances.get(grandChild.getUID())).isEqualTo(new Money("100", "USD"));
+        assertThat(balances.get(child.getUID())).isEqualTo(new Money("100", "USD"));
+        assertThat(balances.get(parent.getUID())).isEqualTo(new Money("125", "USD"));
+        assertThat(balances.get(parent.getUID())).isEqualTo(mAccountsDbAdapter.getAccountBalance(parent.getUID()));
+        assertThat(balances.get(expense.getUID())).isEqualTo(mAccountsDbAdapter.getAccountBalance(expense.getUID()));
+
+        mAccountsDbAdapter.reassignDescendantAccounts(child.getUID(), parent.getUID());
+        balances = mAccountsDbAdapter.getAccountBalances(-1, -1);
+        assertThat(balances.get(child.getUID()).isAmountZero()).isTrue();
+        assertThat(balances.get(parent.getUID())).isEqualTo(new Money("125", "USD"));
+    }
+
+    /**
+     * Tests that balances loaded for a set of accounts include the sub-accounts and that
+     * the account list cursor has the number of sub-accounts of each account
+     */
+    @Test
+    public void shouldLoadBalancesOfRequestedAccounts(){
+        Account parent = new Account("Parent", Commodity.USD);
+        parent.setAccountType(AccountType.ASSET);
+        Account child = new Account("Child", Commodity.USD);
+        child.setAccountType(AccountType.ASSET);
+        child.setParentUID(parent.getUID());
+        Account expense = new Account("Expense", Commodity.USD);
+        expense.setAccountType(AccountType.EXPENSE);
+
+        mAccountsDbAdapter.addRecord(parent);
+        mAccountsDbAdapter.addRecord(child);
+        mAccountsDbAdapter.addRecord(expense);
+
+        Transaction transaction = new Transaction("Salary");
+        Split split = new Split(new Money("40", "USD"), child.getUID());
+        split.setType(TransactionType.DEBIT);
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(expense.getUID()));
+        mTransactionsDbAdapter.addRecord(transaction);
+
+        Map<String, Money> balances = mAccountsDbAdapter.getAccountBalances(
+                Arrays.asList(parent.getUID(), expense.getUID(), "non-existent"), -1, System.currentTimeMillis());
+        assertThat(balances).hasSize(2);
+        assertThat(balances.get(parent.getUID())).isEqualTo(new Money("40", "USD"));
+        assertThat(balances.get(parent.getUID())).isEqualTo(mAccountsDbAdapter.getAccountBalance(parent.getUID()));
+        assertThat(balances.get(expense.getUID())).isEqualTo(mAccountsDbAdapter.getAccountBalance(expense.getUID()));
+
+        Cursor cursor = mAccountsDbAdapter.fetchTopLevelAccounts();
+        try {
+            Map<String, Integer> subAccountCounts = new HashMap<>();
+            while (cursor.moveToNext()) {
+                subAccountCounts.put(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_UID)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(AccountsDbAdapter.COLUMN_SUB_ACCOUNT_COUNT)));
+                assertThat(cursor.getInt(cursor.getColumnIndexOrThrow(AccountsDbAdapter.COLUMN_BUDGET_COUNT))).isZero();
+            }
+            assertThat(subAccountCounts.get(parent.getUID())).isEqualTo(1);
+            assertThat(subAccountCounts.get(expense.getUID())).isEqualTo(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Test creating an account hierarchy by specifying fully qualified name
      */
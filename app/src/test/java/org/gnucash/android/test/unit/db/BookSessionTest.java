@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import android.util.Pair;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.adapter.BookSession;
+import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.db.adapter.CommoditiesDbAdapter;
+import org.gnucash.android.db.adapter.PricesDbAdapter;
+import org.gnucash.android.model.BaseModel;
+import org.gnucash.android.model.Price;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test the sharing and closing of book sessions
+ */
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class BookSessionTest {
+
+    /**
+     * GUID of the book opened by the tests, which is not registered in the books database
+     */
+    private String mBookUID;
+
+    @Before
+    public void setUp(){
+        mBookUID = BaseModel.generateUID();
+    }
+
+    @Test
+    public void activeBook_shouldUseSessionAdapters(){
+        BookSession session = GnuCashApplication.getActiveBookSession();
+        assertThat(session.getBookUID()).isEqualTo(BooksDbAdapter.getInstance().getActiveBookUID());
+        assertThat(session.getDatabase()).isSameAs(GnuCashApplication.getActiveDb());
+        assertThat(session.getAccountsDbAdapter()).isSameAs(GnuCashApplication.getAccountsDbAdapter());
+        assertThat(session.getTransactionsDbAdapter()).isSameAs(GnuCashApplication.getTransactionDbAdapter());
+        assertThat(session.getTransactionsDbAdapter().getSplitDbAdapter()).isSameAs(session.getSplitsDbAdapter());
+    }
+
+    @Test
+    public void openingBookTwice_shouldShareSession(){
+        String bookUID = mBookUID;
+        BookSession session = BookSession.open(bookUID);
+        BookSession otherSession = BookSession.open(bookUID);
+        assertThat(otherSession).isSameAs(session);
+        assertThat(otherSession.getAccountsDbAdapter()).isSameAs(session.getAccountsDbAdapter());
+
+        session.close();
+        assertThat(BookSession.evictIdleSessions(0)).isZero();
+        assertThat(session.isOpen()).isTrue();
+
+        otherSession.close();
+        assertThat(BookSession.evictIdleSessions(BookSession.IDLE_TIMEOUT)).isZero();
+        assertThat(session.isOpen()).isTrue();
+        assertThat(BookSession.open(bookUID)).isSameAs(session);
+        session.close();
+
+        assertThat(BookSession.evictIdleSessions(0)).isEqualTo(1);
+        assertThat(session.isOpen()).isFalse();
+        assertThat(GnuCashApplication.getActiveBookSession().isOpen()).isTrue();
+
+        BookSession reopenedSession = BookSession.open(bookUID);
+        assertThat(reopenedSession).isNotSameAs(session);
+        assertThat(reopenedSession.isOpen()).isTrue();
+        assertThat(reopenedSession.getAccountsDbAdapter().getRecordsCount()).isZero();
+        reopenedSession.close();
+        BookSession.evict(bookUID);
+        assertThat(reopenedSession.isOpen()).isFalse();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closingSessionTooOften_shouldThrowException(){
+        BookSession session = BookSession.open(mBookUID);
+        session.close();
+        session.close();
+    }
+
+    @Test
+    public void closingSession_shouldDiscardCachedPrices(){
+        BookSession session = BookSession.open(mBookUID);
+        CommoditiesDbAdapter commoditiesDbAdapter = session.getCommoditiesDbAdapter();
+        String commodityUID = commoditiesDbAdapter.getCommodityUID("EUR");
+        String currencyUID = commoditiesDbAdapter.getCommodityUID("USD");
+        Price price = new Price(commodityUID, currencyUID);
+        price.setValueNum(134);
+        price.setValueDenom(100);
+        session.getPricesDbAdapter().addRecord(price);
+        assertThat(session.getPricesDbAdapter().getPrice(commodityUID, currencyUID)).isEqualTo(new Pair<>(67L, 50L));
+        session.close();
+
+        //a new database at the same path must not see the prices of the old one
+        BookSession.evict(mBookUID);
+        GnuCashApplication.getAppContext().deleteDatabase(mBookUID);
+        session = BookSession.open(mBookUID);
+        PricesDbAdapter pricesDbAdapter = session.getPricesDbAdapter();
+        assertThat(pricesDbAdapter.getPrice(commodityUID, currencyUID)).isEqualTo(new Pair<>(0L, 0L));
+        session.close();
+    }
+
+    @After
+    public void tearDown(){
+        BookSession.evict(mBookUID);
+        GnuCashApplication.getAppContext().deleteDatabase(mBookUID);
+    }
+}
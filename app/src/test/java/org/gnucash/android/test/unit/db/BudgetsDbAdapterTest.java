@@ -38,7 +38,10 @@ import org.junit.runner.RunWith;
 import org.robolectric.annotation.Config;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -132,6 +135,26 @@ public class BudgetsDbAdapterTest {
         assertThat(mBudgetsDbAdapter.getAccountBudgets(mSecondAccount.getUID())).hasSize(1);
     }
 
+    @Test
+    public void getAccountBudgets_shouldOnlyIncludeAmountsOfRequestedAccounts(){
+        mBudgetsDbAdapter.bulkAddRecords(bulkCreateBudgets());
+
+        Map<String, List<Budget>> budgets = mBudgetsDbAdapter.getAccountBudgets(
+                Collections.singletonList(mAccount.getUID()));
+        assertThat(budgets.keySet()).containsOnly(mAccount.getUID());
+        assertThat(budgets.get(mAccount.getUID())).hasSize(2);
+        for (Budget budget : budgets.get(mAccount.getUID())) {
+            assertThat(budget.getRecurrence()).isNotNull();
+            assertThat(budget.getBudgetAmounts()).hasSize(1);
+            assertThat(budget.getAmount(mAccount.getUID())).isNotNull();
+        }
+
+        budgets = mBudgetsDbAdapter.getAccountBudgets(Arrays.asList(mAccount.getUID(), mSecondAccount.getUID()));
+        assertThat(budgets.get(mSecondAccount.getUID())).hasSize(1);
+        assertThat(budgets.get(mSecondAccount.getUID()).get(0).getAmount(mSecondAccount.getUID()).asBigDecimal())
+                .isEqualByComparingTo("32.35");
+    }
+
     @NonNull
     private List<Budget> bulkCreateBudgets() {
         List<Budget> budgets = new ArrayList<>();
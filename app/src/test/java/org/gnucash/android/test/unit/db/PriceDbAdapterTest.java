@@ -1,6 +1,9 @@
 package org.gnucash.android.test.unit.db;
 
+import android.util.Pair;
+
 import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.CommoditiesDbAdapter;
 import org.gnucash.android.db.adapter.PricesDbAdapter;
 import org.gnucash.android.model.Price;
@@ -58,4 +61,47 @@ public class PriceDbAdapterTest {
 
         assertThat(pricesDbAdapter.getRecordsCount()).isEqualTo(2);
     }
+
+    @Test
+    public void shouldReturnLatestPriceInBothDirections(){
+        String commodityUID = CommoditiesDbAdapter.getInstance().getCommodityUID("EUR");
+        String currencyUID = CommoditiesDbAdapter.getInstance().getCommodityUID("USD");
+        PricesDbAdapter pricesDbAdapter = PricesDbAdapter.getInstance();
+        assertThat(pricesDbAdapter.getPrice(commodityUID, currencyUID)).isEqualTo(new Pair<>(0L, 0L));
+        assertThat(pricesDbAdapter.getPrice(commodityUID, commodityUID)).isEqualTo(new Pair<>(1L, 1L));
+
+        Price price = new Price(commodityUID, currencyUID);
+        price.setValueNum(134);
+        price.setValueDenom(100);
+        pricesDbAdapter.addRecord(price);
+
+        assertThat(pricesDbAdapter.getPrice(commodityUID, currencyUID)).isEqualTo(new Pair<>(67L, 50L));
+        assertThat(pricesDbAdapter.getPrice(currencyUID, commodityUID)).isEqualTo(new Pair<>(50L, 67L));
+
+        //adding a price should invalidate the cached prices
+        Price price1 = new Price(commodityUID, currencyUID);
+        price1.setValueNum(187);
+        price1.setValueDenom(100);
+        pricesDbAdapter.addRecord(price1);
+        assertThat(pricesDbAdapter.getPrice(commodityUID, currencyUID)).isEqualTo(new Pair<>(187L, 100L));
+
+        pricesDbAdapter.deleteAllRecords();
+        assertThat(pricesDbAdapter.getPrice(commodityUID, currencyUID)).isEqualTo(new Pair<>(0L, 0L));
+    }
+
+    @Test
+    public void deletingAllAccountsShouldDiscardCachedPrices(){
+        String commodityUID = CommoditiesDbAdapter.getInstance().getCommodityUID("EUR");
+        String currencyUID = CommoditiesDbAdapter.getInstance().getCommodityUID("USD");
+        PricesDbAdapter pricesDbAdapter = PricesDbAdapter.getInstance();
+        Price price = new Price(commodityUID, currencyUID);
+        price.setValueNum(134);
+        price.setValueDenom(100);
+        pricesDbAdapter.addRecord(price);
+        assertThat(pricesDbAdapter.getPrice(commodityUID, currencyUID)).isEqualTo(new Pair<>(67L, 50L));
+
+        //the prices table is emptied by the accounts adapter, e.g. before an import
+        AccountsDbAdapter.getInstance().deleteAllRecords();
+        assertThat(pricesDbAdapter.getPrice(commodityUID, currencyUID)).isEqualTo(new Pair<>(0L, 0L));
+    }
 }
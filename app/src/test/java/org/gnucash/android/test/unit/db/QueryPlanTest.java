@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import org.gnucash.android.db.DatabaseSchema.SplitEntry;
+import org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the query plans of the most frequent queries on splits and transactions.
+ * <p>Each query is planned once with the indexes added in database version 17 and once without them,
+ * and the plan text is checked for the expected index</p>
+ */
+@RunWith(GnucashTestRunner.class) //package is required so that resources can be found in dev mode
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class QueryPlanTest {
+
+    private static final int TRANSACTION_COUNT = 500;
+
+    private static final String[] INDEX_NAMES = new String[]{
+            SplitEntry.INDEX_ACCOUNT_UID,
+            SplitEntry.INDEX_TRANSACTION_UID,
+            TransactionEntry.INDEX_TEMPLATE_TIMESTAMP
+    };
+
+    private SQLiteDatabase mDb;
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+
+    private Account mAccount;
+
+    @Before
+    public void setUp() throws Exception {
+        mDb = GnuCashApplication.getActiveDb();
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        mTransactionsDbAdapter = TransactionsDbAdapter.getInstance();
+
+        mAccount = new Account("Checking");
+        Account expenses = new Account("Expenses");
+        mAccountsDbAdapter.addRecord(mAccount);
+        mAccountsDbAdapter.addRecord(expenses);
+
+        String currencyCode = Commodity.DEFAULT_COMMODITY.getCurrencyCode();
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < TRANSACTION_COUNT; i++) {
+            Transaction transaction = new Transaction("Transaction " + i);
+            transaction.setTime(i * 3600000L);
+            Split split = new Split(new Money(String.valueOf(i), currencyCode), expenses.getUID());
+            transaction.addSplit(split);
+            transaction.addSplit(split.createPair(mAccount.getUID()));
+            transactions.add(transaction);
+        }
+        mTransactionsDbAdapter.bulkAddRecords(transactions, TransactionsDbAdapter.UpdateMethod.insert);
+    }
+
+    @Test
+    public void shouldCreateViewsAndIndexes(){
+        for (String indexName : INDEX_NAMES) {
+            assertThat(getSchemaSql("index", indexName)).isNotNull();
+        }
+        assertThat(getSchemaSql("view", "trans_split_acct")).isNotNull();
+        assertThat(getSchemaSql("view", "trans_extra_info")).isNotNull();
+    }
+
+    @Test
+    public void splitBalanceQueryShouldUseAccountIndex(){
+        String sql = SQLiteQueryBuilder.buildQueryString(false, "trans_split_acct",
+                new String[]{"TOTAL ( CASE WHEN " + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "
+                        + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM + " ELSE - "
+                        + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM + " END )",
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_DENOM,
+                        AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_CURRENCY},
+                AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID + " in ( '" + mAccount.getUID() + "' ) AND "
+                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " = 0 AND "
+                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " BETWEEN ? AND ?",
+                AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_CURRENCY, null, null, null);
+        String[] args = new String[]{"0", String.valueOf(TRANSACTION_COUNT * 3600000L / 2)};
+
+        List<String> plan = compareQueryPlans(sql, args);
+        assertNoFullScan(plan, SplitEntry.TABLE_NAME);
+        assertUsesIndex(plan, SplitEntry.INDEX_ACCOUNT_UID);
+    }
+
+    @Test
+    public void transactionsForAccountQueryShouldUseAccountIndex(){
+        String sql = SQLiteQueryBuilder.buildQueryString(true,
+                TransactionEntry.TABLE_NAME + " INNER JOIN " + SplitEntry.TABLE_NAME + " ON "
+                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID,
+                new String[]{TransactionEntry.TABLE_NAME + ".*"},
+                SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?"
+                        + " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " = 0",
+                null, null, TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " DESC", null);
+        String[] args = new String[]{mAccount.getUID()};
+
+        List<String> plan = compareQueryPlans(sql, args);
+        assertNoFullScan(plan, SplitEntry.TABLE_NAME);
+        assertNoFullScan(plan, TransactionEntry.TABLE_NAME);
+        assertUsesIndex(plan, SplitEntry.INDEX_ACCOUNT_UID);
+    }
+
+    @Test
+    public void qifExportQueryShouldUseTransactionIndex(){
+        String sql = SQLiteQueryBuilder.buildQueryString(false,
+                "trans_split_acct , trans_extra_info ON trans_extra_info.trans_acct_t_uid = trans_split_acct."
+                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID + " , "
+                        + AccountEntry.TABLE_NAME + " AS account1 ON account1." + AccountEntry.COLUMN_UID
+                        + " = trans_extra_info.trans_acct_a_uid",
+                new String[]{TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID + " AS trans_uid",
+                        TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " AS trans_time",
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM + " AS split_quantity_num",
+                        "trans_extra_info.trans_split_count AS trans_split_count",
+                        "account1." + AccountEntry.COLUMN_CURRENCY + " AS acct1_currency"},
+                TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " == 0 AND "
+                        + "( " + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID + " != account1." + AccountEntry.COLUMN_UID
+                        + " OR trans_split_count == 1 )",
+                null, null, "acct1_currency ASC, trans_time ASC, trans_uid ASC", null);
+
+        List<String> plan = compareQueryPlans(sql, null);
+        boolean usesIndex = false;
+        for (String detail : plan) {
+            if (detail.contains(SplitEntry.INDEX_TRANSACTION_UID) || detail.contains(SplitEntry.INDEX_ACCOUNT_UID)
+                    || detail.contains(TransactionEntry.INDEX_TEMPLATE_TIMESTAMP)) {
+                usesIndex = true;
+            }
+        }
+        assertThat(usesIndex).isTrue();
+    }
+
+    /**
+     * Plans a query without and with the indexes of database version 17 and checks that the indexes change the plan
+     * @return Query plan with the indexes in place
+     */
+    private List<String> compareQueryPlans(String sql, String[] args){
+        List<String> indexSql = new ArrayList<>();
+        for (String indexName : INDEX_NAMES) {
+            indexSql.add(getSchemaSql("index", indexName));
+            mDb.execSQL("DROP INDEX '" + indexName + "'");
+        }
+        List<String> planBefore = getQueryPlan(sql, args);
+
+        for (String createIndex : indexSql) {
+            mDb.execSQL(createIndex);
+        }
+        List<String> planAfter = getQueryPlan(sql, args);
+
+        assertThat(planAfter).isNotEqualTo(planBefore);
+        return planAfter;
+    }
+
+    private List<String> getQueryPlan(String sql, String[] args){
+        List<String> plan = new ArrayList<>();
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detailIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan;
+    }
+
+    private String getSchemaSql(String type, String name){
+        Cursor cursor = mDb.rawQuery("SELECT sql FROM sqlite_master WHERE type = ? AND name = ?",
+                new String[]{type, name});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertNoFullScan(List<String> plan, String tableName){
+        for (String detail : plan) {
+            if (detail.matches("SCAN (TABLE )?" + tableName + "\\b.*")) {
+                assertThat(detail).contains("INDEX");
+            }
+        }
+    }
+
+    private static void assertUsesIndex(List<String> plan, String indexName){
+        boolean usesIndex = false;
+        for (String detail : plan) {
+            if (detail.contains(indexName))
+                usesIndex = true;
+        }
+        assertThat(usesIndex).isTrue();
+    }
+
+    @After
+    public void tearDown(){
+        mAccountsDbAdapter.deleteAllRecords();
+    }
+}
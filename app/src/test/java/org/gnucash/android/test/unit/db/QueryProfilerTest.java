@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import android.database.Cursor;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.QueryProfiler;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test the measuring of database queries
+ */
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class QueryProfilerTest {
+
+    private AccountsDbAdapter mAccountsDbAdapter;
+
+    @Before
+    public void setUp() {
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        QueryProfiler.reset();
+    }
+
+    @After
+    public void tearDown() {
+        QueryProfiler.setEnabled(false);
+        QueryProfiler.setSlowQueryThreshold(QueryProfiler.DEFAULT_SLOW_QUERY_THRESHOLD);
+        QueryProfiler.reset();
+    }
+
+    @Test
+    public void disabledProfiler_shouldNotMeasureQueries() {
+        QueryProfiler.setEnabled(false);
+        mAccountsDbAdapter.addRecord(new Account("Bank"));
+        Cursor cursor = mAccountsDbAdapter.fetchAllRecordsOrderedByFullName();
+        assertThat(cursor.getCount()).isGreaterThan(0);
+        cursor.close();
+
+        assertThat(QueryProfiler.getStatistics()).isEmpty();
+        assertThat(QueryProfiler.getSlowQueries()).isEmpty();
+    }
+
+    @Test
+    public void enabledProfiler_shouldRecordQueriesByCallSite() throws IOException {
+        QueryProfiler.setEnabled(true);
+        QueryProfiler.setSlowQueryThreshold(0);
+        mAccountsDbAdapter.addRecord(new Account("Bank"));
+        mAccountsDbAdapter.addRecord(new Account("Cash"));
+        Cursor cursor = mAccountsDbAdapter.fetchAllRecordsOrderedByFullName();
+        int accountCount = cursor.getCount();
+        cursor.close();
+
+        List<QueryProfiler.CallSiteStatistics> statistics = QueryProfiler.getStatistics();
+        QueryProfiler.CallSiteStatistics fetchStatistics = null;
+        QueryProfiler.CallSiteStatistics addStatistics = null;
+        for (QueryProfiler.CallSiteStatistics callSiteStatistics : statistics) {
+            if (callSiteStatistics.getCallSite().equals("AccountsDbAdapter.fetchAllRecordsOrderedByFullName"))
+                fetchStatistics = callSiteStatistics;
+            if (callSiteStatistics.getCallSite().startsWith("DatabaseAdapter.addRecord"))
+                addStatistics = callSiteStatistics;
+        }
+        assertThat(fetchStatistics).isNotNull();
+        assertThat(fetchStatistics.getCount()).isEqualTo(1);
+        assertThat(fetchStatistics.getRowCount()).isEqualTo(accountCount);
+        assertThat(addStatistics).isNotNull();
+        assertThat(addStatistics.getCount()).isGreaterThanOrEqualTo(2);
+
+        long histogramCount = 0;
+        for (long bucketCount : fetchStatistics.getHistogram()) {
+            histogramCount += bucketCount;
+        }
+        assertThat(histogramCount).isEqualTo(1);
+
+        QueryProfiler.SlowQuery slowQuery = null;
+        for (QueryProfiler.SlowQuery query : QueryProfiler.getSlowQueries()) {
+            if (query.getCallSite().equals("AccountsDbAdapter.fetchAllRecordsOrderedByFullName"))
+                slowQuery = query;
+        }
+        assertThat(slowQuery).isNotNull();
+        assertThat(slowQuery.getSql()).contains("SELECT");
+
+        StringWriter writer = new StringWriter();
+        QueryProfiler.dump(writer);
+        assertThat(writer.toString()).contains("AccountsDbAdapter.fetchAllRecordsOrderedByFullName");
+    }
+
+    @Test
+    public void enabledProfiler_shouldRecordUpdatesWithTheirQueryPlan() {
+        Account account = new Account("Bank");
+        mAccountsDbAdapter.addRecord(account);
+        QueryProfiler.setEnabled(true);
+        QueryProfiler.setSlowQueryThreshold(0);
+        mAccountsDbAdapter.updateRecord(account.getUID(), DatabaseSchema.AccountEntry.COLUMN_NAME, "Savings");
+
+        QueryProfiler.SlowQuery slowQuery = null;
+        for (QueryProfiler.SlowQuery query : QueryProfiler.getSlowQueries()) {
+            if (query.getCallSite().startsWith("DatabaseAdapter.update"))
+                slowQuery = query;
+        }
+        assertThat(slowQuery).isNotNull();
+        assertThat(slowQuery.getSql()).startsWith("UPDATE " + DatabaseSchema.AccountEntry.TABLE_NAME + " SET ");
+        assertThat(slowQuery.getRowCount()).isEqualTo(1);
+        assertThat(slowQuery.getQueryPlan()).isNotEmpty();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.ReportAggregator;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.ui.report.ReportsActivity.GroupInterval;
+import org.joda.time.LocalDateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(GnucashTestRunner.class) //package is required so that resources can be found in dev mode
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class ReportAggregatorTest {
+
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+
+    private Account mGroceries;
+    private Account mRent;
+    private Account mBank;
+    private String mCurrencyCode;
+
+    @Before
+    public void setUp() throws Exception {
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        mTransactionsDbAdapter = TransactionsDbAdapter.getInstance();
+
+        mGroceries = new Account("Groceries");
+        mGroceries.setAccountType(AccountType.EXPENSE);
+        mRent = new Account("Rent");
+        mRent.setAccountType(AccountType.EXPENSE);
+        mBank = new Account("Bank");
+        mBank.setAccountType(AccountType.BANK);
+        mAccountsDbAdapter.addRecord(mGroceries);
+        mAccountsDbAdapter.addRecord(mRent);
+        mAccountsDbAdapter.addRecord(mBank);
+        mCurrencyCode = mGroceries.getCommodity().getCurrencyCode();
+    }
+
+    private void addExpense(Account expenseAccount, String amount, LocalDateTime date){
+        Transaction transaction = new Transaction(expenseAccount.getName());
+        transaction.setTime(date.toDate().getTime());
+        Split split = new Split(new Money(amount, mCurrencyCode), expenseAccount.getUID());
+        split.setType(TransactionType.DEBIT);
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(mBank.getUID()));
+        mTransactionsDbAdapter.addRecord(transaction);
+    }
+
+    @Test
+    public void shouldGroupBalancesByMonth(){
+        addExpense(mGroceries, "10", new LocalDateTime(2016, 1, 5, 12, 0));
+        addExpense(mGroceries, "15", new LocalDateTime(2016, 1, 20, 12, 0));
+        addExpense(mRent, "500", new LocalDateTime(2016, 1, 1, 12, 0));
+        addExpense(mGroceries, "7", new LocalDateTime(2016, 3, 31, 12, 0));
+        addExpense(mRent, "500", new LocalDateTime(2016, 4, 1, 12, 0));
+
+        ReportAggregator.BalanceMatrix balances = new ReportAggregator(mAccountsDbAdapter).getBalances(
+                Arrays.asList(mGroceries.getUID(), mRent.getUID()), GroupInterval.MONTH,
+                new LocalDateTime(2016, 1, 15, 0, 0).toDate().getTime(),
+                new LocalDateTime(2016, 3, 1, 0, 0).toDate().getTime(), mCurrencyCode);
+
+        assertThat(balances.getPeriodCount()).isEqualTo(3);
+        assertThat(balances.getBalance(mGroceries.getUID(), 0)).isEqualTo(new Money("25", mCurrencyCode));
+        assertThat(balances.getBalance(mGroceries.getUID(), 1).isAmountZero()).isTrue();
+        assertThat(balances.getBalance(mGroceries.getUID(), 2)).isEqualTo(new Money("7", mCurrencyCode));
+        assertThat(balances.getBalance(mRent.getUID(), 0)).isEqualTo(new Money("500", mCurrencyCode));
+        assertThat(balances.getBalance(mRent.getUID(), 2).isAmountZero()).isTrue();
+        assertThat(balances.getTotal(Arrays.asList(mGroceries.getUID(), mRent.getUID()), 0))
+                .isEqualTo(new Money("525", mCurrencyCode));
+    }
+
+    @Test
+    public void shouldMatchAccountBalanceForWholeRange(){
+        addExpense(mGroceries, "10", new LocalDateTime(2015, 12, 5, 12, 0));
+        addExpense(mGroceries, "15", new LocalDateTime(2016, 6, 20, 12, 0));
+
+        ReportAggregator.BalanceMatrix balances = new ReportAggregator(mAccountsDbAdapter).getBalances(
+                Arrays.asList(mGroceries.getUID(), mBank.getUID()), GroupInterval.ALL, -1, -1, mCurrencyCode);
+
+        assertThat(balances.getPeriodCount()).isEqualTo(1);
+        assertThat(balances.getBalance(mGroceries.getUID(), 0)).isEqualTo(mAccountsDbAdapter.getAccountBalance(mGroceries.getUID()));
+        assertThat(balances.getBalance(mBank.getUID(), 0)).isEqualTo(mAccountsDbAdapter.getAccountBalance(mBank.getUID()));
+    }
+
+    @After
+    public void tearDown(){
+        mAccountsDbAdapter.deleteAllRecords();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.adapter.DatabaseAdapter;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.test.unit.testutil.SyntheticBook;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures how fast splits are written by bulk inserts, the way the XML importer writes them:
+ * in one database transaction, in batches, with foreign keys and balance updates disabled.
+ * <p>Each run compares single-row statements, multi-row statements, and multi-row statements
+ * with the bulk import pragmas. The benchmarks only run if the environment variable
+ * {@code GNUCASH_BENCHMARK} is set, the inserted rows are checked by {@link SplitsDbAdapterTest}</p>
+ */
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class SplitsDbAdapterBenchmarkTest {
+
+    private static final String ACCOUNT_UID = "a0000000000000000000000000000000";
+
+    @Test
+    public void benchmark20kSplits() {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        benchmark(20000);
+    }
+
+    @Test
+    public void benchmark1MSplits() {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        benchmark(1000000);
+    }
+
+    private void benchmark(int splitCount) {
+        List<Split> splits = createSplits(splitCount);
+        insertSplits(splits, false, false);
+        insertSplits(splits, true, false);
+        insertSplits(splits, true, true);
+    }
+
+    /**
+     * Writes the splits to a new book and prints the number of rows written per second
+     * @param splits Splits to write
+     * @param multiRow Whether to write several rows per statement
+     * @param importMode Whether to apply the bulk import pragmas
+     */
+    private void insertSplits(List<Split> splits, boolean multiRow, boolean importMode) {
+        SyntheticBook book = new SyntheticBook();
+        SplitsDbAdapter splitsDbAdapter = new SplitsDbAdapter(book.getDatabase());
+        splitsDbAdapter.enableMultiRowInserts(multiRow);
+        splitsDbAdapter.enableBalanceUpdates(false);
+        splitsDbAdapter.enableForeignKey(false);
+
+        long start = System.nanoTime();
+        if (importMode)
+            splitsDbAdapter.enableBulkImportMode(true);
+        splitsDbAdapter.beginTransaction();
+        try {
+            for (int i = 0; i < splits.size(); i += SyntheticBook.BATCH_SIZE) {
+                splitsDbAdapter.bulkAddRecords(splits.subList(i, Math.min(i + SyntheticBook.BATCH_SIZE, splits.size())),
+                        DatabaseAdapter.UpdateMethod.insert);
+            }
+            splitsDbAdapter.setTransactionSuccessful();
+        } finally {
+            splitsDbAdapter.endTransaction();
+            if (importMode)
+                splitsDbAdapter.enableBulkImportMode(false);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        System.out.println(String.format(Locale.US, "%s statements%s: %d splits in %d ms, %.0f rows/s",
+                multiRow ? "multi-row" : "single-row", importMode ? " with import pragmas" : "",
+                splits.size(), elapsedMillis, splits.size() * 1000.0 / Math.max(elapsedMillis, 1)));
+        assertThat(splitsDbAdapter.getRecordsCount()).isEqualTo(splits.size());
+
+        book.delete();
+    }
+
+    /**
+     * Creates pairs of splits, each pair with its own transaction GUID.
+     * The transactions are not saved, like when splits are imported before their transactions
+     */
+    private static List<Split> createSplits(int splitCount) {
+        List<Split> splits = new ArrayList<>(splitCount);
+        for (int i = 0; i < splitCount / 2; i++) {
+            Split split = SyntheticBook.createSplit(i, "EUR", ACCOUNT_UID);
+            split.setTransactionUID(String.format(Locale.US, "%032x", i));
+            splits.add(split);
+            splits.add(split.createPair(ACCOUNT_UID));
+        }
+        return splits;
+    }
+}
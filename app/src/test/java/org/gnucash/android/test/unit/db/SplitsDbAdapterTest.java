@@ -16,13 +16,17 @@
 package org.gnucash.android.test.unit.db;
 
 import android.database.sqlite.SQLiteException;
+import android.support.annotation.Nullable;
 
 import org.gnucash.android.BuildConfig;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.BooksDbAdapter;
 import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.adapter.DatabaseAdapter;
 import org.gnucash.android.db.adapter.SplitsDbAdapter;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Commodity;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
@@ -35,6 +39,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -120,8 +126,121 @@ public class SplitsDbAdapterTest {
         assertThat(Boolean.parseBoolean(isExported)).isFalse();
     }
 
+    @Test
+    public void savingTransaction_shouldNotifyBalanceChangesOfItsAccounts(){
+        Account transferAccount = new Account("Transfer account");
+        mAccountsDbAdapter.addRecord(transferAccount);
+        final List<String> changedAccountUIDs = new ArrayList<>();
+        final List<String> bookUIDs = new ArrayList<>();
+        SplitsDbAdapter.setOnBalancesChangedListener(new SplitsDbAdapter.OnBalancesChangedListener() {
+            @Override
+            public void onBalancesChanged(String bookUID, @Nullable Collection<String> accountUIDs) {
+                bookUIDs.add(bookUID);
+                changedAccountUIDs.addAll(accountUIDs);
+            }
+        });
+
+        Transaction transaction = new Transaction("Groceries");
+        Split split = new Split(new Money("10", Commodity.DEFAULT_COMMODITY.getCurrencyCode()), mAccount.getUID());
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(transferAccount.getUID()));
+        mTransactionsDbAdapter.addRecord(transaction);
+
+        assertThat(bookUIDs).containsOnly(BooksDbAdapter.getInstance().getActiveBookUID());
+        assertThat(changedAccountUIDs).contains(mAccount.getUID(), transferAccount.getUID());
+    }
+
+    /**
+     * Readers on other connections only see the new balances once the outermost transaction is committed,
+     * so the changes made in a transaction are only notified when it ends
+     */
+    @Test
+    public void balanceChangesInTransaction_shouldBeNotifiedWhenItEnds(){
+        final List<String> changedAccountUIDs = new ArrayList<>();
+        SplitsDbAdapter.setOnBalancesChangedListener(new SplitsDbAdapter.OnBalancesChangedListener() {
+            @Override
+            public void onBalancesChanged(String bookUID, @Nullable Collection<String> accountUIDs) {
+                changedAccountUIDs.addAll(accountUIDs);
+            }
+        });
+
+        Transaction transaction = new Transaction("Groceries");
+        transaction.addSplit(new Split(new Money("10", Commodity.DEFAULT_COMMODITY.getCurrencyCode()), mAccount.getUID()));
+        mTransactionsDbAdapter.beginTransaction();
+        try {
+            mTransactionsDbAdapter.addRecord(transaction);
+            assertThat(changedAccountUIDs).isEmpty();
+            mTransactionsDbAdapter.setTransactionSuccessful();
+        } finally {
+            mTransactionsDbAdapter.endTransaction();
+        }
+        assertThat(changedAccountUIDs).contains(mAccount.getUID());
+    }
+
+    /**
+     * Bulk inserts write several splits per statement. The splits must be saved as if they had been
+     * written one at a time, including those of the last, partial statement
+     */
+    @Test
+    public void bulkAddRecords_shouldSaveSplitsOfEveryStatement(){
+        Account transferAccount = new Account("Transfer account");
+        mAccountsDbAdapter.addRecord(transferAccount);
+        List<Transaction> transactions = new ArrayList<>();
+        List<Split> splits = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            Transaction transaction = new Transaction("Transaction " + i);
+            Split split = new Split(new Money(String.valueOf(i + 1), Commodity.DEFAULT_COMMODITY.getCurrencyCode()), mAccount.getUID());
+            if (i % 2 == 0)
+                split.setMemo("Memo " + i);
+            transaction.addSplit(split);
+            transaction.addSplit(split.createPair(transferAccount.getUID()));
+            transactions.add(transaction);
+            splits.addAll(transaction.getSplits());
+        }
+        mTransactionsDbAdapter.bulkAddRecords(transactions, DatabaseAdapter.UpdateMethod.insert);
+
+        assertThat(mTransactionsDbAdapter.getRecordsCount()).isEqualTo(transactions.size());
+        assertThat(mSplitsDbAdapter.getRecordsCount()).isEqualTo(splits.size());
+        for (Transaction transaction : transactions) {
+            assertThat(mSplitsDbAdapter.getSplitsForTransaction(transaction.getUID()))
+                    .containsOnly(transaction.getSplits().toArray(new Split[2]));
+        }
+        assertThat(mAccountsDbAdapter.getAccountBalance(mAccount.getUID(), -1, -1).abs().asBigDecimal())
+                .isEqualByComparingTo("11325");
+
+        for (Split split : splits) {
+            split.setMemo("Replaced");
+        }
+        mSplitsDbAdapter.bulkAddRecords(splits, DatabaseAdapter.UpdateMethod.replace);
+        assertThat(mSplitsDbAdapter.getRecordsCount()).isEqualTo(splits.size());
+        assertThat(mSplitsDbAdapter.getSplitsForTransaction(transactions.get(0).getUID()).get(0).getMemo())
+                .isEqualTo("Replaced");
+    }
+
+    @Test
+    public void closedAdapter_shouldCompileItsStatementsAgain(){
+        Transaction transaction = new Transaction("");
+        mTransactionsDbAdapter.addRecord(transaction);
+        Split first = new Split(Money.getZeroInstance(), mAccount.getUID());
+        first.setTransactionUID(transaction.getUID());
+        Split second = new Split(Money.getZeroInstance(), mAccount.getUID());
+        second.setTransactionUID(transaction.getUID());
+        List<Split> splits = new ArrayList<>();
+        splits.add(first);
+        splits.add(second);
+        mSplitsDbAdapter.bulkAddRecords(splits, DatabaseAdapter.UpdateMethod.insert);
+
+        mSplitsDbAdapter.close();
+        first.setMemo("Replaced");
+        mSplitsDbAdapter.bulkAddRecords(splits, DatabaseAdapter.UpdateMethod.replace);
+
+        assertThat(mSplitsDbAdapter.getRecordsCount()).isEqualTo(2);
+        assertThat(mSplitsDbAdapter.getRecord(first.getUID()).getMemo()).isEqualTo("Replaced");
+    }
+
     @After
     public void tearDown(){
+        SplitsDbAdapter.setOnBalancesChangedListener(null);
         mAccountsDbAdapter.deleteAllRecords();
     }
 }
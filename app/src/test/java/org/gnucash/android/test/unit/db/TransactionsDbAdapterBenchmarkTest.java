@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import android.database.Cursor;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.test.unit.testutil.SyntheticBook;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the cost of small calls to {@link TransactionsDbAdapter#bulkAddRecords(List)}
+ * as the book grows. The cost should not depend on the number of transactions already in the book.
+ * <p>The benchmarks only run if the environment variable {@code GNUCASH_BENCHMARK} is set,
+ * since they compare wall-clock times</p>
+ */
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class TransactionsDbAdapterBenchmarkTest {
+
+    /**
+     * Number of small bulk inserts timed at each book size
+     */
+    private static final int CALLS = 50;
+
+    /**
+     * Number of transactions in each of the timed bulk inserts
+     */
+    private static final int TRANSACTIONS_PER_CALL = 3;
+
+    /**
+     * Maximum number of results of the timed searches, as on the search screen
+     */
+    private static final int SEARCH_LIMIT = 100;
+
+    private SyntheticBook mBook;
+
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+
+    @Before
+    public void setUp() throws Exception {
+        mBook = new SyntheticBook().addAccounts("EUR", 1);
+        mTransactionsDbAdapter = mBook.getTransactionsDbAdapter();
+    }
+
+    @Test
+    public void benchmarkSmallBulkInserts() {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        double smallBookMillis = timeSmallBulkInserts(1000);
+        double largeBookMillis = timeSmallBulkInserts(10000);
+        assertThat(mTransactionsDbAdapter.getRecordsCount()).isEqualTo(mBook.getTransactionCount());
+        // generous bound, the point is that the cost does not grow with the size of the book
+        assertThat(largeBookMillis).isLessThan(Math.max(smallBookMillis, 1) * 5);
+    }
+
+    @Test
+    public void benchmarkSmallBulkInserts100kTransactions() {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        timeSmallBulkInserts(1000);
+        timeSmallBulkInserts(10000);
+        timeSmallBulkInserts(100000);
+    }
+
+    /**
+     * Searches in a book of 20k transactions, and reads the results like the search screen does.
+     * A search should take less than 10 ms
+     */
+    @Test
+    public void benchmarkSearch() {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        timeSmallBulkInserts(20000);
+        String[] queries = {"purch", "purchase 1", "purchase 19999", "nothing"};
+        int searches = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            for (String query : queries) {
+                Cursor cursor = mTransactionsDbAdapter.searchTransactions(query, SEARCH_LIMIT);
+                try {
+                    int nameColumn = cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_FULL_NAME);
+                    while (cursor.moveToNext()) {
+                        assertThat(cursor.getString(nameColumn)).isNotNull();
+                    }
+                } finally {
+                    cursor.close();
+                }
+                searches++;
+            }
+        }
+        double meanMillis = (System.nanoTime() - start) / 1e6 / searches;
+        System.out.println(String.format(Locale.US, "searchTransactions in a book of %d: %.2f ms",
+                mBook.getTransactionCount(), meanMillis));
+        assertThat(meanMillis).isLessThan(10);
+    }
+
+    /**
+     * Grows the book and times {@value #CALLS} bulk inserts of {@value #TRANSACTIONS_PER_CALL} transactions
+     * @param bookSize Number of transactions in the book before the timed inserts
+     * @return Mean time of a bulk insert in milliseconds
+     */
+    private double timeSmallBulkInserts(int bookSize) {
+        mBook.addTransactions(bookSize - mBook.getTransactionCount());
+
+        long totalNanos = 0;
+        for (int i = 0; i < CALLS; i++) {
+            List<Transaction> batch = mBook.createTransactions(TRANSACTIONS_PER_CALL);
+            long start = System.nanoTime();
+            mTransactionsDbAdapter.bulkAddRecords(batch);
+            totalNanos += System.nanoTime() - start;
+        }
+        double meanMillis = totalNanos / 1e6 / CALLS;
+        System.out.println(String.format(Locale.US, "bulkAddRecords of %d transactions in a book of %d: %.2f ms",
+                TRANSACTIONS_PER_CALL, bookSize, meanMillis));
+        return meanMillis;
+    }
+}
@@ -15,19 +15,30 @@
  */
 package org.gnucash.android.test.unit.db;
 
+import android.database.Cursor;
+import android.text.format.DateUtils;
+
 import org.assertj.core.data.Index;
 import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.DatabaseAdapter;
+import org.gnucash.android.db.adapter.ScheduledActionDbAdapter;
 import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionListPager;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.model.Account;
 import org.gnucash.android.model.Commodity;
 import org.gnucash.android.model.Money;
+import org.gnucash.android.model.PeriodType;
+import org.gnucash.android.model.Recurrence;
+import org.gnucash.android.model.ScheduledAction;
 import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
 import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
 import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
 import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.joda.time.DateTime;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -35,6 +46,9 @@ import org.junit.runner.RunWith;
 import org.robolectric.annotation.Config;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Currency;
 import java.util.List;
 
@@ -145,6 +159,201 @@ public class TransactionsDbAdapterTest {
 		assertThat(savedBalance.getCommodity()).isEqualTo(secondSplitAmount.getCommodity());
 	}
 
+	@Test
+	public void shouldLoadTransactionsOfAccountInPages(){
+		long time = System.currentTimeMillis();
+		List<String> expectedOrder = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			Transaction transaction = new Transaction("Transaction " + i);
+			transaction.setTime(i < 3 ? time : time - i * 1000); //several transactions at the same time
+			Split split = new Split(new Money("1" + i, DEFAULT_CURRENCY.getCurrencyCode()), alphaAccount.getUID());
+			transaction.addSplit(split);
+			transaction.addSplit(split.createPair(bravoAccount.getUID()));
+			mTransactionsDbAdapter.addRecord(transaction);
+			expectedOrder.add(transaction.getUID());
+		}
+		//newest first, then by GUID
+		Collections.sort(expectedOrder.subList(0, 3), Collections.<String>reverseOrder());
+
+		Transaction splitTransaction = new Transaction("Not in the account");
+		splitTransaction.addSplit(new Split(new Money("5", DEFAULT_CURRENCY.getCurrencyCode()), bravoAccount.getUID()));
+		mTransactionsDbAdapter.addRecord(splitTransaction);
+
+		TransactionListPager pager = new TransactionListPager(mTransactionsDbAdapter, alphaAccount.getUID(), 2);
+		List<TransactionListPager.Item> items = new ArrayList<>();
+		List<TransactionListPager.Item> page = pager.loadPage(null);
+		while (!page.isEmpty()) {
+			assertThat(page.size()).isLessThanOrEqualTo(2);
+			items.addAll(page);
+			page = pager.loadPage(page.get(page.size() - 1));
+		}
+
+		assertThat(items).extracting("mUID").containsExactlyElementsOf(expectedOrder);
+		for (TransactionListPager.Item item : items) {
+			Transaction transaction = mTransactionsDbAdapter.getRecord(item.getUID());
+			assertThat(item.getAmount()).isEqualTo(mTransactionsDbAdapter.getBalance(item.getUID(), alphaAccount.getUID()));
+			assertThat(item.getSplitCount()).isEqualTo(transaction.getSplits().size());
+			assertThat(item.getCounterAccountName())
+					.isEqualTo(mAccountsDbAdapter.getFullyQualifiedAccountName(bravoAccount.getUID()));
+		}
+	}
+
+	@Test
+	public void suggestions_shouldMatchWordPrefixesRankedByUse(){
+		long now = System.currentTimeMillis();
+		addTransaction("Weekly groceries", now - DateUtils.WEEK_IN_MILLIS, null);
+		addTransaction("Weekly groceries", now - 2 * DateUtils.WEEK_IN_MILLIS, null);
+		addTransaction("Grocery delivery", now, null);
+		addTransaction("Rent", now, null);
+
+		Cursor cursor = mTransactionsDbAdapter.fetchTransactionSuggestions("gro", alphaAccount.getUID());
+		List<String> descriptions = new ArrayList<>();
+		while (cursor.moveToNext()) {
+			descriptions.add(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry.COLUMN_DESCRIPTION)));
+		}
+		cursor.close();
+		assertThat(descriptions).containsExactly("Weekly groceries", "Grocery delivery");
+
+		cursor = mTransactionsDbAdapter.fetchTransactionSuggestions("gro", bravoAccount.getUID());
+		assertThat(cursor.getCount()).isZero();
+		cursor.close();
+	}
+
+	@Test
+	public void search_shouldFollowChangesOfDescriptionsAndMemos(){
+		Transaction transaction = addTransaction("Hardware store", System.currentTimeMillis(), "Garden hose");
+		assertThat(searchCount("garden")).isEqualTo(1);
+		assertThat(searchCount("hard sto")).isEqualTo(1);
+		assertThat(searchCount("hose OR")).isZero();
+		assertThat(searchCount("")).isZero();
+
+		transaction.setDescription("Pharmacy");
+		transaction.getSplits().get(0).setMemo(null);
+		mTransactionsDbAdapter.addRecord(transaction);
+		assertThat(searchCount("hardware")).isZero();
+		assertThat(searchCount("garden")).isZero();
+		assertThat(searchCount("pharm")).isEqualTo(1);
+
+		mTransactionsDbAdapter.deleteRecord(transaction.getUID());
+		assertThat(searchCount("pharm")).isZero();
+	}
+
+	@Test
+	public void search_shouldReturnFullNameOfAccount(){
+		Account child = new Account("Groceries");
+		child.setParentUID(alphaAccount.getUID());
+		mAccountsDbAdapter.addRecord(child);
+		Transaction transaction = new Transaction("Farmers market");
+		transaction.addSplit(new Split(new Money(BigDecimal.TEN, DEFAULT_CURRENCY), child.getUID()));
+		mTransactionsDbAdapter.addRecord(transaction);
+
+		Cursor cursor = mTransactionsDbAdapter.searchTransactions("farm", 10);
+		try {
+			assertThat(cursor.moveToFirst()).isTrue();
+			assertThat(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry.COLUMN_UID)))
+					.isEqualTo(transaction.getUID());
+			assertThat(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_FULL_NAME)))
+					.isEqualTo(mAccountsDbAdapter.getAccountFullName(child.getUID()));
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Test
+	public void bulkLoadedTransactions_shouldMatchSingleLoadedTransactions(){
+		Transaction first = addTransaction("First", System.currentTimeMillis() - 20000, "memo");
+		Transaction second = new Transaction("Second");
+		second.setTime(System.currentTimeMillis() - 10000);
+		Split split = new Split(new Money("12.34", DEFAULT_CURRENCY.getCurrencyCode()), alphaAccount.getUID());
+		second.addSplit(split);
+		second.addSplit(split.createPair(bravoAccount.getUID()));
+		mTransactionsDbAdapter.addRecord(second);
+
+		List<Transaction> transactions = mTransactionsDbAdapter.getTransactions(
+				Arrays.asList(second.getUID(), "missing-uid", first.getUID()));
+		assertThat(transactions).hasSize(2);
+		assertThat(transactions.get(0).getUID()).isEqualTo(second.getUID());
+		assertThat(transactions.get(1).getUID()).isEqualTo(first.getUID());
+
+		for (Transaction transaction : transactions) {
+			Transaction expected = mTransactionsDbAdapter.getRecord(transaction.getUID());
+			assertThat(transaction.getDescription()).isEqualTo(expected.getDescription());
+			assertThat(transaction.getTimeMillis()).isEqualTo(expected.getTimeMillis());
+			assertThat(transaction.getCommodity()).isEqualTo(expected.getCommodity());
+			assertThat(transaction.getModifiedTimestamp()).isEqualTo(expected.getModifiedTimestamp());
+			assertThat(transaction.getSplits()).containsExactlyElementsOf(expected.getSplits());
+		}
+
+		List<Transaction> accountTransactions = mTransactionsDbAdapter.getAllTransactionsForAccount(bravoAccount.getUID());
+		assertThat(accountTransactions).containsExactly(second);
+		assertThat(accountTransactions.get(0).getSplits()).hasSize(2);
+		assertThat(mTransactionsDbAdapter.getAllTransactions()).containsExactly(first, second);
+	}
+
+	private Transaction addTransaction(String description, long time, String memo){
+		Transaction transaction = new Transaction(description);
+		transaction.setTime(time);
+		Split split = new Split(new Money(BigDecimal.TEN, DEFAULT_CURRENCY), alphaAccount.getUID());
+		split.setMemo(memo);
+		transaction.addSplit(split);
+		mTransactionsDbAdapter.addRecord(transaction);
+		return transaction;
+	}
+
+	private int searchCount(String query){
+		Cursor cursor = mTransactionsDbAdapter.searchTransactions(query, 10);
+		try {
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * The list of scheduled transactions describes their schedule from the cursor alone
+	 */
+	@Test
+	public void scheduledTransactions_shouldIncludeTheirSchedule(){
+		Transaction template = new Transaction("Rent");
+		template.setTemplate(true);
+		template.addSplit(new Split(new Money("500", DEFAULT_CURRENCY.getCurrencyCode()), alphaAccount.getUID()));
+		mTransactionsDbAdapter.addRecord(template);
+
+		ScheduledAction scheduledAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
+		scheduledAction.setActionUID(template.getUID());
+		long startTime = new DateTime(2016, 6, 6, 9, 0).getMillis();
+		long endTime = new DateTime(2017, 6, 6, 9, 0).getMillis();
+		scheduledAction.setStartTime(startTime);
+		scheduledAction.setEndTime(endTime);
+		scheduledAction.setTotalPlannedExecutionCount(6);
+		Recurrence recurrence = new Recurrence(PeriodType.MONTH);
+		recurrence.setMultiplier(2);
+		scheduledAction.setRecurrence(recurrence);
+		ScheduledActionDbAdapter.getInstance().addRecord(scheduledAction, DatabaseAdapter.UpdateMethod.insert);
+
+		Cursor cursor = mTransactionsDbAdapter.fetchAllScheduledTransactions();
+		try {
+			assertThat(cursor.getCount()).isEqualTo(1);
+			cursor.moveToFirst();
+			assertThat(cursor.getString(cursor.getColumnIndexOrThrow("origin_scheduled_action_uid")))
+					.isEqualTo(scheduledAction.getUID());
+			assertThat(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.RecurrenceEntry.COLUMN_PERIOD_TYPE)))
+					.isEqualTo(PeriodType.MONTH.name());
+			assertThat(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseSchema.RecurrenceEntry.COLUMN_MULTIPLIER)))
+					.isEqualTo(2);
+			assertThat(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.ScheduledActionEntry.COLUMN_START_TIME)))
+					.isEqualTo(startTime);
+			assertThat(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.ScheduledActionEntry.COLUMN_END_TIME)))
+					.isEqualTo(endTime);
+			assertThat(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.ScheduledActionEntry.COLUMN_LAST_RUN)))
+					.isEqualTo(scheduledAction.getLastRunTime());
+			assertThat(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseSchema.ScheduledActionEntry.COLUMN_TOTAL_FREQUENCY)))
+					.isEqualTo(6);
+		} finally {
+			cursor.close();
+		}
+	}
+
 	@After
 	public void tearDown() throws Exception {
 		mAccountsDbAdapter.deleteAllRecords();
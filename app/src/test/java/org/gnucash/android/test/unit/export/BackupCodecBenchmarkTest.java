@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.export;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.export.ExportFormat;
+import org.gnucash.android.export.ExportParams;
+import org.gnucash.android.export.xml.BackupCodec;
+import org.gnucash.android.export.xml.GncXmlExporter;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.test.unit.testutil.SyntheticBook;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the throughput and the compression ratio of the backup codecs on synthetic books.
+ * <p>The benchmarks only run if the environment variable {@code GNUCASH_BENCHMARK} is set,
+ * since the large book takes several minutes</p>
+ */
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class BackupCodecBenchmarkTest {
+
+    private static final int EXPENSE_ACCOUNTS = 20;
+
+    /**
+     * Number of times each codec compresses the export, the fastest run is reported
+     */
+    private static final int RUNS = 3;
+
+    private SyntheticBook mBook;
+
+    @Before
+    public void setUp() throws Exception {
+        mBook = new SyntheticBook().addAccounts("EUR", EXPENSE_ACCOUNTS);
+    }
+
+    @Test
+    public void everyCodec_shouldWriteGzipOfUtf8Export() throws Exception {
+        mBook.addTransactions(500);
+        byte[] xml = exportXml();
+        assertThat(new String(xml, 0, 5, "UTF-8")).isEqualTo("<?xml");
+
+        for (BackupCodec codec : BackupCodec.values()) {
+            byte[] compressed = compress(codec, xml);
+            assertThat(decompress(compressed)).isEqualTo(xml);
+            if (codec == BackupCodec.SNAPSHOT)
+                assertThat(compressed.length).isGreaterThan(xml.length);
+            else
+                assertThat(compressed.length).isLessThan(xml.length / 4);
+        }
+        assertThat(compress(BackupCodec.GZIP_FAST, xml).length)
+                .isGreaterThanOrEqualTo(compress(BackupCodec.GZIP_BEST, xml).length);
+    }
+
+    @Test
+    public void fromName_shouldFallBackToDefaultGzip() {
+        assertThat(BackupCodec.fromName("GZIP_FAST")).isEqualTo(BackupCodec.GZIP_FAST);
+        assertThat(BackupCodec.fromName("LZ4")).isEqualTo(BackupCodec.GZIP);
+        assertThat(BackupCodec.fromName(null)).isEqualTo(BackupCodec.GZIP);
+    }
+
+    @Test
+    public void benchmark2kSplits() throws Exception {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        benchmark(2000);
+    }
+
+    @Test
+    public void benchmark200kSplits() throws Exception {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        benchmark(200000);
+    }
+
+    /**
+     * Compresses the XML export of a synthetic book with each codec and prints the throughput and ratio
+     * @param splitCount Number of splits in the book
+     */
+    private void benchmark(int splitCount) throws Exception {
+        mBook.addTransactions(splitCount / 2);
+        long start = System.nanoTime();
+        byte[] xml = exportXml();
+        long exportMillis = (System.nanoTime() - start) / 1000000;
+        double megabytes = xml.length / (1024.0 * 1024.0);
+        System.out.println(String.format(Locale.US, "XML export of %d splits (%.1f MB): %d ms",
+                splitCount, megabytes, exportMillis));
+
+        for (BackupCodec codec : BackupCodec.values()) {
+            long bestNanos = Long.MAX_VALUE;
+            int compressedSize = 0;
+            for (int i = 0; i < RUNS; i++) {
+                start = System.nanoTime();
+                compressedSize = compress(codec, xml).length;
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            }
+            double seconds = Math.max(bestNanos, 1) / 1e9;
+            System.out.println(String.format(Locale.US, "%-10s %8.1f MB/s, ratio %5.2f, %d KB",
+                    codec.name(), megabytes / seconds, (double) xml.length / compressedSize, compressedSize / 1024));
+        }
+    }
+
+    /**
+     * Returns the uncompressed GnuCash XML export of the book, encoded as UTF-8
+     */
+    private byte[] exportXml() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+        new GncXmlExporter(new ExportParams(ExportFormat.XML), mBook.getDatabase()).generateExport(writer);
+        writer.close();
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] compress(BackupCodec codec, byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4);
+        OutputStream outputStream = codec.newOutputStream(compressed);
+        outputStream.write(data);
+        outputStream.close();
+        return compressed.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, count);
+        }
+        inputStream.close();
+        return outputStream.toByteArray();
+    }
+}
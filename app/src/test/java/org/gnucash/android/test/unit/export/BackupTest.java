@@ -15,20 +15,35 @@
  */
 package org.gnucash.android.test.unit.export;
 
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
 import org.gnucash.android.BuildConfig;
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.BookDbHelper;
+import org.gnucash.android.db.DatabaseHelper;
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.export.ExportFormat;
 import org.gnucash.android.export.ExportParams;
 import org.gnucash.android.export.Exporter;
 import org.gnucash.android.export.xml.GncXmlExporter;
 import org.gnucash.android.importer.GncXmlImporter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
 import org.gnucash.android.test.unit.db.AccountsDbAdapterTest;
 import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
 import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
 import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.util.BookUtils;
+import org.gnucash.android.util.PreferencesHelper;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -37,6 +52,7 @@ import org.xml.sax.SAXException;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -73,6 +89,88 @@ public class BackupTest {
 
     }
 
+    @Test
+    public void shouldRestoreIncrementalBackup() throws Exception {
+        String bookUID = BooksDbAdapter.getInstance().getActiveBookUID();
+        BookUtils.activateBook(bookUID);
+        AccountsDbAdapter accountsDbAdapter = AccountsDbAdapter.getInstance();
+        TransactionsDbAdapter transactionsDbAdapter = TransactionsDbAdapter.getInstance();
+
+        Account alphaAccount = new Account("Alpha");
+        Account bravoAccount = new Account("Bravo");
+        accountsDbAdapter.addRecord(alphaAccount);
+        accountsDbAdapter.addRecord(bravoAccount);
+        Transaction keptTransaction = createTransaction("Kept", alphaAccount, bravoAccount);
+        Transaction deletedTransaction = createTransaction("Deleted", alphaAccount, bravoAccount);
+        transactionsDbAdapter.addRecord(keptTransaction);
+        transactionsDbAdapter.addRecord(deletedTransaction);
+
+        assertThat(GncXmlExporter.createBackup(bookUID)).isTrue();
+        String fullBackup = PreferencesHelper.getLastBackupFile(bookUID);
+        assertThat(GncXmlExporter.isIncrementalBackup(fullBackup)).isFalse();
+
+        Transaction addedTransaction = createTransaction("Added", bravoAccount, alphaAccount);
+        transactionsDbAdapter.addRecord(addedTransaction);
+        transactionsDbAdapter.deleteRecord(deletedTransaction.getUID());
+        accountsDbAdapter.updateRecord(alphaAccount.getUID(), DatabaseSchema.AccountEntry.COLUMN_NAME, "Renamed");
+
+        assertThat(GncXmlExporter.createBackup(bookUID)).isTrue();
+        String incrementalBackup = PreferencesHelper.getLastBackupFile(bookUID);
+        assertThat(GncXmlExporter.isIncrementalBackup(incrementalBackup)).isTrue();
+
+        File backupFolder = new File(Exporter.getBackupFolderPath(bookUID));
+        String restoredBookUID = GncXmlImporter.restoreBackup(new File(backupFolder, incrementalBackup));
+
+        SQLiteDatabase db = new DatabaseHelper(GnuCashApplication.getAppContext(), restoredBookUID).getReadableDatabase();
+        TransactionsDbAdapter restoredTransactionsDbAdapter = new TransactionsDbAdapter(db, new SplitsDbAdapter(db));
+        AccountsDbAdapter restoredAccountsDbAdapter = new AccountsDbAdapter(db, restoredTransactionsDbAdapter);
+
+        assertThat(restoredAccountsDbAdapter.getRecord(alphaAccount.getUID()).getName()).isEqualTo("Renamed");
+        assertThat(restoredAccountsDbAdapter.getRecordsCount()).isEqualTo(accountsDbAdapter.getRecordsCount());
+        List<String> restoredTransactionUIDs = new ArrayList<>();
+        for (Transaction transaction : restoredTransactionsDbAdapter.getAllTransactionsForAccount(alphaAccount.getUID())) {
+            restoredTransactionUIDs.add(transaction.getUID());
+        }
+        assertThat(restoredTransactionUIDs).containsOnly(keptTransaction.getUID(), addedTransaction.getUID());
+        assertThat(restoredTransactionsDbAdapter.getRecord(addedTransaction.getUID()).getSplits()).hasSize(2);
+    }
+
+    @Test
+    public void shouldCreateFullBackupBeforeDeletingEverything(){
+        String bookUID = BooksDbAdapter.getInstance().getActiveBookUID();
+        assertThat(GncXmlExporter.createBackup(bookUID)).isTrue();
+
+        //an incremental backup would be due now, but the safety backup must be restorable on its own
+        assertThat(GncXmlExporter.createFullBackup()).isTrue();
+        assertThat(GncXmlExporter.isIncrementalBackup(PreferencesHelper.getLastBackupFile(bookUID))).isFalse();
+    }
+
+    @Test
+    public void shouldPurgeDeletedRecordsAfterIncrementalBackup(){
+        String bookUID = BooksDbAdapter.getInstance().getActiveBookUID();
+        assertThat(GncXmlExporter.createBackup(bookUID)).isTrue();
+
+        SQLiteDatabase db = GnuCashApplication.getActiveDb();
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(DatabaseSchema.DeletedRecordEntry.COLUMN_TABLE_NAME, DatabaseSchema.TransactionEntry.TABLE_NAME);
+        contentValues.put(DatabaseSchema.DeletedRecordEntry.COLUMN_UID, "deletedbeforethelastbackup");
+        contentValues.put(DatabaseSchema.DeletedRecordEntry.COLUMN_DELETED_AT, "2000-01-01 00:00:00");
+        db.insert(DatabaseSchema.DeletedRecordEntry.TABLE_NAME, null, contentValues);
+
+        assertThat(GncXmlExporter.createBackup(bookUID)).isTrue();
+        assertThat(GncXmlExporter.isIncrementalBackup(PreferencesHelper.getLastBackupFile(bookUID))).isTrue();
+        assertThat(DatabaseUtils.queryNumEntries(db, DatabaseSchema.DeletedRecordEntry.TABLE_NAME,
+                DatabaseSchema.DeletedRecordEntry.COLUMN_UID + " = ?", new String[]{"deletedbeforethelastbackup"})).isZero();
+    }
+
+    private Transaction createTransaction(String description, Account debitAccount, Account creditAccount){
+        Transaction transaction = new Transaction(description);
+        Split split = new Split(new Money("10", debitAccount.getCommodity().getCurrencyCode()), debitAccount.getUID());
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(creditAccount.getUID()));
+        return transaction;
+    }
+
     /**
      * Loads the default accounts from file resource
      */
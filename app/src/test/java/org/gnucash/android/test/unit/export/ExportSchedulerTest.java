@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.export;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.R;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.adapter.BookSession;
+import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.export.ExportFormat;
+import org.gnucash.android.export.ExportParams;
+import org.gnucash.android.export.ExportScheduler;
+import org.gnucash.android.export.ExportScheduler.ExportJob;
+import org.gnucash.android.importer.GncXmlImporter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.util.PreferencesHelper;
+import org.gnucash.android.util.TimestampHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test running exports and backups of several books with the {@link ExportScheduler}
+ */
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class ExportSchedulerTest {
+
+    private ExportScheduler mScheduler;
+
+    private final List<String> mBookUIDs = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mScheduler = new ExportScheduler(3);
+        for (int i = 0; i < 2; i++) {
+            String bookUID = GncXmlImporter.parse(GnuCashApplication.getAppContext().getResources().openRawResource(R.raw.default_accounts));
+            addTransaction(bookUID, "Groceries " + i);
+            mBookUIDs.add(bookUID);
+        }
+        BooksDbAdapter.getInstance().setActive(mBookUIDs.get(0));
+    }
+
+    @After
+    public void tearDown() {
+        mScheduler.shutdown();
+    }
+
+    @Test
+    public void shouldExportAllFormatsOfSeveralBooks() throws Exception {
+        List<ExportJob> jobs = new ArrayList<>();
+        for (String bookUID : mBookUIDs) {
+            jobs.add(ExportJob.backup(bookUID));
+            for (ExportFormat format : Arrays.asList(ExportFormat.QIF, ExportFormat.OFX, ExportFormat.XML)) {
+                jobs.add(ExportJob.export(bookUID, createExportParams(format)));
+            }
+        }
+
+        final List<ExportJob> runningJobs = new ArrayList<>();
+        ExportScheduler.Batch batch = mScheduler.submit(jobs, new ExportScheduler.OnJobStateChangedListener() {
+            @Override
+            public void onJobStateChanged(ExportScheduler.Batch batch, ExportJob job) {
+                if (job.getState() == ExportJob.State.RUNNING) {
+                    synchronized (runningJobs) {
+                        runningJobs.add(job);
+                    }
+                }
+            }
+        });
+        assertThat(batch.await(60, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(batch.isFinished()).isTrue();
+        assertThat(batch.isSuccessful()).isTrue();
+        assertThat(batch.getFinishedJobCount()).isEqualTo(jobs.size());
+        assertThat(runningJobs).hasSize(jobs.size());
+        for (String bookUID : mBookUIDs) {
+            assertThat(PreferencesHelper.getLastBackupFile(bookUID)).isNotNull();
+        }
+
+        List<String> exportedFiles = batch.getExportedFiles();
+        assertThat(exportedFiles).hasSize(2 * 3);
+        for (ExportJob job : jobs) {
+            assertThat(job.getState()).isEqualTo(ExportJob.State.SUCCEEDED);
+            assertThat(job.getError()).isNull();
+            for (String path : job.getExportedFiles()) {
+                assertThat(new File(path)).exists();
+                assertThat(new File(path).getParentFile().getName()).isEqualTo(job.getBookUID());
+            }
+        }
+    }
+
+    @Test
+    public void cancelledJobsShouldNotRun() throws Exception {
+        ExportScheduler scheduler = new ExportScheduler(1);
+        try {
+            final ExportJob firstJob = ExportJob.export(mBookUIDs.get(0), createExportParams(ExportFormat.QIF));
+            final ExportJob secondJob = ExportJob.export(mBookUIDs.get(1), createExportParams(ExportFormat.QIF));
+            ExportScheduler.Batch batch = scheduler.submit(Arrays.asList(firstJob, secondJob),
+                    new ExportScheduler.OnJobStateChangedListener() {
+                        @Override
+                        public void onJobStateChanged(ExportScheduler.Batch batch, ExportJob job) {
+                            //the only worker thread is busy with the first job, so the second one is still queued
+                            if (job == firstJob && job.getState() == ExportJob.State.RUNNING)
+                                assertThat(secondJob.cancel()).isTrue();
+                        }
+                    });
+            assertThat(batch.await(60, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(firstJob.getState()).isEqualTo(ExportJob.State.SUCCEEDED);
+            assertThat(firstJob.cancel()).isFalse();
+            assertThat(secondJob.getState()).isEqualTo(ExportJob.State.CANCELLED);
+            assertThat(batch.isSuccessful()).isFalse();
+            assertThat(batch.getFinishedJobCount()).isEqualTo(2);
+            assertThat(batch.getExportedFiles()).isEqualTo(firstJob.getExportedFiles());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void exportOfInactiveBookShouldOnlyUpdateItsLastExportTime() throws Exception {
+        Timestamp epoch = TimestampHelper.getTimestampFromEpochZero();
+        for (String bookUID : mBookUIDs) {
+            PreferencesHelper.setLastExportTime(epoch, bookUID);
+        }
+        String activeBookUID = mBookUIDs.get(0);
+        String exportedBookUID = mBookUIDs.get(1);
+
+        List<ExportJob> jobs = new ArrayList<>();
+        for (ExportFormat format : Arrays.asList(ExportFormat.QIF, ExportFormat.OFX)) {
+            jobs.add(ExportJob.export(exportedBookUID, createExportParams(format)));
+        }
+        ExportScheduler.Batch batch = mScheduler.submit(jobs, null);
+        assertThat(batch.await(60, TimeUnit.SECONDS)).isTrue();
+        assertThat(batch.isSuccessful()).isTrue();
+
+        assertThat(BooksDbAdapter.getInstance().getActiveBookUID()).isEqualTo(activeBookUID);
+        assertThat(PreferencesHelper.getLastExportTime(exportedBookUID)).isAfter(epoch);
+        assertThat(PreferencesHelper.getLastExportTime(activeBookUID)).isEqualTo(epoch);
+    }
+
+    private static ExportParams createExportParams(ExportFormat format) {
+        ExportParams exportParams = new ExportParams(format);
+        exportParams.setExportStartTime(TimestampHelper.getTimestampFromEpochZero());
+        exportParams.setExportTarget(ExportParams.ExportTarget.SD_CARD);
+        exportParams.setDeleteTransactionsAfterExport(false);
+        return exportParams;
+    }
+
+    private static void addTransaction(String bookUID, String description) {
+        BookSession session = BookSession.open(bookUID);
+        try {
+            Account expenses = new Account("Expenses");
+            Account bank = new Account("Bank");
+            session.getAccountsDbAdapter().addRecord(expenses);
+            session.getAccountsDbAdapter().addRecord(bank);
+
+            Transaction transaction = new Transaction(description);
+            Split split = new Split(new Money("25", expenses.getCommodity().getCurrencyCode()), expenses.getUID());
+            transaction.addSplit(split);
+            transaction.addSplit(split.createPair(bank.getUID()));
+            session.getTransactionsDbAdapter().addRecord(transaction);
+        } finally {
+            session.close();
+        }
+    }
+}
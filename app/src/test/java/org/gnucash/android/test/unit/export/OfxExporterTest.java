@@ -17,8 +17,10 @@ package org.gnucash.android.test.unit.export;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.preference.PreferenceManager;
 
 import org.gnucash.android.BuildConfig;
+import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.BookDbHelper;
 import org.gnucash.android.db.DatabaseHelper;
@@ -30,14 +32,19 @@ import org.gnucash.android.export.ExportFormat;
 import org.gnucash.android.export.ExportParams;
 import org.gnucash.android.export.Exporter;
 import org.gnucash.android.export.ofx.OfxExporter;
+import org.gnucash.android.export.ofx.OfxHelper;
 import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
 import org.gnucash.android.model.Book;
+import org.gnucash.android.model.Commodity;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
 import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
 import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
 import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.test.unit.testutil.TestFiles;
 import org.gnucash.android.util.TimestampHelper;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -45,10 +52,20 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 import java.io.File;
+import java.io.StringWriter;
 import java.util.List;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 
@@ -112,4 +129,105 @@ public class OfxExporterTest {
         assertThat(file).exists().hasExtension("ofx");
         assertThat(file.length()).isGreaterThan(0L);
     }
-}
\ No newline at end of file
+
+    /**
+     * The streaming exporter should write the same document as the DOM based exporter it replaced
+     */
+    @Test
+    public void streamingExport_shouldMatchDomExport() throws Exception {
+        createTransactionsInActiveBook();
+        ExportParams exportParameters = new ExportParams(ExportFormat.OFX);
+        exportParameters.setExportStartTime(TimestampHelper.getTimestampFromEpochZero());
+        exportParameters.setExportTarget(ExportParams.ExportTarget.SD_CARD);
+        exportParameters.setDeleteTransactionsAfterExport(false);
+
+        for (boolean useXmlHeader : new boolean[]{false, true}) {
+            PreferenceManager.getDefaultSharedPreferences(RuntimeEnvironment.application).edit()
+                    .putBoolean(RuntimeEnvironment.application.getString(R.string.key_xml_ofx_header), useXmlHeader)
+                    .commit();
+            String expected = generateDomExport(exportParameters, useXmlHeader);
+
+            List<String> exportedFiles = new OfxExporter(exportParameters).generateExport();
+
+            assertThat(exportedFiles).hasSize(1);
+            String actual = TestFiles.readFile(new File(exportedFiles.get(0)));
+            assertThat(actual).contains(OfxHelper.TAG_STATEMENT_TRANSACTION).contains("&lt;Caf\u00e9 &amp; Bar&gt;");
+            assertThat(withoutCurrentTime(actual)).isEqualTo(withoutCurrentTime(expected));
+        }
+    }
+
+    private void createTransactionsInActiveBook() {
+        AccountsDbAdapter accountsDbAdapter = AccountsDbAdapter.getInstance();
+        TransactionsDbAdapter transactionsDbAdapter = TransactionsDbAdapter.getInstance();
+        Account bank = new Account("Bank", Commodity.getInstance("USD"));
+        bank.setAccountType(AccountType.BANK);
+        Account food = new Account("Food", Commodity.getInstance("USD"));
+        food.setAccountType(AccountType.EXPENSE);
+        Account card = new Account("Card", Commodity.getInstance("USD"));
+        card.setAccountType(AccountType.CREDIT);
+        accountsDbAdapter.addRecord(bank);
+        accountsDbAdapter.addRecord(food);
+        accountsDbAdapter.addRecord(card);
+
+        Transaction transfer = new Transaction("<Caf\u00e9 & Bar>");
+        transfer.setNote("Lunch with \"friends\"");
+        Split split = new Split(new Money("12.50", "USD"), food.getUID());
+        transfer.addSplit(split);
+        transfer.addSplit(split.createPair(bank.getUID()));
+        transactionsDbAdapter.addRecord(transfer);
+
+        Transaction multiSplit = new Transaction("Groceries");
+        multiSplit.addSplit(new Split(new Money("30", "USD"), food.getUID()));
+        Split bankSplit = new Split(new Money("20", "USD"), bank.getUID());
+        bankSplit.setType(TransactionType.CREDIT);
+        multiSplit.addSplit(bankSplit);
+        Split cardSplit = new Split(new Money("10", "USD"), card.getUID());
+        cardSplit.setType(TransactionType.CREDIT);
+        multiSplit.addSplit(cardSplit);
+        transactionsDbAdapter.addRecord(multiSplit);
+    }
+
+    /**
+     * Generates the OFX document like the exporter did before it was streamed, by building a DOM document
+     */
+    private static String generateDomExport(ExportParams exportParams, boolean useXmlHeader) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element root = document.createElement("OFX");
+        document.appendChild(document.createProcessingInstruction("OFX", OfxHelper.OFX_HEADER));
+        document.appendChild(root);
+
+        Element transactionUid = document.createElement(OfxHelper.TAG_TRANSACTION_UID);
+        transactionUid.appendChild(document.createTextNode(OfxHelper.UNSOLICITED_TRANSACTION_ID));
+        Element statementTransactionResponse = document.createElement(OfxHelper.TAG_STATEMENT_TRANSACTION_RESPONSE);
+        statementTransactionResponse.appendChild(transactionUid);
+        Element bankmsgs = document.createElement(OfxHelper.TAG_BANK_MESSAGES_V1);
+        bankmsgs.appendChild(statementTransactionResponse);
+        root.appendChild(bankmsgs);
+
+        for (Account account : AccountsDbAdapter.getInstance().getExportableAccounts(exportParams.getExportStartTime())) {
+            if (account.getTransactionCount() == 0)
+                continue;
+            account.toOfx(document, statementTransactionResponse, exportParams.getExportStartTime());
+        }
+
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        StringWriter stringWriter = new StringWriter();
+        if (useXmlHeader) {
+            transformer.transform(new DOMSource(document), new StreamResult(stringWriter));
+            return stringWriter.toString();
+        }
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        transformer.transform(new DOMSource(root), new StreamResult(stringWriter));
+        return OfxHelper.OFX_SGML_HEADER + '\n' + stringWriter.toString();
+    }
+
+    /**
+     * Replaces the times of the statements, which are set to the time of the export
+     */
+    private static String withoutCurrentTime(String ofx) {
+        return ofx.replaceAll("<(" + OfxHelper.TAG_DATE_START + "|" + OfxHelper.TAG_DATE_END + "|"
+                + OfxHelper.TAG_DATE_AS_OF + ")>[^<]*<", "<$1>now<");
+    }
+}
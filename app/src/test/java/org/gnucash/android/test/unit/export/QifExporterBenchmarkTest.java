@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.export;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.export.ExportFormat;
+import org.gnucash.android.export.ExportParams;
+import org.gnucash.android.export.qif.QifExporter;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.test.unit.testutil.SyntheticBook;
+import org.gnucash.android.test.unit.testutil.TestFiles;
+import org.gnucash.android.util.TimestampHelper;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the throughput of the QIF exporter on synthetic books.
+ * <p>The benchmarks only run if the environment variable {@code GNUCASH_BENCHMARK} is set,
+ * since the large book takes several minutes</p>
+ */
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class QifExporterBenchmarkTest {
+
+    private static final String[] CURRENCY_CODES = {"EUR", "GBP", "USD"};
+
+    private static final int EXPENSE_ACCOUNTS_PER_CURRENCY = 5;
+
+    private SyntheticBook mBook;
+
+    @Before
+    public void setUp() throws Exception {
+        mBook = new SyntheticBook();
+        for (String currencyCode : CURRENCY_CODES) {
+            mBook.addAccounts(currencyCode, EXPENSE_ACCOUNTS_PER_CURRENCY);
+        }
+    }
+
+    @Test
+    public void export_shouldWriteOneFilePerCurrency() throws Exception {
+        mBook.addTransactions(1500);
+
+        Map<String, String> files = export(1);
+        assertThat(files).hasSize(CURRENCY_CODES.length);
+        assertThat(export(CURRENCY_CODES.length)).isEqualTo(files);
+        for (String currencyCode : CURRENCY_CODES) {
+            String content = files.get("_" + currencyCode + ".qif");
+            assertThat(content).startsWith("!Account");
+            assertThat(content).contains("Bank " + currencyCode);
+            for (String otherCurrencyCode : CURRENCY_CODES) {
+                if (!otherCurrencyCode.equals(currencyCode))
+                    assertThat(content).doesNotContain("Bank " + otherCurrencyCode);
+            }
+        }
+    }
+
+    @Test
+    public void benchmark2kSplits() throws Exception {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        benchmark(2000);
+    }
+
+    @Test
+    public void benchmark200kSplits() throws Exception {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        benchmark(200000);
+    }
+
+    /**
+     * Exports a synthetic book with one writer and with one writer per currency, and prints the throughput
+     * @param splitCount Number of splits in the book
+     */
+    private void benchmark(int splitCount) throws Exception {
+        mBook.addTransactions(splitCount / 2);
+        int[] parallelisms = {1, CURRENCY_CODES.length};
+        for (int parallelism : parallelisms) {
+            long start = System.nanoTime();
+            Map<String, String> files = export(parallelism);
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+            long size = 0;
+            for (String content : files.values()) {
+                size += content.length();
+            }
+            System.out.println(String.format(Locale.US, "QIF export of %d splits with %d writers (%d KB): %d ms, %.0f splits/s",
+                    splitCount, parallelism, size / 1024, elapsedMillis,
+                    splitCount * 1000.0 / Math.max(elapsedMillis, 1)));
+            assertThat(files).hasSize(CURRENCY_CODES.length);
+        }
+    }
+
+    /**
+     * Exports all transactions of the book
+     * @param parallelism Maximum number of currencies exported at the same time
+     * @return Content of the exported files, keyed by the currency suffix of the file name
+     */
+    private Map<String, String> export(int parallelism) throws IOException {
+        ExportParams exportParameters = new ExportParams(ExportFormat.QIF);
+        exportParameters.setExportStartTime(TimestampHelper.getTimestampFromEpochZero());
+        exportParameters.setExportTarget(ExportParams.ExportTarget.SD_CARD);
+        exportParameters.setDeleteTransactionsAfterExport(false);
+        QifExporter exporter = new QifExporter(exportParameters, mBook.getDatabase());
+        exporter.setParallelism(parallelism);
+
+        Map<String, String> files = new LinkedHashMap<>();
+        for (String path : exporter.generateExport()) {
+            String suffix = path.substring(path.lastIndexOf('_'));
+            files.put(suffix, TestFiles.readFile(new File(path)));
+        }
+        return files;
+    }
+}
@@ -28,6 +28,7 @@ import org.gnucash.android.export.xml.GncXmlHelper;
 import org.gnucash.android.importer.GncXmlHandler;
 import org.gnucash.android.model.Account;
 import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Commodity;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
@@ -46,7 +47,9 @@ import org.xml.sax.XMLReader;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.text.ParseException;
+import java.util.Scanner;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -73,6 +76,11 @@ public class GncXmlHandlerTest {
     }
 
     private String importGnuCashXml(String filename) {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(filename);
+        return importGnuCashXml(new InputSource(new BufferedInputStream(inputStream)));
+    }
+
+    private String importGnuCashXml(InputSource inputSource) {
         SAXParser parser;
         GncXmlHandler handler = null;
         try {
@@ -80,8 +88,6 @@ public class GncXmlHandlerTest {
             XMLReader reader = parser.getXMLReader();
             handler = new GncXmlHandler();
             reader.setContentHandler(handler);
-            InputStream inputStream = getClass().getClassLoader().getResourceAsStream(filename);
-            InputSource inputSource = new InputSource(new BufferedInputStream(inputStream));
             reader.parse(inputSource);
         } catch (ParserConfigurationException | SAXException | IOException e) {
             e.printStackTrace();
@@ -374,4 +380,47 @@ public class GncXmlHandlerTest {
         //assertThat(split2.getQuantity()).isEqualTo(new Money("20", "USD"));
         assertThat(split2.isPairOf(split1)).isTrue();
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests importing more transactions than are held in memory at once.
+     *
+     * <p>The transactions are written to the database in batches while parsing.
+     * An imbalanced transaction in the first batch must still get its imbalance split.</p>
+     */
+    @Test
+    public void largeTransactionImport() {
+        final int transactionCount = 2500;
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("simpleTransactionImport.xml");
+        String xml = new Scanner(inputStream, "UTF-8").useDelimiter("\\A").next();
+        int transactionStart = xml.indexOf("<gnc:transaction ");
+        int transactionEnd = xml.indexOf("</gnc:book>");
+        String transactionXml = xml.substring(transactionStart, transactionEnd);
+
+        StringBuilder bookXml = new StringBuilder(xml.substring(0, transactionStart));
+        // only the first split, so that the transaction is imbalanced
+        bookXml.append(transactionXml.substring(0, transactionXml.indexOf("<trn:split>", transactionXml.indexOf("</trn:split>")))
+                .replace("b33c8a6160494417558fd143731fc26a", "imbalanced"))
+                .append("</trn:splits>\n</gnc:transaction>\n");
+        for (int i = 1; i < transactionCount; i++) {
+            bookXml.append(transactionXml.replace("b33c8a6160494417558fd143731fc26a", "transaction" + i)
+                    .replace("ad2cbc774fc4e71885d17e6932448e8e", "split" + i + "a")
+                    .replace("61d4d604bc00a59cabff4e8875d00bee", "split" + i + "b"));
+        }
+        bookXml.append(xml.substring(transactionEnd));
+
+        String bookUID = importGnuCashXml(new InputSource(new StringReader(bookXml.toString())));
+        setUpDbAdapters(bookUID);
+
+        assertThat(mTransactionsDbAdapter.getRecordsCount()).isEqualTo(transactionCount);
+        assertThat(mTransactionsDbAdapter.getRecord("transaction" + (transactionCount - 1)).getSplits()).hasSize(2);
+
+        Transaction imbalancedTransaction = mTransactionsDbAdapter.getRecord("imbalanced");
+        assertThat(imbalancedTransaction.getSplits()).hasSize(2);
+        String imbalanceAccountUID = mAccountsDbAdapter.getImbalanceAccountUID(Commodity.getInstance("USD"));
+        assertThat(imbalanceAccountUID).isNotNull();
+        assertThat(imbalancedTransaction.getSplits(imbalanceAccountUID)).hasSize(1);
+        assertThat(mAccountsDbAdapter.getAccountFullName(imbalanceAccountUID))
+                .isEqualTo(AccountsDbAdapter.getImbalanceAccountName(Commodity.getInstance("USD")));
+        assertThat(mAccountsDbAdapter.getAccountFullName("6a7cf8267314992bdddcee56d71a3908")).isEqualTo("Expenses:Dining");
+    }
+}
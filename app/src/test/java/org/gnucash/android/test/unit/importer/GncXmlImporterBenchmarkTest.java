@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.importer;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DatabaseHelper;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.importer.GncXmlImporter;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Measures the import throughput of the XML parser engines on synthetic books.
+ * <p>The benchmarks only run if the environment variable {@code GNUCASH_BENCHMARK} is set,
+ * since the larger books take several minutes</p>
+ */
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class GncXmlImporterBenchmarkTest {
+
+    private static final int ACCOUNT_COUNT = 20;
+
+    private static final String BANK_ACCOUNT_UID = "b0000000000000000000000000000000";
+
+    private File mBookFile;
+
+    /**
+     * Database helpers of the imported books, by book GUID. They are closed before the books are deleted
+     */
+    private final Map<String, DatabaseHelper> mDatabaseHelpers = new HashMap<>();
+
+    private final List<String> mImportedBookUIDs = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mBookFile = File.createTempFile("benchmark", ".gnucash");
+    }
+
+    @Test
+    public void pullParserShouldImportSameBookAsSaxParser() throws Exception {
+        writeSyntheticBook(mBookFile, 1000, false);
+
+        String saxBookUID = importBook(GncXmlImporter.Engine.SAX);
+        String pullBookUID = importBook(GncXmlImporter.Engine.PULL);
+
+        AccountsDbAdapter saxAccounts = getAccountsDbAdapter(saxBookUID);
+        AccountsDbAdapter pullAccounts = getAccountsDbAdapter(pullBookUID);
+        assertThat(pullAccounts.getRecordsCount()).isEqualTo(saxAccounts.getRecordsCount());
+        assertThat(getTransactionsDbAdapter(pullBookUID).getRecordsCount())
+                .isEqualTo(getTransactionsDbAdapter(saxBookUID).getRecordsCount())
+                .isEqualTo(1000);
+        Money bankBalance = saxAccounts.getAccountBalance(BANK_ACCOUNT_UID, -1, -1);
+        assertThat(bankBalance.isAmountZero()).isFalse();
+        assertThat(pullAccounts.getAccountBalance(BANK_ACCOUNT_UID, -1, -1)).isEqualTo(bankBalance);
+    }
+
+    @Test
+    public void compressedBookShouldBeImported() throws Exception {
+        writeSyntheticBook(mBookFile, 2500, true);
+
+        String bookUID = importBook(GncXmlImporter.Engine.SAX);
+
+        AccountsDbAdapter accountsDbAdapter = getAccountsDbAdapter(bookUID);
+        assertThat(accountsDbAdapter.getRecordsCount()).isEqualTo(ACCOUNT_COUNT + 2);
+        assertThat(getTransactionsDbAdapter(bookUID).getRecordsCount()).isEqualTo(2500);
+    }
+
+    @Test
+    public void truncatedCompressedBookShouldNotBeImported() throws Exception {
+        writeSyntheticBook(mBookFile, 2500, true);
+        RandomAccessFile file = new RandomAccessFile(mBookFile, "rw");
+        try {
+            file.setLength(file.length() / 2);
+        } finally {
+            file.close();
+        }
+        long bookCount = BooksDbAdapter.getInstance().getRecordsCount();
+
+        try {
+            importBook(GncXmlImporter.Engine.SAX);
+            fail("The import of a truncated book should fail");
+        } catch (SAXException | IOException e) {
+            //the inflater reports the truncated stream once the data before it has been parsed
+        }
+        //the transactions written while parsing are rolled back and the book is not registered
+        assertThat(BooksDbAdapter.getInstance().getRecordsCount()).isEqualTo(bookCount);
+    }
+
+    @Test
+    public void everyEngineShouldImportAllTransactions() throws Exception {
+        writeSyntheticBook(mBookFile, 1000, true);
+        for (GncXmlImporter.Engine engine : GncXmlImporter.Engine.values()) {
+            String bookUID = importBook(engine);
+            assertThat(getTransactionsDbAdapter(bookUID).getRecordsCount()).isEqualTo(1000);
+            deleteBook(bookUID);
+        }
+    }
+
+    @Test
+    public void benchmark1kTransactions() throws Exception {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        benchmark(1000);
+    }
+
+    @Test
+    public void benchmark100kTransactions() throws Exception {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        benchmark(100000);
+    }
+
+    @Test
+    public void benchmark1MTransactions() throws Exception {
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        benchmark(1000000);
+    }
+
+    /**
+     * Imports a synthetic gzip compressed book with each engine and prints the throughput
+     * @param transactionCount Number of transactions in the book
+     */
+    private void benchmark(int transactionCount) throws Exception {
+        writeSyntheticBook(mBookFile, transactionCount, true);
+        for (GncXmlImporter.Engine engine : GncXmlImporter.Engine.values()) {
+            long start = System.nanoTime();
+            String bookUID = importBook(engine);
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+            System.out.println(String.format(Locale.US, "%s import of %d transactions (%d KB): %d ms, %.0f transactions/s",
+                    engine, transactionCount, mBookFile.length() / 1024, elapsedMillis,
+                    transactionCount * 1000.0 / Math.max(elapsedMillis, 1)));
+            deleteBook(bookUID);
+        }
+    }
+
+    private String importBook(GncXmlImporter.Engine engine) throws Exception {
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(mBookFile));
+        try {
+            String bookUID = GncXmlImporter.parse(inputStream, engine);
+            mImportedBookUIDs.add(bookUID);
+            return bookUID;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private SQLiteDatabase openBook(String bookUID) {
+        DatabaseHelper databaseHelper = mDatabaseHelpers.get(bookUID);
+        if (databaseHelper == null) {
+            databaseHelper = new DatabaseHelper(GnuCashApplication.getAppContext(), bookUID);
+            mDatabaseHelpers.put(bookUID, databaseHelper);
+        }
+        return databaseHelper.getReadableDatabase();
+    }
+
+    private AccountsDbAdapter getAccountsDbAdapter(String bookUID) {
+        SQLiteDatabase db = openBook(bookUID);
+        return new AccountsDbAdapter(db, new TransactionsDbAdapter(db, new SplitsDbAdapter(db)));
+    }
+
+    private TransactionsDbAdapter getTransactionsDbAdapter(String bookUID) {
+        SQLiteDatabase db = openBook(bookUID);
+        return new TransactionsDbAdapter(db, new SplitsDbAdapter(db));
+    }
+
+    private void deleteBook(String bookUID) {
+        DatabaseHelper databaseHelper = mDatabaseHelpers.remove(bookUID);
+        if (databaseHelper != null)
+            databaseHelper.close();
+        mImportedBookUIDs.remove(bookUID);
+        BooksDbAdapter.getInstance().deleteRecord(bookUID);
+        GnuCashApplication.getAppContext().deleteDatabase(bookUID);
+    }
+
+    /**
+     * Writes a GnuCash XML book with {@value #ACCOUNT_COUNT} expense accounts and a bank account.
+     * Each transaction moves an amount from the bank account to one of the expense accounts.
+     * @param file File to write to
+     * @param transactionCount Number of transactions to generate
+     * @param compress Whether to compress the file with gzip, like GnuCash desktop does
+     */
+    private static void writeSyntheticBook(File file, int transactionCount, boolean compress) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long startTime = 1451606400000L; // 2016-01-01
+
+        OutputStream outputStream = new FileOutputStream(file);
+        if (compress)
+            outputStream = new GZIPOutputStream(outputStream);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n"
+                    + "<gnc-v2 xmlns:gnc=\"http://www.gnucash.org/XML/gnc\" xmlns:act=\"http://www.gnucash.org/XML/act\""
+                    + " xmlns:book=\"http://www.gnucash.org/XML/book\" xmlns:cd=\"http://www.gnucash.org/XML/cd\""
+                    + " xmlns:cmdty=\"http://www.gnucash.org/XML/cmdty\" xmlns:slot=\"http://www.gnucash.org/XML/slot\""
+                    + " xmlns:split=\"http://www.gnucash.org/XML/split\" xmlns:trn=\"http://www.gnucash.org/XML/trn\""
+                    + " xmlns:ts=\"http://www.gnucash.org/XML/ts\">\n"
+                    + "<gnc:count-data cd:type=\"book\">1</gnc:count-data>\n"
+                    + "<gnc:book version=\"2.0.0\">\n"
+                    + "<book:id type=\"guid\">f0000000000000000000000000000000</book:id>\n"
+                    + "<gnc:count-data cd:type=\"commodity\">1</gnc:count-data>\n"
+                    + "<gnc:count-data cd:type=\"account\">" + (ACCOUNT_COUNT + 2) + "</gnc:count-data>\n"
+                    + "<gnc:count-data cd:type=\"transaction\">" + transactionCount + "</gnc:count-data>\n"
+                    + "<gnc:commodity version=\"2.0.0\">\n"
+                    + "  <cmdty:space>ISO4217</cmdty:space>\n"
+                    + "  <cmdty:id>USD</cmdty:id>\n"
+                    + "</gnc:commodity>\n");
+            String rootUID = "r0000000000000000000000000000000";
+            writeAccount(writer, "Root Account", rootUID, "ROOT", null);
+            writeAccount(writer, "Bank", BANK_ACCOUNT_UID, "BANK", rootUID);
+            for (int i = 0; i < ACCOUNT_COUNT; i++) {
+                writeAccount(writer, "Expense " + i, getExpenseAccountUID(i), "EXPENSE", rootUID);
+            }
+
+            for (int i = 0; i < transactionCount; i++) {
+                String date = dateFormat.format(new Date(startTime + i * 60000L));
+                String amount = (100 + i % 10000) + "/100";
+                writer.write("<gnc:transaction version=\"2.0.0\">\n"
+                        + "  <trn:id type=\"guid\">" + String.format(Locale.US, "t%031d", i) + "</trn:id>\n"
+                        + "  <trn:currency>\n"
+                        + "    <cmdty:space>ISO4217</cmdty:space>\n"
+                        + "    <cmdty:id>USD</cmdty:id>\n"
+                        + "  </trn:currency>\n"
+                        + "  <trn:date-posted>\n"
+                        + "    <ts:date>" + date + "</ts:date>\n"
+                        + "  </trn:date-posted>\n"
+                        + "  <trn:date-entered>\n"
+                        + "    <ts:date>" + date + "</ts:date>\n"
+                        + "  </trn:date-entered>\n"
+                        + "  <trn:description>Transaction " + i + " &amp; more</trn:description>\n"
+                        + "  <trn:splits>\n"
+                        + "    <trn:split>\n"
+                        + "      <split:id type=\"guid\">" + String.format(Locale.US, "s%031d", 2 * i) + "</split:id>\n"
+                        + "      <split:reconciled-state>n</split:reconciled-state>\n"
+                        + "      <split:value>" + amount + "</split:value>\n"
+                        + "      <split:quantity>" + amount + "</split:quantity>\n"
+                        + "      <split:account type=\"guid\">" + getExpenseAccountUID(i % ACCOUNT_COUNT) + "</split:account>\n"
+                        + "    </trn:split>\n"
+                        + "    <trn:split>\n"
+                        + "      <split:id type=\"guid\">" + String.format(Locale.US, "s%031d", 2 * i + 1) + "</split:id>\n"
+                        + "      <split:reconciled-state>n</split:reconciled-state>\n"
+                        + "      <split:value>-" + amount + "</split:value>\n"
+                        + "      <split:quantity>-" + amount + "</split:quantity>\n"
+                        + "      <split:account type=\"guid\">" + BANK_ACCOUNT_UID + "</split:account>\n"
+                        + "    </trn:split>\n"
+                        + "  </trn:splits>\n"
+                        + "</gnc:transaction>\n");
+            }
+            writer.write("</gnc:book>\n</gnc-v2>\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeAccount(Writer writer, String name, String uid, String type, String parentUID) throws IOException {
+        writer.write("<gnc:account version=\"2.0.0\">\n"
+                + "  <act:name>" + name + "</act:name>\n"
+                + "  <act:id type=\"guid\">" + uid + "</act:id>\n"
+                + "  <act:type>" + type + "</act:type>\n"
+                + "  <act:commodity>\n"
+                + "    <cmdty:space>ISO4217</cmdty:space>\n"
+                + "    <cmdty:id>USD</cmdty:id>\n"
+                + "  </act:commodity>\n"
+                + "  <act:commodity-scu>100</act:commodity-scu>\n"
+                + (parentUID == null ? "" : "  <act:parent type=\"guid\">" + parentUID + "</act:parent>\n")
+                + "</gnc:account>\n");
+    }
+
+    private static String getExpenseAccountUID(int index) {
+        return String.format(Locale.US, "e%031d", index);
+    }
+
+    @After
+    public void tearDown() {
+        for (String bookUID : new ArrayList<>(mImportedBookUIDs)) {
+            deleteBook(bookUID);
+        }
+        mBookFile.delete();
+    }
+}
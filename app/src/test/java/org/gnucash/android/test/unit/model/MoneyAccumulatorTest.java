@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.model;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.MoneyAccumulator;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class MoneyAccumulatorTest {
+
+    private static final int BENCHMARK_SPLIT_COUNT = 1000000;
+
+    @Test
+    public void shouldAddAmountsWithDifferentDenominators(){
+        MoneyAccumulator accumulator = new MoneyAccumulator(Commodity.USD);
+        accumulator.add(1250, 100);
+        accumulator.add(3, 1);
+        accumulator.add(-5, 1000);
+        accumulator.subtract(25, 10);
+
+        assertThat(accumulator.toBigDecimal()).isEqualByComparingTo("12.995");
+        assertThat(accumulator.toMoney()).isEqualTo(new Money("13.00", "USD"));
+    }
+
+    @Test
+    public void shouldFallBackToBigDecimalOnOverflow(){
+        MoneyAccumulator accumulator = new MoneyAccumulator(Commodity.USD);
+        accumulator.add(Long.MAX_VALUE, 100);
+        accumulator.add(Long.MAX_VALUE, 100);
+        accumulator.add(1, 1000);
+
+        BigDecimal expected = BigDecimal.valueOf(Long.MAX_VALUE, 2).multiply(new BigDecimal(2))
+                .add(new BigDecimal("0.001"));
+        assertThat(accumulator.toBigDecimal()).isEqualByComparingTo(expected);
+
+        accumulator.subtract(Long.MAX_VALUE, 100);
+        accumulator.subtract(Long.MAX_VALUE, 100);
+        assertThat(accumulator.toBigDecimal()).isEqualByComparingTo("0.001");
+
+        accumulator = new MoneyAccumulator(Commodity.USD);
+        accumulator.subtract(Long.MIN_VALUE, 1);
+        assertThat(accumulator.toBigDecimal()).isEqualByComparingTo(BigDecimal.valueOf(Long.MIN_VALUE).negate());
+    }
+
+    @Test
+    public void shouldAddMoneyAndBigDecimal(){
+        MoneyAccumulator accumulator = new MoneyAccumulator("EUR");
+        assertThat(accumulator.isZero()).isTrue();
+
+        accumulator.add(new Money("15.75", "EUR"));
+        accumulator.subtract(new Money("0.75", "EUR"));
+        accumulator.add(new BigDecimal("1E+2"));
+
+        assertThat(accumulator.isZero()).isFalse();
+        assertThat(accumulator.toMoney()).isEqualTo(new Money("115", "EUR"));
+    }
+
+    @Test
+    public void shouldHandleDenominatorsWhichAreNotPowersOfTen(){
+        MoneyAccumulator accumulator = new MoneyAccumulator(Commodity.USD);
+        accumulator.add(150, 100);
+        accumulator.add(7, 8);
+
+        BigDecimal expected = Money.getBigDecimal(150, 100).add(Money.getBigDecimal(7, 8));
+        assertThat(accumulator.toBigDecimal()).isEqualByComparingTo(expected);
+    }
+
+    @Test
+    public void accumulatorShouldMatchMoneyAddition(){
+        long[] numerators = createNumerators(10000);
+        assertThat(sumWithAccumulator(numerators)).isEqualTo(sumWithMoney(numerators));
+    }
+
+    /**
+     * Adds up a million split amounts with {@link Money#add(Money)} and with {@link MoneyAccumulator},
+     * and checks that the accumulator is faster.
+     * <p>This only runs if the environment variable {@code GNUCASH_BENCHMARK} is set</p>
+     */
+    @Test
+    public void accumulatorShouldBeFasterThanMoneyAddition(){
+        Assume.assumeTrue(System.getenv("GNUCASH_BENCHMARK") != null);
+        long[] numerators = createNumerators(BENCHMARK_SPLIT_COUNT);
+
+        long start = System.nanoTime();
+        Money total = sumWithMoney(numerators);
+        long moneyTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Money accumulated = sumWithAccumulator(numerators);
+        long accumulatorTime = System.nanoTime() - start;
+
+        assertThat(accumulated).isEqualTo(total);
+        assertThat(accumulatorTime).isLessThan(moneyTime);
+    }
+
+    private static long[] createNumerators(int count){
+        long[] numerators = new long[count];
+        for (int i = 0; i < count; i++) {
+            numerators[i] = (i % 2 == 0 ? 1 : -1) * ((i * 7919L) % 1000000);
+        }
+        return numerators;
+    }
+
+    private static Money sumWithMoney(long[] numerators){
+        Money total = Money.createZeroInstance("USD");
+        for (long numerator : numerators) {
+            total = total.add(new Money(numerator, 100, "USD"));
+        }
+        return total;
+    }
+
+    private static Money sumWithAccumulator(long[] numerators){
+        MoneyAccumulator accumulator = new MoneyAccumulator(Commodity.USD);
+        for (long numerator : numerators) {
+            accumulator.add(numerator, 100);
+        }
+        return accumulator.toMoney();
+    }
+}
@@ -196,6 +196,64 @@ public class ScheduledActionTest {
         assertThat(scheduledAction.computeNextTimeBasedScheduledExecutionTime()).isGreaterThan(now);
     }
 
+    @Test
+    public void upcomingExecutionTimes_shouldStopAtPlannedExecutionCount() {
+        ScheduledAction scheduledAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
+        Recurrence recurrence = new Recurrence(PeriodType.MONTH);
+        recurrence.setMultiplier(2);
+        DateTime startDate = new DateTime(2015, 8, 15, 12, 0);
+        recurrence.setPeriodStart(new Timestamp(startDate.getMillis()));
+        scheduledAction.setRecurrence(recurrence);
+        scheduledAction.setTotalPlannedExecutionCount(6);
+        scheduledAction.setExecutionCount(3);
+
+        assertThat(scheduledAction.computeUpcomingExecutionTimes(Long.MAX_VALUE, 100)).containsExactly(
+                new DateTime(2016, 2, 15, 12, 0).getMillis(),
+                new DateTime(2016, 4, 15, 12, 0).getMillis(),
+                new DateTime(2016, 6, 15, 12, 0).getMillis());
+        assertThat(scheduledAction.computeUpcomingExecutionTimes(Long.MAX_VALUE, 2)).hasSize(2);
+        assertThat(scheduledAction.computeUpcomingExecutionTimes(new DateTime(2016, 3, 1, 0, 0).getMillis(), 100))
+                .containsExactly(new DateTime(2016, 2, 15, 12, 0).getMillis());
+        assertThat(scheduledAction.getExecutionCount()).isEqualTo(3);
+    }
+
+    /**
+     * Missed backups are only run once, so a backup has at most one upcoming execution
+     */
+    @Test
+    public void upcomingBackupExecution_shouldFollowLastRun() {
+        ScheduledAction scheduledAction = new ScheduledAction(ScheduledAction.ActionType.BACKUP);
+        Recurrence recurrence = new Recurrence(PeriodType.DAY);
+        scheduledAction.setRecurrence(recurrence);
+        scheduledAction.setStartTime(new DateTime(2016, 6, 6, 9, 0).getMillis());
+        scheduledAction.setLastRun(new DateTime(2017, 4, 12, 9, 0).getMillis());
+
+        assertThat(scheduledAction.computeUpcomingExecutionTimes(Long.MAX_VALUE, 100))
+                .containsExactly(new DateTime(2017, 4, 13, 9, 0).getMillis());
+
+        scheduledAction.setEndTime(new DateTime(2017, 4, 13, 8, 0).getMillis());
+        assertThat(scheduledAction.computeUpcomingExecutionTimes(Long.MAX_VALUE, 100)).isEmpty();
+    }
+
+    /**
+     * Weekly actions without weekdays are only executed once, at their start time
+     */
+    @Test
+    public void upcomingExecutionsOfWeeklyActionsWithoutWeekdaySet_shouldOnlyBeTheStartTime() {
+        ScheduledAction scheduledAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
+        Recurrence recurrence = new Recurrence(PeriodType.WEEK);
+        recurrence.setByDays(Collections.<Integer>emptyList());
+        scheduledAction.setRecurrence(recurrence);
+        long startTime = new DateTime(2016, 6, 6, 9, 0).getMillis();
+        scheduledAction.setStartTime(startTime);
+
+        assertThat(scheduledAction.computeUpcomingExecutionTimes(Long.MAX_VALUE, 100)).containsExactly(startTime);
+        assertThat(scheduledAction.computeUpcomingExecutionTimes(startTime - 1, 100)).isEmpty();
+
+        scheduledAction.setExecutionCount(1);
+        assertThat(scheduledAction.computeUpcomingExecutionTimes(Long.MAX_VALUE, 100)).isEmpty();
+    }
+
     private long getTimeInMillis(int year, int month, int day) {
         Calendar calendar = Calendar.getInstance();
         calendar.set(year, month, day);
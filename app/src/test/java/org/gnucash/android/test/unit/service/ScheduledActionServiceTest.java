@@ -16,6 +16,7 @@
 package org.gnucash.android.test.unit.service;
 
 import android.content.ContentValues;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import org.gnucash.android.BuildConfig;
@@ -46,6 +47,7 @@ import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
 import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
 import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
 import org.gnucash.android.util.BookUtils;
+import org.gnucash.android.util.PreferencesHelper;
 import org.gnucash.android.util.TimestampHelper;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeConstants;
@@ -64,6 +66,7 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
@@ -484,6 +487,87 @@ public class ScheduledActionServiceTest {
         assertThat(backupFolder.listFiles()).hasSize(1);
     }
 
+    @Test
+    public void maintenance_shouldDeleteTransactionsWithoutSplitsOncePerDay() {
+        Transaction orphan = new Transaction("Orphan");
+        mTransactionsDbAdapter.addRecord(orphan, DatabaseAdapter.UpdateMethod.insert);
+
+        Transaction transaction = new Transaction("Groceries");
+        Split split = new Split(new Money("10", Commodity.DEFAULT_COMMODITY.getCurrencyCode()), mBaseAccount.getUID());
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(mTransferAccount.getUID()));
+        Transaction emptyTransaction = new Transaction("Empty");
+        mTransactionsDbAdapter.bulkAddRecords(Arrays.asList(transaction, emptyTransaction),
+                DatabaseAdapter.UpdateMethod.insert);
+
+        //bulk inserts only clean up their own transactions
+        assertThat(transactionExists(emptyTransaction.getUID())).isFalse();
+        assertThat(transactionExists(orphan.getUID())).isTrue();
+
+        String bookUID = BooksDbAdapter.getInstance().getActiveBookUID();
+        PreferencesHelper.setLastMaintenanceTime(bookUID, TimestampHelper.getTimestampFromEpochZero());
+        assertThat(ScheduledActionService.runMaintenance(bookUID, mTransactionsDbAdapter,
+                ScheduledActionDbAdapter.getInstance())).isTrue();
+        assertThat(transactionExists(orphan.getUID())).isFalse();
+        assertThat(transactionExists(transaction.getUID())).isTrue();
+
+        assertThat(ScheduledActionService.runMaintenance(bookUID, mTransactionsDbAdapter,
+                ScheduledActionDbAdapter.getInstance())).isFalse();
+    }
+
+    @Test
+    public void upcomingOccurrences_shouldSelectOnlyDueScheduledActions() {
+        ScheduledActionDbAdapter scheduledActionDbAdapter = ScheduledActionDbAdapter.getInstance();
+        ScheduledAction missedAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
+        missedAction.setStartTime(new DateTime(2016, 6, 6, 9, 0).getMillis());
+        missedAction.setEndTime(new DateTime(2016, 9, 12, 8, 0).getMillis());
+        missedAction.setActionUID(mActionUID);
+        Recurrence recurrence = new Recurrence(PeriodType.WEEK);
+        recurrence.setMultiplier(2);
+        recurrence.setByDays(Collections.singletonList(Calendar.MONDAY));
+        missedAction.setRecurrence(recurrence);
+        scheduledActionDbAdapter.addRecord(missedAction, DatabaseAdapter.UpdateMethod.insert);
+
+        ScheduledAction futureAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
+        futureAction.setStartTime(System.currentTimeMillis() + 100000);
+        futureAction.setActionUID(mActionUID);
+        futureAction.setRecurrence(new Recurrence(PeriodType.MONTH));
+        scheduledActionDbAdapter.addRecord(futureAction, DatabaseAdapter.UpdateMethod.insert);
+
+        long now = System.currentTimeMillis();
+        List<ScheduledAction> dueActions = scheduledActionDbAdapter.getScheduledActionsDueBefore(now);
+        assertThat(dueActions).hasSize(1);
+        assertThat(dueActions.get(0).getUID()).isEqualTo(missedAction.getUID());
+        assertThat(countUpcomingOccurrences(0, now)).isEqualTo(7);
+
+        ScheduledActionService.processScheduledActions(dueActions, mDb);
+        assertThat(mTransactionsDbAdapter.getRecordsCount()).isEqualTo(7);
+        assertThat(scheduledActionDbAdapter.getScheduledActionsDueBefore(now)).isEmpty();
+        assertThat(countUpcomingOccurrences(0, now)).isZero();
+
+        assertThat(countUpcomingOccurrences(now, Long.MAX_VALUE)).isGreaterThanOrEqualTo(12);
+        scheduledActionDbAdapter.deleteRecord(futureAction.getUID());
+        assertThat(countUpcomingOccurrences(now, Long.MAX_VALUE)).isZero();
+    }
+
+    private int countUpcomingOccurrences(long startTime, long endTime) {
+        Cursor cursor = ScheduledActionDbAdapter.getInstance().fetchUpcomingOccurrences(startTime, endTime);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private boolean transactionExists(String transactionUID) {
+        Cursor cursor = mTransactionsDbAdapter.fetchRecord(transactionUID);
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
     @After
     public void tearDown(){
         TransactionsDbAdapter.getInstance().deleteAllRecords();
@@ -1,7 +1,12 @@
 package org.gnucash.android.test.unit.testutil;
 
+import org.gnucash.android.db.adapter.BookSession;
 import org.junit.runners.model.InitializationError;
+import org.robolectric.DefaultTestLifecycle;
 import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.TestLifecycle;
+
+import java.lang.reflect.Method;
 
 /**
  * Test runner for application
@@ -12,4 +17,20 @@ public class GnucashTestRunner extends RobolectricGradleTestRunner {
         super(klass);
     }
 
+    @Override
+    protected Class<? extends TestLifecycle> getTestLifecycleClass() {
+        return GnucashTestLifecycle.class;
+    }
+
+    /**
+     * Closes the books opened by a test, since their databases do not outlive the test
+     * but the book sessions are static
+     */
+    public static class GnucashTestLifecycle extends DefaultTestLifecycle {
+        @Override
+        public void afterTest(Method method) {
+            BookSession.closeAll();
+            super.afterTest(method);
+        }
+    }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.testutil;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DatabaseHelper;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Book;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Book with generated accounts and transactions, for the benchmarks.
+ * <p>The book has a bank account and a number of expense accounts for each of its currencies.
+ * Transaction {@code i} moves an amount from the bank account to one of the expense accounts,
+ * going round the currencies and the expense accounts. Every 4th expense split has a memo.</p>
+ */
+public class SyntheticBook {
+
+    /**
+     * Number of transactions written by each bulk insert
+     */
+    public static final int BATCH_SIZE = 5000;
+
+    /**
+     * Time of the first transaction, 2016-01-01. Each further transaction is one minute later
+     */
+    public static final long START_TIME = 1451606400000L;
+
+    private final Book mBook;
+    private final DatabaseHelper mDatabaseHelper;
+    private final SQLiteDatabase mDb;
+    private final TransactionsDbAdapter mTransactionsDbAdapter;
+    private final AccountsDbAdapter mAccountsDbAdapter;
+
+    private final List<String> mCurrencyCodes = new ArrayList<>();
+    private final List<String> mBankAccountUIDs = new ArrayList<>();
+    private final List<List<String>> mExpenseAccountUIDs = new ArrayList<>();
+
+    private int mTransactionCount = 0;
+
+    /**
+     * Registers a new empty book and opens its database
+     */
+    public SyntheticBook() {
+        mBook = new Book("benchmarkRootAccountUID");
+        BooksDbAdapter.getInstance().addRecord(mBook);
+        mDatabaseHelper = new DatabaseHelper(GnuCashApplication.getAppContext(), mBook.getUID());
+        mDb = mDatabaseHelper.getWritableDatabase();
+        mTransactionsDbAdapter = new TransactionsDbAdapter(mDb, new SplitsDbAdapter(mDb));
+        mAccountsDbAdapter = new AccountsDbAdapter(mDb, mTransactionsDbAdapter);
+    }
+
+    /**
+     * Adds the accounts of a currency: a bank account named "Bank CODE" and expense accounts named "Expense CODE i"
+     * @param currencyCode Code of the currency
+     * @param expenseAccountCount Number of expense accounts
+     * @return This book
+     */
+    public SyntheticBook addAccounts(String currencyCode, int expenseAccountCount) {
+        Commodity commodity = Commodity.getInstance(currencyCode);
+        Account bank = new Account("Bank " + currencyCode, commodity);
+        mAccountsDbAdapter.addRecord(bank);
+
+        List<String> expenseAccountUIDs = new ArrayList<>();
+        for (int i = 0; i < expenseAccountCount; i++) {
+            Account expense = new Account("Expense " + currencyCode + " " + i, commodity);
+            mAccountsDbAdapter.addRecord(expense);
+            expenseAccountUIDs.add(expense.getUID());
+        }
+
+        mCurrencyCodes.add(currencyCode);
+        mBankAccountUIDs.add(bank.getUID());
+        mExpenseAccountUIDs.add(expenseAccountUIDs);
+        return this;
+    }
+
+    /**
+     * Generates the next transactions of the book without saving them
+     * @param count Number of transactions, each of them with two splits
+     */
+    public List<Transaction> createTransactions(int count) {
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = mTransactionCount++;
+            int currency = index % mCurrencyCodes.size();
+            List<String> expenseAccountUIDs = mExpenseAccountUIDs.get(currency);
+            Transaction transaction = new Transaction("Purchase " + index);
+            transaction.setTime(START_TIME + index * 60000L);
+            Split split = createSplit(index, mCurrencyCodes.get(currency),
+                    expenseAccountUIDs.get(index % expenseAccountUIDs.size()));
+            transaction.addSplit(split);
+            transaction.addSplit(split.createPair(mBankAccountUIDs.get(currency)));
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+
+    /**
+     * Generates the next transactions of the book and saves them in batches of {@value #BATCH_SIZE}
+     * @param count Number of transactions, each of them with two splits
+     * @return This book
+     */
+    public SyntheticBook addTransactions(int count) {
+        for (int added = 0; added < count; added += BATCH_SIZE) {
+            mTransactionsDbAdapter.bulkAddRecords(createTransactions(Math.min(BATCH_SIZE, count - added)));
+        }
+        return this;
+    }
+
+    /**
+     * Generates split {@code index}, with an amount between 1.00 and 500.99 and a memo for every 4th split
+     * @param index Index of the split
+     * @param currencyCode Currency of the amount
+     * @param accountUID GUID of the account of the split
+     */
+    public static Split createSplit(int index, String currencyCode, String accountUID) {
+        Money amount = new Money(String.format(Locale.US, "%d.%02d", 1 + index % 500, index % 100), currencyCode);
+        Split split = new Split(amount, accountUID);
+        if (index % 4 == 0)
+            split.setMemo("Memo " + index);
+        return split;
+    }
+
+    /**
+     * Closes the database of the book and deletes the book
+     */
+    public void delete() {
+        mDatabaseHelper.close();
+        BooksDbAdapter.getInstance().deleteRecord(mBook.getUID());
+        GnuCashApplication.getAppContext().deleteDatabase(mBook.getUID());
+    }
+
+    public String getBookUID() {
+        return mBook.getUID();
+    }
+
+    public SQLiteDatabase getDatabase() {
+        return mDb;
+    }
+
+    public TransactionsDbAdapter getTransactionsDbAdapter() {
+        return mTransactionsDbAdapter;
+    }
+
+    public AccountsDbAdapter getAccountsDbAdapter() {
+        return mAccountsDbAdapter;
+    }
+
+    /**
+     * Returns the number of transactions generated so far
+     */
+    public int getTransactionCount() {
+        return mTransactionCount;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.testutil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Helpers for reading the files written by the exporters
+ */
+public final class TestFiles {
+
+    private TestFiles() {
+        //nothing to see here, move along
+    }
+
+    /**
+     * Returns the content of a file encoded as UTF-8
+     */
+    public static String readFile(File file) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                content.write(buffer, 0, count);
+            }
+            return content.toString("UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.ui;
+
+import android.support.annotation.Nullable;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.BudgetAmountsDbAdapter;
+import org.gnucash.android.db.adapter.BudgetsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Budget;
+import org.gnucash.android.model.BudgetAmount;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.PeriodType;
+import org.gnucash.android.model.Recurrence;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.ui.util.BalanceLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.Scheduler;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test the batched loading of the balances of the account list
+ */
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class BalanceLoaderTest {
+
+    /**
+     * Time to wait for the loader thread, in milliseconds
+     */
+    private static final long LOADER_TIMEOUT = 10000;
+
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private Scheduler mScheduler;
+    private BalanceLoader mBalanceLoader;
+
+    private Account mAccount;
+    private Account mOtherAccount;
+
+    @Before
+    public void setUp() {
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        mScheduler = Robolectric.getForegroundThreadScheduler();
+
+        mAccount = new Account("Bank");
+        mAccountsDbAdapter.addRecord(mAccount);
+        mOtherAccount = new Account("Expenses");
+        mAccountsDbAdapter.addRecord(mOtherAccount);
+        addTransaction(mAccount, "10");
+        addTransaction(mOtherAccount, "5");
+
+        // the tasks posted by the loader stay queued until the test runs them
+        mScheduler.pause();
+        mScheduler.advanceToLastPostedRunnable();
+        mBalanceLoader = new BalanceLoader();
+    }
+
+    @After
+    public void tearDown() {
+        mBalanceLoader.shutdown();
+        mScheduler.unPause();
+        BudgetsDbAdapter.getInstance().deleteAllRecords();
+        BudgetAmountsDbAdapter.getInstance().deleteAllRecords();
+        mAccountsDbAdapter.deleteAllRecords();
+    }
+
+    private void addTransaction(Account account, String amount) {
+        Transaction transaction = new Transaction("Purchase");
+        transaction.addSplit(new Split(new Money(amount, Commodity.DEFAULT_COMMODITY.getCurrencyCode()),
+                account.getUID()));
+        TransactionsDbAdapter.getInstance().addRecord(transaction);
+    }
+
+    /**
+     * Waits until a task has been posted to the main thread, by the loader thread if need be, and runs it
+     */
+    private void runPostedTask() throws InterruptedException {
+        long timeout = System.currentTimeMillis() + LOADER_TIMEOUT;
+        while (mScheduler.size() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertThat(mScheduler.runOneTask()).isTrue();
+    }
+
+    @Test
+    public void requestsOfOneLayoutPass_shouldBeLoadedInOneBatch() throws InterruptedException {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        RecordingListener other = new RecordingListener();
+        mBalanceLoader.requestBalance(first, mAccount.getUID(), false);
+        mBalanceLoader.requestBalance(second, mAccount.getUID(), false);
+        mBalanceLoader.requestBalance(other, mOtherAccount.getUID(), false);
+        assertThat(mScheduler.size()).isEqualTo(1);
+
+        runPostedTask(); // starts the batch
+        runPostedTask(); // delivers its balances
+        assertThat(mScheduler.size()).isZero();
+
+        assertThat(first.mCallCount).isEqualTo(1);
+        assertThat(first.mBalance.asBigDecimal().abs()).isEqualByComparingTo(new BigDecimal("10"));
+        assertThat(second.mCallCount).isEqualTo(1);
+        assertThat(second.mBalance.asBigDecimal().abs()).isEqualByComparingTo(new BigDecimal("10"));
+        assertThat(other.mCallCount).isEqualTo(1);
+        assertThat(other.mBalance.asBigDecimal().abs()).isEqualByComparingTo(new BigDecimal("5"));
+
+        // loaded balances are served without another batch
+        RecordingListener later = new RecordingListener();
+        mBalanceLoader.requestBalance(later, mAccount.getUID(), false);
+        assertThat(later.mCallCount).isEqualTo(1);
+        assertThat(mScheduler.size()).isZero();
+    }
+
+    @Test
+    public void cancelledRequest_shouldNotBeAnswered() throws InterruptedException {
+        RecordingListener cancelled = new RecordingListener();
+        RecordingListener other = new RecordingListener();
+        mBalanceLoader.requestBalance(cancelled, mAccount.getUID(), false);
+        mBalanceLoader.requestBalance(other, mOtherAccount.getUID(), false);
+        mBalanceLoader.cancel(cancelled);
+
+        runPostedTask();
+        runPostedTask();
+        assertThat(cancelled.mCallCount).isZero();
+        assertThat(other.mCallCount).isEqualTo(1);
+    }
+
+    @Test
+    public void balancesOfBatchStartedBeforeInvalidation_shouldBeLoadedAgain() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        mBalanceLoader.requestBalance(listener, mAccount.getUID(), false);
+        runPostedTask(); // starts the batch
+
+        // wait until the batch has posted the balance it read before the change
+        long timeout = System.currentTimeMillis() + LOADER_TIMEOUT;
+        while (mScheduler.size() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        addTransaction(mAccount, "20");
+        mBalanceLoader.invalidate();
+
+        runPostedTask(); // delivers the stale balance, which is requested again
+        assertThat(listener.mCallCount).isZero();
+
+        runPostedTask();
+        runPostedTask();
+        assertThat(listener.mCallCount).isEqualTo(1);
+        assertThat(listener.mBalance.asBigDecimal().abs()).isEqualByComparingTo(new BigDecimal("30"));
+
+        // the balance loaded after the invalidation is kept
+        RecordingListener later = new RecordingListener();
+        mBalanceLoader.requestBalance(later, mAccount.getUID(), false);
+        assertThat(later.mCallCount).isEqualTo(1);
+        assertThat(later.mBalance.asBigDecimal().abs()).isEqualByComparingTo(new BigDecimal("30"));
+    }
+
+    @Test
+    public void budgetProgress_shouldOnlyBeLoadedForAccountsWithOneBudget() throws InterruptedException {
+        Budget budget = new Budget("Monthly", new Recurrence(PeriodType.MONTH));
+        budget.addBudgetAmount(new BudgetAmount(new Money("100", Commodity.DEFAULT_COMMODITY.getCurrencyCode()),
+                mAccount.getUID()));
+        BudgetsDbAdapter.getInstance().addRecord(budget);
+
+        RecordingListener budgeted = new RecordingListener();
+        RecordingListener other = new RecordingListener();
+        mBalanceLoader.requestBalance(budgeted, mAccount.getUID(), true);
+        mBalanceLoader.requestBalance(other, mOtherAccount.getUID(), true);
+        runPostedTask();
+        runPostedTask();
+
+        assertThat(budgeted.mCallCount).isEqualTo(1);
+        assertThat(budgeted.mBudgetProgress).isNotNull();
+        assertThat(other.mCallCount).isEqualTo(1);
+        assertThat(other.mBudgetProgress).isNull();
+    }
+
+    /**
+     * Listener which records the balances it receives
+     */
+    private static class RecordingListener implements BalanceLoader.OnBalanceLoadedListener {
+        int mCallCount = 0;
+        Money mBalance;
+        Integer mBudgetProgress;
+
+        @Override
+        public void onBalanceLoaded(String accountUID, Money balance, @Nullable Integer budgetProgress) {
+            mCallCount++;
+            mBalance = balance;
+            mBudgetProgress = budgetProgress;
+        }
+    }
+}
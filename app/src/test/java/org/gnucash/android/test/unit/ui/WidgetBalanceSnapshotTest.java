@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.ui;
+
+import android.content.Context;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.BaseModel;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.ui.homescreen.WidgetBalanceSnapshot;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test the computing and storing of the balance snapshots of homescreen widgets
+ */
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class WidgetBalanceSnapshotTest {
+
+    private static final int APP_WIDGET_ID = 42;
+
+    private Context mContext;
+    private AccountsDbAdapter mAccountsDbAdapter;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+    }
+
+    @Test
+    public void computedSnapshot_shouldIncludeSubAccountBalances() {
+        Account parent = new Account("Assets");
+        parent.setPlaceHolderFlag(true);
+        mAccountsDbAdapter.addRecord(parent);
+        Account child = new Account("Bank");
+        child.setParentUID(parent.getUID());
+        mAccountsDbAdapter.addRecord(child);
+
+        String currencyCode = Commodity.DEFAULT_COMMODITY.getCurrencyCode();
+        Transaction transaction = new Transaction("Salary");
+        transaction.addSplit(new Split(new Money("25.50", currencyCode), child.getUID()));
+        TransactionsDbAdapter.getInstance().addRecord(transaction);
+
+        WidgetBalanceSnapshot snapshot = WidgetBalanceSnapshot.compute(mAccountsDbAdapter, parent.getUID());
+        assertThat(snapshot.getAccountUID()).isEqualTo(parent.getUID());
+        assertThat(snapshot.getAccountName()).isEqualTo("Assets");
+        assertThat(snapshot.getBalance().asBigDecimal().abs()).isEqualByComparingTo(new BigDecimal("25.50"));
+        assertThat(snapshot.getBalance().getCommodity().getCurrencyCode()).isEqualTo(currencyCode);
+        assertThat(snapshot.isPlaceholder()).isTrue();
+        assertThat(snapshot.isAccountMissing()).isFalse();
+        assertThat(snapshot.getComputedAt()).isGreaterThan(0);
+    }
+
+    @Test
+    public void computedSnapshot_shouldRecordMissingAccount() {
+        WidgetBalanceSnapshot snapshot = WidgetBalanceSnapshot.compute(mAccountsDbAdapter, BaseModel.generateUID());
+        assertThat(snapshot.isAccountMissing()).isTrue();
+    }
+
+    @Test
+    public void savedSnapshot_shouldBeReadBack() {
+        assertThat(WidgetBalanceSnapshot.load(mContext, APP_WIDGET_ID)).isNull();
+
+        Account account = new Account("Cash");
+        mAccountsDbAdapter.addRecord(account);
+        WidgetBalanceSnapshot snapshot = WidgetBalanceSnapshot.compute(mAccountsDbAdapter, account.getUID());
+        snapshot.save(mContext, APP_WIDGET_ID);
+
+        WidgetBalanceSnapshot loaded = WidgetBalanceSnapshot.load(mContext, APP_WIDGET_ID);
+        assertThat(loaded).isNotNull();
+        assertThat(loaded.getAccountUID()).isEqualTo(account.getUID());
+        assertThat(loaded.getAccountName()).isEqualTo("Cash");
+        assertThat(loaded.getBalance()).isEqualTo(snapshot.getBalance());
+        assertThat(loaded.getComputedAt()).isEqualTo(snapshot.getComputedAt());
+        assertThat(loaded.isDirty()).isFalse();
+        assertThat(loaded.needsRefresh(account.getUID())).isFalse();
+        //the widget was configured for another account
+        assertThat(loaded.needsRefresh(BaseModel.generateUID())).isTrue();
+    }
+
+    @Test
+    public void dirtySnapshot_shouldNeedRefreshUntilSaved() {
+        Account account = new Account("Cash");
+        mAccountsDbAdapter.addRecord(account);
+        WidgetBalanceSnapshot snapshot = WidgetBalanceSnapshot.compute(mAccountsDbAdapter, account.getUID());
+        snapshot.save(mContext, APP_WIDGET_ID);
+
+        WidgetBalanceSnapshot.markDirty(mContext, APP_WIDGET_ID);
+        WidgetBalanceSnapshot.markDirty(mContext, APP_WIDGET_ID);
+        WidgetBalanceSnapshot loaded = WidgetBalanceSnapshot.load(mContext, APP_WIDGET_ID);
+        assertThat(loaded.isDirty()).isTrue();
+        assertThat(loaded.needsRefresh(account.getUID())).isTrue();
+        //marking a snapshot dirty keeps its last values for rendering
+        assertThat(loaded.getAccountName()).isEqualTo("Cash");
+
+        loaded.save(mContext, APP_WIDGET_ID);
+        assertThat(WidgetBalanceSnapshot.load(mContext, APP_WIDGET_ID).needsRefresh(account.getUID())).isFalse();
+    }
+}
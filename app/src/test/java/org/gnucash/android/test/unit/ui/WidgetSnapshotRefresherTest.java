@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.ui;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.ui.common.UxArgument;
+import org.gnucash.android.ui.homescreen.WidgetBalanceSnapshot;
+import org.gnucash.android.ui.homescreen.WidgetSnapshotRefresher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.Scheduler;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static android.content.Context.MODE_PRIVATE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test the background refresh of the balance snapshots of homescreen widgets
+ */
+@RunWith(GnucashTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class WidgetSnapshotRefresherTest {
+
+    private static final int PARENT_WIDGET_ID = 1;
+    private static final int OTHER_WIDGET_ID = 2;
+
+    private Context mContext;
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private Scheduler mScheduler;
+    private TestRefresher mRefresher;
+    private String mBookUID;
+
+    private Account mParentAccount;
+    private Account mChildAccount;
+    private Account mOtherAccount;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        mBookUID = BooksDbAdapter.getInstance().getActiveBookUID();
+        mScheduler = Robolectric.getForegroundThreadScheduler();
+
+        mParentAccount = new Account("Assets");
+        mAccountsDbAdapter.addRecord(mParentAccount);
+        mChildAccount = new Account("Bank");
+        mChildAccount.setParentUID(mParentAccount.getUID());
+        mAccountsDbAdapter.addRecord(mChildAccount);
+        mOtherAccount = new Account("Expenses");
+        mAccountsDbAdapter.addRecord(mOtherAccount);
+
+        configureWidget(PARENT_WIDGET_ID, mParentAccount);
+        configureWidget(OTHER_WIDGET_ID, mOtherAccount);
+
+        mRefresher = new TestRefresher(mContext, PARENT_WIDGET_ID, OTHER_WIDGET_ID);
+        SplitsDbAdapter.setOnBalancesChangedListener(mRefresher);
+    }
+
+    @After
+    public void tearDown() {
+        SplitsDbAdapter.setOnBalancesChangedListener(null);
+    }
+
+    /**
+     * Configures a widget for an account of the active book, with an up to date snapshot
+     */
+    private void configureWidget(int appWidgetId, Account account) {
+        mContext.getSharedPreferences("widget:" + appWidgetId, MODE_PRIVATE).edit()
+                .putString(UxArgument.BOOK_UID, mBookUID)
+                .putString(UxArgument.SELECTED_ACCOUNT_UID, account.getUID())
+                .commit();
+        WidgetBalanceSnapshot.compute(mAccountsDbAdapter, account.getUID()).save(mContext, appWidgetId);
+    }
+
+    private void addTransaction(Account account, String amount) {
+        Transaction transaction = new Transaction("Purchase");
+        transaction.addSplit(new Split(new Money(amount, Commodity.DEFAULT_COMMODITY.getCurrencyCode()),
+                account.getUID()));
+        TransactionsDbAdapter.getInstance().addRecord(transaction);
+    }
+
+    @Test
+    public void repeatedChanges_shouldBeRefreshedByOneJob() {
+        int pendingJobs = mScheduler.size();
+        addTransaction(mChildAccount, "10");
+        addTransaction(mChildAccount, "20");
+        mRefresher.onBalancesChanged(mBookUID, Collections.singleton(mChildAccount.getUID()));
+        assertThat(mScheduler.size()).isEqualTo(pendingJobs + 1);
+
+        mScheduler.advanceToLastPostedRunnable();
+        assertThat(mRefresher.mRenderedWidgets).containsExactly(PARENT_WIDGET_ID);
+        WidgetBalanceSnapshot snapshot = WidgetBalanceSnapshot.load(mContext, PARENT_WIDGET_ID);
+        assertThat(snapshot.getBalance().asBigDecimal().abs()).isEqualByComparingTo(new BigDecimal("30"));
+        assertThat(snapshot.isDirty()).isFalse();
+    }
+
+    @Test
+    public void changeInSubAccount_shouldRefreshWidgetsOfAncestors() {
+        addTransaction(mChildAccount, "12.34");
+        mScheduler.advanceToLastPostedRunnable();
+
+        assertThat(mRefresher.mRenderedWidgets).containsExactly(PARENT_WIDGET_ID);
+        WidgetBalanceSnapshot snapshot = WidgetBalanceSnapshot.load(mContext, PARENT_WIDGET_ID);
+        assertThat(snapshot.getBalance().asBigDecimal().abs()).isEqualByComparingTo(new BigDecimal("12.34"));
+        assertThat(WidgetBalanceSnapshot.load(mContext, OTHER_WIDGET_ID).getBalance().isAmountZero()).isTrue();
+    }
+
+    @Test
+    public void dirtySnapshots_shouldBeRecomputedWithoutBalanceChanges() {
+        WidgetBalanceSnapshot.markDirty(mContext, OTHER_WIDGET_ID);
+        WidgetBalanceSnapshot.markDirty(mContext, OTHER_WIDGET_ID);
+        mRefresher.scheduleRefresh();
+        mRefresher.scheduleRefresh();
+        mScheduler.advanceToLastPostedRunnable();
+
+        assertThat(mRefresher.mRenderedWidgets).containsExactly(OTHER_WIDGET_ID);
+        assertThat(WidgetBalanceSnapshot.load(mContext, OTHER_WIDGET_ID).isDirty()).isFalse();
+    }
+
+    /**
+     * Refresher of a fixed set of widgets, running on the main looper and recording the widgets it renders
+     */
+    private static class TestRefresher extends WidgetSnapshotRefresher {
+        private final int[] mAppWidgetIds;
+        final List<Integer> mRenderedWidgets = new ArrayList<>();
+
+        TestRefresher(Context context, int... appWidgetIds) {
+            super(context, new Handler(Looper.getMainLooper()));
+            mAppWidgetIds = appWidgetIds;
+        }
+
+        @Override
+        protected int[] getAppWidgetIds() {
+            return mAppWidgetIds;
+        }
+
+        @Override
+        protected void renderWidget(int appWidgetId) {
+            mRenderedWidgets.add(appWidgetId);
+        }
+    }
+}